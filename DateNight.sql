@@ -7,7 +7,31 @@
 
 -- Drop tables if they already exist (Safe to re-run. Previous tables under these names will be deleted)
 
+DROP VIEW IF EXISTS date_night_idea_status;
+DROP TABLE IF EXISTS suggestion_event;
+DROP TABLE IF EXISTS suggestion_daily_count;
+DROP TABLE IF EXISTS suggestion_idea_count;
+DROP TABLE IF EXISTS idea_lease;
+DROP TABLE IF EXISTS user_suggestion;
 DROP TABLE IF EXISTS date_night_idea;
+DROP TABLE IF EXISTS budget_category;
+
+-- ------------------------------------------
+-- Table: budget_category
+-- One row per budget category. Ideas refer to their category by its small integer id, so indexes and
+-- comparisons work on 2-byte numbers instead of strings. The ids must match the BudgetCategory enum in the app.
+-- epoch stores the current "round" of suggestions for the category. An idea counts as suggested only when
+-- its suggested_epoch matches the current epoch of its category, so resetting the list is one small UPDATE
+-- that adds 1 to each epoch instead of rewriting every idea.
+-- ------------------------------------------
+CREATE TABLE budget_category (
+    id SMALLINT PRIMARY KEY,
+    name VARCHAR(20) NOT NULL UNIQUE,
+    epoch INT NOT NULL DEFAULT 1
+);
+
+INSERT INTO budget_category (id, name)
+VALUES (1, 'Free'), (2, 'Cheap'), (3, 'Moderate'), (4, 'Expensive');
 
 -- ------------------------------------------
 -- Table: date_night_idea
@@ -17,20 +41,161 @@ CREATE TABLE date_night_idea (
     id SERIAL PRIMARY KEY,
     title VARCHAR(255) NOT NULL,
     description TEXT,
-    budget_category VARCHAR(20) NOT NULL CHECK (budget_category IN ('Free', 'Cheap', 'Moderate', 'Expensive')),
-	--The below line creates a column named category_id INT, which means it will store integer values
-	--corresponding to the id of a category in the category table. REFERENCES category(id) sets up a foreign key
-	--relationship, which ensures referential integrity. It doesn't allow users to assign a non-existent category
-	--to a date night idea. ON DELETE SET NULL informs PostgreSQL that if a category is deleted, set the category_id
-	--to null instead of deleting it.
+	--The below line creates a column named category_id SMALLINT, which means it will store integer values
+	--corresponding to the id of a category in the budget_category table. REFERENCES budget_category(id) sets up a
+	--foreign key relationship, which ensures referential integrity. It doesn't allow users to assign a non-existent
+	--category to a date night idea, and a category can't be deleted while ideas still use it.
+    category_id SMALLINT NOT NULL REFERENCES budget_category(id),
     location VARCHAR(100),
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    is_suggested BOOLEAN DEFAULT FALSE
+	--suggested_epoch stores the epoch in which the idea was last suggested. 0 means it has never been suggested.
+    suggested_epoch INT NOT NULL DEFAULT 0,
+	--random_key gives every idea a random position between 0 and 1. It is used by the RANDOM_KEY selection
+	--strategy to jump to a random point in the index instead of sorting the whole category with ORDER BY RANDOM().
+    random_key DOUBLE PRECISION NOT NULL DEFAULT RANDOM(),
+	--version goes up by one every time the idea is edited. An edit that sends the version it started from is only
+	--applied if nobody else has edited the idea since, so two people editing the same idea can't overwrite each
+	--other without noticing. Draws and resets don't change it, because they don't change what the idea says.
+    version INT NOT NULL DEFAULT 1,
+	--search_vector holds the words of the title, description and location for full-text search. Title words are
+	--weighted A, description words B and location words C, so a match in the title ranks highest. PostgreSQL
+	--recomputes it whenever a row is inserted or updated, so it can never be out of date.
+    search_vector TSVECTOR GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(description, '')), 'B') ||
+        setweight(to_tsvector('english', coalesce(location, '')), 'C')) STORED
+);
+
+-- ------------------------------------------
+-- Index: idx_date_night_idea_category_random_key
+-- Keeps the ideas of each budget category ordered by random_key, so a random draw starts reading
+-- at a random point instead of sorting the whole category. Shared draws skip the ideas suggested in
+-- the current epoch and per-user draws skip the ideas that user has already seen.
+-- id and suggested_epoch are stored in the index too (INCLUDE). Shared draws still read each row they pass from
+-- the table, because they lock the row they pick (see JdbcDateNightIdeaDao).
+-- A partial index "WHERE NOT is_suggested" is not possible here, because whether an idea is suggested depends on
+-- the current epoch in budget_category, not on the row alone.
+-- A draw therefore reads past the suggested ideas after its random point: about (ideas in the category / ideas
+-- still available) entries, which is one early in a round and grows to the whole category for its last idea.
+-- A suggested flag with a partial index would keep the last draws cheap, but a reset would have to clear the flag
+-- on every idea drawn in the round (see "Random idea selection" in the README for the numbers).
+-- ------------------------------------------
+CREATE INDEX idx_date_night_idea_category_random_key
+    ON date_night_idea (category_id, random_key) INCLUDE (id, suggested_epoch);
+
+-- ------------------------------------------
+-- Index: idx_date_night_idea_category_id
+-- Lists the ideas of one budget category in id order, so a filtered page or stream reads only that
+-- category's ideas, already sorted, starting at the page cursor.
+-- ------------------------------------------
+CREATE INDEX idx_date_night_idea_category_id
+    ON date_night_idea (category_id, id);
+
+-- ------------------------------------------
+-- Index: idx_date_night_idea_search
+-- A GIN index lists, for every word, the ideas that contain it, so a search only reads the ideas
+-- that match instead of scanning the whole table.
+-- ------------------------------------------
+CREATE INDEX idx_date_night_idea_search
+    ON date_night_idea USING GIN (search_vector);
+
+-- ------------------------------------------
+-- Table: idea_lease
+-- Used by datenight.dao.mode=leased, where several instances of the app draw from the same shared list. An instance
+-- leases a block of unsuggested ideas by adding a row per idea with its own owner id, and only that instance draws
+-- them until expires_at. A row whose expires_at has passed no longer counts and is taken over by the next lease, so
+-- ideas held by an instance that stopped come back by themselves. Deleting an idea deletes its lease.
+-- ------------------------------------------
+CREATE TABLE idea_lease (
+    idea_id INT PRIMARY KEY REFERENCES date_night_idea(id) ON DELETE CASCADE,
+    owner UUID NOT NULL,
+    expires_at TIMESTAMPTZ NOT NULL
+);
+
+-- ------------------------------------------
+-- Index: idx_idea_lease_owner
+-- Finds an instance's leases when it gives them back on shutdown or after a reset.
+-- ------------------------------------------
+CREATE INDEX idx_idea_lease_owner
+    ON idea_lease (owner);
+
+-- ------------------------------------------
+-- Table: user_suggestion
+-- Used by datenight.dao.mode=leased. One row for every idea a user (the "user" key of /random) has been shown, so a
+-- user's own list is the same whichever instance answers. A user's rows are deleted when they reset their list, and
+-- the rows of users who haven't drawn for a day are deleted by the app every hour. Deleting an idea deletes its rows.
+-- The primary key finds a user's rows, and stops two instances from recording the same idea for a user twice.
+-- ------------------------------------------
+CREATE TABLE user_suggestion (
+    user_key VARCHAR(64) NOT NULL,
+    idea_id INT NOT NULL REFERENCES date_night_idea(id) ON DELETE CASCADE,
+    suggested_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (user_key, idea_id)
+);
+
+-- ------------------------------------------
+-- View: date_night_idea_status
+-- Every column of date_night_idea except search_vector, plus the budget category name and is_suggested, worked
+-- out by comparing the idea's suggested_epoch with the current epoch of its budget category. The DAO reads through
+-- this view. search_vector is left out so listing the catalog doesn't send it to the app.
+-- ------------------------------------------
+CREATE VIEW date_night_idea_status AS
+SELECT d.id, d.title, d.description, d.category_id, d.location, d.created_at, d.suggested_epoch, d.random_key,
+       d.version, c.name AS budget_category, (d.suggested_epoch = c.epoch) AS is_suggested
+FROM date_night_idea d
+JOIN budget_category c ON c.id = d.category_id;
+
+-- ------------------------------------------
+-- Table: suggestion_event
+-- One row for every idea drawn, written by the app in batches (see SuggestionHistory). user_key is the key of the
+-- user's own list, or NULL for a draw from the shared list. Rows are only ever added, never changed.
+-- The table is partitioned by month: each month's rows go into their own table, suggestion_event_YYYY_MM, which the
+-- app creates when the first draw of that month is written. Old months are removed by dropping their partition, which
+-- takes a moment however many rows it holds. There is no foreign key to date_night_idea, so the history of a deleted
+-- idea is kept, and no index, because the endpoints read the rollups below and adding rows stays cheap.
+-- ------------------------------------------
+CREATE TABLE suggestion_event (
+    suggested_at TIMESTAMPTZ NOT NULL,
+    idea_id INT NOT NULL,
+    category_id SMALLINT NOT NULL,
+    user_key VARCHAR(64)
+) PARTITION BY RANGE (suggested_at);
+
+-- ------------------------------------------
+-- Table: suggestion_daily_count
+-- How many ideas of each budget category were drawn on each day (in UTC). The statement that adds events also adds
+-- them to these counts, so they always agree with suggestion_event and a day is read without counting its events.
+-- ------------------------------------------
+CREATE TABLE suggestion_daily_count (
+    day DATE NOT NULL,
+    category_id SMALLINT NOT NULL,
+    draws BIGINT NOT NULL,
+    PRIMARY KEY (day, category_id)
+);
+
+-- ------------------------------------------
+-- Table: suggestion_idea_count
+-- How often each idea has been drawn and when it was last drawn, kept up to date the same way. category_id is the
+-- budget category the idea was last drawn from.
+-- ------------------------------------------
+CREATE TABLE suggestion_idea_count (
+    idea_id INT PRIMARY KEY,
+    category_id SMALLINT NOT NULL,
+    draws BIGINT NOT NULL,
+    last_suggested_at TIMESTAMPTZ NOT NULL
 );
 
--- Insert some sample date night ideas into the date_night_idea table
-INSERT INTO date_night_idea (title, description, budget_category, location)
-VALUES
+-- ------------------------------------------
+-- Index: idx_suggestion_idea_count_category_draws
+-- Keeps each budget category's ideas ordered from most to least drawn, so the top ideas are the first rows of the index.
+-- ------------------------------------------
+CREATE INDEX idx_suggestion_idea_count_category_draws
+    ON suggestion_idea_count (category_id, draws DESC, idea_id);
+
+-- Insert some sample date night ideas into the date_night_idea table. Each category name is looked up in budget_category.
+INSERT INTO date_night_idea (title, description, category_id, location)
+SELECT v.title, v.description, c.id, v.location
+FROM (VALUES
 ('Picnic in the Park', 'Pack some snacks and enjoy a relaxing outdoor picnic.', 'Free', 'Local Park'),
 ('Stargazing at Night', 'Pack some snacks and enjoy romantic starlight.', 'Free', 'Local Park'),
 ('Go on a Hike', 'Take a trip to the closest park with hiking trails and walk together.', 'Free', 'Local Park'),
@@ -51,6 +216,6 @@ you can stroll through the store to shop.', 'Cheap', 'IKEA/Sams Club'),
 ('Spa Day', 'Splurge on yourself and your partner by getting a couples massage.','Expensive','Local Spa'),
 ('Escape Room', 'Are you ready for a challenge? Try an escape room with your partner!', 'Expensive', 'Local Escape Room'),
 ('See a Broadway Show', 'Do you or your partner LOVE musicals? If so, its time to visit your local performing arts center!', 'Expensive', 'Local Performing Arts Center'),
-('Take a helicopter ride together!', 'Tour your city from thousands of feet in the air by taking a helicopter ride together', 'Expensive', 'Local Tour Company');
-
-
+('Take a helicopter ride together!', 'Tour your city from thousands of feet in the air by taking a helicopter ride together', 'Expensive', 'Local Tour Company')
+) AS v(title, description, budget_category, location)
+JOIN budget_category c ON c.name = v.budget_category;
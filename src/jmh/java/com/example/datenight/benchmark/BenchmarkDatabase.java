@@ -0,0 +1,97 @@
+package com.example.datenight.benchmark;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+//The scratch database used by benchmarks and load tests. When DATENIGHT_BENCH_URL is set, that PostgreSQL database
+//is used (with DATENIGHT_BENCH_USER / DATENIGHT_BENCH_PASSWORD). Otherwise an embedded PostgreSQL server is started
+//in a temporary directory, so the benchmarks also run on a machine without PostgreSQL installed.
+//
+//Either way the schema is recreated from DateNight.sql, which drops the existing tables first.
+public final class BenchmarkDatabase implements AutoCloseable {
+    private final EmbeddedPostgres embeddedPostgres;
+    private final String url;
+    private final String username;
+    private final String password;
+    //One connection that is kept open, so benchmarks measure queries and not the cost of logging in
+    private final SingleConnectionDataSource dataSource;
+
+    private BenchmarkDatabase(EmbeddedPostgres embeddedPostgres, String url, String username, String password) {
+        this.embeddedPostgres = embeddedPostgres;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.dataSource = new SingleConnectionDataSource(url, username, password, true);
+    }
+
+    public static BenchmarkDatabase start() {
+        String url = System.getenv("DATENIGHT_BENCH_URL");
+        BenchmarkDatabase database;
+        if (url != null && !url.isBlank()) {
+            database = new BenchmarkDatabase(null, url, env("DATENIGHT_BENCH_USER", "postgres"), env("DATENIGHT_BENCH_PASSWORD", "postgres"));
+        } else {
+            try {
+                EmbeddedPostgres embedded = EmbeddedPostgres.start();
+                database = new BenchmarkDatabase(embedded, embedded.getJdbcUrl("postgres", "postgres"), "postgres", "postgres");
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to start embedded PostgreSQL; set DATENIGHT_BENCH_URL to use a local server", e);
+            }
+        }
+        database.createSchema();
+        return database;
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return new JdbcTemplate(dataSource);
+    }
+
+    //Replace the sample ideas with rowCount generated ideas spread evenly over the four budget categories
+    public void seed(int rowCount) {
+        JdbcTemplate jdbcTemplate = jdbcTemplate();
+        jdbcTemplate.execute("TRUNCATE date_night_idea RESTART IDENTITY CASCADE");
+        jdbcTemplate.update("INSERT INTO date_night_idea (title, description, category_id, location) " +
+                "SELECT 'Idea ' || g, 'Benchmark idea number ' || g, 1 + g % 4, 'Anywhere' " +
+                "FROM generate_series(1, ?) AS g", rowCount);
+        jdbcTemplate.execute("ANALYZE date_night_idea");
+    }
+
+    public String url() {
+        return url;
+    }
+
+    public String username() {
+        return username;
+    }
+
+    public String password() {
+        return password;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataSource.destroy();
+        if (embeddedPostgres != null) {
+            embeddedPostgres.close();
+        }
+    }
+
+    //DateNight.sql is in the project root, which is the working directory when run through Maven
+    private void createSchema() {
+        try {
+            jdbcTemplate().execute(Files.readString(Path.of("DateNight.sql")));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Run benchmarks from the project root so DateNight.sql can be found", e);
+        }
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.datenight.benchmark;
+
+import com.example.datenight.DateNightAppApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+//Load test comparing the two request execution modes: Tomcat's platform thread pool and Java 21 virtual threads
+//(spring.threads.virtual.enabled). For each mode the whole application is started on a random port against the same
+//database, and CLIENTS simulated users call GET /random/{budgetCategory}?user=... back to back. Every call is a
+//per-user draw, which always queries PostgreSQL. The catalog cache is switched off so nothing is served from memory.
+//
+//For each mode it prints requests per second, p50/p99/p99.9 latency and the number of failed requests.
+//Uses the database described in BenchmarkDatabase (embedded PostgreSQL unless DATENIGHT_BENCH_URL is set).
+//
+//Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.example.datenight.benchmark.ExecutionModeLoadTest
+//Tune with the environment variables LOADTEST_CLIENTS (default 400), LOADTEST_SECONDS (default 20) and
+//LOADTEST_ROWS (default 100000).
+public class ExecutionModeLoadTest {
+    private static final String[] BUDGET_CATEGORIES = {"Free", "Cheap", "Moderate", "Expensive"};
+    private static final int WARMUP_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        //devtools would restart main() on a new thread and run the whole load test twice
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        int clients = intEnv("LOADTEST_CLIENTS", 400);
+        int seconds = intEnv("LOADTEST_SECONDS", 20);
+        int rows = intEnv("LOADTEST_ROWS", 100_000);
+
+        try (BenchmarkDatabase database = BenchmarkDatabase.start()) {
+            database.seed(rows);
+            System.out.printf("%d clients, %d seconds per mode, %d ideas%n", clients, seconds, rows);
+            System.out.printf("%-10s %12s %10s %10s %10s %8s%n", "mode", "requests/s", "p50 ms", "p99 ms", "p99.9 ms", "errors");
+            for (boolean virtualThreads : new boolean[]{false, true}) {
+                Result result = run(database, virtualThreads, clients, seconds);
+                System.out.printf("%-10s %12.0f %10.2f %10.2f %10.2f %8d%n", virtualThreads ? "virtual" : "platform",
+                        result.requestsPerSecond, result.percentile(0.50), result.percentile(0.99), result.percentile(0.999), result.errors);
+            }
+        }
+    }
+
+    //Start the app in one execution mode, warm it up, then measure for the given number of seconds.
+    //The settings are passed as command line arguments so they win over application.properties.
+    private static Result run(BenchmarkDatabase database, boolean virtualThreads, int clients, int seconds) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DateNightAppApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=" + database.url(),
+                        "--spring.datasource.username=" + database.username(),
+                        "--spring.datasource.password=" + database.password(),
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--datenight.dao.mode=jdbc",
+                        "--datenight.cache.max-views=0",
+                        //Every client comes from the same address, so admission control would refuse most of the load
+                        "--datenight.admission.enabled=false",
+                        "--logging.level.root=WARN")) {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/date-night-ideas";
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            drive(client, baseUrl, clients, WARMUP_SECONDS);
+            return drive(client, baseUrl, clients, seconds);
+        }
+    }
+
+    //Every client runs on its own virtual thread so the load generator itself never runs out of threads
+    private static Result drive(HttpClient client, String baseUrl, int clients, int seconds) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Future<ClientStats>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                String userKey = "loadtest-" + i;
+                futures.add(executor.submit(() -> runClient(client, baseUrl, userKey, deadline)));
+            }
+        }
+        long[] latencies = new long[0];
+        long errors = 0;
+        for (Future<ClientStats> future : futures) {
+            ClientStats stats = future.get();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + stats.count);
+            System.arraycopy(stats.latencies, 0, latencies, offset, stats.count);
+            errors += stats.errors;
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors, latencies.length / (double) seconds);
+    }
+
+    private static ClientStats runClient(HttpClient client, String baseUrl, String userKey, long deadline) {
+        ClientStats stats = new ClientStats();
+        while (System.nanoTime() < deadline) {
+            String budgetCategory = BUDGET_CATEGORIES[ThreadLocalRandom.current().nextInt(BUDGET_CATEGORIES.length)];
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/random/" + budgetCategory + "?user=" + userKey)).build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 500) {
+                    stats.errors++;
+                    continue;
+                }
+                //204 means this user has seen the whole category; start their list over so later calls still query
+                if (response.statusCode() == 204) {
+                    client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/reset?user=" + userKey))
+                            .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+                }
+            } catch (Exception e) {
+                stats.errors++;
+                continue;
+            }
+            stats.add(System.nanoTime() - start);
+        }
+        return stats;
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static final class ClientStats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        private void add(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+    }
+
+    private record Result(long[] sortedLatencies, long errors, double requestsPerSecond) {
+        private double percentile(double fraction) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(fraction * sortedLatencies.length) - 1);
+            return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.datenight.benchmark;
+
+import com.example.datenight.DateNightAppApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Load test for running several instances of the app against one database. For each draw mode and number of
+//instances, that many application contexts are started in this JVM on their own ports, and CLIENTS clients spread over
+//the instances draw GET /random/Free from the shared list until it is empty. Every id handed out is remembered, so an
+//idea given to two clients (by the same or different instances) is counted as a duplicate.
+//
+//For each run it prints the draws per second until the category was used up, the number of duplicates, and how many
+//ideas weren't handed out at all (0 unless an instance stopped with ideas still leased).
+//Compares the default jdbc mode, where every draw is an UPDATE on the shared rows, with the leased mode.
+//Uses the database described in BenchmarkDatabase (embedded PostgreSQL unless DATENIGHT_BENCH_URL is set).
+//
+//Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.example.datenight.benchmark.MultiInstanceLoadTest
+//Tune with the environment variables LOADTEST_CLIENTS (default 32), LOADTEST_ROWS (default 40000, a quarter of them
+//Free) and LOADTEST_INSTANCES (default 1,2,4).
+public class MultiInstanceLoadTest {
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        //devtools would restart main() on a new thread and run the whole load test twice
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        int clients = intEnv("LOADTEST_CLIENTS", 32);
+        int rows = intEnv("LOADTEST_ROWS", 40_000);
+        String instanceCounts = System.getenv().getOrDefault("LOADTEST_INSTANCES", "1,2,4");
+
+        try (BenchmarkDatabase database = BenchmarkDatabase.start()) {
+            database.seed(rows);
+            JdbcTemplate jdbcTemplate = database.jdbcTemplate();
+            int freeIdeas = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM date_night_idea WHERE category_id = 1", Integer.class);
+            System.out.printf("%d clients, %d Free ideas to draw%n", clients, freeIdeas);
+            System.out.printf("%-8s %10s %12s %12s %12s%n", "mode", "instances", "draws/s", "duplicates", "not drawn");
+            for (String mode : new String[]{"jdbc", "leased"}) {
+                for (String instances : instanceCounts.split(",")) {
+                    //Every run starts with all ideas available and no leases
+                    jdbcTemplate.update("UPDATE budget_category SET epoch = epoch + 1");
+                    jdbcTemplate.update("DELETE FROM idea_lease");
+                    Result result = run(database, mode, Integer.parseInt(instances.trim()), clients);
+                    System.out.printf("%-8s %10s %12.0f %12d %12d%n", mode, instances.trim(), result.drawsPerSecond,
+                            result.duplicates, freeIdeas - result.distinctIdeas);
+                }
+            }
+        }
+    }
+
+    private static Result run(BenchmarkDatabase database, String mode, int instanceCount, int clients) throws Exception {
+        List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+        try {
+            List<String> baseUrls = new ArrayList<>();
+            for (int i = 0; i < instanceCount; i++) {
+                ConfigurableApplicationContext context = new SpringApplicationBuilder(DateNightAppApplication.class)
+                        .run("--server.port=0",
+                                "--spring.datasource.url=" + database.url(),
+                                "--spring.datasource.username=" + database.username(),
+                                "--spring.datasource.password=" + database.password(),
+                                "--datenight.dao.mode=" + mode,
+                                "--datenight.dao.random-strategy=RANDOM_KEY",
+                                //The instances share a working directory, so none of them keeps a journal
+                                "--datenight.pool.journal-dir=",
+                                "--datenight.history.enabled=false",
+                                //Every client comes from the same address, so admission control would refuse most of the load
+                                "--datenight.admission.enabled=false",
+                                "--logging.level.root=WARN");
+                contexts.add(context);
+                baseUrls.add("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/date-night-ideas");
+            }
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            Map<Long, Boolean> drawn = new ConcurrentHashMap<>();
+            AtomicInteger duplicates = new AtomicInteger();
+            AtomicLong draws = new AtomicLong();
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < clients; i++) {
+                    String baseUrl = baseUrls.get(i % baseUrls.size());
+                    futures.add(executor.submit(() -> {
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/random/Free")).build();
+                        while (true) {
+                            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() != 200) {
+                                return null;
+                            }
+                            Matcher id = ID.matcher(response.body());
+                            if (id.find() && drawn.put(Long.parseLong(id.group(1)), Boolean.TRUE) != null) {
+                                duplicates.incrementAndGet();
+                            }
+                            draws.incrementAndGet();
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return new Result(draws.get() / seconds, duplicates.get(), drawn.size());
+        } finally {
+            for (ConfigurableApplicationContext context : contexts) {
+                context.close();
+            }
+        }
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private record Result(double drawsPerSecond, int duplicates, int distinctIdeas) {
+    }
+}
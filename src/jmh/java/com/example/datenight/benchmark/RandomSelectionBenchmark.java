@@ -0,0 +1,90 @@
+package com.example.datenight.benchmark;
+
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.example.datenight.dao.RandomSelectionStrategy;
+import com.example.datenight.model.DateNightIdea;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+//Measures how long one random draw takes with each RandomSelectionStrategy as the catalog grows, at the start of a
+//round (suggestedPercent 0) and late in one, when 99% of every category has already been suggested. RANDOM_KEY walks
+//past every suggested idea between its random starting point and the next available one, so the second case shows
+//what that costs. SampleTime mode records every call, so the JMH report includes p50 and p99 latency for each case.
+//
+//This benchmark runs against PostgreSQL because the point is to measure the queries themselves. By default it starts
+//an embedded PostgreSQL server (see BenchmarkDatabase). To use a local server instead, point DATENIGHT_BENCH_URL at a
+//scratch database, never the real one, because the schema is recreated and the table is truncated:
+//  DATENIGHT_BENCH_URL=jdbc:postgresql://localhost:5432/DateNightBench
+//  DATENIGHT_BENCH_USER / DATENIGHT_BENCH_PASSWORD
+//Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=RandomSelection
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class RandomSelectionBenchmark {
+
+    @Param({"1000", "10000", "100000", "500000"})
+    public int rowCount;
+
+    @Param({"ORDER_BY_RANDOM", "RANDOM_KEY"})
+    public RandomSelectionStrategy strategy;
+
+    @Param({"0", "99"})
+    public int suggestedPercent;
+
+    private static final String[] BUDGET_CATEGORIES = {"Free", "Cheap", "Moderate", "Expensive"};
+
+    private BenchmarkDatabase database;
+    private JdbcDateNightIdeaDao dao;
+    private int nextCategory;
+
+    //Fill the table with rowCount ideas spread evenly over the four budget categories
+    @Setup(Level.Trial)
+    public void seedCatalog() {
+        database = BenchmarkDatabase.start();
+        database.seed(rowCount);
+        dao = new JdbcDateNightIdeaDao();
+        dao.setJdbcTemplate(database.jdbcTemplate());
+        dao.setRandomSelectionStrategy(strategy);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws IOException {
+        database.close();
+    }
+
+    //Start every iteration with suggestedPercent of the catalog suggested again
+    @Setup(Level.Iteration)
+    public void resetSuggestions() {
+        startRound();
+    }
+
+    @Benchmark
+    public Optional<DateNightIdea> drawRandomIdea() {
+        String budgetCategory = BUDGET_CATEGORIES[nextCategory++ & 3];
+        Optional<DateNightIdea> idea = dao.findRandomAvailableIdea(budgetCategory);
+        //Small catalogs run out of ideas during an iteration; start over so every sample measures a real draw
+        if (idea.isEmpty()) {
+            startRound();
+        }
+        return idea;
+    }
+
+    //Reset, then mark a random suggestedPercent of the ideas in every category as suggested, spread over the whole
+    //index the same as ideas drawn at random
+    private void startRound() {
+        dao.resetListOfIdeas();
+        if (suggestedPercent > 0) {
+            database.jdbcTemplate().update("UPDATE date_night_idea d SET suggested_epoch = c.epoch FROM budget_category c " +
+                    "WHERE c.id = d.category_id AND RANDOM() * 100 < ?", suggestedPercent);
+            //The UPDATE leaves a dead copy of every row behind; a real round suggests ideas one at a time and
+            //autovacuum keeps up, so clean up before measuring
+            database.jdbcTemplate().execute("VACUUM date_night_idea");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.datenight.benchmark;
+
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+//Measures resetListOfIdeas as the catalog grows. The epoch reset only updates the four rows of budget_category, so
+//its time should stay flat from 1,000 to 500,000 ideas. rewriteAllRows runs the kind of UPDATE the reset used to be
+//(every idea's row rewritten) for comparison, and should grow with the table.
+//
+//Uses the database described in BenchmarkDatabase (embedded PostgreSQL unless DATENIGHT_BENCH_URL is set).
+//Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=Reset
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ResetBenchmark {
+
+    @Param({"1000", "10000", "100000", "500000"})
+    public int rowCount;
+
+    private BenchmarkDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcDateNightIdeaDao dao;
+
+    @Setup(Level.Trial)
+    public void seedCatalog() {
+        database = BenchmarkDatabase.start();
+        database.seed(rowCount);
+        jdbcTemplate = database.jdbcTemplate();
+        dao = new JdbcDateNightIdeaDao();
+        dao.setJdbcTemplate(jdbcTemplate);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void epochReset() {
+        dao.resetListOfIdeas();
+    }
+
+    //Rewrites every row, like the old "UPDATE date_night_idea SET is_suggested = false"
+    @Benchmark
+    public int rewriteAllRows() {
+        return jdbcTemplate.update("UPDATE date_night_idea SET suggested_epoch = 0");
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.datenight.benchmark;
+
+import com.example.datenight.dao.DateNightIdeaRowMapper;
+import com.example.datenight.model.DateNightIdea;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.support.rowset.ResultSetWrappingSqlRowSet;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+//Compares the old way of mapping rows (a disconnected SqlRowSet read by column name, which is what
+//queryForRowSet used to return) with DateNightIdeaRowMapper (a ResultSet read by column positions
+//that are looked up once per query). Both read the same in-memory rows, so no database is needed.
+//Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=RowMapping
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int rowCount;
+
+    private CachedRowSet rows;
+
+    //Build rowCount rows with the same columns as SELECT * FROM date_night_idea_status
+    @Setup(Level.Trial)
+    public void buildRows() throws SQLException {
+        String[] columns = {"id", "title", "description", "category_id", "location", "created_at", "suggested_epoch", "random_key", "version", "budget_category", "is_suggested"};
+        int[] types = {Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.SMALLINT, Types.VARCHAR, Types.TIMESTAMP, Types.INTEGER, Types.DOUBLE, Types.INTEGER, Types.VARCHAR, Types.BOOLEAN};
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            metaData.setColumnName(i + 1, columns[i]);
+            metaData.setColumnLabel(i + 1, columns[i]);
+            metaData.setColumnType(i + 1, types[i]);
+        }
+        rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        for (int id = 1; id <= rowCount; id++) {
+            rows.moveToInsertRow();
+            rows.updateInt(1, id);
+            rows.updateString(2, "Idea " + id);
+            rows.updateString(3, "Benchmark idea number " + id);
+            rows.updateShort(4, (short) 3);
+            rows.updateString(5, "Downtown");
+            rows.updateTimestamp(6, createdAt);
+            rows.updateInt(7, 0);
+            rows.updateDouble(8, Math.random());
+            rows.updateInt(9, 1);
+            rows.updateString(10, "Moderate");
+            rows.updateBoolean(11, false);
+            rows.insertRow();
+            rows.moveToCurrentRow();
+        }
+    }
+
+    //Before: every row is read through SqlRowSet by column name
+    @Benchmark
+    public void mapByColumnName(Blackhole blackhole) throws SQLException {
+        rows.beforeFirst();
+        SqlRowSet results = new ResultSetWrappingSqlRowSet(rows);
+        while (results.next()) {
+            blackhole.consume(mapByName(results));
+        }
+    }
+
+    //After: column positions are resolved once, then every row is read by index
+    @Benchmark
+    public void mapWithRowMapper(Blackhole blackhole) throws SQLException {
+        rows.beforeFirst();
+        DateNightIdeaRowMapper rowMapper = new DateNightIdeaRowMapper();
+        int rowNum = 0;
+        while (rows.next()) {
+            blackhole.consume(rowMapper.mapRow(rows, rowNum++));
+        }
+    }
+
+    //The mapping JdbcDateNightIdeaDao used before DateNightIdeaRowMapper replaced it
+    private static DateNightIdea mapByName(SqlRowSet rs) {
+        DateNightIdea dateNightIdea = new DateNightIdea();
+        dateNightIdea.setId(rs.getLong("id"));
+        dateNightIdea.setTitle(rs.getString("title"));
+        dateNightIdea.setDescription(rs.getString("description"));
+        dateNightIdea.setBudgetCategory(rs.getString("budget_category"));
+        dateNightIdea.setLocation(rs.getString("location"));
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            dateNightIdea.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        dateNightIdea.setSuggested(rs.getBoolean("is_suggested"));
+        return dateNightIdea;
+    }
+}
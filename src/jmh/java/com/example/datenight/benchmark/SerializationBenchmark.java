@@ -0,0 +1,76 @@
+package com.example.datenight.benchmark;
+
+import com.example.datenight.model.DateNightIdea;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Measures how long Jackson takes to turn lists of DateNightIdea into JSON, the work behind /allIdeas, /ideas and
+///allIdeas/stream. The writers are set up the same way DateNightController sets up its own:
+//  - writeList: the whole list at once with the List<DateNightIdea> writer, as /allIdeas does on a cache miss
+//  - writeStreamed: one idea at a time into a JsonGenerator, as /allIdeas/stream does
+//Both write into an OutputStream that throws the bytes away, so only serialization is measured. No database is needed.
+//A new one is used for every call because Jackson closes the stream when it is done, like it closes the response.
+//Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=Serialization
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int ideaCount;
+
+    private List<DateNightIdea> ideas;
+    private ObjectWriter ideaListWriter;
+    private ObjectWriter streamingIdeaWriter;
+
+    @Setup(Level.Trial)
+    public void buildIdeas() {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        ideaListWriter = objectMapper.writerFor(new TypeReference<List<DateNightIdea>>(){});
+        streamingIdeaWriter = objectMapper.writerFor(DateNightIdea.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        String[] budgetCategories = {"Free", "Cheap", "Moderate", "Expensive"};
+        LocalDateTime createdAt = LocalDateTime.now();
+        ideas = new ArrayList<>(ideaCount);
+        for (long id = 1; id <= ideaCount; id++) {
+            DateNightIdea idea = new DateNightIdea();
+            idea.setId(id);
+            idea.setTitle("Idea " + id);
+            idea.setDescription("Benchmark idea number " + id + ", long enough to look like a real description.");
+            idea.setBudgetCategory(budgetCategories[(int) (id % 4)]);
+            idea.setLocation("Downtown");
+            idea.setCreatedAt(createdAt);
+            idea.setSuggested(id % 3 == 0);
+            ideas.add(idea);
+        }
+    }
+
+    @Benchmark
+    public void writeList() throws IOException {
+        ideaListWriter.writeValue(OutputStream.nullOutputStream(), ideas);
+    }
+
+    @Benchmark
+    public void writeStreamed() throws IOException {
+        try (JsonGenerator generator = streamingIdeaWriter.getFactory().createGenerator(OutputStream.nullOutputStream())) {
+            generator.writeStartArray();
+            for (DateNightIdea idea : ideas) {
+                streamingIdeaWriter.writeValue(generator, idea);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
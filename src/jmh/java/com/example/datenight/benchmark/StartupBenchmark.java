@@ -0,0 +1,145 @@
+package com.example.datenight.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Measures how long a cold start takes, from launching the JVM until /actuator/health/readiness is UP, and how long
+//the first /random/{budgetCategory} request takes after that. Each way of starting the app is launched STARTUP_RUNS
+//times as a separate process against the same database and the medians are printed:
+//  - jar: the packaged jar, the way it is started without the startup profile
+//  - extracted: the jar extracted by mvn -Pstartup package, which loads classes from plain jars
+//  - extracted+cds: the same, with the class data sharing archive created by the training run
+//  - fast-start: the same, with the fast-start profile (lazy initialization and the DAO warm-up)
+//Ways whose files aren't built are skipped. Uses the database described in BenchmarkDatabase.
+//
+//Run with: mvn -Pstartup package -DskipTests, then
+//mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.example.datenight.benchmark.StartupBenchmark
+//Tune with the environment variables STARTUP_RUNS (default 5) and STARTUP_ROWS (default 10000).
+public class StartupBenchmark {
+    private static final Path TARGET = Path.of("target");
+    private static final String JAR = "DateNight-1.0-SNAPSHOT.jar";
+    private static final Duration START_TIMEOUT = Duration.ofSeconds(120);
+
+    public static void main(String[] args) throws Exception {
+        int runs = intEnv("STARTUP_RUNS", 5);
+        int rows = intEnv("STARTUP_ROWS", 10_000);
+        Path extracted = TARGET.resolve("startup");
+        String archive = "-XX:SharedArchiveFile=" + extracted.resolve("application.jsa");
+        List<Variant> variants = List.of(
+                new Variant("jar", TARGET.resolve(JAR), List.of(), List.of()),
+                new Variant("extracted", extracted.resolve(JAR), List.of(), List.of()),
+                new Variant("extracted+cds", extracted.resolve(JAR), List.of(archive), List.of()),
+                new Variant("fast-start", extracted.resolve(JAR), List.of(archive), List.of("--spring.profiles.active=fast-start")));
+
+        try (BenchmarkDatabase database = BenchmarkDatabase.start()) {
+            database.seed(rows);
+            System.out.printf("%d runs per way of starting, %d ideas%n", runs, rows);
+            System.out.printf("%-14s %12s %16s%n", "start", "ready ms", "first draw ms");
+            for (Variant variant : variants) {
+                if (!Files.exists(variant.jar) || (!variant.jvmOptions.isEmpty() && !Files.exists(extracted.resolve("application.jsa")))) {
+                    System.out.printf("%-14s %s%n", variant.name, "skipped, run mvn -Pstartup package first");
+                    continue;
+                }
+                double[] ready = new double[runs];
+                double[] firstDraw = new double[runs];
+                for (int run = 0; run < runs; run++) {
+                    double[] timings = start(variant, database);
+                    ready[run] = timings[0];
+                    firstDraw[run] = timings[1];
+                }
+                System.out.printf("%-14s %12.0f %16.1f%n", variant.name, median(ready), median(firstDraw));
+            }
+        }
+    }
+
+    //Launch the app once and return the milliseconds until it was ready and the milliseconds the first draw took
+    private static double[] start(Variant variant, BenchmarkDatabase database) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(variant.jvmOptions);
+        command.addAll(List.of("-jar", variant.jar.getFileName().toString(),
+                "--server.port=" + port,
+                "--spring.datasource.url=" + database.url(),
+                "--spring.datasource.username=" + database.username(),
+                "--spring.datasource.password=" + database.password(),
+                "--management.endpoint.health.probes.enabled=true",
+                "--logging.level.root=WARN"));
+        command.addAll(variant.arguments);
+        File log = TARGET.resolve("startup-benchmark.log").toFile();
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        String baseUrl = "http://localhost:" + port;
+
+        long launched = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(variant.jar.getParent().toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                .start();
+        try {
+            long deadline = launched + START_TIMEOUT.toNanos();
+            while (!isReady(client, baseUrl)) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    throw new IllegalStateException(variant.name + " didn't become ready, see " + log);
+                }
+                Thread.sleep(10);
+            }
+            double readyMillis = (System.nanoTime() - launched) / 1_000_000.0;
+            long drawStart = System.nanoTime();
+            client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/date-night-ideas/random/Free")).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            double drawMillis = (System.nanoTime() - drawStart) / 1_000_000.0;
+            return new double[]{readyMillis, drawMillis};
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static boolean isReady(HttpClient client, String baseUrl) {
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health/readiness")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 && response.body().contains("UP");
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Integer.parseInt(value);
+    }
+
+    private record Variant(String name, Path jar, List<String> jvmOptions, List<String> arguments) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.datenight.benchmark;
+
+import com.example.datenight.recommendation.WeightedSampler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//Measures one weighted draw from WeightedSampler as the category grows from 1,000 to 1,000,000 ideas. Each
+//operation draws an idea and makes it available again, so the sampler never runs dry. Both steps are O(log n), so a
+//thousand times more ideas should cost a few times more per draw, mostly from cache misses once the tree no longer
+//fits in the CPU cache, rather than a thousand times more.
+//No database is needed.
+//Run with: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=WeightedSampler
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeightedSamplerBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int ideaCount;
+
+    private WeightedSampler sampler;
+    private SplittableRandom random;
+
+    //Weights spread over several orders of magnitude, like recency weights of ideas created over a few months
+    @Setup(Level.Trial)
+    public void buildSampler() {
+        random = new SplittableRandom(42);
+        sampler = new WeightedSampler();
+        for (long id = 1; id <= ideaCount; id++) {
+            sampler.add(id, Math.pow(2, random.nextDouble(-4, 4)), true);
+        }
+    }
+
+    @Benchmark
+    public long drawAndReturn() {
+        long id = sampler.draw(random);
+        sampler.makeAvailable(id);
+        return id;
+    }
+}
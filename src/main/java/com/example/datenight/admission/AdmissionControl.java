@@ -0,0 +1,183 @@
+package com.example.datenight.admission;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//AdmissionControl decides whether a request may run, before it reaches a controller or the database, so one client
+//sending resets or new ideas as fast as it can slows down its own requests instead of everyone's draws. A request has
+//to pass three checks, in this order:
+//  - its client's token bucket for the endpoint class, so no single client can use more than its share;
+//  - the endpoint class's token bucket shared by every client, which caps how many writes, resets and imports per
+//    second reach PostgreSQL however many clients send them;
+//  - for the expensive classes, one of maxConcurrentExpensive places. Writes, resets and imports that would go over
+//    it are turned away at once instead of waiting for a connection, so the rest of the pool stays free for draws.
+//A request refused by a later check gets back the tokens it took from the earlier buckets, so being turned away never
+//uses up a client's or everyone's share. A refused request gets 429 TOO_MANY_REQUESTS and is told how long to wait
+//(see AdmissionFilter).
+//
+//The buckets are lock-free (TokenBucket) and the counts behind the metrics are LongAdders, so an admitted request
+//costs a map lookup and a couple of compare-and-sets.
+public class AdmissionControl {
+    //How long a request refused for lack of places should wait, since they usually free up within a request's time
+    private static final long BUSY_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    //Idle clients are looked for at most this often once there are maxClients of them
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    //Why a request was let through or not; the result tag of datenight.admission.requests
+    public enum Outcome {
+        ADMITTED("admitted"), CLIENT_LIMIT("client_limit"), TOTAL_LIMIT("total_limit"), BUSY("busy");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    //Requests per second and burst for each client and for all clients together. A rate of 0 means no limit.
+    public record Limit(double clientPerSecond, int clientBurst, double totalPerSecond, int totalBurst) {
+    }
+
+    private final Map<EndpointClass, ClassLimiter> limiters = new EnumMap<>(EndpointClass.class);
+    private final Semaphore expensivePlaces;
+    private final int maxConcurrentExpensive;
+    private final int maxClients;
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+
+    //Classes missing from limits aren't limited. Clients are told apart by address, and at most maxClients of them get
+    //their own buckets per endpoint class; beyond that, new clients share one until idle ones are forgotten.
+    public AdmissionControl(Map<EndpointClass, Limit> limits, int maxConcurrentExpensive, int maxClients) {
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            limiters.put(endpointClass, new ClassLimiter(limits.get(endpointClass)));
+        }
+        this.maxConcurrentExpensive = maxConcurrentExpensive;
+        this.expensivePlaces = new Semaphore(maxConcurrentExpensive);
+        this.maxClients = maxClients;
+    }
+
+    //Returns 0 when the request may run, otherwise how many nanoseconds the client should wait before trying again.
+    //Every admitted request must call release once it is done.
+    public long admit(EndpointClass endpointClass, String client) {
+        ClassLimiter limiter = limiters.get(endpointClass);
+        TokenBucket clientBucket = limiter.clientBucket(client);
+        if (clientBucket != null) {
+            long wait = clientBucket.tryAcquire();
+            if (wait > 0) {
+                return limiter.refuse(Outcome.CLIENT_LIMIT, wait);
+            }
+        }
+        if (limiter.total != null) {
+            long wait = limiter.total.tryAcquire();
+            if (wait > 0) {
+                refund(clientBucket);
+                return limiter.refuse(Outcome.TOTAL_LIMIT, wait);
+            }
+        }
+        if (endpointClass.isExpensive() && !expensivePlaces.tryAcquire()) {
+            refund(clientBucket);
+            refund(limiter.total);
+            return limiter.refuse(Outcome.BUSY, BUSY_RETRY_NANOS);
+        }
+        limiter.count(Outcome.ADMITTED);
+        return 0;
+    }
+
+    private static void refund(TokenBucket bucket) {
+        if (bucket != null) {
+            bucket.refund();
+        }
+    }
+
+    public void release(EndpointClass endpointClass) {
+        if (endpointClass.isExpensive()) {
+            expensivePlaces.release();
+        }
+    }
+
+    //Requests of the class that ended with outcome since the app started
+    public long getRequests(EndpointClass endpointClass, Outcome outcome) {
+        return limiters.get(endpointClass).outcomes[outcome.ordinal()].sum();
+    }
+
+    //Clients that currently have their own bucket for the class
+    public int getClients(EndpointClass endpointClass) {
+        return limiters.get(endpointClass).clients.size();
+    }
+
+    //Tokens left in the bucket shared by every client of the class, or -1 when the class has no shared limit
+    public int getTotalTokens(EndpointClass endpointClass) {
+        TokenBucket total = limiters.get(endpointClass).total;
+        return total == null ? -1 : total.available();
+    }
+
+    //Writes, resets and imports running right now
+    public int getExpensiveInFlight() {
+        return maxConcurrentExpensive - expensivePlaces.availablePermits();
+    }
+
+    //Forget the buckets that have filled up again, since a new bucket would be the same. Only one request sweeps,
+    //at most once per SWEEP_INTERVAL_NANOS, so a flood of new addresses can't make every request scan the map.
+    private void sweepIdleClients() {
+        long last = lastSweep.get();
+        long now = System.nanoTime();
+        if (now - last >= SWEEP_INTERVAL_NANOS && lastSweep.compareAndSet(last, now)) {
+            for (ClassLimiter limiter : limiters.values()) {
+                limiter.clients.values().removeIf(TokenBucket::isFull);
+            }
+        }
+    }
+
+    private final class ClassLimiter {
+        private final Limit limit;
+        private final ConcurrentHashMap<String, TokenBucket> clients = new ConcurrentHashMap<>();
+        //Shared by the clients that arrive while clients is full
+        private final TokenBucket overflow;
+        private final TokenBucket total;
+        private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+
+        private ClassLimiter(Limit limit) {
+            this.limit = limit;
+            boolean perClient = limit != null && limit.clientPerSecond() > 0;
+            this.overflow = perClient ? new TokenBucket(limit.clientPerSecond(), limit.clientBurst()) : null;
+            this.total = limit != null && limit.totalPerSecond() > 0 ? new TokenBucket(limit.totalPerSecond(), limit.totalBurst()) : null;
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new LongAdder();
+            }
+        }
+
+        private TokenBucket clientBucket(String client) {
+            if (overflow == null) {
+                return null;
+            }
+            TokenBucket bucket = clients.get(client);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (clients.size() >= maxClients) {
+                sweepIdleClients();
+                if (clients.size() >= maxClients) {
+                    return overflow;
+                }
+            }
+            return clients.computeIfAbsent(client, key -> new TokenBucket(limit.clientPerSecond(), limit.clientBurst()));
+        }
+
+        private long refuse(Outcome outcome, long waitNanos) {
+            count(outcome);
+            return waitNanos;
+        }
+
+        private void count(Outcome outcome) {
+            outcomes[outcome.ordinal()].increment();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.datenight.admission;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+//Runs every API request past AdmissionControl before it reaches a controller. A refused request is answered with
+//429 TOO_MANY_REQUESTS and a Retry-After header saying how many seconds to wait, and never touches the database.
+//Clients are told apart by their address. server.forward-headers-strategy (native in application.properties) makes
+//that the client's address and not the proxy's.
+public class AdmissionFilter extends OncePerRequestFilter {
+    private final AdmissionControl admissionControl;
+
+    public AdmissionFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Optional<EndpointClass> endpointClass = EndpointClass.of(request.getMethod(), path);
+        if (endpointClass.isEmpty()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long waitNanos = admissionControl.admit(endpointClass.get(), request.getRemoteAddr());
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many requests, try again in " + retryAfterSeconds + " seconds");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            admissionControl.release(endpointClass.get());
+        }
+    }
+}
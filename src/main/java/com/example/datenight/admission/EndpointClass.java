@@ -0,0 +1,60 @@
+package com.example.datenight.admission;
+
+import java.util.Optional;
+
+//The kinds of request AdmissionControl limits separately, from cheapest to most expensive for the database.
+//Draws are what the app is for, so they get the most generous limits and are never held back by the writes.
+public enum EndpointClass {
+    //GET /random and /random/{budgetCategory}
+    DRAW("draw", false),
+    //Every other GET: the catalog, pages, search, history, the change feed
+    READ("read", false),
+    //addIdea, updateIdea and deleteIdea
+    WRITE("write", true),
+    //POST /reset, for everyone or for one user
+    RESET("reset", true),
+    //POST /import, which can insert thousands of ideas
+    IMPORT("import", true);
+
+    private static final String API_PATH = "/api/date-night-ideas";
+
+    private final String name;
+    private final boolean expensive;
+
+    EndpointClass(String name, boolean expensive) {
+        this.name = name;
+        this.expensive = expensive;
+    }
+
+    //Used in the datenight.admission.<name>.* settings and as the endpointClass tag of the metrics
+    public String getName() {
+        return name;
+    }
+
+    //Expensive requests share a limited number of places, so they can never take every database connection from draws
+    public boolean isExpensive() {
+        return expensive;
+    }
+
+    //The class of a request to path (without the context path), or empty for requests that aren't limited: anything
+    //outside the API, such as /actuator, and CORS preflight requests
+    public static Optional<EndpointClass> of(String method, String path) {
+        if (!path.startsWith(API_PATH + "/")) {
+            return Optional.empty();
+        }
+        String endpoint = path.substring(API_PATH.length());
+        switch (method) {
+            case "GET", "HEAD":
+                return Optional.of(endpoint.equals("/random") || endpoint.startsWith("/random/") ? DRAW : READ);
+            case "POST":
+                if (endpoint.equals("/reset")) {
+                    return Optional.of(RESET);
+                }
+                return Optional.of(endpoint.equals("/import") ? IMPORT : WRITE);
+            case "PUT", "PATCH", "DELETE":
+                return Optional.of(WRITE);
+            default:
+                return Optional.empty();
+        }
+    }
+}
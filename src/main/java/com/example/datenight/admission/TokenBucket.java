@@ -0,0 +1,57 @@
+package com.example.datenight.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//A token bucket that holds at most burst tokens and gains tokensPerSecond of them every second. Each request takes one.
+//
+//Instead of a token count and a last refill time, which would need a lock to update together, the bucket only keeps
+//the time at which it will be full again (the generic cell rate algorithm). Taking a token moves that time one token's
+//worth of nanoseconds later, and the request is refused if that would put it more than burst tokens ahead of now.
+//It is one AtomicLong updated with compareAndSet, so requests never wait for each other.
+public final class TokenBucket {
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double tokensPerSecond, int burst) {
+        if (tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("A token bucket needs a positive rate and a burst of at least 1");
+        }
+        this.nanosPerToken = Math.max(1, Math.round(1_000_000_000 / tokensPerSecond));
+        this.burstNanos = nanosPerToken * burst;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    //Take a token. Returns 0 if there was one, otherwise how many nanoseconds until there will be.
+    public long tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            //A bucket that filled up in the past is full now, not more than full
+            long next = (current - now < 0 ? now : current) + nanosPerToken;
+            long ahead = next - now;
+            if (ahead > burstNanos) {
+                return ahead - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    //Give back a token taken by tryAcquire, for a request that was refused by a later check after all
+    public void refund() {
+        fullAt.addAndGet(-nanosPerToken);
+    }
+
+    //How many tokens could be taken right now
+    public int available() {
+        long used = fullAt.get() - System.nanoTime();
+        return (int) ((burstNanos - Math.max(0, used)) / nanosPerToken);
+    }
+
+    //A full bucket behaves exactly like a new one, so it can be forgotten
+    public boolean isFull() {
+        return fullAt.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.datenight.config;
+
+import com.example.datenight.admission.AdmissionControl;
+import com.example.datenight.admission.AdmissionFilter;
+import com.example.datenight.admission.EndpointClass;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.Map;
+
+//Sets up AdmissionControl from the datenight.admission.* settings and puts AdmissionFilter in front of the API.
+//Each endpoint class has four settings, for example datenight.admission.write.client-per-second, client-burst,
+//total-per-second and total-burst; a rate of 0 means no limit. datenight.admission.enabled=false turns it all off.
+@Configuration
+@ConditionalOnProperty(name = "datenight.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfiguration {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //max-concurrent-writes of 0 means half the database connections, so draws always have the other half.
+    //The embedded profile has no connection pool and uses the number of CPU cores instead.
+    @Bean
+    public AdmissionControl admissionControl(Environment environment, ObjectProvider<DataSource> dataSource,
+                                             @Value("${datenight.admission.max-concurrent-writes:0}") int maxConcurrentWrites,
+                                             @Value("${datenight.admission.max-clients:10000}") int maxClients) {
+        Map<EndpointClass, AdmissionControl.Limit> limits = new EnumMap<>(EndpointClass.class);
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            String prefix = "datenight.admission." + endpointClass.getName() + ".";
+            limits.put(endpointClass, new AdmissionControl.Limit(
+                    environment.getProperty(prefix + "client-per-second", Double.class, 0.0),
+                    environment.getProperty(prefix + "client-burst", Integer.class, 1),
+                    environment.getProperty(prefix + "total-per-second", Double.class, 0.0),
+                    environment.getProperty(prefix + "total-burst", Integer.class, 1)));
+        }
+        if (maxConcurrentWrites <= 0) {
+            DataSource pool = dataSource.getIfAvailable();
+            maxConcurrentWrites = pool instanceof HikariDataSource hikari
+                    ? Math.max(1, hikari.getMaximumPoolSize() / 2)
+                    : Runtime.getRuntime().availableProcessors();
+        }
+        log.info("Admitting at most {} writes, resets and imports at once", maxConcurrentWrites);
+        return new AdmissionControl(limits, maxConcurrentWrites, maxClients);
+    }
+
+    //Runs right after Spring Boot's request metrics filter, so refused requests are still counted in
+    //http.server.requests with status 429
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(AdmissionControl admissionControl) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(new AdmissionFilter(admissionControl));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.datenight.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+//Sizes the Hikari pool for the default execution model, where Tomcat runs each request on one of its platform threads
+//(VirtualThreadConfiguration does the same when requests run on virtual threads).
+//
+//Tomcat runs up to 200 requests at once, but PostgreSQL doesn't get faster with more connections than about
+//(CPU cores * 2) + 1, so that is the default pool size here too. Requests beyond it wait for a connection, and at most
+//200 of them can, so they are given longer than on virtual threads before failing: 10 seconds instead of Hikari's 30.
+//The driver settings (server-side prepared statements, batched inserts) and leak detection are plain properties under
+//spring.datasource.hikari.* in application.properties, and anything set explicitly there still wins.
+@Configuration
+@ConditionalOnThreading(Threading.PLATFORM)
+public class ConnectionPoolConfiguration {
+
+    //static so Spring can create this post-processor before any other bean, including the DataSource
+    @Bean
+    public static BeanPostProcessor platformThreadPoolSizing(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    sizePool(dataSource, environment, "datenight.platform-threads", 10_000L);
+                }
+                return bean;
+            }
+        };
+    }
+
+    //Apply <prefix>.pool-size and <prefix>.connection-timeout-ms unless the matching spring.datasource.hikari setting
+    //is given. Shared with VirtualThreadConfiguration.
+    static void sizePool(HikariDataSource dataSource, Environment environment, String prefix, long defaultConnectionTimeoutMillis) {
+        if (!environment.containsProperty("spring.datasource.hikari.maximum-pool-size")) {
+            int defaultPoolSize = Runtime.getRuntime().availableProcessors() * 2 + 1;
+            dataSource.setMaximumPoolSize(environment.getProperty(prefix + ".pool-size", Integer.class, defaultPoolSize));
+        }
+        if (!environment.containsProperty("spring.datasource.hikari.connection-timeout")) {
+            dataSource.setConnectionTimeout(environment.getProperty(prefix + ".connection-timeout-ms", Long.class, defaultConnectionTimeoutMillis));
+        }
+        Logger log = LoggerFactory.getLogger(ConnectionPoolConfiguration.class);
+        log.info("Using {} database connections with a {} ms connection timeout and a {} ms leak detection threshold",
+                dataSource.getMaximumPoolSize(), dataSource.getConnectionTimeout(), dataSource.getLeakDetectionThreshold());
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.datenight.config;
+
+import com.example.datenight.dao.CachingDateNightIdeaDao;
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.dao.EmbeddedDateNightIdeaDao;
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.example.datenight.dao.LeasedDateNightIdeaDao;
+import com.example.datenight.dao.MeteredDateNightIdeaDao;
+import com.example.datenight.dao.PooledDateNightIdeaDao;
+import com.example.datenight.dao.RecordingDateNightIdeaDao;
+import com.example.datenight.dao.WeightedDateNightIdeaDao;
+import com.example.datenight.history.SuggestionHistory;
+import com.example.datenight.importer.SeedIdeaReader;
+import com.example.datenight.recommendation.IdeaWeigher;
+import com.example.datenight.recommendation.IdeaWeighting;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+//Configuration classes tell Spring how to build beans that need more setup than @Component gives them.
+//This one decides which DateNightIdeaDaoInterface implementation the controller receives, based on
+//the datenight.dao.mode property in application.properties.
+@Configuration
+public class DaoConfiguration {
+
+    //With datenight.dao.mode=pooled, random draws are served from memory by PooledDateNightIdeaDao.
+    //Spring calls its close() method on shutdown so queued suggestions are written before the app stops.
+    //Drawn ids are journaled to datenight.pool.journal-dir so a crash before they are written doesn't lose them;
+    //an empty value turns the journal off.
+    @Bean
+    @ConditionalOnProperty(name = "datenight.dao.mode", havingValue = "pooled")
+    public PooledDateNightIdeaDao pooledDateNightIdeaDao(JdbcDateNightIdeaDao jdbcDateNightIdeaDao,
+                                                         @Value("${datenight.pool.flush-interval-ms:100}") long flushIntervalMillis,
+                                                         @Value("${datenight.pool.flush-batch-size:500}") int flushBatchSize,
+                                                         @Value("${datenight.pool.journal-dir:}") String journalDirectory) {
+        return new PooledDateNightIdeaDao(jdbcDateNightIdeaDao, jdbcDateNightIdeaDao.getJdbcTemplate(), flushIntervalMillis,
+                flushBatchSize, journalPath(journalDirectory));
+    }
+
+    //With datenight.dao.mode=weighted, shared draws are weighted recommendations served from memory by
+    //WeightedDateNightIdeaDao. datenight.recommendation.weighting chooses how ideas are weighed.
+    @Bean
+    @ConditionalOnProperty(name = "datenight.dao.mode", havingValue = "weighted")
+    public WeightedDateNightIdeaDao weightedDateNightIdeaDao(JdbcDateNightIdeaDao jdbcDateNightIdeaDao,
+                                                             @Value("${datenight.recommendation.weighting:RECENCY}") IdeaWeighting weighting,
+                                                             @Value("${datenight.recommendation.recency-half-life-days:30}") long halfLifeDays,
+                                                             @Value("${datenight.pool.flush-interval-ms:100}") long flushIntervalMillis,
+                                                             @Value("${datenight.pool.flush-batch-size:500}") int flushBatchSize,
+                                                             @Value("${datenight.pool.journal-dir:}") String journalDirectory) {
+        IdeaWeigher weigher = switch (weighting) {
+            case UNIFORM -> IdeaWeigher.uniform();
+            case RECENCY -> IdeaWeigher.recency(Duration.ofDays(halfLifeDays));
+        };
+        return new WeightedDateNightIdeaDao(jdbcDateNightIdeaDao, jdbcDateNightIdeaDao.getJdbcTemplate(), weigher, flushIntervalMillis,
+                flushBatchSize, journalPath(journalDirectory));
+    }
+
+    //With datenight.dao.mode=leased, several instances of the app can share one database: each one leases blocks of
+    //datenight.lease.block-size ideas per budget category for datenight.lease.ttl-seconds and draws from them in memory.
+    //Suggestions are written back the same way as in pooled mode; give each instance its own journal directory.
+    @Bean
+    @ConditionalOnProperty(name = "datenight.dao.mode", havingValue = "leased")
+    public LeasedDateNightIdeaDao leasedDateNightIdeaDao(JdbcDateNightIdeaDao jdbcDateNightIdeaDao,
+                                                         @Value("${datenight.lease.block-size:32}") int blockSize,
+                                                         @Value("${datenight.lease.ttl-seconds:30}") long ttlSeconds,
+                                                         @Value("${datenight.pool.flush-interval-ms:100}") long flushIntervalMillis,
+                                                         @Value("${datenight.pool.flush-batch-size:500}") int flushBatchSize,
+                                                         @Value("${datenight.pool.journal-dir:}") String journalDirectory) {
+        return new LeasedDateNightIdeaDao(jdbcDateNightIdeaDao, jdbcDateNightIdeaDao.getJdbcTemplate(), blockSize,
+                Duration.ofSeconds(ttlSeconds), flushIntervalMillis, flushBatchSize, journalPath(journalDirectory));
+    }
+
+    //With datenight.dao.mode=embedded (set by the embedded profile) the catalog is kept in datenight.embedded.dir
+    //instead of PostgreSQL. A new store is filled from the comma-separated datenight.embedded.seed locations; ones that
+    //don't exist are skipped. Spring calls close() on shutdown so the next start only has to read the snapshot.
+    @Bean
+    @ConditionalOnProperty(name = "datenight.dao.mode", havingValue = "embedded")
+    public EmbeddedDateNightIdeaDao embeddedDateNightIdeaDao(ObjectMapper objectMapper, ResourceLoader resourceLoader,
+                                                             @Value("${datenight.embedded.dir:data/embedded}") String directory,
+                                                             @Value("${datenight.embedded.compact-after-bytes:4194304}") long compactAfterBytes,
+                                                             @Value("${datenight.embedded.sync-writes:false}") boolean syncWrites,
+                                                             @Value("${datenight.embedded.seed:classpath:seed-ideas.json}") String seed) {
+        List<Resource> seedResources = Arrays.stream(seed.split(","))
+                .map(String::trim)
+                .filter(location -> !location.isEmpty())
+                .map(resourceLoader::getResource)
+                .toList();
+        return new EmbeddedDateNightIdeaDao(Path.of(directory), compactAfterBytes, syncWrites,
+                () -> new SeedIdeaReader(objectMapper).read(seedResources));
+    }
+
+    //Every draw is recorded in the suggestion_event tables of DateNight.sql, which /history reads. It needs
+    //PostgreSQL, so there is no history with the embedded profile, and datenight.history.enabled=false turns it off.
+    //Spring calls close() on shutdown so queued draws are written before the app stops.
+    @Bean
+    @Profile("!embedded")
+    @ConditionalOnProperty(name = "datenight.history.enabled", havingValue = "true", matchIfMissing = true)
+    public SuggestionHistory suggestionHistory(JdbcTemplate jdbcTemplate,
+                                               @Value("${datenight.history.flush-interval-ms:1000}") long flushIntervalMillis,
+                                               @Value("${datenight.history.flush-batch-size:1000}") int flushBatchSize,
+                                               @Value("${datenight.history.max-pending:100000}") int maxPending,
+                                               @Value("${datenight.history.retention-months:12}") int retentionMonths) {
+        return new SuggestionHistory(jdbcTemplate, flushIntervalMillis, flushBatchSize, maxPending, retentionMonths);
+    }
+
+    //The catalog cache sits in front of whichever DAO was chosen above. @Primary makes Spring inject it
+    //wherever DateNightIdeaDaoInterface is needed, so every request goes through the cache first.
+    //Between the two, MeteredDateNightIdeaDao times every call that reaches the chosen DAO, and
+    //RecordingDateNightIdeaDao adds every draw to the suggestion history when there is one.
+    //There is no JdbcDateNightIdeaDao with the embedded profile, so it is optional too.
+    @Bean
+    @Primary
+    public CachingDateNightIdeaDao cachingDateNightIdeaDao(Optional<JdbcDateNightIdeaDao> jdbcDateNightIdeaDao,
+                                                           Optional<PooledDateNightIdeaDao> pooledDateNightIdeaDao,
+                                                           Optional<WeightedDateNightIdeaDao> weightedDateNightIdeaDao,
+                                                           Optional<LeasedDateNightIdeaDao> leasedDateNightIdeaDao,
+                                                           Optional<EmbeddedDateNightIdeaDao> embeddedDateNightIdeaDao,
+                                                           Optional<SuggestionHistory> suggestionHistory,
+                                                           MeterRegistry meterRegistry,
+                                                           @Value("${datenight.cache.max-views:16}") int maxViews,
+                                                           @Value("${datenight.cache.ttl-seconds:60}") long ttlSeconds) {
+        DateNightIdeaDaoInterface store;
+        if (pooledDateNightIdeaDao.isPresent()) {
+            store = pooledDateNightIdeaDao.get();
+        } else if (weightedDateNightIdeaDao.isPresent()) {
+            store = weightedDateNightIdeaDao.get();
+        } else if (leasedDateNightIdeaDao.isPresent()) {
+            store = leasedDateNightIdeaDao.get();
+        } else if (embeddedDateNightIdeaDao.isPresent()) {
+            store = embeddedDateNightIdeaDao.get();
+        } else {
+            store = jdbcDateNightIdeaDao.orElseThrow(() -> new IllegalStateException(
+                    "No DAO is available; datenight.dao.mode=embedded needs the embedded profile"));
+        }
+        DateNightIdeaDaoInterface cached = new MeteredDateNightIdeaDao(store, meterRegistry);
+        if (suggestionHistory.isPresent()) {
+            cached = new RecordingDateNightIdeaDao(cached, suggestionHistory.get());
+        }
+        return new CachingDateNightIdeaDao(cached, maxViews, Duration.ofSeconds(ttlSeconds));
+    }
+
+    private static Path journalPath(String journalDirectory) {
+        return journalDirectory.isBlank() ? null : Path.of(journalDirectory);
+    }
+}
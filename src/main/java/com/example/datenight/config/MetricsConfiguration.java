@@ -0,0 +1,149 @@
+package com.example.datenight.config;
+
+import com.example.datenight.admission.AdmissionControl;
+import com.example.datenight.admission.EndpointClass;
+import com.example.datenight.dao.CachingDateNightIdeaDao;
+import com.example.datenight.dao.AvailableIdeaCounter;
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.feed.CatalogChangeFeed;
+import com.example.datenight.history.SuggestionHistory;
+import com.example.datenight.model.BudgetCategory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataAccessException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Registers the app's own gauges and counters with Micrometer. Spring Boot already records every endpoint
+//(http.server.requests) and the connection pool (hikaricp.connections.*, including how long each request waited for a
+//connection), and MeteredDateNightIdeaDao times every DAO call. Everything is scraped from /actuator/prometheus.
+@Configuration
+public class MetricsConfiguration {
+    //datenight.ideas.available: how many ideas of each budget category can still be drawn from the shared list.
+    //The counts come from the DAO that holds the catalog (one GROUP BY query with PostgreSQL) and are re-read at most
+    //once per refresh interval, however often the gauges are scraped.
+    @Bean
+    public MeterBinder availableIdeaMetrics(AvailableIdeaCounter availableIdeaCounter,
+                                            @Value("${datenight.metrics.available-ideas-refresh-seconds:15}") long refreshSeconds) {
+        AvailableIdeaCounts counts = new AvailableIdeaCounts(availableIdeaCounter, Duration.ofSeconds(refreshSeconds));
+        return registry -> {
+            for (BudgetCategory budgetCategory : BudgetCategory.values()) {
+                Gauge.builder("datenight.ideas.available", counts, available -> available.get(budgetCategory.getDisplayName()))
+                        .description("Ideas that have not been suggested yet in the current round")
+                        .tag("budgetCategory", budgetCategory.getDisplayName())
+                        .register(registry);
+            }
+        };
+    }
+
+    //The catalog cache counters that /api/date-night-ideas/cache/stats also reports
+    @Bean
+    public MeterBinder catalogCacheMetrics(CachingDateNightIdeaDao cachingDateNightIdeaDao) {
+        return registry -> {
+            FunctionCounter.builder("datenight.cache.requests", cachingDateNightIdeaDao, CachingDateNightIdeaDao::getHits)
+                    .description("Catalog reads served by the cache").tag("result", "hit").register(registry);
+            FunctionCounter.builder("datenight.cache.requests", cachingDateNightIdeaDao, CachingDateNightIdeaDao::getMisses)
+                    .description("Catalog reads served by the cache").tag("result", "miss").register(registry);
+            FunctionCounter.builder("datenight.cache.evictions", cachingDateNightIdeaDao, CachingDateNightIdeaDao::getEvictions)
+                    .description("Cached views evicted or expired").register(registry);
+            Gauge.builder("datenight.cache.views", cachingDateNightIdeaDao, CachingDateNightIdeaDao::getCachedViews)
+                    .description("Views currently cached").register(registry);
+        };
+    }
+
+    //Browsers listening on /changes, and how often one was told to reload the catalog because it fell behind.
+    //A rising resync count means datenight.changes.buffer-size is too small for how fast the catalog changes.
+    @Bean
+    public MeterBinder catalogChangeFeedMetrics(CatalogChangeFeed catalogChangeFeed) {
+        return registry -> {
+            Gauge.builder("datenight.changes.subscribers", catalogChangeFeed, CatalogChangeFeed::getSubscriberCount)
+                    .description("Browsers listening for catalog changes").register(registry);
+            FunctionCounter.builder("datenight.changes.resyncs", catalogChangeFeed, CatalogChangeFeed::getResyncs)
+                    .description("Listeners told to reload the catalog because they missed changes").register(registry);
+        };
+    }
+
+    //Draws written to the suggestion history, dropped because too many were waiting, and waiting to be written.
+    //A growing number waiting means the history can't reach the database; anything dropped is missing from /history.
+    @Bean
+    public MeterBinder suggestionHistoryMetrics(ObjectProvider<SuggestionHistory> suggestionHistory) {
+        return registry -> suggestionHistory.ifAvailable(history -> {
+            FunctionCounter.builder("datenight.history.events", history, SuggestionHistory::getWritten)
+                    .description("Draws recorded in the suggestion history").tag("result", "written").register(registry);
+            FunctionCounter.builder("datenight.history.events", history, SuggestionHistory::getDropped)
+                    .description("Draws recorded in the suggestion history").tag("result", "dropped").register(registry);
+            Gauge.builder("datenight.history.pending", history, SuggestionHistory::getPending)
+                    .description("Draws waiting to be written to the suggestion history").register(registry);
+        });
+    }
+
+    //Requests let through or refused by AdmissionControl, per endpoint class and reason, and the state of its limits.
+    //Refusals with result client_limit are one client going too fast; total_limit and busy mean the app as a whole is
+    //getting more writes than the limits allow.
+    @Bean
+    public MeterBinder admissionMetrics(ObjectProvider<AdmissionControl> admissionControl) {
+        return registry -> admissionControl.ifAvailable(admission -> {
+            for (EndpointClass endpointClass : EndpointClass.values()) {
+                for (AdmissionControl.Outcome outcome : AdmissionControl.Outcome.values()) {
+                    FunctionCounter.builder("datenight.admission.requests", admission, a -> a.getRequests(endpointClass, outcome))
+                            .description("Requests admitted or refused with 429")
+                            .tags("endpointClass", endpointClass.getName(), "result", outcome.getTag()).register(registry);
+                }
+                Gauge.builder("datenight.admission.clients", admission, a -> a.getClients(endpointClass))
+                        .description("Clients with their own token bucket")
+                        .tag("endpointClass", endpointClass.getName()).register(registry);
+                if (admission.getTotalTokens(endpointClass) >= 0) {
+                    Gauge.builder("datenight.admission.tokens", admission, a -> a.getTotalTokens(endpointClass))
+                            .description("Requests that could be admitted right now under the limit shared by every client")
+                            .tag("endpointClass", endpointClass.getName()).register(registry);
+                }
+            }
+            Gauge.builder("datenight.admission.expensive.in.flight", admission, AdmissionControl::getExpensiveInFlight)
+                    .description("Writes, resets and imports running right now").register(registry);
+        });
+    }
+
+    //Holds the last counts read from the DAO and re-reads them once they are older than the refresh interval.
+    //A ReentrantLock rather than synchronized, because the query runs while it is held (see VirtualThreadConfiguration).
+    static final class AvailableIdeaCounts {
+        private final AvailableIdeaCounter availableIdeaCounter;
+        private final long refreshNanos;
+        private final ReentrantLock lock = new ReentrantLock();
+        //null when the last read failed
+        private Map<String, Long> counts;
+        private long loadedAt;
+        private boolean loaded;
+
+        AvailableIdeaCounts(AvailableIdeaCounter availableIdeaCounter, Duration refresh) {
+            this.availableIdeaCounter = availableIdeaCounter;
+            this.refreshNanos = refresh.toNanos();
+        }
+
+        //NaN tells the monitoring system the value is unknown, which is more honest than 0 when the database is down.
+        //A failed read is not retried until the refresh interval has passed, so a scrape never waits on it four times.
+        double get(String budgetCategory) {
+            lock.lock();
+            try {
+                if (!loaded || System.nanoTime() - loadedAt >= refreshNanos) {
+                    try {
+                        counts = availableIdeaCounter.countAvailableIdeasByCategory();
+                    } catch (DataAccessException | DaoException e) {
+                        counts = null;
+                    }
+                    loaded = true;
+                    loadedAt = System.nanoTime();
+                }
+                return counts == null ? Double.NaN : counts.getOrDefault(budgetCategory, 0L);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
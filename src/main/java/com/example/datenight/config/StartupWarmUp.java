@@ -0,0 +1,138 @@
+package com.example.datenight.config;
+
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.example.datenight.exception.DaoException;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+//StartupWarmUp gets the DAO ready before the app reports itself ready (datenight.startup.warm-up=true, set by the
+//fast-start profile). Spring runs ApplicationRunners after the context has started but before readiness turns
+//ACCEPTING_TRAFFIC, so the first requests to a freshly started instance find:
+//  - the DAO chain created, even with lazy initialization, and in pooled or weighted mode the category pools loaded
+//  - the catalog cache filled, so the first /allIdeas doesn't go to the database
+//  - every connection of the pool open, with each draw and read statement of JdbcDateNightIdeaDao already run once on
+//    it. With prepareThreshold=1 that leaves the statements prepared on the server for every connection.
+//
+//The statements run inside transactions that are rolled back, so the warm-up draws don't mark anything as suggested.
+//Writes are left out: even a rolled-back INSERT uses up a value of the id sequence. Each transaction keeps its
+//connection until all of them have one, which is what spreads them over every connection in the pool.
+//A database that can't be reached is only logged; the health endpoint reports it as usual.
+@Component
+@ConditionalOnProperty(name = "datenight.startup.warm-up", havingValue = "true")
+public class StartupWarmUp implements ApplicationRunner {
+    //Per-user draws made by the warm-up are recorded under this key and forgotten again afterwards
+    private static final String WARM_UP_USER = "startup-warm-up";
+    //A search that matches nothing still has PostgreSQL parse and plan the statement
+    private static final String WARM_UP_QUERY = "startupwarmup";
+    //How long a connection waits for the others before it gives up and rolls back
+    private static final long CONNECTION_WAIT_SECONDS = 10;
+
+    private final DateNightIdeaDaoInterface dateNightIdeaDaoInterface;
+    private final ObjectProvider<JdbcDateNightIdeaDao> jdbcDateNightIdeaDao;
+    private final ObjectProvider<PlatformTransactionManager> transactionManager;
+    private final ObjectProvider<DataSource> dataSource;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //The JDBC DAO, transaction manager and DataSource don't exist with the embedded profile, so they are optional
+    public StartupWarmUp(DateNightIdeaDaoInterface dateNightIdeaDaoInterface, ObjectProvider<JdbcDateNightIdeaDao> jdbcDateNightIdeaDao,
+                         ObjectProvider<PlatformTransactionManager> transactionManager, ObjectProvider<DataSource> dataSource) {
+        this.dateNightIdeaDaoInterface = dateNightIdeaDaoInterface;
+        this.jdbcDateNightIdeaDao = jdbcDateNightIdeaDao;
+        this.transactionManager = transactionManager;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        try {
+            int ideas = dateNightIdeaDaoInterface.getAllIdeas().size();
+            JdbcDateNightIdeaDao jdbc = jdbcDateNightIdeaDao.getIfAvailable();
+            PlatformTransactionManager transactions = transactionManager.getIfAvailable();
+            int connections = 0;
+            if (jdbc != null && transactions != null) {
+                connections = warmConnections(jdbc, new TransactionTemplate(transactions), poolSize());
+            }
+            log.info("Warmed up the DAO with {} ideas and {} connections in {} ms", ideas, connections,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (DataAccessException | DaoException e) {
+            log.warn("Unable to warm up the DAO, the first requests will be slower", e);
+        }
+    }
+
+    //Run every statement on each of the given number of connections at once and return how many succeeded
+    private int warmConnections(JdbcDateNightIdeaDao jdbc, TransactionTemplate transaction, int connections) {
+        CountDownLatch allConnected = new CountDownLatch(connections);
+        List<Future<?>> warmUps = new ArrayList<>();
+        int warmed = 0;
+        try (ExecutorService executor = Executors.newFixedThreadPool(connections, Thread.ofPlatform().name("dao-warm-up-", 1).factory())) {
+            for (int i = 0; i < connections; i++) {
+                warmUps.add(executor.submit(() -> transaction.executeWithoutResult(status -> {
+                    status.setRollbackOnly();
+                    try {
+                        runEveryStatement(jdbc);
+                    } finally {
+                        allConnected.countDown();
+                    }
+                    try {
+                        allConnected.await(CONNECTION_WAIT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })));
+            }
+            for (Future<?> warmUp : warmUps) {
+                try {
+                    warmUp.get();
+                    warmed++;
+                } catch (ExecutionException e) {
+                    log.warn("Unable to warm up a database connection", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            jdbc.resetListOfIdeasForUser(WARM_UP_USER);
+        }
+        return warmed;
+    }
+
+    //One call for each fixed statement the DAO sends for draws and reads
+    private static void runEveryStatement(JdbcDateNightIdeaDao jdbc) {
+        jdbc.findRandomAvailableIdea("Free");
+        jdbc.findRandomAvailableIdeas(List.of("Free", "Cheap"), 2);
+        jdbc.findRandomAvailableIdeaForUser(WARM_UP_USER, "Free");
+        jdbc.getIdeasPage(Long.MAX_VALUE, 1, null);
+        jdbc.getIdeasPage(Long.MAX_VALUE, 1, "Free");
+        for (boolean unsuggestedOnly : new boolean[]{false, true}) {
+            jdbc.searchIdeas(WARM_UP_QUERY, null, unsuggestedOnly, 0, 1);
+            jdbc.searchIdeas(WARM_UP_QUERY, "Free", unsuggestedOnly, 0, 1);
+        }
+        jdbc.countAvailableIdeasByCategory();
+    }
+
+    private int poolSize() {
+        return dataSource.getIfAvailable() instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 1;
+    }
+}
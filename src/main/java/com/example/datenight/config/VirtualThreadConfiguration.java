@@ -0,0 +1,39 @@
+package com.example.datenight.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+//Setting spring.threads.virtual.enabled=true makes Tomcat run every request, and the DAO calls it makes, on its own
+//Java 21 virtual thread instead of one of its 200 platform threads. Requests that are waiting on PostgreSQL then cost
+//almost nothing, so the number of requests in flight is no longer capped by the thread pool.
+//
+//That cap was also what stopped requests from crowding the connection pool. Without it, thousands of virtual threads
+//could queue for a handful of connections and each wait up to Hikari's default 30 seconds. This configuration sizes
+//the pool for that case instead:
+//  - maximum-pool-size defaults to (CPU cores * 2) + 1, the HikariCP rule of thumb for a database on similar hardware.
+//    More connections than that make PostgreSQL slower, not faster, so extra requests are better off waiting briefly.
+//  - connection-timeout defaults to 2 seconds, so under overload requests fail quickly instead of piling up.
+//Anything set explicitly under spring.datasource.hikari.* still wins.
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfiguration {
+
+    //static so Spring can create this post-processor before any other bean, including the DataSource
+    @Bean
+    public static BeanPostProcessor virtualThreadPoolSizing(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    ConnectionPoolConfiguration.sizePool(dataSource, environment, "datenight.virtual-threads", 2000L);
+                }
+                return bean;
+            }
+        };
+    }
+}
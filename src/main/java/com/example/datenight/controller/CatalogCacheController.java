@@ -0,0 +1,31 @@
+package com.example.datenight.controller;
+
+import com.example.datenight.dao.CachingDateNightIdeaDao;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Reports how well the catalog cache is working. A high miss or eviction count means the cache is too
+//small or the TTL too short for how often the catalog is read.
+@CrossOrigin(origins = "*")
+@RestController
+@RequestMapping("/api/date-night-ideas/cache")
+public class CatalogCacheController {
+    private CachingDateNightIdeaDao cachingDateNightIdeaDao;
+
+    public CatalogCacheController(CachingDateNightIdeaDao cachingDateNightIdeaDao){
+        this.cachingDateNightIdeaDao = cachingDateNightIdeaDao;
+    }
+
+    //Get the cache counters as a JSON object
+    @GetMapping("/stats")
+    public Map<String, Long> getCacheStats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", cachingDateNightIdeaDao.getHits());
+        stats.put("misses", cachingDateNightIdeaDao.getMisses());
+        stats.put("evictions", cachingDateNightIdeaDao.getEvictions());
+        stats.put("cachedViews", (long) cachingDateNightIdeaDao.getCachedViews());
+        return stats;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.datenight.controller;
+
+import com.example.datenight.feed.CatalogChangeFeed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+//Streams changes to the shared catalog as Server-Sent Events. Open it with new EventSource(".../changes") and apply
+//each CatalogChange to the ideas on screen; on RESYNC, load the catalog again. EventSource reconnects by itself and
+//sends the id of the last event it saw, so changes made while it was reconnecting are not lost.
+@CrossOrigin(origins = "*")
+@RestController
+@RequestMapping("/api/date-night-ideas")
+public class CatalogChangeController {
+    private CatalogChangeFeed catalogChangeFeed;
+    //How long one connection stays open before the browser is made to reconnect
+    private long timeoutMillis;
+
+    public CatalogChangeController(CatalogChangeFeed catalogChangeFeed,
+                                   @Value("${datenight.changes.timeout-minutes:30}") long timeoutMinutes){
+        this.catalogChangeFeed = catalogChangeFeed;
+        this.timeoutMillis = timeoutMinutes * 60_000;
+    }
+
+    //Subscribe to catalog changes. 503 SERVICE_UNAVAILABLE when too many browsers are already listening.
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId){
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        if(!catalogChangeFeed.subscribe(emitter, lastEventId)){
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many listeners, please try again later");
+        }
+        return emitter;
+    }
+}
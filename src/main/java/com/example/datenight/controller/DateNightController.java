@@ -2,13 +2,33 @@ package com.example.datenight.controller;
 
 import com.example.datenight.dao.DateNightIdeaDaoInterface;
 import com.example.datenight.exception.DaoException;
+import com.example.datenight.exception.IdeaVersionConflictException;
+import com.example.datenight.feed.CatalogChangeFeed;
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.CatalogChangeType;
 import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import com.example.datenight.model.IdeaPage;
+import com.example.datenight.model.IdeaSearchPage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 //Using @CrossOrigins allows requests from the frontend running on any local host to access
 //the backend without being blocked by CORS. CORS stands for cross-origin resource sharing and
@@ -18,27 +38,92 @@ import java.util.List;
 @RestController //Tells spring this class handles HTTP requests and returns JSON responses
 @RequestMapping("/api/date-night-ideas") //Sets the base URL for all endpoints in this controller
 public class DateNightController {
+    private static final int MAX_USER_KEY_LENGTH = 64;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_BATCH_DRAW = 50;
+    private static final int MAX_SEARCH_LENGTH = 200;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    //Deep offsets make PostgreSQL rank and skip every earlier match, so nobody should need to page this far
+    private static final int MAX_SEARCH_OFFSET = 10_000;
     private DateNightIdeaDaoInterface dateNightIdeaDaoInterface;
+    //Every change to the shared catalog made here is published to the browsers listening on /changes
+    private CatalogChangeFeed catalogChangeFeed;
+    //Writes one idea at a time while streaming. Flushing after every idea would send a tiny network packet
+    //per row, so the JSON generator is left to flush whenever its buffer fills up instead.
+    private ObjectWriter streamingIdeaWriter;
+    //Converts a whole List<DateNightIdea> to JSON for /allIdeas
+    private ObjectWriter ideaListWriter;
 
     //DateNightIdeaInterface is injected into the controller. The controller calls service methods to handle
     //the actual logic (getting random dates, resetting user data, etc.)
-    public DateNightController(DateNightIdeaDaoInterface dateNightIdeaDaoInterface){
+    //The ObjectMapper is the one Spring Boot uses for every JSON response, so streamed ideas look the same.
+    public DateNightController(DateNightIdeaDaoInterface dateNightIdeaDaoInterface, CatalogChangeFeed catalogChangeFeed,
+                               ObjectMapper objectMapper){
         this.dateNightIdeaDaoInterface = dateNightIdeaDaoInterface;
+        this.catalogChangeFeed = catalogChangeFeed;
+        this.streamingIdeaWriter = objectMapper.writerFor(DateNightIdea.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.ideaListWriter = objectMapper.writerFor(new TypeReference<List<DateNightIdea>>(){});
     }
 
-    //Get a random idea by budget category mapping
+    //Get a random idea by budget category mapping. The optional "user" query parameter (for example
+    ///random/Free?user=abc123) gives every user or browser session their own list of suggested ideas.
+    //Without it, the shared list used by everyone is drawn from.
     @GetMapping("/random/{budgetCategory}") //Exposes this method as a GET endpoint
-    public DateNightIdea getRandomIdea(@PathVariable String budgetCategory){
-        return dateNightIdeaDaoInterface.findRandomAvailableIdea(budgetCategory)
-                .orElseThrow(()->
+    public DateNightIdea getRandomIdea(@PathVariable String budgetCategory,
+                                       @RequestParam(name = "user", required = false) String userKey){
+        requireKnownBudgetCategory(budgetCategory);
+        if(hasUserKey(userKey)){
+            //A user's own draws don't change the shared catalog, so they aren't published
+            return dateNightIdeaDaoInterface.findRandomAvailableIdeaForUser(userKey, budgetCategory).orElseThrow(()->
+                    new ResponseStatusException(HttpStatus.NO_CONTENT, "No ideas found. Please reset the idea list"));
+        }
+        DateNightIdea idea = dateNightIdeaDaoInterface.findRandomAvailableIdea(budgetCategory).orElseThrow(()->
                 new ResponseStatusException(HttpStatus.NO_CONTENT, "No ideas found. Please reset the idea list"));
+        //Coalesced by the feed, so a burst of draws doesn't send every listener an event per draw
+        catalogChangeFeed.publishSuggested(idea);
+        return idea;
     }
 
-    //Create reset ideas mapping
+    //Draw several ideas at once, for example a week of date nights with /random?count=7. budgetCategory can be
+    //repeated (or comma separated) to spread the ideas over several categories; without it every category is used.
+    //All the ideas are drawn and marked as suggested together, so this is one request instead of count requests.
+    @GetMapping("/random")
+    public List<DateNightIdea> getRandomIdeas(@RequestParam(defaultValue = "7") int count,
+                                              @RequestParam(name = "budgetCategory", required = false) List<String> budgetCategories){
+        if(count < 1 || count > MAX_BATCH_DRAW){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Count must be between 1 and " + MAX_BATCH_DRAW);
+        }
+        List<String> categories;
+        if(budgetCategories == null || budgetCategories.isEmpty()){
+            categories = Arrays.stream(BudgetCategory.values()).map(BudgetCategory::getDisplayName).toList();
+        } else {
+            budgetCategories.forEach(this::requireKnownBudgetCategory);
+            categories = budgetCategories.stream().distinct().toList();
+        }
+        try{
+            List<DateNightIdea> ideas = dateNightIdeaDaoInterface.findRandomAvailableIdeas(categories, count);
+            if(ideas.isEmpty()){
+                throw new ResponseStatusException(HttpStatus.NO_CONTENT, "No ideas found. Please reset the idea list");
+            }
+            for(DateNightIdea idea : ideas){
+                catalogChangeFeed.publishSuggested(idea);
+            }
+            return ideas;
+        } catch(DaoException e){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to draw ideas", e);
+        }
+    }
+
+    //Create reset ideas mapping. With a "user" query parameter only that user's list is reset.
     @PostMapping("/reset") //exposes method as a POST endpoint
-    public String resetideas(){
+    public String resetideas(@RequestParam(name = "user", required = false) String userKey){
         try{
-            dateNightIdeaDaoInterface.resetListOfIdeas();
+            if(hasUserKey(userKey)){
+                dateNightIdeaDaoInterface.resetListOfIdeasForUser(userKey);
+            } else {
+                dateNightIdeaDaoInterface.resetListOfIdeas();
+                catalogChangeFeed.publish(CatalogChangeType.RESET, null, null);
+            }
             return "All ideas have been reset successfully";
         } catch(DaoException e){
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to reset ideas", e);
@@ -49,20 +134,48 @@ public class DateNightController {
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping("/addIdea")
     public DateNightIdea addDateNightIdea(@Valid @RequestBody DateNightIdea dateNightIdea){
+        requireKnownBudgetCategory(dateNightIdea.getBudgetCategory());
         try{
-            return dateNightIdeaDaoInterface.create(dateNightIdea);
+            DateNightIdea created = dateNightIdeaDaoInterface.create(dateNightIdea);
+            catalogChangeFeed.publish(CatalogChangeType.CREATED, created.getId(), created);
+            return created;
         } catch (DaoException e){
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to add idea", e);
         }
 
     }
 
-    //Create update idea mapping
+    //Create update idea mapping. When the body has the version the idea was read at and someone else has edited the
+    //idea since, nothing is changed and 409 CONFLICT is sent. Returns the idea as it is now, with its new version.
     @PutMapping("/updateIdea/{id}")
-    public String updateDateNightIdea(@PathVariable int id, @Valid @RequestBody DateNightIdea idea){
+    public DateNightIdea updateDateNightIdea(@PathVariable int id, @Valid @RequestBody DateNightIdea idea){
+        requireKnownBudgetCategory(idea.getBudgetCategory());
+        try{
+            return publishUpdated(dateNightIdeaDaoInterface.update(id, idea));
+        } catch(IdeaVersionConflictException e){
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The idea has been changed by someone else, reload it and try again", e);
+        } catch(DaoException e){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to update idea", e);
+        }
+    }
+
+    //Create partial update mapping. Only the fields in the body are changed, and a field sent as null is cleared.
+    //Conflicts are handled the same way as a full update.
+    @PatchMapping("/updateIdea/{id}")
+    public DateNightIdea patchDateNightIdea(@PathVariable int id, @RequestBody IdeaPatch patch){
+        if(patch.changesNothing()){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Nothing to update");
+        }
+        if(patch.hasTitle() && (patch.getTitle() == null || patch.getTitle().isBlank())){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Title can't be empty");
+        }
+        if(patch.hasBudgetCategory()){
+            requireKnownBudgetCategory(patch.getBudgetCategory());
+        }
         try{
-            dateNightIdeaDaoInterface.update(id, idea);
-            return "Date night idea has been successfully updated";
+            return publishUpdated(dateNightIdeaDaoInterface.patch(id, patch));
+        } catch(IdeaVersionConflictException e){
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The idea has been changed by someone else, reload it and try again", e);
         } catch(DaoException e){
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to update idea", e);
         }
@@ -72,16 +185,152 @@ public class DateNightController {
     @DeleteMapping("/deleteIdea/{id}")
     public String dateNightIdea(@PathVariable int id){
         try{
-            dateNightIdeaDaoInterface.delete(id);
+            if(dateNightIdeaDaoInterface.delete(id)){
+                catalogChangeFeed.publish(CatalogChangeType.DELETED, (long) id, null);
+            }
             return "Date night idea has been successfully deleted";
         } catch(DaoException e){
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to delete idea", e);
         }
     }
 
-    //Create get all ideas mapping
+    //Create get all ideas mapping. The DAO returns the catalog already converted to JSON, so when it is cached
+    //the same bytes are sent again without a database query or running Jackson.
+    //If the browser already has the current catalog (its If-None-Match matches the ETag), 304 NOT_MODIFIED is sent
+    //with no body and the catalog isn't read at all.
     @GetMapping("/allIdeas")
-    public List<DateNightIdea> getAllIdeas(){
-        return dateNightIdeaDaoInterface.getAllIdeas();
+    public ResponseEntity<byte[]> getAllIdeas(WebRequest request){
+        if(isNotModified(request)){
+            return null;
+        }
+        try{
+            byte[] json = dateNightIdeaDaoInterface.getAllIdeasJson(ideaListWriter);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+        } catch(DaoException e){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to load ideas", e);
+        }
+    }
+
+    //Get one page of ideas. Pass the nextAfterId of the previous page as afterId to get the next one.
+    //One extra row is requested so we know whether another page exists without a separate COUNT query.
+    @GetMapping("/ideas")
+    public IdeaPage getIdeasPage(@RequestParam(defaultValue = "0") long afterId,
+                                 @RequestParam(defaultValue = "100") int limit,
+                                 @RequestParam(required = false) String budgetCategory,
+                                 WebRequest request){
+        if(limit < 1 || limit > MAX_PAGE_SIZE){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if(budgetCategory != null){
+            requireKnownBudgetCategory(budgetCategory);
+        }
+        if(isNotModified(request)){
+            return null;
+        }
+        try{
+            List<DateNightIdea> ideas = dateNightIdeaDaoInterface.getIdeasPage(afterId, limit + 1, budgetCategory);
+            if(ideas.size() <= limit){
+                return new IdeaPage(ideas, null);
+            }
+            List<DateNightIdea> page = ideas.subList(0, limit);
+            return new IdeaPage(page, page.get(limit - 1).getId());
+        } catch(DaoException e){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to load ideas", e);
+        }
+    }
+
+    //Search ideas by title, description and location, for example /search?q=picnic park. Every word must match the
+    //start of a word in the idea and the best matches come first. budgetCategory and unsuggestedOnly narrow the
+    //results. Pass the nextOffset of the previous page as offset to get the next one.
+    @GetMapping("/search")
+    public IdeaSearchPage searchIdeas(@RequestParam(name = "q") String query,
+                                      @RequestParam(required = false) String budgetCategory,
+                                      @RequestParam(defaultValue = "false") boolean unsuggestedOnly,
+                                      @RequestParam(defaultValue = "0") int offset,
+                                      @RequestParam(defaultValue = "20") int limit){
+        if(query.isBlank() || query.length() > MAX_SEARCH_LENGTH){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search must be between 1 and " + MAX_SEARCH_LENGTH + " characters");
+        }
+        if(limit < 1 || limit > MAX_SEARCH_PAGE_SIZE){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_SEARCH_PAGE_SIZE);
+        }
+        if(offset < 0 || offset > MAX_SEARCH_OFFSET){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Offset must be between 0 and " + MAX_SEARCH_OFFSET);
+        }
+        if(budgetCategory != null){
+            requireKnownBudgetCategory(budgetCategory);
+        }
+        try{
+            List<DateNightIdea> ideas = dateNightIdeaDaoInterface.searchIdeas(query, budgetCategory, unsuggestedOnly, offset, limit + 1);
+            if(ideas.size() <= limit){
+                return new IdeaSearchPage(ideas, null);
+            }
+            return new IdeaSearchPage(ideas.subList(0, limit), offset + limit);
+        } catch(DaoException e){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to search ideas", e);
+        }
+    }
+
+    //Stream every idea as one JSON array. Each row is written to the response as soon as it is read from
+    //the database, so the server never holds the whole catalog in memory.
+    @GetMapping("/allIdeas/stream")
+    public ResponseEntity<StreamingResponseBody> streamAllIdeas(@RequestParam(required = false) String budgetCategory){
+        if(budgetCategory != null){
+            requireKnownBudgetCategory(budgetCategory);
+        }
+        StreamingResponseBody body = outputStream -> {
+            try(JsonGenerator generator = streamingIdeaWriter.getFactory().createGenerator(outputStream)){
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                dateNightIdeaDaoInterface.forEachIdea(budgetCategory, idea -> {
+                    try{
+                        streamingIdeaWriter.writeValue(generator, idea);
+                    } catch(IOException e){
+                        //The consumer can't throw checked exceptions, so a closed connection is passed up unchecked
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    //Use the catalog version as the ETag of the response. When it matches the request's If-None-Match, Spring has
+    //already set the response to 304 NOT_MODIFIED and the caller returns without a body. The version is read before
+    //the catalog, so a change made while the catalog is being read gives the response an older ETag (and the next
+    //request a full answer) rather than stale ideas under a current ETag.
+    //Browsers revalidate on every fetch because no Cache-Control or Last-Modified is sent, so they never use a
+    //stale copy without asking first. The ETag is weak because Tomcat only gzips responses with weak ETags: the
+    //compressed and uncompressed bytes differ, but they are the same catalog.
+    private boolean isNotModified(WebRequest request){
+        Optional<String> version = dateNightIdeaDaoInterface.catalogVersion();
+        return version.isPresent() && request.checkNotModified("W/\"" + version.get() + "\"");
+    }
+
+    //Send an edited idea to the change feed, or 404 NOT_FOUND when there was no idea to edit
+    private DateNightIdea publishUpdated(Optional<DateNightIdea> updated){
+        DateNightIdea idea = updated.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Date night idea not found"));
+        catalogChangeFeed.publish(CatalogChangeType.UPDATED, idea.getId(), idea);
+        return idea;
+    }
+
+    //Budget categories are checked against BudgetCategory in memory, so a misspelled category is a 400 BAD_REQUEST
+    //without a database query instead of an empty result or a failed insert
+    private void requireKnownBudgetCategory(String budgetCategory){
+        if(!BudgetCategory.isKnown(budgetCategory)){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Budget category must be Free, Cheap, Moderate or Expensive");
+        }
+    }
+
+    //A user key is optional, but when one is sent it must be short so nobody can fill the server's memory with huge keys
+    private boolean hasUserKey(String userKey){
+        if(userKey == null || userKey.isBlank()){
+            return false;
+        }
+        if(userKey.length() > MAX_USER_KEY_LENGTH){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User key must be at most " + MAX_USER_KEY_LENGTH + " characters");
+        }
+        return true;
     }
 }
@@ -0,0 +1,69 @@
+package com.example.datenight.controller;
+
+import com.example.datenight.feed.CatalogChangeFeed;
+import com.example.datenight.importer.IdeaImporter;
+import com.example.datenight.model.CatalogChangeType;
+import com.example.datenight.model.ImportResult;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+//Loads a whole catalog of ideas in one request. The format is picked from the Content-Type header:
+//  application/json      a JSON array of ideas
+//  application/x-ndjson  one JSON idea per line
+//  text/csv              a header line followed by one idea per line
+//The body is read as a stream and saved in chunks, so large files never have to fit in memory.
+@CrossOrigin(origins = "*")
+@RestController
+@RequestMapping("/api/date-night-ideas")
+public class IdeaImportController {
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private IdeaImporter ideaImporter;
+    private CatalogChangeFeed catalogChangeFeed;
+
+    public IdeaImportController(IdeaImporter ideaImporter, CatalogChangeFeed catalogChangeFeed){
+        this.ideaImporter = ideaImporter;
+        this.catalogChangeFeed = catalogChangeFeed;
+    }
+
+    //Import ideas and return how many were saved along with the rows that failed and why.
+    //An import can add thousands of ideas, so listeners on /changes are told to reload the catalog once instead of
+    //being sent every idea. That happens even when the upload fails part way, because earlier chunks are already saved.
+    @PostMapping("/import")
+    public ImportResult importIdeas(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body){
+        MediaType mediaType;
+        try{
+            mediaType = MediaType.parseMediaType(contentType);
+        } catch(InvalidMediaTypeException e){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Content-Type header", e);
+        }
+        if(!MediaType.APPLICATION_JSON.isCompatibleWith(mediaType) && !APPLICATION_NDJSON.isCompatibleWith(mediaType)
+                && !TEXT_CSV.isCompatibleWith(mediaType)){
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                    "Upload ideas as application/json, application/x-ndjson or text/csv");
+        }
+        Charset charset = mediaType.getCharset() != null ? mediaType.getCharset() : StandardCharsets.UTF_8;
+        try{
+            if(MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)){
+                return ideaImporter.importJsonArray(body);
+            }
+            if(APPLICATION_NDJSON.isCompatibleWith(mediaType)){
+                return ideaImporter.importNdjson(body, charset);
+            }
+            return ideaImporter.importCsv(body, charset);
+        } catch(IllegalArgumentException | IOException e){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } finally {
+            catalogChangeFeed.publish(CatalogChangeType.RESYNC, null, null);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.datenight.controller;
+
+import com.example.datenight.history.SuggestionHistory;
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DailyDraws;
+import com.example.datenight.model.TopIdea;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+//Reports what has been drawn, from the rollups kept by SuggestionHistory. Both endpoints read a handful of
+//pre-counted rows, so they cost the same however many draws have been recorded. Draws show up here within a second
+//or so (datenight.history.flush-interval-ms). 404 NOT_FOUND when there is no history (the embedded profile, or
+//datenight.history.enabled=false).
+@CrossOrigin(origins = "*")
+@RestController
+@RequestMapping("/api/date-night-ideas/history")
+public class SuggestionHistoryController {
+    private static final int MAX_TOP_IDEAS = 100;
+    private static final long MAX_DAYS = 366;
+    private ObjectProvider<SuggestionHistory> suggestionHistory;
+
+    public SuggestionHistoryController(ObjectProvider<SuggestionHistory> suggestionHistory){
+        this.suggestionHistory = suggestionHistory;
+    }
+
+    //The most drawn ideas of a budget category, for example /history/top?budgetCategory=Free&limit=10
+    @GetMapping("/top")
+    public List<TopIdea> getTopIdeas(@RequestParam String budgetCategory,
+                                     @RequestParam(defaultValue = "10") int limit){
+        BudgetCategory category = BudgetCategory.fromName(budgetCategory).orElseThrow(() ->
+                new ResponseStatusException(HttpStatus.BAD_REQUEST, "Budget category must be Free, Cheap, Moderate or Expensive"));
+        if(limit < 1 || limit > MAX_TOP_IDEAS){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be between 1 and " + MAX_TOP_IDEAS);
+        }
+        try{
+            return history().topIdeas(category, limit);
+        } catch(DataAccessException e){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read the suggestion history", e);
+        }
+    }
+
+    //Draws per day and budget category from from to to (ISO dates in UTC, both included), by default the last 30 days.
+    //budgetCategory is optional. Days without draws are left out.
+    @GetMapping("/daily")
+    public List<DailyDraws> getDrawsPerDay(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                           @RequestParam(required = false) String budgetCategory){
+        LocalDate lastDay = to == null ? LocalDate.now(ZoneOffset.UTC) : to;
+        LocalDate firstDay = from == null ? lastDay.minusDays(29) : from;
+        if(firstDay.isAfter(lastDay) || ChronoUnit.DAYS.between(firstDay, lastDay) >= MAX_DAYS){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to and at most " + MAX_DAYS + " days earlier");
+        }
+        BudgetCategory category = null;
+        if(budgetCategory != null){
+            category = BudgetCategory.fromName(budgetCategory).orElseThrow(() ->
+                    new ResponseStatusException(HttpStatus.BAD_REQUEST, "Budget category must be Free, Cheap, Moderate or Expensive"));
+        }
+        try{
+            return history().drawsPerDay(firstDay, lastDay, category);
+        } catch(DataAccessException e){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read the suggestion history", e);
+        }
+    }
+
+    private SuggestionHistory history(){
+        SuggestionHistory history = suggestionHistory.getIfAvailable();
+        if(history == null){
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The suggestion history is turned off");
+        }
+        return history;
+    }
+}
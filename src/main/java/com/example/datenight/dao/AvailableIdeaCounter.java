@@ -0,0 +1,11 @@
+package com.example.datenight.dao;
+
+import java.util.Map;
+
+//Implemented by the DAOs that hold the catalog themselves (JdbcDateNightIdeaDao through PostgreSQL,
+//EmbeddedDateNightIdeaDao in memory), so the datenight.ideas.available gauges work whichever of them is running.
+public interface AvailableIdeaCounter {
+    //How many ideas of each budget category haven't been suggested in the current epoch, keyed by the category's
+    //display name. Categories with no ideas left are not in the map.
+    Map<String, Long> countAvailableIdeasByCategory();
+}
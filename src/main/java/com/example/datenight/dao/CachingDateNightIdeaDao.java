@@ -0,0 +1,422 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+//CachingDateNightIdeaDao sits in front of the real DAO and remembers the catalog between requests.
+//The catalog only changes through this class (create, update, delete, draws and resets), so every
+//write can throw away exactly the cached data it makes out of date, and reads in between never touch
+//the database.
+//
+//What is cached:
+//  - One "view" of all ideas and one view per budget category, each sorted by id. Pages and streams are
+//    served from these views.
+//  - The all-ideas view also keeps its JSON bytes once they have been built, so /allIdeas can send the same
+//    bytes again without serializing the list every time.
+//
+//The cache holds at most maxViews views (the least recently used view is evicted first) and every view
+//expires after the TTL, which also picks up changes made to the database by something other than this app.
+//Only one request loads a missing view; others that want the same view at the same time wait for that load instead
+//of reading the whole table again.
+//
+//catalogVersion() changes whenever an idea is added, edited or deleted, the list is reset, or a view is loaded again,
+//which the controller uses as an ETag. Draws only change the suggested flag of one idea and happen thousands of times
+//a second, so they leave it alone; otherwise the ETag would almost never match.
+public class CachingDateNightIdeaDao implements DateNightIdeaDaoInterface {
+
+    private static final String ALL_IDEAS_KEY = "all";
+    private static final String CATEGORY_KEY_PREFIX = "category:";
+
+    private final DateNightIdeaDaoInterface delegate;
+    private final int maxViews;
+    private final long ttlNanos;
+    private final Map<String, CachedView> views;
+    //The views being loaded right now, by key
+    private final Map<String, Loading> loading = new HashMap<>();
+    //Increased by every create, update, delete and reset. A view that was being loaded while one happened is not
+    //stored, because it may have been read before the write reached the database. Draws made during a load are
+    //applied to the loaded view instead (see Loading).
+    private long generation;
+    //Increased whenever what the views hold may have changed other than by a draw: every write and reset, and every
+    //time a view is loaded from the delegate, since the database may have been changed by something else since the
+    //last load.
+    //It starts from a random number so a version from before a restart, or from another instance, never matches.
+    private volatile long version = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    //maxViews of 0 switches the cache off and sends every call straight to the delegate
+    public CachingDateNightIdeaDao(DateNightIdeaDaoInterface delegate, int maxViews, Duration ttl) {
+        this.delegate = delegate;
+        this.maxViews = maxViews;
+        this.ttlNanos = ttl.toNanos();
+        //accessOrder = true keeps the least recently used view first, and removeEldestEntry evicts it once
+        //there are more than maxViews views
+        this.views = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedView> eldest) {
+                if (size() > CachingDateNightIdeaDao.this.maxViews) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    //A draw changes one idea's suggested flag, so that idea is updated inside the cached views
+    //instead of throwing the views away
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        Optional<DateNightIdea> idea = delegate.findRandomAvailableIdea(budgetCategory);
+        idea.ifPresent(this::replaceInViews);
+        return idea;
+    }
+
+    @Override
+    public List<DateNightIdea> findRandomAvailableIdeas(List<String> budgetCategories, int count) {
+        List<DateNightIdea> ideas = delegate.findRandomAvailableIdeas(budgetCategories, count);
+        ideas.forEach(this::replaceInViews);
+        return ideas;
+    }
+
+    //Per-user draws don't change the shared catalog, so nothing is invalidated
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        return delegate.findRandomAvailableIdeaForUser(userKey, budgetCategory);
+    }
+
+    @Override
+    public DateNightIdea create(DateNightIdea idea) {
+        DateNightIdea created = delegate.create(idea);
+        invalidate(created.getBudgetCategory());
+        return created;
+    }
+
+    @Override
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        List<DateNightIdea> created = delegate.createAll(ideas);
+        for (DateNightIdea idea : created) {
+            invalidate(idea.getBudgetCategory());
+        }
+        return created;
+    }
+
+    //The idea may have moved to another budget category, so both the old and the new category are invalidated
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        String oldCategory = cachedCategoryOf(id);
+        Optional<DateNightIdea> updated = delegate.update(id, idea);
+        invalidateEdited(oldCategory, updated);
+        return updated;
+    }
+
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        String oldCategory = cachedCategoryOf(id);
+        Optional<DateNightIdea> updated = delegate.patch(id, patch);
+        invalidateEdited(oldCategory, updated);
+        return updated;
+    }
+
+    @Override
+    public boolean delete(int id) {
+        String category = cachedCategoryOf(id);
+        boolean deleted = delegate.delete(id);
+        invalidate(category);
+        return deleted;
+    }
+
+    @Override
+    public void resetListOfIdeas() {
+        delegate.resetListOfIdeas();
+        invalidateAll();
+    }
+
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        delegate.resetListOfIdeasForUser(userKey);
+    }
+
+    @Override
+    public List<DateNightIdea> getAllIdeas() {
+        if (!isEnabled()) {
+            return delegate.getAllIdeas();
+        }
+        return Collections.unmodifiableList(Arrays.asList(view(null).ideas));
+    }
+
+    //Serialize the all-ideas view once and keep the bytes with it. A draw that changes the view clears the bytes.
+    @Override
+    public byte[] getAllIdeasJson(ObjectWriter ideaListWriter) {
+        if (!isEnabled()) {
+            return delegate.getAllIdeasJson(ideaListWriter);
+        }
+        CachedView view = view(null);
+        byte[] json = view.json;
+        if (json != null) {
+            return json;
+        }
+        int changesBefore = view.changes;
+        try {
+            json = ideaListWriter.writeValueAsBytes(Arrays.asList(view.ideas));
+        } catch (JsonProcessingException e) {
+            throw new DaoException("Unable to convert the date night ideas to JSON", e);
+        }
+        synchronized (view) {
+            //If a draw changed the view while it was being serialized, these bytes are already out of date
+            if (view.changes == changesBefore) {
+                view.json = json;
+            }
+        }
+        return json;
+    }
+
+    //Binary search the sorted view for the first idea after afterId, then copy out one page
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        if (!isEnabled()) {
+            return delegate.getIdeasPage(afterId, limit, budgetCategory);
+        }
+        DateNightIdea[] ideas = view(budgetCategory).ideas;
+        int low = 0;
+        int high = ideas.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ideas[middle].getId() <= afterId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return new ArrayList<>(Arrays.asList(ideas).subList(low, Math.min(low + limit, ideas.length)));
+    }
+
+    //Search results depend on the words searched for, so they are not cached
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        return delegate.searchIdeas(query, budgetCategory, unsuggestedOnly, offset, limit);
+    }
+
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        if (!isEnabled()) {
+            delegate.forEachIdea(budgetCategory, consumer);
+            return;
+        }
+        for (DateNightIdea idea : view(budgetCategory).ideas) {
+            consumer.accept(idea);
+        }
+    }
+
+    //Empty when the cache is off, because then nothing here sees the reads and the version couldn't be trusted
+    @Override
+    public Optional<String> catalogVersion() {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        return Optional.of(Long.toHexString(version));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int getCachedViews() {
+        return views.size();
+    }
+
+    private boolean isEnabled() {
+        return maxViews > 0;
+    }
+
+    //Return the cached view for the budget category (or all ideas when it is null), loading it on a miss.
+    //The load happens outside the lock so a slow query doesn't block other requests. A request that finds the view
+    //already being loaded waits for that load and is counted as a hit, since it didn't read the database.
+    private CachedView view(String budgetCategory) {
+        String key = keyFor(budgetCategory);
+        Loading load;
+        boolean loader = false;
+        synchronized (this) {
+            CachedView view = views.get(key);
+            if (view != null && System.nanoTime() - view.loadedAt < ttlNanos) {
+                hits.incrementAndGet();
+                return view;
+            }
+            if (view != null) {
+                //Expired views count as evictions too
+                views.remove(key);
+                evictions.incrementAndGet();
+            }
+            load = loading.get(key);
+            if (load != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                load = new Loading(generation);
+                loading.put(key, load);
+                loader = true;
+            }
+        }
+        if (!loader) {
+            try {
+                return load.result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        CachedView loaded;
+        try {
+            List<DateNightIdea> ideas = new ArrayList<>();
+            delegate.forEachIdea(budgetCategory, ideas::add);
+            loaded = new CachedView(ideas.toArray(new DateNightIdea[0]), System.nanoTime());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading.remove(key);
+            }
+            load.result.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            loading.remove(key);
+            if (generation == load.generation) {
+                for (DateNightIdea drawn : load.drawn) {
+                    replaceInView(loaded, drawn);
+                }
+                views.put(key, loaded);
+                version++;
+            }
+        }
+        load.result.complete(loaded);
+        return loaded;
+    }
+
+    //Put the drawn idea into the all-ideas view and its category view, so they show it as suggested, and remember
+    //it for those views if they are being loaded, since the load may have read the idea before it was drawn
+    private synchronized void replaceInViews(DateNightIdea idea) {
+        String categoryKey = keyFor(idea.getBudgetCategory());
+        replaceInView(views.get(ALL_IDEAS_KEY), idea);
+        replaceInView(views.get(categoryKey), idea);
+        for (String key : new String[]{ALL_IDEAS_KEY, categoryKey}) {
+            Loading load = loading.get(key);
+            if (load != null) {
+                load.drawn.add(idea);
+            }
+        }
+    }
+
+    private static void replaceInView(CachedView view, DateNightIdea idea) {
+        if (view == null) {
+            return;
+        }
+        int index = Arrays.binarySearch(view.ideas, idea, (first, second) -> Long.compare(first.getId(), second.getId()));
+        if (index >= 0) {
+            synchronized (view) {
+                view.ideas[index] = idea;
+                view.json = null;
+                view.changes++;
+            }
+        }
+    }
+
+    //Throw away the all-ideas view and the category's view. A null category means it isn't known,
+    //so every view is thrown away to be safe.
+    private synchronized void invalidate(String budgetCategory) {
+        if (budgetCategory == null) {
+            invalidateAll();
+            return;
+        }
+        generation++;
+        version++;
+        views.remove(ALL_IDEAS_KEY);
+        views.remove(keyFor(budgetCategory));
+    }
+
+    //After an edit, throw away the views of the category the idea was in and the one it is in now.
+    //Nothing changed when the idea wasn't found, and a version conflict never gets here.
+    private void invalidateEdited(String oldCategory, Optional<DateNightIdea> updated) {
+        if (updated.isEmpty()) {
+            return;
+        }
+        invalidate(oldCategory);
+        invalidate(updated.get().getBudgetCategory());
+    }
+
+    private synchronized void invalidateAll() {
+        generation++;
+        version++;
+        views.clear();
+    }
+
+    //Find which budget category an idea is in from the all-ideas view, or null if it isn't cached
+    private synchronized String cachedCategoryOf(long id) {
+        CachedView view = views.get(ALL_IDEAS_KEY);
+        if (view == null) {
+            return null;
+        }
+        for (DateNightIdea idea : view.ideas) {
+            if (idea.getId() == id) {
+                return idea.getBudgetCategory();
+            }
+        }
+        return null;
+    }
+
+    private static String keyFor(String budgetCategory) {
+        return budgetCategory == null ? ALL_IDEAS_KEY : CATEGORY_KEY_PREFIX + budgetCategory;
+    }
+
+    //A view being loaded. Other requests for the view wait on result. drawn collects the ideas drawn during the
+    //load, which are applied to the loaded view before it is stored. Only touched while holding the DAO's lock, apart
+    //from result.
+    private static final class Loading {
+        private final long generation;
+        private final List<DateNightIdea> drawn = new ArrayList<>();
+        private final CompletableFuture<CachedView> result = new CompletableFuture<>();
+
+        private Loading(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    //One cached list of ideas, sorted by id. The array is only changed when a draw swaps in an updated idea.
+    private static final class CachedView {
+        private final DateNightIdea[] ideas;
+        private final long loadedAt;
+        private volatile byte[] json;
+        private volatile int changes;
+
+        private CachedView(DateNightIdea[] ideas, long loadedAt) {
+            this.ideas = ideas;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package com.example.datenight.dao;
 
+import com.example.datenight.exception.DaoException;
 import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 //An interface defines a contract: any class that implements it must provide
 //implementations for all the methods inside. This allows you to separate the
@@ -14,11 +21,46 @@ public interface DateNightIdeaDaoInterface {
     //and categoryId (optionally). Optional indicates that it may or may not return data if all ideas have been used.
     Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory);
 
+    //Draw up to count different ideas at once from the listed budget categories and mark them all as suggested.
+    //The ideas are spread evenly over the categories; when one runs out, the others make up the difference.
+    //Fewer than count ideas are returned when there aren't enough left.
+    //This default draws one idea at a time, which is fine for DAOs that draw from memory. JdbcDateNightIdeaDao
+    //overrides it to draw every idea with one statement.
+    default List<DateNightIdea> findRandomAvailableIdeas(List<String> budgetCategories, int count) {
+        List<DateNightIdea> ideas = new ArrayList<>();
+        List<String> categoriesWithIdeas = new ArrayList<>(budgetCategories);
+        while (ideas.size() < count && !categoriesWithIdeas.isEmpty()) {
+            Iterator<String> categories = categoriesWithIdeas.iterator();
+            while (categories.hasNext() && ideas.size() < count) {
+                Optional<DateNightIdea> idea = findRandomAvailableIdea(categories.next());
+                if (idea.isPresent()) {
+                    ideas.add(idea.get());
+                } else {
+                    categories.remove();
+                }
+            }
+        }
+        return ideas;
+    }
+
+    //Find a random idea in the budget category that has not been suggested to this user yet. Each user
+    //(or browser session) keeps their own list, so one user's draws never use up ideas for anyone else.
+    Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory);
+
     //Create a date night idea
     DateNightIdea create(DateNightIdea idea);
 
-    //Update an existing date night idea
-    String update(int id, DateNightIdea idea);
+    //Create many date night ideas with a single statement and return them with their new ids.
+    //Either every idea in the list is saved or none are.
+    List<DateNightIdea> createAll(List<DateNightIdea> ideas);
+
+    //Replace the title, description, budget category and location of an idea and return it as it is now, with its
+    //new version. Empty means there is no idea with this id. When idea.getVersion() is set and the idea has been
+    //edited since that version, nothing is changed and an IdeaVersionConflictException is thrown.
+    Optional<DateNightIdea> update(int id, DateNightIdea idea);
+
+    //Change only the fields present in the patch. Returns and throws the same way as update.
+    Optional<DateNightIdea> patch(int id, IdeaPatch patch);
 
     //The below deletes a date night idea by its id.
     boolean delete(int id);
@@ -26,6 +68,39 @@ public interface DateNightIdeaDaoInterface {
     //Reset the list of ideas to make all ideas available again
     void resetListOfIdeas();
 
+    //Reset only this user's list of suggested ideas
+    void resetListOfIdeasForUser(String userKey);
+
     //Get all date night ideas
     List<DateNightIdea> getAllIdeas();
+
+    //Get all date night ideas already converted to a JSON array. A default method gives every implementation
+    //this behaviour for free; CachingDateNightIdeaDao overrides it to reuse the same bytes between requests.
+    default byte[] getAllIdeasJson(ObjectWriter ideaListWriter) {
+        try {
+            return ideaListWriter.writeValueAsBytes(getAllIdeas());
+        } catch (JsonProcessingException e) {
+            throw new DaoException("Unable to convert the date night ideas to JSON", e);
+        }
+    }
+
+    //A value that changes whenever what getAllIdeas, getIdeasPage or forEachIdea return may have changed, so callers
+    //can tell a client its copy of the catalog is still current without reading it. Empty means this DAO can't tell,
+    //which is the default; CachingDateNightIdeaDao knows because every change goes through it.
+    default Optional<String> catalogVersion() {
+        return Optional.empty();
+    }
+
+    //Get up to limit ideas with an id greater than afterId, ordered by id. budgetCategory is optional;
+    //when it is null, ideas from every budget category are returned.
+    List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory);
+
+    //Search the title, description and location of every idea, best matches first. Every word of the query must match
+    //the start of a word in the idea, so "pic park" finds "Picnic in the Park". budgetCategory is optional, and with
+    //unsuggestedOnly only ideas that can still be drawn from the shared list are returned.
+    List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit);
+
+    //Hand every idea (optionally only one budget category) to the consumer one at a time, ordered by id.
+    //Rows are read from the database in small batches, so memory use stays the same however large the catalog is.
+    void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer);
 }
@@ -0,0 +1,69 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+//DateNightIdeaRowMapper turns one row of a date_night_idea query into a DateNightIdea object.
+//JdbcTemplate calls mapRow once for every row while it reads straight from the JDBC ResultSet,
+//so no disconnected copy of the results (like SqlRowSet) is ever built.
+//
+//Looking a column up by name means searching the column list on every call. Instead, the column
+//positions are looked up once on the first row and reused for every row after it. Because of that,
+//a mapper remembers the layout of one query: create a new one for every query instead of sharing it.
+//
+//Only category_id is read from the row. The budget category name comes from BudgetCategory, which lets
+//INSERT ... RETURNING * be mapped without joining budget_category for the name.
+public class DateNightIdeaRowMapper implements RowMapper<DateNightIdea> {
+    private boolean columnsResolved;
+    private int idColumn;
+    private int titleColumn;
+    private int descriptionColumn;
+    private int categoryIdColumn;
+    private int locationColumn;
+    private int createdAtColumn;
+    private int suggestedColumn;
+    private int versionColumn;
+
+    @Override
+    public DateNightIdea mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (!columnsResolved) {
+            resolveColumns(rs);
+        }
+        DateNightIdea dateNightIdea = new DateNightIdea();
+        dateNightIdea.setId(rs.getLong(idColumn));
+        dateNightIdea.setTitle(rs.getString(titleColumn));
+        dateNightIdea.setDescription(rs.getString(descriptionColumn));
+        int categoryId = rs.getInt(categoryIdColumn);
+        dateNightIdea.setCategoryId((long) categoryId);
+        BudgetCategory.fromId(categoryId).ifPresent(category -> dateNightIdea.setBudgetCategory(category.getDisplayName()));
+        dateNightIdea.setLocation(rs.getString(locationColumn));
+        //Ensure that if modified later to null, we do not call Timestamp.toLocalDateTime().
+        //Timestamp.toLocalDateTime() cannot be called on null; it would throw a NullPointerException
+        Timestamp createdAt = rs.getTimestamp(createdAtColumn);
+        if (createdAt != null) {
+            dateNightIdea.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        dateNightIdea.setSuggested(rs.getBoolean(suggestedColumn));
+        dateNightIdea.setVersion(rs.getInt(versionColumn));
+        return dateNightIdea;
+    }
+
+    //Find the position of every column this mapper reads. findColumn throws an SQLException if a column is missing,
+    //which JdbcTemplate turns into a DataAccessException.
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        idColumn = rs.findColumn("id");
+        titleColumn = rs.findColumn("title");
+        descriptionColumn = rs.findColumn("description");
+        categoryIdColumn = rs.findColumn("category_id");
+        locationColumn = rs.findColumn("location");
+        createdAtColumn = rs.findColumn("created_at");
+        suggestedColumn = rs.findColumn("is_suggested");
+        versionColumn = rs.findColumn("version");
+        columnsResolved = true;
+    }
+}
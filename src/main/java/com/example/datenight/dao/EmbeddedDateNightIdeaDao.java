@@ -0,0 +1,771 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.dao.EmbeddedIdeaStore.StoredIdea;
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.exception.IdeaVersionConflictException;
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+//EmbeddedDateNightIdeaDao runs the app without PostgreSQL. The whole catalog is held in memory and every change is
+//written to an EmbeddedIdeaStore in a local directory, so it survives a restart. It is switched on with the embedded
+//profile (application-embedded.properties), which also stops Spring Boot from creating a DataSource.
+//
+//Ideas are suggested, reset and versioned exactly as in DateNight.sql: each budget category has an epoch, an idea is
+//suggested when its suggested epoch equals the epoch of its category, and a reset moves every category to a new epoch.
+//
+//How the catalog is held:
+//  - ideasById is an array indexed by idea id. Ids are handed out in order like a SERIAL column, so the array has few
+//    gaps, lists and pages come out in id order for free, and looking an idea up is one array read.
+//  - Each category has two IdPools: every idea in the category, and the ideas that can still be drawn. A pool keeps its
+//    ids in an int[], so a draw picks a random index in O(1), and removing an id moves the last id into its place.
+//
+//Everything is guarded by one ReentrantReadWriteLock. Reads share it; draws and edits take it alone, because a draw
+//changes the pools and appends to the store. The append is a write to the operating system, a few microseconds, so
+//draws are still far quicker than a round trip to PostgreSQL. Compaction runs on its own thread: it copies the catalog
+//under the read lock, writes the snapshot without any lock, and only takes the write lock to drop the part of the log
+//the snapshot holds. Only run one instance of the app per store directory.
+public class EmbeddedDateNightIdeaDao implements DateNightIdeaDaoInterface, AvailableIdeaCounter {
+    //The same limits as the columns in DateNight.sql
+    private static final int MAX_TITLE_LENGTH = 255;
+    private static final int MAX_LOCATION_LENGTH = 100;
+    //Only this many words of a search are used, the same as JdbcDateNightIdeaDao
+    private static final int MAX_SEARCH_TERMS = 8;
+    //Search ranks a word found in the title above one in the description or the location, with the weights ts_rank
+    //gives PostgreSQL's A, B and C labels by default
+    private static final double TITLE_WEIGHT = 1.0;
+    private static final double DESCRIPTION_WEIGHT = 0.4;
+    private static final double LOCATION_WEIGHT = 0.2;
+    //How many ideas forEachIdea copies while holding the read lock before handing them to the consumer
+    private static final int STREAM_CHUNK_SIZE = 500;
+    //How many random picks a per-user draw tries before it looks through the whole category for an idea the user
+    //hasn't seen, which only happens once the user has seen most of it
+    private static final int USER_DRAW_ATTEMPTS = 16;
+
+    private final EmbeddedIdeaStore store;
+    private final long compactAfterBytes;
+    //Writes snapshots off the draw path, one at a time
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("embedded-store-compactor").daemon().factory());
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private StoredIdea[] ideasById = new StoredIdea[64];
+    private int ideaCount;
+    private int lastId;
+    //Indexed by category id, so index 0 is unused. Epochs start at 1 like budget_category.epoch.
+    private int[] epochs = new int[BudgetCategory.values().length + 1];
+    private final IdPool[] categoryIds = new IdPool[epochs.length];
+    private final IdPool[] availableIds = new IdPool[epochs.length];
+    private final UserSuggestionTracker userSuggestionTracker = new UserSuggestionTracker();
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //The catalog is kept in directory. Once the change log is larger than compactAfterBytes it is folded into a new
+    //snapshot. With syncWrites every change is forced to disk before it returns. When the directory has no catalog
+    //yet, it is filled with the ideas from seedIdeas.
+    public EmbeddedDateNightIdeaDao(Path directory, long compactAfterBytes, boolean syncWrites, Supplier<List<DateNightIdea>> seedIdeas) {
+        this.store = new EmbeddedIdeaStore(directory, syncWrites);
+        this.compactAfterBytes = compactAfterBytes;
+        Arrays.fill(epochs, 1);
+        epochs[0] = 0;
+        Slots categorySlots = new Slots();
+        Slots availableSlots = new Slots();
+        for (int i = 1; i < epochs.length; i++) {
+            categoryIds[i] = new IdPool(categorySlots);
+            availableIds[i] = new IdPool(availableSlots);
+        }
+        boolean existed;
+        try {
+            existed = store.open(new Loader());
+        } catch (IOException e) {
+            throw new DaoException("Unable to read the embedded idea store in " + directory, e);
+        }
+        for (StoredIdea idea : ideasById) {
+            if (idea != null) {
+                addToPools(idea);
+            }
+        }
+        if (!existed) {
+            List<DateNightIdea> seed = seedIdeas.get();
+            createAll(seed);
+            log.info("Created the embedded idea store in {} with {} ideas", directory, seed.size());
+        } else {
+            log.info("Loaded {} date night ideas from the embedded idea store in {}", ideaCount, directory);
+        }
+    }
+
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        Optional<BudgetCategory> category = BudgetCategory.fromName(budgetCategory);
+        if (category.isEmpty()) {
+            return Optional.empty();
+        }
+        int categoryId = category.get().getId();
+        lock.writeLock().lock();
+        try {
+            IdPool available = availableIds[categoryId];
+            if (available.size() == 0) {
+                return Optional.empty();
+            }
+            int id = available.get(ThreadLocalRandom.current().nextInt(available.size()));
+            StoredIdea suggested = ideasById[id].suggestedIn(epochs[categoryId]);
+            try {
+                store.appendSuggest(id, suggested.suggestedEpoch());
+            } catch (IOException e) {
+                throw new DaoException("Unable to write to the embedded idea store", e);
+            }
+            available.remove(id);
+            ideasById[id] = suggested;
+            compactIfNeeded();
+            return Optional.of(toIdea(suggested));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Per-user draws only read the catalog; which ideas the user has seen is kept in memory, the same as with PostgreSQL
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        Optional<BudgetCategory> category = BudgetCategory.fromName(budgetCategory);
+        if (category.isEmpty()) {
+            return Optional.empty();
+        }
+        UserSuggestionTracker.History history = userSuggestionTracker.historyOf(userKey);
+        history.lock();
+        lock.readLock().lock();
+        try {
+            IdPool members = categoryIds[category.get().getId()];
+            int id = unseenId(members, history);
+            if (id < 0) {
+                return Optional.empty();
+            }
+            history.markSeen(id);
+            DateNightIdea idea = toIdea(ideasById[id]);
+            //For this user the idea has now been suggested, whatever the shared list says
+            idea.setSuggested(true);
+            return Optional.of(idea);
+        } finally {
+            lock.readLock().unlock();
+            history.unlock();
+        }
+    }
+
+    @Override
+    public DateNightIdea create(DateNightIdea idea) {
+        return createAll(List.of(idea)).get(0);
+    }
+
+    //Every idea is checked before anything is written, and all of them go into one frame of the log, so either all
+    //of them are saved or none are
+    @Override
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        if (ideas.isEmpty()) {
+            return List.of();
+        }
+        int[] categories = new int[ideas.size()];
+        for (int i = 0; i < categories.length; i++) {
+            DateNightIdea idea = ideas.get(i);
+            categories[i] = categoryIdOf(idea.getBudgetCategory());
+            checkColumns(idea.getTitle(), idea.getLocation());
+        }
+        LocalDateTime createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        lock.writeLock().lock();
+        try {
+            List<StoredIdea> created = new ArrayList<>(ideas.size());
+            for (int i = 0; i < categories.length; i++) {
+                DateNightIdea idea = ideas.get(i);
+                created.add(new StoredIdea(lastId + 1 + i, idea.getTitle(), idea.getDescription(), categories[i],
+                        idea.getLocation(), createdAt, 0, 1));
+            }
+            try {
+                store.appendPut(created);
+            } catch (IOException e) {
+                throw new DaoException("Unable to write to the embedded idea store", e);
+            }
+            List<DateNightIdea> result = new ArrayList<>(created.size());
+            for (StoredIdea idea : created) {
+                put(idea);
+                addToPools(idea);
+                result.add(toIdea(idea));
+            }
+            compactIfNeeded();
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        int categoryId = categoryIdOf(idea.getBudgetCategory());
+        return edit(id, idea.getVersion(),
+                current -> current.edited(idea.getTitle(), idea.getDescription(), categoryId, idea.getLocation()));
+    }
+
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        Integer categoryId = patch.hasBudgetCategory() ? categoryIdOf(patch.getBudgetCategory()) : null;
+        return edit(id, patch.getVersion(), current -> current.edited(
+                patch.hasTitle() ? patch.getTitle() : current.title(),
+                patch.hasDescription() ? patch.getDescription() : current.description(),
+                categoryId != null ? categoryId : current.categoryId(),
+                patch.hasLocation() ? patch.getLocation() : current.location()));
+    }
+
+    @Override
+    public boolean delete(int id) {
+        lock.writeLock().lock();
+        try {
+            StoredIdea current = find(id);
+            if (current == null) {
+                return false;
+            }
+            try {
+                store.appendDelete(id);
+            } catch (IOException e) {
+                throw new DaoException("Unable to write to the embedded idea store", e);
+            }
+            removeFromPools(current);
+            ideasById[id] = null;
+            ideaCount--;
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Move every category to its next epoch, the same as DateNight.sql. Every idea becomes available again, so each
+    //category's available pool is refilled from the list of all its ideas.
+    @Override
+    public void resetListOfIdeas() {
+        lock.writeLock().lock();
+        try {
+            int[] next = epochs.clone();
+            for (int i = 1; i < next.length; i++) {
+                next[i]++;
+            }
+            try {
+                store.appendEpochs(next);
+            } catch (IOException e) {
+                throw new DaoException("Unable to write to the embedded idea store", e);
+            }
+            epochs = next;
+            for (int i = 1; i < epochs.length; i++) {
+                availableIds[i].clear();
+                for (int j = 0; j < categoryIds[i].size(); j++) {
+                    availableIds[i].add(categoryIds[i].get(j));
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        userSuggestionTracker.reset(userKey);
+    }
+
+    @Override
+    public List<DateNightIdea> getAllIdeas() {
+        lock.readLock().lock();
+        try {
+            List<DateNightIdea> ideas = new ArrayList<>(ideaCount);
+            for (int id = 1; id <= lastId; id++) {
+                if (ideasById[id] != null) {
+                    ideas.add(toIdea(ideasById[id]));
+                }
+            }
+            return ideas;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        if (budgetCategory != null && !BudgetCategory.isKnown(budgetCategory)) {
+            return List.of();
+        }
+        int categoryId = budgetCategory == null ? 0 : BudgetCategory.fromName(budgetCategory).get().getId();
+        lock.readLock().lock();
+        try {
+            return page(afterId, limit, categoryId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Search every idea in memory. Like PostgreSQL, every word of the query must match the start of a word in the idea,
+    //and ideas are ranked by where their words were found. Unlike PostgreSQL, words aren't reduced to their stem, so
+    //"hiking" doesn't find "hike".
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        List<String> terms = searchTerms(query);
+        if (terms.isEmpty() || (budgetCategory != null && !BudgetCategory.isKnown(budgetCategory))) {
+            return List.of();
+        }
+        int categoryId = budgetCategory == null ? 0 : BudgetCategory.fromName(budgetCategory).get().getId();
+        List<RankedIdea> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int id = 1; id <= lastId; id++) {
+                StoredIdea idea = ideasById[id];
+                if (idea == null || (categoryId != 0 && idea.categoryId() != categoryId)
+                        || (unsuggestedOnly && isSuggested(idea))) {
+                    continue;
+                }
+                double rank = rank(idea, terms);
+                if (rank > 0) {
+                    matches.add(new RankedIdea(idea, rank));
+                }
+            }
+            matches.sort(Comparator.comparingDouble(RankedIdea::rank).reversed().thenComparingLong(match -> match.idea().id()));
+            List<DateNightIdea> ideas = new ArrayList<>();
+            for (int i = offset; i < matches.size() && ideas.size() < limit; i++) {
+                ideas.add(toIdea(matches.get(i).idea()));
+            }
+            return ideas;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //The read lock is only held while a chunk is copied, so a slow consumer never holds up draws and edits
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        if (budgetCategory != null && !BudgetCategory.isKnown(budgetCategory)) {
+            return;
+        }
+        int categoryId = budgetCategory == null ? 0 : BudgetCategory.fromName(budgetCategory).get().getId();
+        long afterId = 0;
+        while (true) {
+            List<DateNightIdea> chunk;
+            lock.readLock().lock();
+            try {
+                chunk = page(afterId, STREAM_CHUNK_SIZE, categoryId);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
+            chunk.forEach(consumer);
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+    }
+
+    //Categories with no ideas left are not in the map, the same as JdbcDateNightIdeaDao
+    @Override
+    public Map<String, Long> countAvailableIdeasByCategory() {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> counts = new HashMap<>();
+            for (BudgetCategory category : BudgetCategory.values()) {
+                int available = availableIds[category.getId()].size();
+                if (available > 0) {
+                    counts.put(category.getDisplayName(), (long) available);
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Fold the log into a snapshot so the next start only reads the snapshot. Spring calls this on shutdown.
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            compact();
+            store.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the embedded idea store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Apply one edit and return the idea as it is afterwards, with the same version checks as JdbcDateNightIdeaDao
+    private Optional<DateNightIdea> edit(int id, Integer expectedVersion, UnaryOperator<StoredIdea> change) {
+        lock.writeLock().lock();
+        try {
+            StoredIdea current = find(id);
+            if (current == null) {
+                return Optional.empty();
+            }
+            if (expectedVersion != null && expectedVersion != current.version()) {
+                throw new IdeaVersionConflictException(id, expectedVersion, current.version());
+            }
+            StoredIdea edited = change.apply(current);
+            if (edited.categoryId() != current.categoryId()) {
+                //Epochs are per category, so a moved idea gets the new category's epoch if it was suggested and 0 if
+                //it wasn't, the same as JdbcDateNightIdeaDao
+                edited = edited.suggestedIn(isSuggested(current) ? epochs[edited.categoryId()] : 0);
+            }
+            checkColumns(edited.title(), edited.location());
+            try {
+                store.appendPut(List.of(edited));
+            } catch (IOException e) {
+                throw new DaoException("Unable to write to the embedded idea store", e);
+            }
+            removeFromPools(current);
+            ideasById[id] = edited;
+            addToPools(edited);
+            compactIfNeeded();
+            return Optional.of(toIdea(edited));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Up to limit ideas after afterId in id order, from one category or (categoryId 0) all of them. Needs the read lock.
+    private List<DateNightIdea> page(long afterId, int limit, int categoryId) {
+        List<DateNightIdea> ideas = new ArrayList<>(Math.min(limit, ideaCount));
+        for (long id = Math.max(afterId, 0) + 1; id <= lastId && ideas.size() < limit; id++) {
+            StoredIdea idea = ideasById[(int) id];
+            if (idea != null && (categoryId == 0 || idea.categoryId() == categoryId)) {
+                ideas.add(toIdea(idea));
+            }
+        }
+        return ideas;
+    }
+
+    //A random idea from members that isn't in the user's history, or -1 when they have seen them all
+    private static int unseenId(IdPool members, UserSuggestionTracker.History history) {
+        if (members.size() == 0) {
+            return -1;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < USER_DRAW_ATTEMPTS; attempt++) {
+            int id = members.get(random.nextInt(members.size()));
+            if (!history.hasSeen(id)) {
+                return id;
+            }
+        }
+        //Pick uniformly among the unseen ids in one pass (reservoir sampling)
+        int chosen = -1;
+        int unseen = 0;
+        for (int i = 0; i < members.size(); i++) {
+            int id = members.get(i);
+            if (!history.hasSeen(id) && random.nextInt(++unseen) == 0) {
+                chosen = id;
+            }
+        }
+        return chosen;
+    }
+
+    private static List<String> searchTerms(String query) {
+        List<String> terms = new ArrayList<>();
+        if (query == null) {
+            return terms;
+        }
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && terms.size() < MAX_SEARCH_TERMS) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    //0 unless every term starts a word somewhere in the idea; otherwise each term adds the weight of the best field
+    //it was found in
+    private static double rank(StoredIdea idea, List<String> terms) {
+        double rank = 0;
+        for (String term : terms) {
+            double weight = startsAnyWord(idea.title(), term) ? TITLE_WEIGHT
+                    : startsAnyWord(idea.description(), term) ? DESCRIPTION_WEIGHT
+                    : startsAnyWord(idea.location(), term) ? LOCATION_WEIGHT : 0;
+            if (weight == 0) {
+                return 0;
+            }
+            rank += weight;
+        }
+        return rank;
+    }
+
+    //Compares the term with the text at the start of every word in place, so a search doesn't split or copy the text
+    //of every idea it looks at
+    private static boolean startsAnyWord(String text, String term) {
+        if (text == null) {
+            return false;
+        }
+        boolean inWord = false;
+        for (int i = 0; i <= text.length() - term.length(); i++) {
+            boolean wordCharacter = Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && !inWord && text.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+            inWord = wordCharacter;
+        }
+        return false;
+    }
+
+    //Replaces the NOT NULL and VARCHAR checks PostgreSQL would make
+    private static void checkColumns(String title, String location) {
+        if (title == null) {
+            throw new DaoException("An idea needs a title");
+        }
+        if (title.length() > MAX_TITLE_LENGTH) {
+            throw new DaoException("The title of an idea can be at most " + MAX_TITLE_LENGTH + " characters");
+        }
+        if (location != null && location.length() > MAX_LOCATION_LENGTH) {
+            throw new DaoException("The location of an idea can be at most " + MAX_LOCATION_LENGTH + " characters");
+        }
+    }
+
+    private static int categoryIdOf(String budgetCategory) {
+        return BudgetCategory.fromName(budgetCategory)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown budget category: " + budgetCategory))
+                .getId();
+    }
+
+    private StoredIdea find(long id) {
+        return id > 0 && id <= lastId ? ideasById[(int) id] : null;
+    }
+
+    private boolean isSuggested(StoredIdea idea) {
+        return idea.suggestedEpoch() == epochs[idea.categoryId()];
+    }
+
+    //Store an idea read from the store or just created. Only called while holding the write lock (or from the constructor).
+    private void put(StoredIdea idea) {
+        int id = Math.toIntExact(idea.id());
+        if (id >= ideasById.length) {
+            ideasById = Arrays.copyOf(ideasById, Math.max(ideasById.length * 2, id + 1));
+        }
+        if (ideasById[id] == null) {
+            ideaCount++;
+        }
+        ideasById[id] = idea;
+        lastId = Math.max(lastId, id);
+    }
+
+    private void addToPools(StoredIdea idea) {
+        int id = (int) idea.id();
+        categoryIds[idea.categoryId()].add(id);
+        if (!isSuggested(idea)) {
+            availableIds[idea.categoryId()].add(id);
+        }
+    }
+
+    private void removeFromPools(StoredIdea idea) {
+        int id = (int) idea.id();
+        categoryIds[idea.categoryId()].remove(id);
+        availableIds[idea.categoryId()].remove(id);
+    }
+
+    //Start a compaction in the background once the log has grown past compactAfterBytes. Only called while holding
+    //the write lock.
+    private void compactIfNeeded() {
+        try {
+            if (store.logSize() >= compactAfterBytes && compacting.compareAndSet(false, true)) {
+                compactor.execute(this::compactInBackground);
+            }
+        } catch (RejectedExecutionException e) {
+            //Closing, which compacts anyway
+            compacting.set(false);
+        } catch (IOException e) {
+            log.warn("Unable to read the size of the embedded idea store's log", e);
+        }
+    }
+
+    //Changes made while the snapshot is written are appended to the log as usual, after the point the catalog was
+    //copied at, so they are kept when the start of the log is dropped
+    private void compactInBackground() {
+        try {
+            List<StoredIdea> ideas;
+            int[] snapshotEpochs;
+            long snapshotLastId;
+            long logPosition;
+            lock.readLock().lock();
+            try {
+                ideas = storedIdeas();
+                snapshotEpochs = epochs.clone();
+                snapshotLastId = lastId;
+                logPosition = store.logSize();
+            } finally {
+                lock.readLock().unlock();
+            }
+            store.writeSnapshot(snapshotEpochs, snapshotLastId, ideas);
+            lock.writeLock().lock();
+            try {
+                store.dropLogBefore(logPosition);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            //The log still holds every change, so nothing is lost; compaction is tried again after the next change
+            log.warn("Unable to compact the embedded idea store", e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    //Only called while holding the write lock, once the compactor has stopped
+    private void compact() throws IOException {
+        store.writeSnapshot(epochs, lastId, storedIdeas());
+        store.dropLogBefore(store.logSize());
+    }
+
+    //Every idea, in id order. Needs the read lock.
+    private List<StoredIdea> storedIdeas() {
+        List<StoredIdea> ideas = new ArrayList<>(ideaCount);
+        for (StoredIdea idea : ideasById) {
+            if (idea != null) {
+                ideas.add(idea);
+            }
+        }
+        return ideas;
+    }
+
+    private DateNightIdea toIdea(StoredIdea stored) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(stored.id());
+        idea.setTitle(stored.title());
+        idea.setDescription(stored.description());
+        idea.setBudgetCategory(BudgetCategory.fromId(stored.categoryId()).map(BudgetCategory::getDisplayName).orElse(null));
+        idea.setCategoryId((long) stored.categoryId());
+        idea.setLocation(stored.location());
+        idea.setCreatedAt(stored.createdAt());
+        idea.setSuggested(isSuggested(stored));
+        idea.setVersion(stored.version());
+        return idea;
+    }
+
+    private record RankedIdea(StoredIdea idea, double rank) {
+    }
+
+    //Rebuilds the catalog from what the store hands over when it is opened
+    private final class Loader implements EmbeddedIdeaStore.Contents {
+        @Override
+        public void epochs(int[] stored) {
+            System.arraycopy(stored, 0, epochs, 0, Math.min(stored.length, epochs.length));
+        }
+
+        @Override
+        public void lastId(long id) {
+            lastId = Math.max(lastId, Math.toIntExact(id));
+        }
+
+        @Override
+        public void put(StoredIdea idea) {
+            EmbeddedDateNightIdeaDao.this.put(idea);
+        }
+
+        @Override
+        public void delete(long id) {
+            if (find(id) != null) {
+                ideasById[(int) id] = null;
+                ideaCount--;
+            }
+        }
+
+        @Override
+        public void suggest(long id, int epoch) {
+            StoredIdea idea = find(id);
+            if (idea != null) {
+                ideasById[(int) id] = idea.suggestedIn(epoch);
+            }
+        }
+    }
+
+    //Where each id sits in its IdPool, indexed by id (-1 when it isn't in one). An idea is only in one category at a
+    //time, so the pools of all four categories share one Slots: four bytes per idea rather than a map entry.
+    private static final class Slots {
+        private int[] positions = new int[0];
+
+        int get(int id) {
+            return id < positions.length ? positions[id] : -1;
+        }
+
+        void set(int id, int position) {
+            if (id >= positions.length) {
+                int oldLength = positions.length;
+                positions = Arrays.copyOf(positions, Math.max(oldLength * 2, id + 64));
+                Arrays.fill(positions, oldLength, positions.length, -1);
+            }
+            positions[id] = position;
+        }
+    }
+
+    //A set of idea ids in an int[], so a random one can be picked in O(1)
+    private static final class IdPool {
+        private final Slots slots;
+        private int[] ids = new int[16];
+        private int size;
+
+        IdPool(Slots slots) {
+            this.slots = slots;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return ids[index];
+        }
+
+        void add(int id) {
+            if (slots.get(id) >= 0) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            slots.set(id, size);
+            ids[size++] = id;
+        }
+
+        //Move the last id into the removed id's place
+        void remove(int id) {
+            int position = slots.get(id);
+            if (position < 0 || position >= size || ids[position] != id) {
+                return;
+            }
+            int last = ids[--size];
+            ids[position] = last;
+            slots.set(last, position);
+            slots.set(id, -1);
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                slots.set(ids[i], -1);
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.datenight.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+//EmbeddedIdeaStore keeps the catalog of EmbeddedDateNightIdeaDao on disk, in two files in one directory:
+//  - catalog.snapshot holds every idea, the epoch of each budget category and the last id handed out, at one point in
+//    time. It is read through a memory-mapped buffer when the app starts, so loading it is a single pass over the file.
+//  - catalog.log holds every change made since the snapshot, appended as it happens. Each append is one frame
+//    (length, CRC32, records) written with one write call. A frame cut short by a crash fails its length or checksum
+//    and is dropped whole, so createAll, which writes all of its ideas in one frame, is kept completely or not at all.
+//
+//Every record holds absolute values (the whole idea, the new epochs) rather than changes, so replaying the log over a
+//snapshot that already contains part of it gives the same result. That keeps compaction simple: write a new snapshot
+//next to the old one, move it into place, then drop the part of the log it holds. A crash between those steps only
+//means some of the log is replayed twice.
+//
+//With syncWrites every append is forced to disk before it returns. Without it an append is a plain write: it survives
+//the app being killed, because the operating system already has it, but the last changes are lost if the machine
+//loses power. Snapshots and the log that replaces one are always forced.
+//Not thread-safe. writeSnapshot only touches the snapshot files, so EmbeddedDateNightIdeaDao runs it on its own
+//thread; everything else is called while holding the DAO's write lock.
+final class EmbeddedIdeaStore {
+    private static final String SNAPSHOT_FILE = "catalog.snapshot";
+    private static final String LOG_FILE = "catalog.log";
+    private static final int SNAPSHOT_MAGIC = 0x444E4931;
+    private static final int FRAME_HEADER_BYTES = 8;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte SUGGEST = 3;
+    private static final byte EPOCHS = 4;
+
+    private final Path directory;
+    private final boolean syncWrites;
+    private FileChannel log;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    //What the store holds, handed over one record at a time by open()
+    interface Contents {
+        void epochs(int[] epochs);
+
+        void lastId(long id);
+
+        void put(StoredIdea idea);
+
+        void delete(long id);
+
+        void suggest(long id, int epoch);
+    }
+
+    //One idea as it is stored. categoryId is a BudgetCategory id; createdAt may be null.
+    record StoredIdea(long id, String title, String description, int categoryId, String location,
+                      LocalDateTime createdAt, int suggestedEpoch, int version) {
+
+        StoredIdea suggestedIn(int epoch) {
+            return new StoredIdea(id, title, description, categoryId, location, createdAt, epoch, version);
+        }
+
+        //The idea after an edit: the given columns, and the next version
+        StoredIdea edited(String title, String description, int categoryId, String location) {
+            return new StoredIdea(id, title, description, categoryId, location, createdAt, suggestedEpoch, version + 1);
+        }
+    }
+
+    EmbeddedIdeaStore(Path directory, boolean syncWrites) {
+        this.directory = directory;
+        this.syncWrites = syncWrites;
+    }
+
+    //Read the snapshot and then the log into contents, and get ready to append. A torn frame at the end of the log is
+    //cut off. Returns false when the directory held no catalog yet.
+    boolean open(Contents contents) throws IOException {
+        Files.createDirectories(directory);
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        Path logPath = directory.resolve(LOG_FILE);
+        boolean existed = Files.exists(snapshotPath) || (Files.exists(logPath) && Files.size(logPath) > 0);
+        if (Files.exists(snapshotPath)) {
+            readSnapshot(snapshotPath, contents);
+        }
+        long validLength = 0;
+        if (Files.exists(logPath)) {
+            validLength = replayLog(ByteBuffer.wrap(Files.readAllBytes(logPath)), contents);
+        }
+        //Readable too, so compaction can copy what was appended after its snapshot
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (log.size() > validLength) {
+            logger.warn("Dropping {} bytes of unfinished changes at the end of {}", log.size() - validLength, logPath);
+            log.truncate(validLength);
+        }
+        log.position(validLength);
+        return existed;
+    }
+
+    void appendPut(List<StoredIdea> ideas) throws IOException {
+        Encoder encoder = new Encoder();
+        for (StoredIdea idea : ideas) {
+            encoder.putByte(PUT);
+            encoder.putIdea(idea);
+        }
+        append(encoder);
+    }
+
+    void appendDelete(long id) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.putByte(DELETE);
+        encoder.putLong(id);
+        append(encoder);
+    }
+
+    void appendSuggest(long id, int epoch) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.putByte(SUGGEST);
+        encoder.putLong(id);
+        encoder.putInt(epoch);
+        append(encoder);
+    }
+
+    void appendEpochs(int[] epochs) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.putByte(EPOCHS);
+        encoder.putEpochs(epochs);
+        append(encoder);
+    }
+
+    long logSize() throws IOException {
+        return log.size();
+    }
+
+    //Replace the snapshot with the given catalog. The new snapshot is written to a temporary file and forced to disk
+    //before it is moved over the old one, so there is always one complete snapshot. The log is left as it is; call
+    //dropLogBefore with the log size the catalog was taken at.
+    void writeSnapshot(int[] epochs, long lastId, Collection<StoredIdea> ideas) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.putInt(SNAPSHOT_MAGIC);
+        encoder.putEpochs(epochs);
+        encoder.putLong(lastId);
+        encoder.putInt(ideas.size());
+        for (StoredIdea idea : ideas) {
+            encoder.putIdea(idea);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(encoder.bytes(), 0, encoder.length());
+        encoder.putInt((int) crc.getValue());
+
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(encoder.bytes(), 0, encoder.length());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //Remove the first position bytes of the log, which a new snapshot already holds. What was appended after them is
+    //copied to a new log that is forced to disk and moved over the old one, so a crash leaves one or the other.
+    void dropLogBefore(long position) throws IOException {
+        Path logPath = directory.resolve(LOG_FILE);
+        long tail = log.size() - position;
+        if (tail == 0) {
+            log.truncate(0);
+            log.position(0);
+            log.force(true);
+            return;
+        }
+        Path temporary = directory.resolve(LOG_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long copied = 0;
+            while (copied < tail) {
+                copied += log.transferTo(position + copied, tail - copied, channel);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, logPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.close();
+        log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log.position(log.size());
+    }
+
+    void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    private void append(Encoder records) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(records.bytes(), 0, records.length());
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + records.length());
+        frame.putInt(records.length()).putInt((int) crc.getValue()).put(records.bytes(), 0, records.length()).flip();
+        long start = log.position();
+        try {
+            while (frame.hasRemaining()) {
+                log.write(frame);
+            }
+        } catch (IOException e) {
+            //Don't leave half a frame for the next append to follow
+            log.truncate(start);
+            log.position(start);
+            throw e;
+        }
+        if (syncWrites) {
+            log.force(false);
+        }
+    }
+
+    private void readSnapshot(Path snapshotPath, Contents contents) throws IOException {
+        MappedByteBuffer snapshot;
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (snapshot.limit() < 8 || snapshot.getInt(0) != SNAPSHOT_MAGIC) {
+            throw new IOException(snapshotPath + " is not a catalog snapshot");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(snapshot.slice(0, snapshot.limit() - 4));
+        if ((int) crc.getValue() != snapshot.getInt(snapshot.limit() - 4)) {
+            throw new IOException(snapshotPath + " is damaged");
+        }
+        snapshot.position(4);
+        contents.epochs(readEpochs(snapshot));
+        contents.lastId(snapshot.getLong());
+        int count = snapshot.getInt();
+        for (int i = 0; i < count; i++) {
+            contents.put(readIdea(snapshot));
+        }
+    }
+
+    //Apply every complete frame and return the length of the log up to the end of the last one
+    private long replayLog(ByteBuffer buffer, Contents contents) {
+        while (buffer.remaining() >= FRAME_HEADER_BYTES) {
+            int frameStart = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                return frameStart;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(buffer.position(), length));
+            if ((int) crc.getValue() != checksum) {
+                return frameStart;
+            }
+            ByteBuffer records = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            while (records.hasRemaining()) {
+                switch (records.get()) {
+                    case PUT -> contents.put(readIdea(records));
+                    case DELETE -> contents.delete(records.getLong());
+                    case SUGGEST -> contents.suggest(records.getLong(), records.getInt());
+                    case EPOCHS -> contents.epochs(readEpochs(records));
+                    default -> {
+                        //A frame with a valid checksum always holds known records, so this file wasn't written by us
+                        logger.warn("Unknown record in {}, ignoring the rest of its frame", LOG_FILE);
+                        records.position(records.limit());
+                    }
+                }
+            }
+        }
+        return buffer.position();
+    }
+
+    private static int[] readEpochs(ByteBuffer buffer) {
+        int[] epochs = new int[buffer.getInt()];
+        for (int i = 0; i < epochs.length; i++) {
+            epochs[i] = buffer.getInt();
+        }
+        return epochs;
+    }
+
+    private static StoredIdea readIdea(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        int categoryId = buffer.get();
+        int version = buffer.getInt();
+        int suggestedEpoch = buffer.getInt();
+        long createdSeconds = buffer.getLong();
+        int createdNanos = buffer.getInt();
+        LocalDateTime createdAt = createdNanos < 0 ? null : LocalDateTime.ofEpochSecond(createdSeconds, createdNanos, ZoneOffset.UTC);
+        String title = readString(buffer);
+        String description = readString(buffer);
+        String location = readString(buffer);
+        return new StoredIdea(id, title, description, categoryId, location, createdAt, suggestedEpoch, version);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //A growable byte array the records are written into before they go to disk in one write
+    private static final class Encoder {
+        private ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        void putByte(byte value) {
+            ensure(1).put(value);
+        }
+
+        void putInt(int value) {
+            ensure(4).putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8).putLong(value);
+        }
+
+        void putEpochs(int[] epochs) {
+            putInt(epochs.length);
+            for (int epoch : epochs) {
+                putInt(epoch);
+            }
+        }
+
+        void putIdea(StoredIdea idea) {
+            putLong(idea.id());
+            putByte((byte) idea.categoryId());
+            putInt(idea.version());
+            putInt(idea.suggestedEpoch());
+            LocalDateTime createdAt = idea.createdAt();
+            putLong(createdAt == null ? 0 : createdAt.toEpochSecond(ZoneOffset.UTC));
+            putInt(createdAt == null ? -1 : createdAt.getNano());
+            putString(idea.title());
+            putString(idea.description());
+            putString(idea.location());
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length).put(bytes);
+        }
+
+        byte[] bytes() {
+            return buffer.array();
+        }
+
+        int length() {
+            return buffer.position();
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            return buffer;
+        }
+    }
+}
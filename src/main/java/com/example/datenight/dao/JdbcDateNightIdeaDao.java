@@ -1,37 +1,189 @@
 package com.example.datenight.dao;
 
 import com.example.datenight.exception.DaoException;
+import com.example.datenight.exception.IdeaVersionConflictException;
+import com.example.datenight.model.BudgetCategory;
 import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
-import java.sql.Timestamp;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 //Component marks the class as a Spring-managed bean. Spring will automatically
 //create an instance and allow it to be autowired into the service.
+//It isn't created with the embedded profile, which runs without a database (see EmbeddedDateNightIdeaDao).
 @Component
-public class JdbcDateNightIdeaDao implements DateNightIdeaDaoInterface{
+@Profile("!embedded")
+public class JdbcDateNightIdeaDao implements DateNightIdeaDaoInterface, AvailableIdeaCounter{
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
     private Logger log = LoggerFactory.getLogger(getClass());
 
+    //Which query is used to pick a random idea. ORDER_BY_RANDOM is the original behaviour and is kept as
+    //the default so the DAO works against a database that does not have the random_key column yet.
+    @Value("${datenight.dao.random-strategy:ORDER_BY_RANDOM}")
+    private RandomSelectionStrategy randomSelectionStrategy = RandomSelectionStrategy.ORDER_BY_RANDOM;
+
+    //How long PostgreSQL may run each kind of statement before the driver cancels it, in seconds (0 means no limit).
+    //A draw or a read that takes longer than this is stuck behind a lock or a bad plan, and failing it frees its
+    //connection for the requests queued behind it. Streams aren't limited: they last as long as the client keeps reading.
+    @Value("${datenight.dao.statement-timeout.draw-seconds:2}")
+    private int drawTimeoutSeconds = 2;
+    @Value("${datenight.dao.statement-timeout.read-seconds:10}")
+    private int readTimeoutSeconds = 10;
+    @Value("${datenight.dao.statement-timeout.write-seconds:5}")
+    private int writeTimeoutSeconds = 5;
+    @Value("${datenight.dao.statement-timeout.bulk-write-seconds:60}")
+    private int bulkWriteTimeoutSeconds = 60;
+    //One JdbcTemplate per kind of statement, sharing the same DataSource and only differing in their query timeout.
+    //Until applyStatementTimeouts fills it, every statement goes through jdbcTemplate.
+    private final Map<StatementKind, JdbcTemplate> timedTemplates = new EnumMap<>(StatementKind.class);
+
+    //An idea is suggested when its suggested_epoch equals the current epoch of its budget category (see DateNight.sql).
+    //Both draw queries join budget_category to find the current epoch and stamp the chosen idea with it.
+    //Categories are always compared by their category_id, which the DAO looks up in BudgetCategory before querying.
+
+    //Draws that run at the same time, in this instance or another, must not pick the same idea. Every query below locks
+    //the rows it picks with FOR NO KEY UPDATE OF d SKIP LOCKED, so a concurrent draw skips a row another draw is about
+    //to mark instead of waiting for it and then marking it again. A row that was marked and committed after the draw's
+    //snapshot is re-checked when it is locked, found to be suggested, and skipped as well. PostgreSQL doesn't allow a
+    //locking clause on the arms of a UNION ALL, so those arms lock inside a subquery of their own.
+
+    //The original query sorts every unsuggested row in the category by RANDOM() and keeps the first one
+    private static final String ORDER_BY_RANDOM_SQL = "WITH next_idea AS(SELECT d.id, c.epoch FROM date_night_idea d " +
+            "JOIN budget_category c ON c.id = d.category_id " +
+            "WHERE d.category_id = ? AND d.suggested_epoch <> c.epoch ORDER BY RANDOM() LIMIT 1 FOR NO KEY UPDATE OF d SKIP LOCKED) " +
+            "UPDATE date_night_idea d SET suggested_epoch = n.epoch FROM next_idea n WHERE d.id = n.id RETURNING d.*, TRUE AS is_suggested";
+
+    //The random key query reads the first unsuggested row at or after a random point in the index. If the random
+    //point is past the last unsuggested row, the second half of the UNION ALL wraps around to the start. PostgreSQL
+    //stops as soon as it has one row, so the second half only runs when the first half finds nothing.
+    //The chosen row gets a new random_key so ideas are reshuffled every time they are drawn.
+    //next_idea walks idx_date_night_idea_category_random_key and reads each row it passes from the table, because
+    //locking a row needs the row itself.
+    private static final String RANDOM_KEY_SQL = "WITH next_idea AS(" +
+            "SELECT * FROM (SELECT d.id, c.epoch FROM date_night_idea d JOIN budget_category c ON c.id = d.category_id " +
+            "WHERE d.category_id = ? AND d.suggested_epoch <> c.epoch AND d.random_key >= ? ORDER BY d.random_key LIMIT 1 " +
+            "FOR NO KEY UPDATE OF d SKIP LOCKED) after_key " +
+            "UNION ALL " +
+            "SELECT * FROM (SELECT d.id, c.epoch FROM date_night_idea d JOIN budget_category c ON c.id = d.category_id " +
+            "WHERE d.category_id = ? AND d.suggested_epoch <> c.epoch AND d.random_key < ? ORDER BY d.random_key LIMIT 1 " +
+            "FOR NO KEY UPDATE OF d SKIP LOCKED) before_key " +
+            "LIMIT 1) " +
+            "UPDATE date_night_idea d SET suggested_epoch = n.epoch, random_key = RANDOM() FROM next_idea n WHERE d.id = n.id RETURNING d.*, TRUE AS is_suggested";
+
+    //Batch draws pick up to ? ideas from each requested category in one LATERAL subquery per category, numbering
+    //each category's picks 1, 2, 3... Sorting the picks by that number takes the first pick of every category, then
+    //the second, and so on, which spreads the batch evenly and lets other categories fill in for one that runs out.
+    //Every chosen idea is marked as suggested by the same UPDATE, so the whole batch is one statement.
+    private static final String BATCH_ORDER_BY_RANDOM_SQL = "WITH candidates AS(SELECT p.id, c.epoch, p.pick FROM budget_category c " +
+            "CROSS JOIN LATERAL (SELECT r.id, ROW_NUMBER() OVER () AS pick FROM " +
+            "(SELECT d.id FROM date_night_idea d WHERE d.category_id = c.id AND d.suggested_epoch <> c.epoch ORDER BY RANDOM() LIMIT ? " +
+            "FOR NO KEY UPDATE OF d SKIP LOCKED) r) p " +
+            "WHERE c.id = ANY(?::smallint[])), " +
+            "next_ideas AS(SELECT id, epoch FROM candidates ORDER BY pick, RANDOM() LIMIT ?) " +
+            "UPDATE date_night_idea d SET suggested_epoch = n.epoch FROM next_ideas n WHERE d.id = n.id RETURNING d.*, TRUE AS is_suggested";
+    //The same, reading each category's picks from a random point in the (category_id, random_key) index
+    private static final String BATCH_RANDOM_KEY_SQL = "WITH candidates AS(SELECT p.id, c.epoch, p.pick FROM budget_category c " +
+            "CROSS JOIN LATERAL (SELECT r.id, ROW_NUMBER() OVER () AS pick FROM (" +
+            "SELECT * FROM (SELECT d.id FROM date_night_idea d WHERE d.category_id = c.id AND d.suggested_epoch <> c.epoch AND d.random_key >= ? " +
+            "ORDER BY d.random_key LIMIT ? FOR NO KEY UPDATE OF d SKIP LOCKED) after_key " +
+            "UNION ALL " +
+            "SELECT * FROM (SELECT d.id FROM date_night_idea d WHERE d.category_id = c.id AND d.suggested_epoch <> c.epoch AND d.random_key < ? " +
+            "ORDER BY d.random_key LIMIT ? FOR NO KEY UPDATE OF d SKIP LOCKED) before_key " +
+            "LIMIT ?) r) p " +
+            "WHERE c.id = ANY(?::smallint[])), " +
+            "next_ideas AS(SELECT id, epoch FROM candidates ORDER BY pick, RANDOM() LIMIT ?) " +
+            "UPDATE date_night_idea d SET suggested_epoch = n.epoch, random_key = RANDOM() FROM next_ideas n WHERE d.id = n.id RETURNING d.*, TRUE AS is_suggested";
+
+    //Per-user draws only read date_night_idea. The ids the user has already seen are passed in as an array,
+    //so the query skips them without touching the shared suggestion epochs.
+    private static final String USER_ORDER_BY_RANDOM_SQL = "SELECT * FROM date_night_idea_status WHERE category_id = ? AND id <> ALL(?) ORDER BY RANDOM() LIMIT 1";
+    private static final String USER_RANDOM_KEY_SQL =
+            "(SELECT * FROM date_night_idea_status WHERE category_id = ? AND random_key >= ? AND id <> ALL(?) ORDER BY random_key LIMIT 1) " +
+            "UNION ALL " +
+            "(SELECT * FROM date_night_idea_status WHERE category_id = ? AND random_key < ? AND id <> ALL(?) ORDER BY random_key LIMIT 1) " +
+            "LIMIT 1";
+
+    //Searches use the GIN index on search_vector to find the matching ideas, then rank only those. Title matches count
+    //the most because of the weights set in DateNight.sql.
+    private static final String SEARCH_SQL = "SELECT d.id, d.title, d.description, d.category_id, d.location, d.created_at, d.version, " +
+            "(d.suggested_epoch = c.epoch) AS is_suggested FROM date_night_idea d JOIN budget_category c ON c.id = d.category_id " +
+            "WHERE d.search_vector @@ to_tsquery('english', ?)";
+    private static final String SEARCH_ORDER_SQL = " ORDER BY ts_rank(d.search_vector, to_tsquery('english', ?)) DESC, d.id OFFSET ? LIMIT ?";
+    //Each combination of filters is its own fixed statement rather than one with "? IS NULL OR ..." conditions, so
+    //once PostgreSQL has prepared them each keeps a plan that uses the right index. Indexed by (category ? 2 : 0) + (unsuggested ? 1 : 0).
+    private static final String[] SEARCH_STATEMENTS = {
+            SEARCH_SQL + SEARCH_ORDER_SQL,
+            SEARCH_SQL + " AND d.suggested_epoch <> c.epoch" + SEARCH_ORDER_SQL,
+            SEARCH_SQL + " AND d.category_id = ?" + SEARCH_ORDER_SQL,
+            SEARCH_SQL + " AND d.category_id = ? AND d.suggested_epoch <> c.epoch" + SEARCH_ORDER_SQL};
+    //Edits return the changed row with is_suggested worked out the same way as the view, so the caller gets the whole
+    //idea with its new version without reading it again. search_vector is left out of RETURNING, like in the view.
+    private static final String UPDATED_IDEA_SQL = " RETURNING id, title, description, category_id, location, created_at, suggested_epoch, version) " +
+            "SELECT u.*, (u.suggested_epoch = c.epoch) AS is_suggested FROM updated u JOIN budget_category c ON c.id = u.category_id";
+    //See moveToCategory
+    private static final String MOVED_SUGGESTED_EPOCH_SQL = "suggested_epoch = CASE WHEN category_id = ? THEN suggested_epoch " +
+            "WHEN suggested_epoch = (SELECT epoch FROM budget_category WHERE id = date_night_idea.category_id) " +
+            "THEN (SELECT epoch FROM budget_category WHERE id = ?) ELSE 0 END";
+    //Only this many words of a search are used, so a huge query can't make PostgreSQL do a huge amount of work
+    private static final int MAX_SEARCH_TERMS = 8;
+
+    //The SQLState PostgreSQL sends when a statement is cancelled, as it is when its query timeout runs out
+    private static final String QUERY_CANCELED_STATE = "57014";
+
+    //How many rows PostgreSQL sends per round trip while streaming ideas. Only this many rows are held in memory at once.
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    //Remembers which ideas each user has seen. It lives in memory, so per-user history starts over when the app restarts.
+    private final UserSuggestionTracker userSuggestionTracker = new UserSuggestionTracker();
+
     //Create a method to find a random idea available
     @Override
     public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        //A category that doesn't exist has no ideas, so there is nothing to ask the database
+        Optional<BudgetCategory> category = BudgetCategory.fromName(budgetCategory);
+        if(category.isEmpty()){
+            return Optional.empty();
+        }
+        int categoryId = category.get().getId();
         DateNightIdea idea = null;
-        String sql = "WITH next_idea AS(SELECT * FROM date_night_idea WHERE budget_category = ? AND is_suggested=FALSE ORDER BY RANDOM() LIMIT 1) " +
-                "UPDATE date_night_idea SET is_suggested = TRUE WHERE id IN (SELECT id FROM next_idea) RETURNING *";
         try{
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, budgetCategory);
-            if(results.next()){
-                idea = mapRowToIdea(results);
+            List<DateNightIdea> results;
+            if(randomSelectionStrategy == RandomSelectionStrategy.RANDOM_KEY){
+                //The random starting point is generated in Java so PostgreSQL only has to walk the
+                //(category_id, random_key) index from that point instead of sorting the whole category
+                double startKey = ThreadLocalRandom.current().nextDouble();
+                results = jdbc(StatementKind.DRAW).query(RANDOM_KEY_SQL, new DateNightIdeaRowMapper(), categoryId, startKey, categoryId, startKey);
+            } else {
+                results = jdbc(StatementKind.DRAW).query(ORDER_BY_RANDOM_SQL, new DateNightIdeaRowMapper(), categoryId);
+            }
+            if(!results.isEmpty()){
+                idea = results.get(0);
             }
         } catch (CannotGetJdbcConnectionException e){
             throw new DaoException("Unable to connect to the server or database", e);
@@ -40,15 +192,77 @@ public class JdbcDateNightIdeaDao implements DateNightIdeaDaoInterface{
         //contains nothing (an empty Optional) if it is null
     }
 
+    //Create a method to draw several ideas with one statement and one round trip
+    @Override
+    public List<DateNightIdea> findRandomAvailableIdeas(List<String> budgetCategories, int count) {
+        Integer[] categoryIds = budgetCategories.stream()
+                .map(BudgetCategory::fromName)
+                .flatMap(Optional::stream)
+                .map(BudgetCategory::getId)
+                .distinct()
+                .toArray(Integer[]::new);
+        if(categoryIds.length == 0 || count < 1){
+            return List.of();
+        }
+        try{
+            if(randomSelectionStrategy == RandomSelectionStrategy.RANDOM_KEY){
+                double startKey = ThreadLocalRandom.current().nextDouble();
+                return jdbc(StatementKind.DRAW).query(BATCH_RANDOM_KEY_SQL, new DateNightIdeaRowMapper(),
+                        startKey, count, startKey, count, count, categoryIds, count);
+            }
+            return jdbc(StatementKind.DRAW).query(BATCH_ORDER_BY_RANDOM_SQL, new DateNightIdeaRowMapper(), count, categoryIds, count);
+        } catch (CannotGetJdbcConnectionException e){
+            throw new DaoException("Unable to connect to the server or database", e);
+        }
+    }
+
+    //Create a method to find a random idea this user hasn't seen yet
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        Optional<BudgetCategory> category = BudgetCategory.fromName(budgetCategory);
+        if(category.isEmpty()){
+            return Optional.empty();
+        }
+        int categoryId = category.get().getId();
+        DateNightIdea idea = null;
+        UserSuggestionTracker.History history = userSuggestionTracker.historyOf(userKey);
+        //Holding the user's lock stops a double click from showing the same user the same idea twice.
+        //Other users have their own lock, so they are never blocked by this.
+        history.lock();
+        try{
+            long[] seenIds = history.seenIds();
+            List<DateNightIdea> results;
+            if(randomSelectionStrategy == RandomSelectionStrategy.RANDOM_KEY){
+                double startKey = ThreadLocalRandom.current().nextDouble();
+                results = jdbc(StatementKind.DRAW).query(USER_RANDOM_KEY_SQL, new DateNightIdeaRowMapper(), categoryId, startKey, seenIds, categoryId, startKey, seenIds);
+            } else {
+                results = jdbc(StatementKind.DRAW).query(USER_ORDER_BY_RANDOM_SQL, new DateNightIdeaRowMapper(), categoryId, seenIds);
+            }
+            if(!results.isEmpty()){
+                idea = results.get(0);
+                //is_suggested in the view is the shared flag; for this user the idea has now been suggested
+                idea.setSuggested(true);
+                history.markSeen(idea.getId());
+            }
+        } catch (CannotGetJdbcConnectionException e){
+            throw new DaoException("Unable to connect to the server or database", e);
+        } finally{
+            history.unlock();
+        }
+        return Optional.ofNullable(idea);
+    }
+
     //Create a method to add to the date night idea database
     @Override
     public DateNightIdea create(DateNightIdea idea) {
-        String sql= "INSERT INTO date_night_idea (title, description, budget_category, location)\n" +
-                "VALUES(?,?,?,?) RETURNING *";
+        String sql= "INSERT INTO date_night_idea (title, description, category_id, location)\n" +
+                "VALUES(?,?,?,?) RETURNING *, FALSE AS is_suggested";
+        int categoryId = categoryIdOf(idea);
         try{
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, idea.getTitle(), idea.getDescription(), idea.getBudgetCategory(), idea.getLocation());
-            if(results.next()){
-                return mapRowToIdea(results);
+            List<DateNightIdea> results = jdbc(StatementKind.WRITE).query(sql, new DateNightIdeaRowMapper(),
+                    idea.getTitle(), idea.getDescription(), categoryId, idea.getLocation());
+            if(!results.isEmpty()){
+                return results.get(0);
             } else {
                 throw new DaoException("Failed to insert your date night idea into the database");
             }
@@ -57,75 +271,317 @@ public class JdbcDateNightIdeaDao implements DateNightIdeaDaoInterface{
         }
     }
 
-    //Create a method to update the date night idea database
+    //Create a method to add many ideas at once. Each column is sent as one array and unnest() turns the arrays back
+    //into rows, so a whole chunk of ideas is inserted with one statement and one round trip to the database.
     @Override
-    public String update(int id, DateNightIdea idea) {
-        String sql= "UPDATE date_night_idea SET title = ?, description = ?, budget_category = ?, location = ? WHERE id = ?";
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        if(ideas.isEmpty()){
+            return List.of();
+        }
+        String sql = "INSERT INTO date_night_idea (title, description, category_id, location)\n" +
+                "SELECT * FROM unnest(?::varchar[], ?::text[], ?::smallint[], ?::varchar[]) RETURNING *, FALSE AS is_suggested";
+        String[] titles = new String[ideas.size()];
+        String[] descriptions = new String[ideas.size()];
+        Integer[] categoryIds = new Integer[ideas.size()];
+        String[] locations = new String[ideas.size()];
+        for(int i = 0; i < ideas.size(); i++){
+            DateNightIdea idea = ideas.get(i);
+            titles[i] = idea.getTitle();
+            descriptions[i] = idea.getDescription();
+            categoryIds[i] = categoryIdOf(idea);
+            locations[i] = idea.getLocation();
+        }
         try{
-            jdbcTemplate.update(sql, idea.getTitle(), idea.getDescription(), idea.getBudgetCategory(), idea.getLocation(), id);
-            return "The date night idea has been successfully updated";
+            return jdbc(StatementKind.BULK_WRITE).query(sql, new DateNightIdeaRowMapper(), titles, descriptions, categoryIds, locations);
         } catch(CannotGetJdbcConnectionException e){
             throw new DaoException("Unable to connect to the server or database", e);
         }
     }
 
+    //Create a method to update the date night idea database. Every edit adds one to the version, and when the idea
+    //carries the version it was read at, the UPDATE only matches if that is still the current version.
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        StringJoiner assignments = new StringJoiner(", ");
+        List<Object> args = new ArrayList<>();
+        assignments.add("title = ?");
+        args.add(idea.getTitle());
+        assignments.add("description = ?");
+        args.add(idea.getDescription());
+        moveToCategory(assignments, args, categoryIdOf(idea));
+        assignments.add("location = ?");
+        args.add(idea.getLocation());
+        return writeChanges(id, assignments, args, idea.getVersion());
+    }
+
+    //Only the columns present in the patch are written, so an edit of the title never rewrites the description
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        StringJoiner assignments = new StringJoiner(", ");
+        List<Object> args = new ArrayList<>();
+        if (patch.hasTitle()) {
+            assignments.add("title = ?");
+            args.add(patch.getTitle());
+        }
+        if (patch.hasDescription()) {
+            assignments.add("description = ?");
+            args.add(patch.getDescription());
+        }
+        if (patch.hasBudgetCategory()) {
+            moveToCategory(assignments, args, BudgetCategory.fromName(patch.getBudgetCategory())
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown budget category: " + patch.getBudgetCategory()))
+                    .getId());
+        }
+        if (patch.hasLocation()) {
+            assignments.add("location = ?");
+            args.add(patch.getLocation());
+        }
+        return writeChanges(id, assignments, args, patch.getVersion());
+    }
+
     //Create a method to delete an idea from the date night idea database
     @Override
     public boolean delete(int id) {
         String sql = "DELETE FROM date_night_idea WHERE id = ?";
         try{
-            int RowsAffected = jdbcTemplate.update(sql, id);
+            int RowsAffected = jdbc(StatementKind.WRITE).update(sql, id);
             return RowsAffected > 0;
         } catch (CannotGetJdbcConnectionException e){
             throw new DaoException("Unable to connect to the server or database", e);
         }
     }
 
-    //Create a method to reset the list of ideas to "has not been suggested"
+    //Create a method to reset the list of ideas to "has not been suggested".
+    //Moving every category to a new epoch makes all existing suggested_epoch values out of date at once,
+    //so only the four rows of budget_category are updated no matter how many ideas there are.
     @Override
     public void resetListOfIdeas() {
-        String sql = "UPDATE date_night_idea SET is_suggested=false";
+        String sql = "UPDATE budget_category SET epoch = epoch + 1";
         try{
-            jdbcTemplate.update(sql);
+            jdbc(StatementKind.WRITE).update(sql);
         } catch (CannotGetJdbcConnectionException e){
             throw new DaoException("Unable to connect to the server or database", e);
         }
     }
 
+    //Create a method to reset one user's list without touching the database
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        userSuggestionTracker.reset(userKey);
+    }
+
     //Create a method to get all date night ideas
     @Override
     public List<DateNightIdea> getAllIdeas() {
-        String sql = "SELECT * FROM date_night_idea";    
+        String sql = "SELECT * FROM date_night_idea_status";
+        try{
+            return jdbc(StatementKind.READ).query(sql, new DateNightIdeaRowMapper());
+        } catch (CannotGetJdbcConnectionException e){
+            throw new DaoException("Unable to connect to the server or database", e);
+        }
+    }
+
+    //Create a method to get one page of ideas. "id > ?" lets PostgreSQL jump straight to the start of the page
+    //using the primary key index, so later pages are just as fast as the first one. A page of one category
+    //uses the (category_id, id) index the same way.
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        if(budgetCategory != null && !BudgetCategory.isKnown(budgetCategory)){
+            return List.of();
+        }
         try{
-            SqlRowSet results = jdbcTemplate.queryForRowSet(sql);
-            List<DateNightIdea> ideas = new java.util.ArrayList<>();
-            while(results.next()){
-                ideas.add(mapRowToIdea(results));
+            if(budgetCategory == null){
+                return jdbc(StatementKind.READ).query("SELECT * FROM date_night_idea_status WHERE id > ? ORDER BY id LIMIT ?",
+                        new DateNightIdeaRowMapper(), afterId, limit);
             }
-            return ideas;
+            return jdbc(StatementKind.READ).query("SELECT * FROM date_night_idea_status WHERE category_id = ? AND id > ? ORDER BY id LIMIT ?",
+                    new DateNightIdeaRowMapper(), BudgetCategory.fromName(budgetCategory).get().getId(), afterId, limit);
+        } catch (CannotGetJdbcConnectionException e){
+            throw new DaoException("Unable to connect to the server or database", e);
+        }
+    }
+
+    //Create a method to stream every idea to a consumer without loading the whole table into memory.
+    //The PostgreSQL driver only reads rows in batches of the fetch size while auto-commit is off, so the
+    //query runs inside its own read-only transaction on a forward-only ResultSet.
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        if(budgetCategory != null && !BudgetCategory.isKnown(budgetCategory)){
+            return;
+        }
+        String sql = budgetCategory == null
+                ? "SELECT * FROM date_night_idea_status ORDER BY id"
+                : "SELECT * FROM date_night_idea_status WHERE category_id = ? ORDER BY id";
+        try{
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try(PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)){
+                    statement.setFetchSize(STREAM_FETCH_SIZE);
+                    if(budgetCategory != null){
+                        statement.setInt(1, BudgetCategory.fromName(budgetCategory).get().getId());
+                    }
+                    try(ResultSet results = statement.executeQuery()){
+                        DateNightIdeaRowMapper rowMapper = new DateNightIdeaRowMapper();
+                        int rowNum = 0;
+                        while(results.next()){
+                            consumer.accept(rowMapper.mapRow(results, rowNum++));
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException | RuntimeException e){
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+                return null;
+            });
+        } catch (CannotGetJdbcConnectionException e){
+            throw new DaoException("Unable to connect to the server or database", e);
+        }
+    }
+
+    //Create a method to search ideas by the words in their title, description and location
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        String tsQuery = toPrefixTsQuery(query);
+        if(tsQuery.isEmpty() || (budgetCategory != null && !BudgetCategory.isKnown(budgetCategory))){
+            return List.of();
+        }
+        List<Object> args = new ArrayList<>();
+        args.add(tsQuery);
+        if(budgetCategory != null){
+            args.add(BudgetCategory.fromName(budgetCategory).get().getId());
+        }
+        args.add(tsQuery);
+        args.add(offset);
+        args.add(limit);
+        String sql = SEARCH_STATEMENTS[(budgetCategory != null ? 2 : 0) + (unsuggestedOnly ? 1 : 0)];
+        try{
+            return jdbc(StatementKind.READ).query(sql, new DateNightIdeaRowMapper(), args.toArray());
         } catch (CannotGetJdbcConnectionException e){
             throw new DaoException("Unable to connect to the server or database", e);
         }
     }
 
-    //Generate a helper method to connect rows to dateNightIdea object
-    private DateNightIdea mapRowToIdea(SqlRowSet rs){
-        DateNightIdea dateNightIdea = new DateNightIdea();
-        dateNightIdea.setId(rs.getLong("id"));
-        dateNightIdea.setTitle(rs.getString("title"));
-        dateNightIdea.setDescription(rs.getString("description"));
-        dateNightIdea.setBudgetCategory(rs.getString("budget_category"));
-        dateNightIdea.setLocation(rs.getString("location"));
-        //Ensure that if modified later to null, we do not call Timestamp.toLocalDateTime().
-        //Timestamp.toLocalDateTime() cannot be called on null; it would throw a NullPointerException
-        Timestamp createdAt = rs.getTimestamp("created_at");
-        if (createdAt != null) {
-            dateNightIdea.setCreatedAt(createdAt.toLocalDateTime());
+    //Turn what the user typed into a tsquery where every word is a prefix match ("pic park" becomes "pic:* & park:*").
+    //Everything except letters and digits is dropped first, so the user can't write tsquery syntax (&, |, !, quotes)
+    //that would make to_tsquery fail. Returns "" when nothing searchable is left.
+    static String toPrefixTsQuery(String query){
+        if(query == null){
+            return "";
         }
-        dateNightIdea.setSuggested(rs.getBoolean("is_suggested"));
-        return dateNightIdea;
+        StringJoiner terms = new StringJoiner(" & ");
+        int count = 0;
+        for(String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")){
+            if(!word.isEmpty() && count < MAX_SEARCH_TERMS){
+                terms.add(word + ":*");
+                count++;
+            }
+        }
+        return terms.toString();
     }
 
+    //Create a method to count the ideas of each budget category that haven't been suggested in the current epoch.
+    //Used by the datenight.ideas.available gauges; categories with no ideas left are not in the map.
+    @Override
+    public Map<String, Long> countAvailableIdeasByCategory() {
+        String sql = "SELECT category_id, COUNT(*) AS available FROM date_night_idea_status WHERE NOT is_suggested GROUP BY category_id";
+        try{
+            Map<String, Long> counts = new HashMap<>();
+            jdbc(StatementKind.READ).query(sql, (RowCallbackHandler) results -> {
+                Optional<BudgetCategory> category = BudgetCategory.fromId(results.getInt(1));
+                if(category.isPresent()){
+                    counts.put(category.get().getDisplayName(), results.getLong(2));
+                }
+            });
+            return counts;
+        } catch (CannotGetJdbcConnectionException e){
+            throw new DaoException("Unable to connect to the server or database", e);
+        }
+    }
+
+    //Set the idea's category. Each category has its own epoch, so an idea that moves keeps whether it was suggested by
+    //getting the new category's epoch if it was suggested in the old one, and 0 if it wasn't. Left as it was,
+    //suggested_epoch would be compared with an unrelated epoch and the idea would turn suggested or available at random.
+    //Expressions in SET see the row as it was before the UPDATE, so category_id here is the old category.
+    private static void moveToCategory(StringJoiner assignments, List<Object> args, int categoryId) {
+        assignments.add("category_id = ?");
+        args.add(categoryId);
+        assignments.add(MOVED_SUGGESTED_EPOCH_SQL);
+        args.add(categoryId);
+        args.add(categoryId);
+    }
+
+    //Run one edit and return the idea as it is afterwards. When nothing matched, a second query tells a missing idea
+    //(empty) from one that has moved past expectedVersion (IdeaVersionConflictException). That query only runs when
+    //the edit fails, so a successful edit is still one round trip.
+    private Optional<DateNightIdea> writeChanges(int id, StringJoiner assignments, List<Object> args, Integer expectedVersion) {
+        assignments.add("version = version + 1");
+        StringBuilder sql = new StringBuilder("WITH updated AS(UPDATE date_night_idea SET ").append(assignments).append(" WHERE id = ?");
+        args.add(id);
+        if (expectedVersion != null) {
+            sql.append(" AND version = ?");
+            args.add(expectedVersion);
+        }
+        sql.append(UPDATED_IDEA_SQL);
+        try{
+            List<DateNightIdea> updated = jdbc(StatementKind.WRITE).query(sql.toString(), new DateNightIdeaRowMapper(), args.toArray());
+            if (!updated.isEmpty()) {
+                return Optional.of(updated.get(0));
+            }
+            if (expectedVersion == null) {
+                return Optional.empty();
+            }
+            List<Integer> currentVersion = jdbc(StatementKind.WRITE).queryForList("SELECT version FROM date_night_idea WHERE id = ?", Integer.class, id);
+            if (currentVersion.isEmpty()) {
+                return Optional.empty();
+            }
+            throw new IdeaVersionConflictException(id, expectedVersion, currentVersion.get(0));
+        } catch(CannotGetJdbcConnectionException e){
+            throw new DaoException("Unable to connect to the server or database", e);
+        }
+    }
+
+    //Writes need a real category; the controller and importer reject unknown names before they get here
+    private static int categoryIdOf(DateNightIdea idea) {
+        return BudgetCategory.fromName(idea.getBudgetCategory())
+                .orElseThrow(() -> new IllegalArgumentException("Unknown budget category: " + idea.getBudgetCategory()))
+                .getId();
+    }
+
+    //Give each kind of statement its own query timeout. Runs once Spring has injected jdbcTemplate and the timeouts;
+    //a DAO created with new (as in the tests) skips it and runs everything through jdbcTemplate.
+    @PostConstruct
+    public void applyStatementTimeouts() {
+        timedTemplates.put(StatementKind.DRAW, withQueryTimeout(drawTimeoutSeconds));
+        timedTemplates.put(StatementKind.READ, withQueryTimeout(readTimeoutSeconds));
+        timedTemplates.put(StatementKind.WRITE, withQueryTimeout(writeTimeoutSeconds));
+        timedTemplates.put(StatementKind.BULK_WRITE, withQueryTimeout(bulkWriteTimeoutSeconds));
+    }
+
+    private JdbcTemplate withQueryTimeout(int seconds) {
+        JdbcTemplate timed = new JdbcTemplate(jdbcTemplate.getDataSource());
+        timed.setFetchSize(jdbcTemplate.getFetchSize());
+        timed.setMaxRows(jdbcTemplate.getMaxRows());
+        timed.setQueryTimeout(seconds);
+        //PostgreSQL reports a cancelled statement as SQLState 57014, which Spring would otherwise turn into a generic
+        //DataAccessResourceFailureException. A QueryTimeoutException shows up as such in the datenight.dao.calls metric.
+        SQLExceptionTranslator translator = timed.getExceptionTranslator();
+        timed.setExceptionTranslator((task, sql, e) -> QUERY_CANCELED_STATE.equals(e.getSQLState())
+                ? new QueryTimeoutException(task + "; statement cancelled after " + seconds + " seconds", e)
+                : translator.translate(task, sql, e));
+        return timed;
+    }
+
+    private JdbcTemplate jdbc(StatementKind kind) {
+        return timedTemplates.getOrDefault(kind, jdbcTemplate);
+    }
+
+    //The kinds of statement that have their own timeout
+    private enum StatementKind { DRAW, READ, WRITE, BULK_WRITE }
+
     public JdbcTemplate getJdbcTemplate() {
         return jdbcTemplate;
     }
@@ -133,4 +589,12 @@ public class JdbcDateNightIdeaDao implements DateNightIdeaDaoInterface{
     public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
+
+    public RandomSelectionStrategy getRandomSelectionStrategy() {
+        return randomSelectionStrategy;
+    }
+
+    public void setRandomSelectionStrategy(RandomSelectionStrategy randomSelectionStrategy) {
+        this.randomSelectionStrategy = randomSelectionStrategy;
+    }
 }
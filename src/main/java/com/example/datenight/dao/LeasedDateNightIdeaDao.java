@@ -0,0 +1,483 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+//LeasedDateNightIdeaDao lets several instances of the app draw from the same shared list without handing out the same
+//idea twice and without all of them fighting over the same rows. It is switched on with datenight.dao.mode=leased and
+//wraps JdbcDateNightIdeaDao, which is still used for every write and read that isn't a shared draw.
+//
+//  - Each instance leases a block of blockSize unsuggested ideas per budget category by adding a row for each of them
+//    to idea_lease (see DateNight.sql), and serves draws from that block in memory. A draw takes the next position
+//    of the block with getAndIncrement, the same as PooledDateNightIdeaDao, and queues the id for a SuggestionWriter.
+//    Only the draw that finds the block used up goes to the database, once per blockSize draws.
+//  - Leasing reads from a random point in the (category_id, random_key) index. FOR NO KEY UPDATE SKIP LOCKED makes two
+//    instances leasing at the same moment pick different rows instead of waiting for each other, and the INSERT ...
+//    ON CONFLICT only takes an idea whose lease row is missing or expired, so an idea is leased to one instance at a
+//    time whatever the timing.
+//  - A lease expires leaseTtl after it was taken. The instance stops drawing from a block a second plus one flush
+//    interval before that, by its own clock, started before the lease was taken, so it never draws an idea another
+//    instance may have leased since, and the last idea it draws is written back before the lease runs out. If writing
+//    the drawn ideas back fails, their leases are extended on every retry, so an idea is only released once it is
+//    marked as suggested. Ideas left in an expired block, or leased by an instance that crashed, are leased again by
+//    whoever asks next. Expiry also bounds how long an idea edited on another instance is served with its old text.
+//
+//Near the end of a round, an instance can find nothing to lease while other instances still hold a few undrawn ideas
+//in their blocks; those come back when they are drawn or their leases expire.
+//
+//Per-user draws (the "user" key of /random) keep each user's seen ideas in user_suggestion instead of in the memory of
+//one instance, so a user behind a load balancer gets the same list whichever instance answers. A draw picks an idea the
+//user hasn't seen and records it in one statement. Users who haven't drawn for USER_IDLE_TIMEOUT are forgotten, the
+//same as with UserSuggestionTracker.
+public class LeasedDateNightIdeaDao implements DateNightIdeaDaoInterface {
+    //The block is read in random_key order starting at a random point, and the second statement wraps around to the
+    //start of the category when the first one reaches the end. Ideas are locked while they are leased, which only lasts
+    //for this statement. The outer SELECT returns the ideas this instance actually got.
+    private static final String LEASE_SQL = "WITH candidates AS(SELECT d.id FROM date_night_idea d " +
+            "WHERE d.category_id = ? AND d.suggested_epoch <> (SELECT c.epoch FROM budget_category c WHERE c.id = ?) AND d.random_key %s ? " +
+            "AND NOT EXISTS(SELECT 1 FROM idea_lease l WHERE l.idea_id = d.id AND l.expires_at > now()) " +
+            "ORDER BY d.random_key LIMIT ? FOR NO KEY UPDATE OF d SKIP LOCKED), " +
+            "leased AS(INSERT INTO idea_lease (idea_id, owner, expires_at) " +
+            "SELECT id, ?::uuid, now() + ? * INTERVAL '1 millisecond' FROM candidates " +
+            "ON CONFLICT (idea_id) DO UPDATE SET owner = EXCLUDED.owner, expires_at = EXCLUDED.expires_at " +
+            "WHERE idea_lease.expires_at <= now() RETURNING idea_id) " +
+            "SELECT s.* FROM date_night_idea_status s JOIN leased l ON l.idea_id = s.id";
+    private static final String LEASE_FROM_KEY_SQL = String.format(LEASE_SQL, ">=");
+    private static final String LEASE_BEFORE_KEY_SQL = String.format(LEASE_SQL, "<");
+    private static final String RELEASE_SQL = "DELETE FROM idea_lease WHERE owner = ?::uuid";
+    private static final String RELEASE_IDEAS_SQL = RELEASE_SQL + " AND idea_id = ANY(?)";
+    private static final String EXTEND_SQL = "UPDATE idea_lease SET expires_at = GREATEST(expires_at, now() + ? * INTERVAL '1 millisecond') " +
+            "WHERE owner = ?::uuid AND idea_id = ANY(?)";
+    //Reads from a random point in the (category_id, random_key) index, wrapping around to the start of the category,
+    //and skips the ideas the user has seen. If a draw for the same user on another instance records the same idea
+    //first, ON CONFLICT leaves it to that draw and nothing is returned.
+    private static final String USER_DRAW_SQL = "WITH picked AS(" +
+            "(SELECT d.id, 0 AS pass FROM date_night_idea d WHERE d.category_id = ? AND d.random_key >= ? " +
+            "AND NOT EXISTS(SELECT 1 FROM user_suggestion u WHERE u.user_key = ? AND u.idea_id = d.id) ORDER BY d.random_key LIMIT 1) " +
+            "UNION ALL " +
+            "(SELECT d.id, 1 AS pass FROM date_night_idea d WHERE d.category_id = ? AND d.random_key < ? " +
+            "AND NOT EXISTS(SELECT 1 FROM user_suggestion u WHERE u.user_key = ? AND u.idea_id = d.id) ORDER BY d.random_key LIMIT 1) " +
+            "ORDER BY pass LIMIT 1), " +
+            "seen AS(INSERT INTO user_suggestion (user_key, idea_id) SELECT ?, id FROM picked ON CONFLICT DO NOTHING RETURNING idea_id) " +
+            "SELECT s.* FROM date_night_idea_status s JOIN seen ON seen.idea_id = s.id";
+    private static final String USER_RESET_SQL = "DELETE FROM user_suggestion WHERE user_key = ?";
+    private static final String FORGET_IDLE_USERS_SQL = "DELETE FROM user_suggestion u USING (SELECT user_key FROM user_suggestion " +
+            "GROUP BY user_key HAVING MAX(suggested_at) < now() - ? * INTERVAL '1 millisecond') idle WHERE u.user_key = idle.user_key";
+    //How many times a per-user draw is tried when another instance drew the same idea for the same user at once
+    private static final int USER_DRAW_ATTEMPTS = 3;
+    private static final Duration USER_IDLE_TIMEOUT = Duration.ofDays(1);
+    //How long before its lease expires an instance stops drawing from a block, to allow for clocks that run apart
+    private static final long EXPIRY_MARGIN_NANOS = Duration.ofSeconds(1).toNanos();
+    //A block that is empty, so the first draw leases a real one
+    private static final LeasedBlock NO_BLOCK = new LeasedBlock(List.of(), 0, 0);
+
+    private final JdbcDateNightIdeaDao delegate;
+    private final JdbcTemplate jdbcTemplate;
+    private final int blockSize;
+    private final long leaseTtlMillis;
+    //How long after leasing a block it is drawn from
+    private final long drawWindowNanos;
+    //Identifies this instance's rows in idea_lease
+    private final String owner = UUID.randomUUID().toString();
+    //Filled for every category in the constructor and never changed after, so they can be read without a lock
+    private final Map<BudgetCategory, AtomicReference<LeasedBlock>> blocks = new EnumMap<>(BudgetCategory.class);
+    //Only one draw per category leases a new block; the others wait for it and then draw from that block
+    private final Map<BudgetCategory, ReentrantLock> leaseLocks = new EnumMap<>(BudgetCategory.class);
+    private final SuggestionWriter suggestionWriter;
+    //Forgets idle users in user_suggestion every hour
+    private final ScheduledExecutorService userHistoryCleaner;
+    //System.nanoTime, except in tests
+    private final LongSupplier nanoClock;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //The suggestion settings are the same as for PooledDateNightIdeaDao. Give every instance its own journalDirectory.
+    //leaseTtl must be longer than a second plus the flush interval, or no block could ever be drawn from.
+    public LeasedDateNightIdeaDao(JdbcDateNightIdeaDao delegate, JdbcTemplate jdbcTemplate, int blockSize, Duration leaseTtl,
+                                  long flushIntervalMillis, int flushBatchSize, Path journalDirectory) {
+        this(delegate, jdbcTemplate, blockSize, leaseTtl, flushIntervalMillis, flushBatchSize, journalDirectory, System::nanoTime);
+    }
+
+    //nanoClock decides when a block is too close to expiring to draw from
+    public LeasedDateNightIdeaDao(JdbcDateNightIdeaDao delegate, JdbcTemplate jdbcTemplate, int blockSize, Duration leaseTtl,
+                                  long flushIntervalMillis, int flushBatchSize, Path journalDirectory, LongSupplier nanoClock) {
+        long reservedNanos = EXPIRY_MARGIN_NANOS + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        if (leaseTtl.toNanos() <= reservedNanos) {
+            throw new IllegalArgumentException("The lease TTL must be longer than " + TimeUnit.NANOSECONDS.toMillis(reservedNanos) +
+                    " ms (a second plus the flush interval), not " + leaseTtl.toMillis() + " ms");
+        }
+        this.delegate = delegate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.nanoClock = nanoClock;
+        this.blockSize = blockSize;
+        this.leaseTtlMillis = leaseTtl.toMillis();
+        this.drawWindowNanos = leaseTtl.toNanos() - reservedNanos;
+        for (BudgetCategory category : BudgetCategory.values()) {
+            blocks.put(category, new AtomicReference<>(NO_BLOCK));
+            leaseLocks.put(category, new ReentrantLock());
+        }
+        this.suggestionWriter = new SuggestionWriter(jdbcTemplate, flushIntervalMillis, flushBatchSize, journalDirectory,
+                "idea-lease-writer", this::extendLeases);
+        this.userHistoryCleaner = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("user-history-cleaner").daemon().factory());
+        this.userHistoryCleaner.scheduleWithFixedDelay(this::forgetIdleUsers, 1, 1, TimeUnit.HOURS);
+        log.info("Drawing from leased blocks of {} ideas as lease owner {}", blockSize, owner);
+    }
+
+    //Draw the next idea of this instance's block, leasing a new block when it is used up or about to expire
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        Optional<BudgetCategory> category = BudgetCategory.fromName(budgetCategory);
+        if (category.isEmpty()) {
+            return Optional.empty();
+        }
+        AtomicReference<LeasedBlock> blockReference = blocks.get(category.get());
+        while (true) {
+            LeasedBlock block = blockReference.get();
+            DateNightIdea idea = block.take(nanoClock.getAsLong());
+            if (idea != null) {
+                suggestionWriter.add(idea.getId(), block.round);
+                return Optional.of(copyOf(idea, true));
+            }
+            if (!leaseNextBlock(category.get(), blockReference, block)) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    //Per-user draws don't use up the shared list; the user's seen ideas are kept in user_suggestion, shared by every
+    //instance. Nothing is returned only when the user has seen every idea of the category.
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        Optional<BudgetCategory> category = BudgetCategory.fromName(budgetCategory);
+        if (category.isEmpty()) {
+            return Optional.empty();
+        }
+        int categoryId = category.get().getId();
+        for (int attempt = 0; attempt < USER_DRAW_ATTEMPTS; attempt++) {
+            double startKey = ThreadLocalRandom.current().nextDouble();
+            List<DateNightIdea> ideas = jdbcTemplate.query(USER_DRAW_SQL, new DateNightIdeaRowMapper(),
+                    categoryId, startKey, userKey, categoryId, startKey, userKey, userKey);
+            if (!ideas.isEmpty()) {
+                DateNightIdea idea = ideas.get(0);
+                //is_suggested in the view is the shared flag; for this user the idea has now been suggested
+                idea.setSuggested(true);
+                return Optional.of(idea);
+            }
+            //Either the user has seen everything, or a draw for the same user on another instance just recorded the
+            //idea this one picked, in which case the next attempt picks another
+        }
+        return Optional.empty();
+    }
+
+    //New ideas are leased like any other once the blocks already leased are used up
+    @Override
+    public DateNightIdea create(DateNightIdea idea) {
+        return delegate.create(idea);
+    }
+
+    @Override
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        return delegate.createAll(ideas);
+    }
+
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        Optional<DateNightIdea> updated = delegate.update(id, idea);
+        updated.ifPresent(this::replaceInBlocks);
+        return updated;
+    }
+
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        Optional<DateNightIdea> updated = delegate.patch(id, patch);
+        updated.ifPresent(this::replaceInBlocks);
+        return updated;
+    }
+
+    //Deleting the idea also deletes its lease (ON DELETE CASCADE); it is taken out of this instance's block here
+    @Override
+    public boolean delete(int id) {
+        boolean deleted = delegate.delete(id);
+        for (AtomicReference<LeasedBlock> blockReference : blocks.values()) {
+            blockReference.get().remove(id);
+        }
+        return deleted;
+    }
+
+    //Stop drawing from the current blocks, reset the database and give the leases back, so the next draws lease
+    //blocks from the whole catalog again. What was drawn from the old blocks is never written after the reset (see
+    //SuggestionWriter.reset). No block can be leased in the meantime, or its leases would be given back while it is
+    //still being drawn from.
+    @Override
+    public void resetListOfIdeas() {
+        lockAllCategories();
+        try {
+            dropBlocks();
+            suggestionWriter.reset(delegate::resetListOfIdeas);
+            jdbcTemplate.update(RELEASE_SQL, owner);
+        } finally {
+            unlockAllCategories();
+        }
+    }
+
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        jdbcTemplate.update(USER_RESET_SQL, userKey);
+    }
+
+    @Override
+    public List<DateNightIdea> getAllIdeas() {
+        return delegate.getAllIdeas();
+    }
+
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        return delegate.getIdeasPage(afterId, limit, budgetCategory);
+    }
+
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        return delegate.searchIdeas(query, budgetCategory, unsuggestedOnly, offset, limit);
+    }
+
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        delegate.forEachIdea(budgetCategory, consumer);
+    }
+
+    //Write every queued suggestion to PostgreSQL with a single UPDATE (see SuggestionWriter)
+    public void flushSuggestions() {
+        suggestionWriter.flush();
+    }
+
+    //Write what was drawn and give back the ideas this instance still holds, so other instances don't have to wait
+    //for the leases to expire. Spring calls this when the application shuts down. If some drawn ideas couldn't be
+    //written, no lease is given back; they stay in the journal and their leases run out.
+    public void close() {
+        userHistoryCleaner.shutdownNow();
+        lockAllCategories();
+        try {
+            dropBlocks();
+            if (!suggestionWriter.close()) {
+                log.warn("Keeping the leased ideas until they expire, because some drawn ideas are not marked as suggested yet");
+                return;
+            }
+            jdbcTemplate.update(RELEASE_SQL, owner);
+        } catch (DataAccessException e) {
+            log.warn("Unable to release the leased ideas, they will be available again once the leases expire", e);
+        } finally {
+            unlockAllCategories();
+        }
+    }
+
+    //Lease a new block unless another draw already replaced the used one while this one waited for the lock.
+    //Returns false when there is nothing left to lease.
+    private boolean leaseNextBlock(BudgetCategory category, AtomicReference<LeasedBlock> blockReference, LeasedBlock used) {
+        ReentrantLock leaseLock = leaseLocks.get(category);
+        leaseLock.lock();
+        try {
+            if (blockReference.get() != used) {
+                return true;
+            }
+            //The block must stop being drawn from before the lease expires, so its deadline is counted from before
+            //the statement was sent, when the lease can't have started yet
+            long leasedAt = nanoClock.getAsLong();
+            List<DateNightIdea> ideas = lease(category);
+            if (ideas.isEmpty()) {
+                return false;
+            }
+            LeasedBlock block = new LeasedBlock(ideas, leasedAt + drawWindowNanos, suggestionWriter.currentRound());
+            if (block.isExpired(nanoClock.getAsLong())) {
+                //Leasing again would most likely be just as slow, and would use up the category block by block
+                release(ideas);
+                throw new DaoException("Leasing " + ideas.size() + " ideas took longer than the " + leaseTtlMillis + " ms lease allows");
+            }
+            blockReference.set(block);
+            return true;
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    //Seal every block so no more draws come from it; the next draw leases a new one
+    private void dropBlocks() {
+        for (AtomicReference<LeasedBlock> blockReference : blocks.values()) {
+            blockReference.getAndSet(NO_BLOCK).seal();
+        }
+    }
+
+    //Always in the order of BudgetCategory, so two threads locking every category can't deadlock
+    private void lockAllCategories() {
+        for (BudgetCategory category : BudgetCategory.values()) {
+            leaseLocks.get(category).lock();
+        }
+    }
+
+    private void unlockAllCategories() {
+        for (BudgetCategory category : BudgetCategory.values()) {
+            leaseLocks.get(category).unlock();
+        }
+    }
+
+    //None of these ideas was drawn, so they can be given back straight away
+    private void release(List<DateNightIdea> ideas) {
+        long[] ids = new long[ideas.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ideas.get(i).getId();
+        }
+        try {
+            jdbcTemplate.update(RELEASE_IDEAS_SQL, owner, ids);
+        } catch (DataAccessException e) {
+            log.warn("Unable to release {} leased ideas, they will be available again once the leases expire", ids.length, e);
+        }
+    }
+
+    //Forget the users that haven't drawn for USER_IDLE_TIMEOUT, so user_suggestion doesn't grow with every user key
+    //ever sent. Every instance does this; the DELETE is the same whichever runs it.
+    private void forgetIdleUsers() {
+        try {
+            int forgotten = jdbcTemplate.update(FORGET_IDLE_USERS_SQL, USER_IDLE_TIMEOUT.toMillis());
+            if (forgotten > 0) {
+                log.info("Forgot {} suggestions of users idle for more than {}", forgotten, USER_IDLE_TIMEOUT);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Unable to forget the suggestions of idle users", e);
+        }
+    }
+
+    //Called by the SuggestionWriter when drawn ideas couldn't be marked as suggested, so no other instance can lease
+    //them before they are
+    private void extendLeases(long[] ids) {
+        jdbcTemplate.update(EXTEND_SQL, leaseTtlMillis, owner, ids);
+    }
+
+    private List<DateNightIdea> lease(BudgetCategory category) {
+        double startKey = ThreadLocalRandom.current().nextDouble();
+        List<DateNightIdea> ideas = new ArrayList<>(jdbcTemplate.query(LEASE_FROM_KEY_SQL, new DateNightIdeaRowMapper(),
+                category.getId(), category.getId(), startKey, blockSize, owner, leaseTtlMillis));
+        if (ideas.size() < blockSize) {
+            ideas.addAll(jdbcTemplate.query(LEASE_BEFORE_KEY_SQL, new DateNightIdeaRowMapper(),
+                    category.getId(), category.getId(), startKey, blockSize - ideas.size(), owner, leaseTtlMillis));
+        }
+        //The rows come back in no particular order; shuffling keeps the draws from the block random
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = ideas.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            DateNightIdea swap = ideas.get(i);
+            ideas.set(i, ideas.get(j));
+            ideas.set(j, swap);
+        }
+        return ideas;
+    }
+
+    //An idea edited on this instance is drawn with its new text. If it moved to another budget category it is taken
+    //out of the block; its lease runs out and it is leased again in its new category.
+    private void replaceInBlocks(DateNightIdea edited) {
+        for (Map.Entry<BudgetCategory, AtomicReference<LeasedBlock>> entry : blocks.entrySet()) {
+            LeasedBlock block = entry.getValue().get();
+            if (Objects.equals(entry.getKey().getDisplayName(), edited.getBudgetCategory())) {
+                block.replace(copyOf(edited, false));
+            } else {
+                block.remove(edited.getId());
+            }
+        }
+    }
+
+    //Callers get their own copy so they can't change the idea stored in the block
+    private static DateNightIdea copyOf(DateNightIdea idea, boolean suggested) {
+        DateNightIdea copy = new DateNightIdea();
+        copy.setId(idea.getId());
+        copy.setTitle(idea.getTitle());
+        copy.setDescription(idea.getDescription());
+        copy.setBudgetCategory(idea.getBudgetCategory());
+        copy.setCategoryId(idea.getCategoryId());
+        copy.setLocation(idea.getLocation());
+        copy.setCreatedAt(idea.getCreatedAt());
+        copy.setSuggested(suggested);
+        copy.setVersion(idea.getVersion());
+        return copy;
+    }
+
+    //The ideas of one lease. A draw claims a position with getAndIncrement and then empties it, so each idea is handed
+    //out at most once; deleted ideas are emptied too and skipped. round is the SuggestionWriter round it was leased in.
+    private static final class LeasedBlock {
+        private final AtomicReferenceArray<DateNightIdea> ideas;
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final long drawUntilNanos;
+        private final int round;
+        private volatile boolean sealed;
+
+        private LeasedBlock(List<DateNightIdea> ideas, long drawUntilNanos, int round) {
+            this.ideas = new AtomicReferenceArray<>(ideas.toArray(new DateNightIdea[0]));
+            this.drawUntilNanos = drawUntilNanos;
+            this.round = round;
+        }
+
+        private boolean isExpired(long nowNanos) {
+            return nowNanos - drawUntilNanos >= 0;
+        }
+
+        //The next idea, or null when the block is used up, sealed or too close to expiring
+        private DateNightIdea take(long nowNanos) {
+            while (!sealed && cursor.get() < ideas.length() && !isExpired(nowNanos)) {
+                int position = cursor.getAndIncrement();
+                if (position >= ideas.length()) {
+                    return null;
+                }
+                DateNightIdea idea = ideas.getAndSet(position, null);
+                if (idea != null) {
+                    return idea;
+                }
+            }
+            return null;
+        }
+
+        private void seal() {
+            sealed = true;
+        }
+
+        private void remove(long id) {
+            for (int i = 0; i < ideas.length(); i++) {
+                DateNightIdea idea = ideas.get(i);
+                if (idea != null && idea.getId() == id) {
+                    ideas.compareAndSet(i, idea, null);
+                }
+            }
+        }
+
+        //Only replaces an idea that hasn't been drawn yet
+        private void replace(DateNightIdea edited) {
+            for (int i = 0; i < ideas.length(); i++) {
+                DateNightIdea idea = ideas.get(i);
+                if (idea != null && idea.getId().equals(edited.getId())) {
+                    ideas.compareAndSet(i, idea, edited);
+                }
+            }
+        }
+    }
+}
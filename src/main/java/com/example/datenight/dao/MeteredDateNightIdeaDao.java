@@ -0,0 +1,177 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+//MeteredDateNightIdeaDao wraps the DAO that talks to the database and records Micrometer metrics for every call:
+//  datenight.dao.calls         a timer per DAO method (tag "method"), with a latency histogram for percentiles and SLOs
+//  datenight.dao.rows          how many ideas each call returned (tag "method")
+//  datenight.draws.empty       draws that found no idea, which the controller answers with 204 NO_CONTENT
+//                              (tags "budgetCategory" and "scope", which is shared or user)
+//Failed calls are timed too, with the exception's class name in the "exception" tag.
+public class MeteredDateNightIdeaDao implements DateNightIdeaDaoInterface {
+    private final DateNightIdeaDaoInterface delegate;
+    private final MeterRegistry meterRegistry;
+
+    public MeteredDateNightIdeaDao(DateNightIdeaDaoInterface delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        Optional<DateNightIdea> idea = time("findRandomAvailableIdea", () -> delegate.findRandomAvailableIdea(budgetCategory));
+        recordDraw("findRandomAvailableIdea", "shared", budgetCategory, idea);
+        return idea;
+    }
+
+    @Override
+    public List<DateNightIdea> findRandomAvailableIdeas(List<String> budgetCategories, int count) {
+        List<DateNightIdea> ideas = time("findRandomAvailableIdeas", () -> delegate.findRandomAvailableIdeas(budgetCategories, count));
+        recordRows("findRandomAvailableIdeas", ideas.size());
+        return ideas;
+    }
+
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        Optional<DateNightIdea> idea = time("findRandomAvailableIdeaForUser", () -> delegate.findRandomAvailableIdeaForUser(userKey, budgetCategory));
+        recordDraw("findRandomAvailableIdeaForUser", "user", budgetCategory, idea);
+        return idea;
+    }
+
+    @Override
+    public DateNightIdea create(DateNightIdea idea) {
+        return time("create", () -> delegate.create(idea));
+    }
+
+    @Override
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        List<DateNightIdea> created = time("createAll", () -> delegate.createAll(ideas));
+        recordRows("createAll", created.size());
+        return created;
+    }
+
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        return time("update", () -> delegate.update(id, idea));
+    }
+
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        return time("patch", () -> delegate.patch(id, patch));
+    }
+
+    @Override
+    public boolean delete(int id) {
+        return time("delete", () -> delegate.delete(id));
+    }
+
+    @Override
+    public void resetListOfIdeas() {
+        time("resetListOfIdeas", () -> {
+            delegate.resetListOfIdeas();
+            return null;
+        });
+    }
+
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        time("resetListOfIdeasForUser", () -> {
+            delegate.resetListOfIdeasForUser(userKey);
+            return null;
+        });
+    }
+
+    @Override
+    public List<DateNightIdea> getAllIdeas() {
+        List<DateNightIdea> ideas = time("getAllIdeas", delegate::getAllIdeas);
+        recordRows("getAllIdeas", ideas.size());
+        return ideas;
+    }
+
+    @Override
+    public byte[] getAllIdeasJson(ObjectWriter ideaListWriter) {
+        return time("getAllIdeasJson", () -> delegate.getAllIdeasJson(ideaListWriter));
+    }
+
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        List<DateNightIdea> page = time("getIdeasPage", () -> delegate.getIdeasPage(afterId, limit, budgetCategory));
+        recordRows("getIdeasPage", page.size());
+        return page;
+    }
+
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        List<DateNightIdea> ideas = time("searchIdeas", () -> delegate.searchIdeas(query, budgetCategory, unsuggestedOnly, offset, limit));
+        recordRows("searchIdeas", ideas.size());
+        return ideas;
+    }
+
+    //The timer covers the whole stream, including the time the consumer spends writing each idea out
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        long[] rows = new long[1];
+        time("forEachIdea", () -> {
+            delegate.forEachIdea(budgetCategory, idea -> {
+                rows[0]++;
+                consumer.accept(idea);
+            });
+            return null;
+        });
+        recordRows("forEachIdea", rows[0]);
+    }
+
+    private <T> T time(String method, Supplier<T> call) {
+        long start = System.nanoTime();
+        String exception = "none";
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            Timer.builder("datenight.dao.calls")
+                    .description("Time spent in each DAO method")
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void recordDraw(String method, String scope, String budgetCategory, Optional<DateNightIdea> idea) {
+        recordRows(method, idea.isPresent() ? 1 : 0);
+        if (idea.isEmpty()) {
+            Counter.builder("datenight.draws.empty")
+                    .description("Random draws that found no available idea")
+                    //The budget category comes from the URL, so anything else is tagged "other" to keep the number of series bounded
+                    .tag("budgetCategory", BudgetCategory.isKnown(budgetCategory) ? budgetCategory : "other")
+                    .tag("scope", scope)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private void recordRows(String method, long rows) {
+        DistributionSummary.builder("datenight.dao.rows")
+                .description("Ideas returned by each DAO call")
+                .baseUnit("rows")
+                .tag("method", method)
+                .register(meterRegistry)
+                .record(rows);
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+//PooledDateNightIdeaDao keeps every budget category's unsuggested ideas in memory so a random draw never has to
+//wait for PostgreSQL. It is switched on with datenight.dao.mode=pooled and wraps JdbcDateNightIdeaDao, which is
+//still used for every write to the database.
+//
+//How a draw works:
+//  - Each category has a CategoryPool holding the unsuggested idea ids in a long[] that was shuffled when it was built.
+//  - A draw atomically increments the pool's cursor and takes the id at that position. Because every draw gets its own
+//    position from getAndIncrement, no locks are needed and the same idea can never be handed out twice.
+//  - The chosen id is queued and a background thread marks the queued ids as suggested in PostgreSQL in one UPDATE.
+//
+//Writes (create, update, delete, reset) are rare, so they rebuild the affected pool and swap it in. Before swapping,
+//the old pool is sealed by moving its cursor far past the end, which tells concurrent draws to re-read the new pool.
+//Writers take turns through writeLock, a ReentrantLock rather than synchronized, because they hold it while the
+//database is updated and a virtual thread waiting inside synchronized would pin its carrier thread.
+public class PooledDateNightIdeaDao implements DateNightIdeaDaoInterface {
+
+    //Any cursor value at or above SEALED means a writer is replacing the pool. It is far below Integer.MAX_VALUE so
+    //draws that keep incrementing a sealed cursor can never overflow it.
+    private static final int SEALED = Integer.MAX_VALUE / 2;
+
+    private final JdbcDateNightIdeaDao delegate;
+    private final Map<Long, DateNightIdea> ideasById = new ConcurrentHashMap<>();
+    //The ids of ideasById in order, so pages and streams can start at any id without sorting the catalog. Only
+    //changed while holding writeLock.
+    private final NavigableSet<Long> sortedIds = new ConcurrentSkipListSet<>();
+    private final Map<String, AtomicReference<CategoryPool>> pools = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final SuggestionWriter suggestionWriter;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //Suggestions are written back every flushIntervalMillis or once flushBatchSize are waiting. journalDirectory
+    //(optional) keeps a SuggestionJournal so ideas drawn just before a crash aren't handed out again; it is recovered
+    //before the pools are loaded.
+    public PooledDateNightIdeaDao(JdbcDateNightIdeaDao delegate, JdbcTemplate jdbcTemplate, long flushIntervalMillis,
+                                  int flushBatchSize, Path journalDirectory) {
+        this.delegate = delegate;
+        this.suggestionWriter = new SuggestionWriter(jdbcTemplate, flushIntervalMillis, flushBatchSize, journalDirectory, "idea-pool-writer");
+        reloadPools();
+    }
+
+    //Draw a random idea from the in-memory pool without a database round trip
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        AtomicReference<CategoryPool> poolReference = pools.get(budgetCategory);
+        if (poolReference == null) {
+            return Optional.empty();
+        }
+        while (true) {
+            CategoryPool pool = poolReference.get();
+            //Checking first keeps the cursor from growing forever when users keep clicking on an empty category
+            if (pool.cursor.get() >= pool.ids.length && pool.cursor.get() < SEALED) {
+                return Optional.empty();
+            }
+            int position = pool.cursor.getAndIncrement();
+            if (position < pool.ids.length) {
+                long id = pool.ids[position];
+                //A pool built before a reset that is running right now still hands out its idea, but the idea stays
+                //available, since the reset happened after it was drawn
+                DateNightIdea suggested = ideasById.computeIfPresent(id,
+                        (key, idea) -> suggestionWriter.isCurrentRound(pool.round) ? copyOf(idea, true) : idea);
+                if (suggested == null) {
+                    //The idea was deleted after this pool was built; move on to the next position
+                    continue;
+                }
+                suggestionWriter.add(id, pool.round);
+                return Optional.of(copyOf(suggested, true));
+            }
+            if (position < SEALED) {
+                return Optional.empty();
+            }
+            //A writer is swapping in a new pool, which only takes a few microseconds
+            Thread.onSpinWait();
+        }
+    }
+
+    //Per-user history is kept by the JDBC DAO; the pool only tracks the shared list
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        return delegate.findRandomAvailableIdeaForUser(userKey, budgetCategory);
+    }
+
+    //Create the idea in the database, then shuffle it into its category's pool
+    @Override
+    public DateNightIdea create(DateNightIdea idea) {
+        writeLock.lock();
+        try {
+            DateNightIdea created = delegate.create(idea);
+            ideasById.put(created.getId(), copyOf(created, created.isSuggested()));
+            sortedIds.add(created.getId());
+            if (!created.isSuggested()) {
+                replacePool(created.getBudgetCategory(), remaining -> insertAtRandomPosition(remaining, created.getId()));
+            }
+            return created;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Create the ideas in the database, then shuffle each one into its category's pool
+    @Override
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        writeLock.lock();
+        try {
+            List<DateNightIdea> created = delegate.createAll(ideas);
+            for (DateNightIdea idea : created) {
+                ideasById.put(idea.getId(), copyOf(idea, idea.isSuggested()));
+                sortedIds.add(idea.getId());
+            }
+            for (String budgetCategory : categoriesOf(created)) {
+                long[] newIds = idsFor(budgetCategory, created);
+                //Copying once and reshuffling is cheaper than inserting a large import one id at a time
+                replacePool(budgetCategory, remaining -> {
+                    long[] ids = new long[remaining.length + newIds.length];
+                    System.arraycopy(remaining, 0, ids, 0, remaining.length);
+                    System.arraycopy(newIds, 0, ids, remaining.length, newIds.length);
+                    shuffle(ids);
+                    return ids;
+                });
+            }
+            return created;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Update the idea in the database and move it to another pool if its budget category changed
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        writeLock.lock();
+        try {
+            Optional<DateNightIdea> updated = delegate.update(id, idea);
+            updated.ifPresent(this::replaceIdea);
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        writeLock.lock();
+        try {
+            Optional<DateNightIdea> updated = delegate.patch(id, patch);
+            updated.ifPresent(this::replaceIdea);
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Delete the idea from the database and take it out of its pool
+    @Override
+    public boolean delete(int id) {
+        writeLock.lock();
+        try {
+            boolean deleted = delegate.delete(id);
+            long ideaId = id;
+            DateNightIdea removed = ideasById.remove(ideaId);
+            sortedIds.remove(ideaId);
+            if (removed != null && !removed.isSuggested()) {
+                replacePool(removed.getBudgetCategory(), remaining -> without(remaining, ideaId));
+            }
+            return deleted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Reset the database first, then rebuild every pool with all ideas available again. The SuggestionWriter starts a
+    //new round with the reset, so ideas drawn from the old pools, even by draws still running, are never written
+    //after it.
+    @Override
+    public void resetListOfIdeas() {
+        writeLock.lock();
+        try {
+            suggestionWriter.reset(delegate::resetListOfIdeas);
+            ideasById.replaceAll((id, idea) -> copyOf(idea, false));
+            for (String budgetCategory : categoriesOf(ideasById.values())) {
+                long[] ids = idsFor(budgetCategory, ideasById.values());
+                shuffle(ids);
+                replacePool(budgetCategory, remaining -> ids);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        delegate.resetListOfIdeasForUser(userKey);
+    }
+
+    //All ideas are already in memory, so this returns them without a query
+    @Override
+    public List<DateNightIdea> getAllIdeas() {
+        List<DateNightIdea> ideas = new ArrayList<>();
+        forEachIdea(null, ideas::add);
+        return ideas;
+    }
+
+    //Pages and streams are served from the in-memory copy of the catalog, the same as getAllIdeas. A page starts at
+    //afterId in sortedIds, so walking the whole catalog page by page reads each idea once.
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        List<DateNightIdea> page = new ArrayList<>();
+        for (Long id : sortedIds.tailSet(afterId, false)) {
+            if (page.size() == limit) {
+                break;
+            }
+            DateNightIdea idea = ideasById.get(id);
+            if (idea != null && (budgetCategory == null || budgetCategory.equals(idea.getBudgetCategory()))) {
+                page.add(copyOf(idea, idea.isSuggested()));
+            }
+        }
+        return page;
+    }
+
+    //Searches need the GIN index, so they go to the database
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        return delegate.searchIdeas(query, budgetCategory, unsuggestedOnly, offset, limit);
+    }
+
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        for (Long id : sortedIds) {
+            DateNightIdea idea = ideasById.get(id);
+            if (idea != null && (budgetCategory == null || budgetCategory.equals(idea.getBudgetCategory()))) {
+                consumer.accept(copyOf(idea, idea.isSuggested()));
+            }
+        }
+    }
+
+    //Write every queued suggestion to PostgreSQL with a single UPDATE (see SuggestionWriter)
+    public void flushSuggestions() {
+        suggestionWriter.flush();
+    }
+
+    //Stop the background writer and flush anything still queued. Spring calls this when the application shuts down.
+    public void close() {
+        suggestionWriter.close();
+    }
+
+    //Load the whole catalog from the database and build a freshly shuffled pool for every category
+    private void reloadPools() {
+        writeLock.lock();
+        try {
+            List<DateNightIdea> ideas = delegate.getAllIdeas();
+            ideasById.clear();
+            sortedIds.clear();
+            for (DateNightIdea idea : ideas) {
+                ideasById.put(idea.getId(), idea);
+                sortedIds.add(idea.getId());
+            }
+            for (String budgetCategory : categoriesOf(ideas)) {
+                long[] ids = idsFor(budgetCategory, ideas);
+                shuffle(ids);
+                replacePool(budgetCategory, remaining -> ids);
+            }
+            log.info("Loaded {} date night ideas into the in-memory pool", ideas.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Seal the current pool, hand the ids that have not been drawn yet to the rebuild function, and publish the result.
+    //Only called while holding writeLock, so two writers never rebuild the same pool at once.
+    private void replacePool(String budgetCategory, PoolRebuild rebuild) {
+        AtomicReference<CategoryPool> poolReference = pools.computeIfAbsent(budgetCategory, key -> new AtomicReference<>(new CategoryPool(new long[0], 0)));
+        CategoryPool current = poolReference.get();
+        int drawn = Math.min(current.cursor.getAndSet(SEALED), current.ids.length);
+        long[] remaining = new long[current.ids.length - drawn];
+        System.arraycopy(current.ids, drawn, remaining, 0, remaining.length);
+        poolReference.set(new CategoryPool(rebuild.apply(remaining), suggestionWriter.currentRound()));
+    }
+
+    //Adding the new id at the end and swapping it with a random position keeps the remaining ids in random order
+    private static long[] insertAtRandomPosition(long[] remaining, long id) {
+        long[] ids = new long[remaining.length + 1];
+        System.arraycopy(remaining, 0, ids, 0, remaining.length);
+        int position = ThreadLocalRandom.current().nextInt(ids.length);
+        ids[ids.length - 1] = ids[position];
+        ids[position] = id;
+        return ids;
+    }
+
+    private static long[] without(long[] remaining, long id) {
+        for (int i = 0; i < remaining.length; i++) {
+            if (remaining[i] == id) {
+                long[] ids = new long[remaining.length - 1];
+                System.arraycopy(remaining, 0, ids, 0, i);
+                System.arraycopy(remaining, i + 1, ids, i, ids.length - i);
+                return ids;
+            }
+        }
+        return remaining;
+    }
+
+    //Fisher-Yates shuffle, so every order of the ids is equally likely
+    private static void shuffle(long[] ids) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+    }
+
+    private static long[] idsFor(String budgetCategory, Iterable<DateNightIdea> ideas) {
+        List<Long> ids = new ArrayList<>();
+        for (DateNightIdea idea : ideas) {
+            if (budgetCategory.equals(idea.getBudgetCategory()) && !idea.isSuggested()) {
+                ids.add(idea.getId());
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    private static List<String> categoriesOf(Iterable<DateNightIdea> ideas) {
+        List<String> categories = new ArrayList<>();
+        for (DateNightIdea idea : ideas) {
+            if (idea.getBudgetCategory() != null && !categories.contains(idea.getBudgetCategory())) {
+                categories.add(idea.getBudgetCategory());
+            }
+        }
+        return categories;
+    }
+
+    //Store the idea as the database returned it after an edit. Only called while holding writeLock.
+    //A draw may have taken the idea's position in its pool without having marked it as suggested yet, so whether the
+    //idea can still be drawn is decided by the sealed old pool: it is only moved to its new category's pool if the old
+    //pool still held it. The suggested flag is kept with computeIfPresent, which is atomic with a draw's, so
+    //the edit never overwrites a draw's mark (a draw in the last flush interval isn't in the database yet).
+    private void replaceIdea(DateNightIdea edited) {
+        long ideaId = edited.getId();
+        DateNightIdea existing = ideasById.get(ideaId);
+        if (existing == null) {
+            return;
+        }
+        if (!Objects.equals(existing.getBudgetCategory(), edited.getBudgetCategory())) {
+            boolean[] stillAvailable = new boolean[1];
+            replacePool(existing.getBudgetCategory(), remaining -> {
+                long[] ids = without(remaining, ideaId);
+                stillAvailable[0] = ids != remaining;
+                return ids;
+            });
+            if (stillAvailable[0]) {
+                replacePool(edited.getBudgetCategory(), remaining -> insertAtRandomPosition(remaining, ideaId));
+            }
+        }
+        ideasById.computeIfPresent(ideaId, (key, current) -> copyOf(edited, current.isSuggested()));
+    }
+
+    //Callers get their own copy so they can't change the idea stored in the pool
+    private static DateNightIdea copyOf(DateNightIdea idea, boolean suggested) {
+        DateNightIdea copy = new DateNightIdea();
+        copy.setId(idea.getId());
+        copy.setTitle(idea.getTitle());
+        copy.setDescription(idea.getDescription());
+        copy.setBudgetCategory(idea.getBudgetCategory());
+        copy.setCategoryId(idea.getCategoryId());
+        copy.setLocation(idea.getLocation());
+        copy.setCreatedAt(idea.getCreatedAt());
+        copy.setSuggested(suggested);
+        copy.setVersion(idea.getVersion());
+        return copy;
+    }
+
+    //Builds the id array for a new pool from the ids of the old pool that have not been drawn yet
+    private interface PoolRebuild {
+        long[] apply(long[] remaining);
+    }
+
+    //The ids are never changed after the pool is published; draws only move the cursor forward. round is the
+    //SuggestionWriter round the pool was built in.
+    private static final class CategoryPool {
+        private final long[] ids;
+        private final int round;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        private CategoryPool(long[] ids, int round) {
+            this.ids = ids;
+            this.round = round;
+        }
+    }
+}
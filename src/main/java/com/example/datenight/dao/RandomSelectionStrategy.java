@@ -0,0 +1,18 @@
+package com.example.datenight.dao;
+
+//The RandomSelectionStrategy enum lists the different ways the DAO can pick a random idea.
+//It is chosen with the datenight.dao.random-strategy property in application.properties, so callers
+//of DateNightIdeaDaoInterface never need to know which one is in use.
+public enum RandomSelectionStrategy {
+    //The original query. PostgreSQL assigns every unsuggested row in the category a random number
+    //and sorts them all before keeping one row, so the cost grows with the size of the catalog.
+    ORDER_BY_RANDOM,
+
+    //Every row stores a random_key between 0 and 1 that is indexed per budget category. A random
+    //number is generated in Java and the index is read from that point until the first unsuggested row
+    //(wrapping around to the start if nothing is found). Every suggested idea on the way is read and skipped, so a
+    //draw reads about (ideas in the category / ideas still available) index entries: one at the start of a round,
+    //about 100 once 99% have been suggested, and up to the whole category for the last idea of a round. The
+    //index can't leave suggested ideas out, because whether an idea is suggested depends on its category's epoch.
+    RANDOM_KEY
+}
@@ -0,0 +1,105 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.history.SuggestionHistory;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+//RecordingDateNightIdeaDao hands every idea that was drawn to the SuggestionHistory, whichever DAO drew it.
+//Everything else is passed straight through. Recording only queues the draw, so it adds no database work to a request.
+public class RecordingDateNightIdeaDao implements DateNightIdeaDaoInterface {
+    private final DateNightIdeaDaoInterface delegate;
+    private final SuggestionHistory suggestionHistory;
+
+    public RecordingDateNightIdeaDao(DateNightIdeaDaoInterface delegate, SuggestionHistory suggestionHistory) {
+        this.delegate = delegate;
+        this.suggestionHistory = suggestionHistory;
+    }
+
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        Optional<DateNightIdea> idea = delegate.findRandomAvailableIdea(budgetCategory);
+        idea.ifPresent(drawn -> suggestionHistory.record(drawn, null));
+        return idea;
+    }
+
+    @Override
+    public List<DateNightIdea> findRandomAvailableIdeas(List<String> budgetCategories, int count) {
+        List<DateNightIdea> ideas = delegate.findRandomAvailableIdeas(budgetCategories, count);
+        for (DateNightIdea idea : ideas) {
+            suggestionHistory.record(idea, null);
+        }
+        return ideas;
+    }
+
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        Optional<DateNightIdea> idea = delegate.findRandomAvailableIdeaForUser(userKey, budgetCategory);
+        idea.ifPresent(drawn -> suggestionHistory.record(drawn, userKey));
+        return idea;
+    }
+
+    @Override
+    public DateNightIdea create(DateNightIdea idea) {
+        return delegate.create(idea);
+    }
+
+    @Override
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        return delegate.createAll(ideas);
+    }
+
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        return delegate.update(id, idea);
+    }
+
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        return delegate.patch(id, patch);
+    }
+
+    @Override
+    public boolean delete(int id) {
+        return delegate.delete(id);
+    }
+
+    @Override
+    public void resetListOfIdeas() {
+        delegate.resetListOfIdeas();
+    }
+
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        delegate.resetListOfIdeasForUser(userKey);
+    }
+
+    @Override
+    public List<DateNightIdea> getAllIdeas() {
+        return delegate.getAllIdeas();
+    }
+
+    @Override
+    public byte[] getAllIdeasJson(ObjectWriter ideaListWriter) {
+        return delegate.getAllIdeasJson(ideaListWriter);
+    }
+
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        return delegate.getIdeasPage(afterId, limit, budgetCategory);
+    }
+
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        return delegate.searchIdeas(query, budgetCategory, unsuggestedOnly, offset, limit);
+    }
+
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        delegate.forEachIdea(budgetCategory, consumer);
+    }
+}
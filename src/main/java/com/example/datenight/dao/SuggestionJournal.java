@@ -0,0 +1,158 @@
+package com.example.datenight.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+//SuggestionJournal is an append-only log of the ideas drawn from memory that may not be marked as suggested in
+//PostgreSQL yet. SuggestionWriter appends the ids drawn every few milliseconds, and when the app starts again after
+//a crash it marks every id still in the journal as suggested before the ideas are loaded, so they aren't handed out
+//a second time.
+//
+//The journal is split into segments (suggestions-1.log, suggestions-2.log, ...), one id per line. Each flush starts
+//a new segment, and once the flushed ids are in PostgreSQL the older segments are deleted, so the journal only ever
+//holds the ids of the last few flush intervals.
+//
+//Each append writes all the ids it is given with one write and forces them to disk, so they survive the machine
+//losing power as well as the app crashing.
+//Not thread-safe; SuggestionWriter calls it while holding its lock.
+final class SuggestionJournal {
+    private static final String SEGMENT_PREFIX = "suggestions-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    //Segments that were written before the current one and may hold ids that aren't in PostgreSQL yet
+    private final List<Path> closedSegments = new ArrayList<>();
+    private Path segmentPath;
+    private FileChannel segment;
+    private long segmentNumber;
+    //Reused by every append, and grown when a batch doesn't fit
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    SuggestionJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        for (Path existing : segments()) {
+            closedSegments.add(existing);
+            segmentNumber = Math.max(segmentNumber, numberOf(existing));
+        }
+    }
+
+    //The ids left in segments by the previous run. A line cut short by a crash is skipped, and so is any line that
+    //isn't an id, so one damaged segment can't stop the app from starting.
+    long[] recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (Path path : closedSegments) {
+            String content = Files.readString(path, StandardCharsets.US_ASCII);
+            int end = content.lastIndexOf('\n');
+            if (end < 0) {
+                continue;
+            }
+            for (String id : content.substring(0, end).split("\n")) {
+                if (id.isEmpty()) {
+                    continue;
+                }
+                try {
+                    ids.add(Long.parseLong(id));
+                } catch (NumberFormatException e) {
+                    log.warn("Skipping a line of {} that isn't an idea id: {}", path, id.length() > 40 ? id.substring(0, 40) + "..." : id);
+                }
+            }
+        }
+        long[] recovered = new long[ids.size()];
+        for (int i = 0; i < recovered.length; i++) {
+            recovered[i] = ids.get(i);
+        }
+        return recovered;
+    }
+
+    void append(List<Long> ids) throws IOException {
+        if (segment == null) {
+            openNextSegment();
+        }
+        //A long is at most 20 characters, plus the newline
+        int needed = ids.size() * 21;
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocate(Math.max(needed, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        for (long id : ids) {
+            buffer.put(Long.toString(id).getBytes(StandardCharsets.US_ASCII)).put((byte) '\n');
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        segment.force(false);
+    }
+
+    //Close the current segment so the ids written so far can be deleted once they are flushed. The next append
+    //starts a new segment.
+    void rotate() throws IOException {
+        if (segment != null) {
+            segment.close();
+            closedSegments.add(segmentPath);
+            segment = null;
+            segmentPath = null;
+        }
+    }
+
+    //Every id in the closed segments is now in PostgreSQL, so they are no longer needed
+    void deleteClosedSegments() throws IOException {
+        for (Path path : closedSegments) {
+            Files.deleteIfExists(path);
+        }
+        closedSegments.clear();
+    }
+
+    void close() throws IOException {
+        if (segment != null) {
+            segment.close();
+            segment = null;
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentNumber++;
+        segmentPath = directory.resolve(SEGMENT_PREFIX + segmentNumber + SEGMENT_SUFFIX);
+        segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    //Files that match the segment pattern but have no number in their name weren't written by the journal and are
+    //left alone
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                if (numberOf(file) >= 0) {
+                    segments.add(file);
+                } else {
+                    log.warn("Ignoring {}, which isn't a suggestion journal segment", file);
+                }
+            }
+        }
+        segments.sort((first, second) -> Long.compare(numberOf(first), numberOf(second)));
+        return segments;
+    }
+
+    //The segment's number, or -1 if the name has none
+    private static long numberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.exception.DaoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+//SuggestionWriter marks ideas drawn from memory as suggested in PostgreSQL. Draws add the id to a lock-free queue,
+//and a background thread writes everything queued with one UPDATE every flush interval, or as soon as flushBatchSize
+//ids are waiting, so a draw never waits for the database. Used by the DAOs that draw from memory
+//(PooledDateNightIdeaDao, WeightedDateNightIdeaDao and LeasedDateNightIdeaDao).
+//
+//With a journal directory, a draw doesn't return until its id is in a SuggestionJournal and forced to disk, using
+//group commit: the draw that gets queueLock appends every id queued so far with one write and one force, and the draws
+//that queued up behind it while the disk was busy find their ids already written and return without touching the
+//disk. So there is one force per group of draws rather than per draw. When the app starts, ids left in the journal
+//by a crash are marked as suggested first, so the DAO loads them as already drawn and none is handed out again.
+//
+//A reset starts a new round of draws (see reset). Draws say which round they were made in, and an id drawn in an
+//earlier round is never written, so a draw that raced with a reset can't mark an idea as suggested after it.
+final class SuggestionWriter {
+    private static final String MARK_SUGGESTED_SQL = "UPDATE date_night_idea d SET suggested_epoch = c.epoch FROM budget_category c " +
+            "WHERE c.id = d.category_id AND d.id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int flushBatchSize;
+    //null when no journal directory is configured
+    private final SuggestionJournal journal;
+    //Draws only ever offer to this queue
+    private final ConcurrentLinkedQueue<Suggestion> drawn = new ConcurrentLinkedQueue<>();
+    //How many suggestions are in drawn, so a full batch can be flushed early
+    private final AtomicInteger drawnCount = new AtomicInteger();
+    //Guards unwritten and the journal. Draws only take it, when there is a journal, if their id hasn't been journaled
+    //by the time they get it.
+    private final ReentrantLock queueLock = new ReentrantLock();
+    //Ids taken from drawn, and appended to the journal, that aren't in PostgreSQL yet
+    private final List<Long> unwritten = new ArrayList<>();
+    //Only one flush runs at a time, so segments are deleted in the order they were flushed
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    //Only changed by reset, while holding both locks
+    private volatile int round;
+    private final ScheduledExecutorService writer;
+    //Called with the ids of every flush that failed, after they are queued again
+    private final Consumer<long[]> onRetry;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //journalDirectory may be null to keep suggestions only in memory until they are flushed
+    SuggestionWriter(JdbcTemplate jdbcTemplate, long flushIntervalMillis, int flushBatchSize, Path journalDirectory, String threadName) {
+        this(jdbcTemplate, flushIntervalMillis, flushBatchSize, journalDirectory, threadName, ids -> { });
+    }
+
+    //onRetry is told about the ids of each failed flush, for example so their leases can be kept until they are written
+    SuggestionWriter(JdbcTemplate jdbcTemplate, long flushIntervalMillis, int flushBatchSize, Path journalDirectory, String threadName,
+                     Consumer<long[]> onRetry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.onRetry = onRetry;
+        this.flushBatchSize = flushBatchSize;
+        this.journal = journalDirectory == null ? null : recoverJournal(journalDirectory);
+        //A daemon thread so a pending flush never stops the JVM from shutting down; close() flushes what is left
+        this.writer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name(threadName).daemon().factory());
+        this.writer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //The round that draws starting now belong to
+    int currentRound() {
+        return round;
+    }
+
+    boolean isCurrentRound(int drawnInRound) {
+        return drawnInRound == round;
+    }
+
+    //Queue an id drawn in the given round. An id from a round that has been reset since is dropped.
+    //With a journal, returns once the id has been forced to disk.
+    void add(long id, int drawnInRound) {
+        if (drawnInRound != round) {
+            return;
+        }
+        Suggestion suggestion = new Suggestion(id, drawnInRound);
+        drawn.offer(suggestion);
+        if (drawnCount.incrementAndGet() >= flushBatchSize && flushRequested.compareAndSet(false, true)) {
+            writer.execute(this::flush);
+        }
+        if (journal != null && !suggestion.journaled) {
+            queueLock.lock();
+            try {
+                //Whoever held the lock before may have journaled this id along with its own
+                if (!suggestion.journaled) {
+                    takeDrawn();
+                }
+            } finally {
+                queueLock.unlock();
+            }
+        }
+    }
+
+    //Reset the database with resetDatabase, then forget every id queued so far and start a new round. Nothing queued
+    //needs writing, because the reset makes every idea available again anyway. No flush can run in the meantime, and
+    //ids from the old round that arrive later are dropped, so none of them is written after the reset.
+    //If resetDatabase throws, nothing is forgotten.
+    void reset(Runnable resetDatabase) {
+        flushLock.lock();
+        try {
+            resetDatabase.run();
+            queueLock.lock();
+            try {
+                round++;
+                takeDrawn();
+                unwritten.clear();
+                if (journal != null) {
+                    journal.rotate();
+                    journal.deleteClosedSegments();
+                }
+            } catch (IOException e) {
+                //The ids left in the journal would be marked as suggested again on the next start
+                log.error("Unable to empty the suggestion journal after a reset", e);
+            } finally {
+                queueLock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //Write every queued suggestion to PostgreSQL with a single UPDATE. If the database can't be reached the ids are
+    //queued again so they are retried on the next flush instead of being lost, and their journal segments are kept.
+    //Returns false if something queued could not be written.
+    boolean flush() {
+        flushLock.lock();
+        try {
+            List<Long> batch;
+            queueLock.lock();
+            try {
+                flushRequested.set(false);
+                takeDrawn();
+                if (unwritten.isEmpty()) {
+                    return true;
+                }
+                if (journal != null) {
+                    journal.rotate();
+                }
+                batch = new ArrayList<>(unwritten);
+                unwritten.clear();
+            } catch (IOException e) {
+                log.error("Unable to start a new suggestion journal segment", e);
+                return false;
+            } finally {
+                queueLock.unlock();
+            }
+            long[] ids = new long[batch.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = batch.get(i);
+            }
+            try {
+                jdbcTemplate.update(MARK_SUGGESTED_SQL, (Object) ids);
+            } catch (DataAccessException e) {
+                log.error("Unable to mark {} ideas as suggested, they will be retried", ids.length, e);
+                queueLock.lock();
+                try {
+                    unwritten.addAll(0, batch);
+                } finally {
+                    queueLock.unlock();
+                }
+                try {
+                    onRetry.accept(ids);
+                } catch (RuntimeException retryFailure) {
+                    log.warn("Unable to prepare {} ideas for the next flush", ids.length, retryFailure);
+                }
+                return false;
+            }
+            if (journal != null) {
+                try {
+                    journal.deleteClosedSegments();
+                } catch (IOException e) {
+                    //Left-over segments only make the next start mark ideas that are already marked
+                    log.warn("Unable to delete flushed suggestion journal segments", e);
+                }
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //Stop the background thread and flush anything still queued. Whatever can't be flushed stays in the journal.
+    //Returns false if something is left.
+    boolean close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean flushed = flush();
+        if (journal != null) {
+            queueLock.lock();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the suggestion journal", e);
+            } finally {
+                queueLock.unlock();
+            }
+        }
+        return flushed;
+    }
+
+    //Move the ids drawn in the current round from drawn to unwritten, appending them to the journal with one write and
+    //one force, then tell the draws waiting for them that they are journaled. Must hold queueLock.
+    private void takeDrawn() {
+        int journaled = unwritten.size();
+        List<Suggestion> taken = new ArrayList<>();
+        Suggestion suggestion;
+        while ((suggestion = drawn.poll()) != null) {
+            taken.add(suggestion);
+            if (suggestion.round == round) {
+                unwritten.add(suggestion.id);
+            }
+        }
+        drawnCount.addAndGet(-taken.size());
+        if (journal != null && unwritten.size() > journaled) {
+            try {
+                journal.append(unwritten.subList(journaled, unwritten.size()));
+            } catch (IOException e) {
+                //The ids are still written to PostgreSQL; they just won't survive a crash
+                log.error("Unable to write {} ideas to the suggestion journal", unwritten.size() - journaled, e);
+            }
+        }
+        for (Suggestion done : taken) {
+            done.journaled = true;
+        }
+    }
+
+    //Mark the ids left by the previous run as suggested. If that fails the app can't start, because the DAO would
+    //otherwise load ideas that were already handed out as available.
+    private SuggestionJournal recoverJournal(Path journalDirectory) {
+        try {
+            SuggestionJournal recovering = new SuggestionJournal(journalDirectory);
+            long[] ids = recovering.recover();
+            if (ids.length > 0) {
+                jdbcTemplate.update(MARK_SUGGESTED_SQL, (Object) ids);
+                log.info("Marked {} ideas drawn before the last shutdown as suggested", ids.length);
+            }
+            recovering.deleteClosedSegments();
+            return recovering;
+        } catch (IOException e) {
+            throw new DaoException("Unable to read the suggestion journal in " + journalDirectory, e);
+        }
+    }
+
+    //One queued draw. journaled is set once the id is in the journal, or has been dropped by a reset.
+    private static final class Suggestion {
+        private final long id;
+        private final int round;
+        private volatile boolean journaled;
+
+        private Suggestion(long id, int round) {
+            this.id = id;
+            this.round = round;
+        }
+    }
+}
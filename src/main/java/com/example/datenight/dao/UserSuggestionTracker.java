@@ -0,0 +1,132 @@
+package com.example.datenight.dao;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+//UserSuggestionTracker remembers which ideas each user (or browser session) has already been shown.
+//Every user gets a sorted array of the idea ids suggested to them, so a user costs 8 to 16 bytes per idea they have
+//seen plus about 150 bytes, however large the ids are. Looking an id up is a binary search.
+//
+//Because this state belongs to one user, a draw never writes to the shared date_night_idea rows and a
+//reset only throws away that user's history instead of updating the whole table.
+//
+//Any caller can pick a user key, so the number of users kept is bounded. A user that hasn't drawn for idleTimeout is
+//forgotten, and once maxUsers are kept the least recently used tenth of them are forgotten too. A forgotten user
+//simply starts over, the same as after a reset.
+public class UserSuggestionTracker {
+    private static final int DEFAULT_MAX_USERS = 10_000;
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofDays(1);
+
+    private final Map<String, History> historyByUser = new ConcurrentHashMap<>();
+    private final int maxUsers;
+    private final long idleTimeoutNanos;
+    //Only one thread evicts at a time; the others carry on without waiting for it
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public UserSuggestionTracker() {
+        this(DEFAULT_MAX_USERS, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public UserSuggestionTracker(int maxUsers, Duration idleTimeout) {
+        this.maxUsers = maxUsers;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    //Returns the history for this user, creating an empty one the first time the user is seen.
+    //Callers hold the history's lock while they read and update it, because the array is not thread safe.
+    public History historyOf(String userKey) {
+        long now = System.nanoTime();
+        History history = historyByUser.get(userKey);
+        if (history == null) {
+            if (historyByUser.size() >= maxUsers) {
+                evict(now);
+            }
+            history = historyByUser.computeIfAbsent(userKey, key -> new History());
+        }
+        history.lastUsedNanos = now;
+        return history;
+    }
+
+    //Forget everything this user has seen so all ideas are available to them again
+    public void reset(String userKey) {
+        historyByUser.remove(userKey);
+    }
+
+    //Number of users that currently have suggestion history in memory
+    public int trackedUsers() {
+        return historyByUser.size();
+    }
+
+    //Forget the users that have been idle too long, and if that doesn't free enough room, the least recently used
+    //tenth. Sorting happens at most once per maxUsers / 10 new users, so a flood of new keys can't make every draw
+    //sort the map.
+    private void evict(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            historyByUser.values().removeIf(history -> now - history.lastUsedNanos > idleTimeoutNanos);
+            int keep = maxUsers - Math.max(1, maxUsers / 10);
+            if (historyByUser.size() <= keep) {
+                return;
+            }
+            List<Map.Entry<String, History>> byLastUse = new ArrayList<>(historyByUser.entrySet());
+            byLastUse.sort((first, second) -> Long.compare(first.getValue().lastUsedNanos, second.getValue().lastUsedNanos));
+            for (int i = 0; i < byLastUse.size() - keep; i++) {
+                historyByUser.remove(byLastUse.get(i).getKey(), byLastUse.get(i).getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    //One user's seen ideas and the lock that guards them. The lock is a ReentrantLock rather than synchronized
+    //because a draw holds it during a database query, and a virtual thread blocked inside synchronized would
+    //hold on to its carrier thread for the whole query.
+    public static final class History {
+        private final ReentrantLock lock = new ReentrantLock();
+        //The first count entries are the ids seen, in ascending order
+        private long[] seen = new long[8];
+        private int count;
+        private volatile long lastUsedNanos;
+
+        public void lock() {
+            lock.lock();
+        }
+
+        public void unlock() {
+            lock.unlock();
+        }
+
+        //The idea ids the user has already seen, in ascending order.
+        //The caller must hold the lock.
+        public long[] seenIds() {
+            return Arrays.copyOf(seen, count);
+        }
+
+        //The caller must hold the lock
+        public boolean hasSeen(long ideaId) {
+            return Arrays.binarySearch(seen, 0, count, ideaId) >= 0;
+        }
+
+        //The caller must hold the lock
+        public void markSeen(long ideaId) {
+            int position = Arrays.binarySearch(seen, 0, count, ideaId);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (count == seen.length) {
+                seen = Arrays.copyOf(seen, count * 2);
+            }
+            System.arraycopy(seen, position, seen, position + 1, count - position);
+            seen[position] = ideaId;
+            count++;
+        }
+    }
+}
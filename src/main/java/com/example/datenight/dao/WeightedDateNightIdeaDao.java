@@ -0,0 +1,307 @@
+package com.example.datenight.dao;
+
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import com.example.datenight.recommendation.IdeaWeigher;
+import com.example.datenight.recommendation.WeightedSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+//WeightedDateNightIdeaDao recommends ideas instead of picking them uniformly: each budget category's ideas are kept in
+//a WeightedSampler and drawn in proportion to the weight an IdeaWeigher gives them, so (for example) newer ideas come
+//up more often. It is switched on with datenight.dao.mode=weighted and wraps JdbcDateNightIdeaDao, which is still used
+//for every write and read that isn't a shared draw.
+//
+//  - A draw costs O(log n) in the number of ideas in the category and never waits for PostgreSQL. The drawn idea can't
+//    be drawn again until the list is reset, the same as with the other DAOs, and is marked as suggested in
+//    PostgreSQL by a SuggestionWriter in the background.
+//  - create, update and delete change only the affected ideas' weights, which is O(log n) per idea. Nothing is rebuilt.
+//  - Each category's sampler has its own ReentrantLock, held only for the O(log n) tree update, so draws in different
+//    categories never wait for each other. A draw also marks the idea as suggested in memory while it holds the lock,
+//    so a writer holding the same lock always sees the sampler and ideasById agree.
+//
+//Per-user draws, pages and streams go to the JDBC DAO. Only run one instance of the app in this mode, because each
+//instance keeps its own samplers.
+public class WeightedDateNightIdeaDao implements DateNightIdeaDaoInterface {
+    private final JdbcDateNightIdeaDao delegate;
+    private final IdeaWeigher weigher;
+    private final Map<Long, DateNightIdea> ideasById = new ConcurrentHashMap<>();
+    //Filled for every category in the constructor and never changed after, so it can be read without a lock
+    private final Map<BudgetCategory, CategorySampler> samplers = new EnumMap<>(BudgetCategory.class);
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final SuggestionWriter suggestionWriter;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //The suggestion settings are the same as for PooledDateNightIdeaDao
+    public WeightedDateNightIdeaDao(JdbcDateNightIdeaDao delegate, JdbcTemplate jdbcTemplate, IdeaWeigher weigher, long flushIntervalMillis,
+                                    int flushBatchSize, Path journalDirectory) {
+        this.delegate = delegate;
+        this.weigher = weigher;
+        for (BudgetCategory category : BudgetCategory.values()) {
+            samplers.put(category, new CategorySampler());
+        }
+        this.suggestionWriter = new SuggestionWriter(jdbcTemplate, flushIntervalMillis, flushBatchSize, journalDirectory, "idea-sampler-writer");
+        loadIdeas();
+    }
+
+    //Draw an idea from the category's sampler without a database round trip
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdea(String budgetCategory) {
+        Optional<BudgetCategory> category = BudgetCategory.fromName(budgetCategory);
+        if (category.isEmpty()) {
+            return Optional.empty();
+        }
+        CategorySampler categorySampler = samplers.get(category.get());
+        while (true) {
+            long id;
+            DateNightIdea suggested;
+            int round;
+            categorySampler.lock.lock();
+            try {
+                id = categorySampler.sampler.draw(ThreadLocalRandom.current());
+                if (id < 0) {
+                    return Optional.empty();
+                }
+                suggested = ideasById.computeIfPresent(id, (key, idea) -> copyOf(idea, true));
+                round = categorySampler.round;
+            } finally {
+                categorySampler.lock.unlock();
+            }
+            if (suggested == null) {
+                //The idea was deleted while it was being drawn; draw again
+                continue;
+            }
+            suggestionWriter.add(id, round);
+            return Optional.of(copyOf(suggested, true));
+        }
+    }
+
+    //Per-user history is kept by the JDBC DAO
+    @Override
+    public Optional<DateNightIdea> findRandomAvailableIdeaForUser(String userKey, String budgetCategory) {
+        return delegate.findRandomAvailableIdeaForUser(userKey, budgetCategory);
+    }
+
+    @Override
+    public DateNightIdea create(DateNightIdea idea) {
+        writeLock.lock();
+        try {
+            DateNightIdea created = delegate.create(idea);
+            track(created);
+            return created;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<DateNightIdea> createAll(List<DateNightIdea> ideas) {
+        writeLock.lock();
+        try {
+            List<DateNightIdea> created = delegate.createAll(ideas);
+            for (DateNightIdea idea : created) {
+                track(idea);
+            }
+            return created;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Update the idea in the database, then re-weigh it, moving it to another sampler if its budget category changed
+    @Override
+    public Optional<DateNightIdea> update(int id, DateNightIdea idea) {
+        writeLock.lock();
+        try {
+            Optional<DateNightIdea> updated = delegate.update(id, idea);
+            updated.ifPresent(this::retrack);
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<DateNightIdea> patch(int id, IdeaPatch patch) {
+        writeLock.lock();
+        try {
+            Optional<DateNightIdea> updated = delegate.patch(id, patch);
+            updated.ifPresent(this::retrack);
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        writeLock.lock();
+        try {
+            boolean deleted = delegate.delete(id);
+            DateNightIdea removed = ideasById.get((long) id);
+            if (removed != null) {
+                untrack(removed);
+            }
+            return deleted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Reset the database first, then make every idea available again. The SuggestionWriter starts a new round with the
+    //reset, and each sampler moves to it together with making its ideas available, so ideas drawn before that, even by
+    //draws still running, are never written after the reset.
+    @Override
+    public void resetListOfIdeas() {
+        writeLock.lock();
+        try {
+            suggestionWriter.reset(delegate::resetListOfIdeas);
+            for (Map.Entry<BudgetCategory, CategorySampler> entry : samplers.entrySet()) {
+                String budgetCategory = entry.getKey().getDisplayName();
+                CategorySampler categorySampler = entry.getValue();
+                categorySampler.lock.lock();
+                try {
+                    categorySampler.sampler.makeAllAvailable();
+                    ideasById.replaceAll((id, idea) -> budgetCategory.equals(idea.getBudgetCategory()) ? copyOf(idea, false) : idea);
+                    categorySampler.round = suggestionWriter.currentRound();
+                } finally {
+                    categorySampler.lock.unlock();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void resetListOfIdeasForUser(String userKey) {
+        delegate.resetListOfIdeasForUser(userKey);
+    }
+
+    //Reads go to the database. Ideas drawn in the last flush interval may still show as not suggested there.
+    @Override
+    public List<DateNightIdea> getAllIdeas() {
+        return delegate.getAllIdeas();
+    }
+
+    @Override
+    public List<DateNightIdea> getIdeasPage(long afterId, int limit, String budgetCategory) {
+        return delegate.getIdeasPage(afterId, limit, budgetCategory);
+    }
+
+    @Override
+    public List<DateNightIdea> searchIdeas(String query, String budgetCategory, boolean unsuggestedOnly, int offset, int limit) {
+        return delegate.searchIdeas(query, budgetCategory, unsuggestedOnly, offset, limit);
+    }
+
+    @Override
+    public void forEachIdea(String budgetCategory, Consumer<DateNightIdea> consumer) {
+        delegate.forEachIdea(budgetCategory, consumer);
+    }
+
+    //Write every queued suggestion to PostgreSQL with a single UPDATE (see SuggestionWriter)
+    public void flushSuggestions() {
+        suggestionWriter.flush();
+    }
+
+    //Stop the background writer and flush anything still queued. Spring calls this when the application shuts down.
+    public void close() {
+        suggestionWriter.close();
+    }
+
+    private void loadIdeas() {
+        writeLock.lock();
+        try {
+            List<DateNightIdea> ideas = delegate.getAllIdeas();
+            for (DateNightIdea idea : ideas) {
+                track(idea);
+            }
+            log.info("Loaded {} date night ideas into the weighted samplers", ideas.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    //Remember the idea and add it to its category's sampler. Only called while holding writeLock.
+    private void track(DateNightIdea idea) {
+        ideasById.put(idea.getId(), copyOf(idea, idea.isSuggested()));
+        Optional<BudgetCategory> category = BudgetCategory.fromName(idea.getBudgetCategory());
+        if (category.isEmpty()) {
+            return;
+        }
+        CategorySampler categorySampler = samplers.get(category.get());
+        double weight = weigher.weightOf(idea);
+        categorySampler.lock.lock();
+        try {
+            categorySampler.sampler.add(idea.getId(), weight, !idea.isSuggested());
+        } finally {
+            categorySampler.lock.unlock();
+        }
+    }
+
+    //Replace the stored idea with the one the database returned after an edit. Whether it is suggested is kept from
+    //memory, because a draw in the last flush interval isn't in the database yet. The idea's sampler stays locked from
+    //reading that until the idea is back, or a draw in between would be undone. Only called while holding writeLock.
+    private void retrack(DateNightIdea edited) {
+        DateNightIdea stored = ideasById.get(edited.getId());
+        if (stored == null) {
+            return;
+        }
+        Optional<CategorySampler> categorySampler = BudgetCategory.fromName(stored.getBudgetCategory()).map(samplers::get);
+        categorySampler.ifPresent(sampler -> sampler.lock.lock());
+        try {
+            DateNightIdea existing = ideasById.get(edited.getId());
+            untrack(existing);
+            track(copyOf(edited, existing.isSuggested()));
+        } finally {
+            categorySampler.ifPresent(sampler -> sampler.lock.unlock());
+        }
+    }
+
+    private void untrack(DateNightIdea idea) {
+        ideasById.remove(idea.getId());
+        BudgetCategory.fromName(idea.getBudgetCategory()).ifPresent(category -> {
+            CategorySampler categorySampler = samplers.get(category);
+            categorySampler.lock.lock();
+            try {
+                categorySampler.sampler.remove(idea.getId());
+            } finally {
+                categorySampler.lock.unlock();
+            }
+        });
+    }
+
+    //Callers get their own copy so they can't change the idea stored here
+    private static DateNightIdea copyOf(DateNightIdea idea, boolean suggested) {
+        DateNightIdea copy = new DateNightIdea();
+        copy.setId(idea.getId());
+        copy.setTitle(idea.getTitle());
+        copy.setDescription(idea.getDescription());
+        copy.setBudgetCategory(idea.getBudgetCategory());
+        copy.setCategoryId(idea.getCategoryId());
+        copy.setLocation(idea.getLocation());
+        copy.setCreatedAt(idea.getCreatedAt());
+        copy.setSuggested(suggested);
+        copy.setVersion(idea.getVersion());
+        return copy;
+    }
+
+    //round is the SuggestionWriter round that draws from the sampler belong to; it is only read and changed under lock
+    private static final class CategorySampler {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final WeightedSampler sampler = new WeightedSampler();
+        private int round;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.datenight.exception;
+
+//IdeaVersionConflictException is thrown when an update says which version of an idea it was made from, but the idea
+//has been edited since. Nothing is changed; the caller should load the idea again and reapply the edit.
+//It extends DaoException so callers that don't care about conflicts still handle it like any other DAO error.
+public class IdeaVersionConflictException extends DaoException {
+    private final int currentVersion;
+
+    public IdeaVersionConflictException(long id, int expectedVersion, int currentVersion) {
+        super("Date night idea " + id + " is at version " + currentVersion + ", not " + expectedVersion);
+        this.currentVersion = currentVersion;
+    }
+
+    public int getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.datenight.feed;
+
+import com.example.datenight.model.CatalogChange;
+import com.example.datenight.model.CatalogChangeType;
+import com.example.datenight.model.DateNightIdea;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+//CatalogChangeFeed sends every change to the shared catalog to the browsers listening on /changes, so they can
+//update the cards they show instead of loading the whole catalog again after every add, update or delete.
+//
+//  - publish never waits for a browser. Each subscriber has its own bounded queue, which publish adds to and the
+//    subscriber's virtual thread empties by writing to the connection. A slow connection only holds up its own thread.
+//  - When a subscriber's queue is full, the queued changes are dropped and replaced by a single RESYNC, which tells
+//    the browser to load the catalog again. So a subscriber never holds more than bufferSize changes in memory.
+//  - Every change gets the next sequence number, sent as the SSE id. The last replaySize changes are kept, so a
+//    browser that reconnects with Last-Event-ID gets the changes it missed, or RESYNC if it has been away too long.
+//    Sequence numbers start at a random value, so an id from before a restart is never mistaken for a current one.
+//  - Draws are coalesced instead of published one by one. publishSuggested only notes the idea, and every
+//    suggestedIntervalMillis each idea drawn since is published once as SUGGESTED. At most half of bufferSize are
+//    published per interval, so draws alone never make a listener reload the catalog; the ones over that aren't
+//    announced and show as suggested the next time the catalog is loaded.
+@Component
+public class CatalogChangeFeed {
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final int replaySize;
+    private final long heartbeatMillis;
+    private final int maxSuggestedPerInterval;
+    //Ideas drawn since the last interval, by id. Guarded by lock.
+    private final Map<Long, DateNightIdea> pendingSuggested = new LinkedHashMap<>();
+    private final ScheduledExecutorService suggestedPublisher;
+    //Guards subscribers, recent and lastSequence, so every subscriber sees the changes in the same order
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final ArrayDeque<SequencedChange> recent = new ArrayDeque<>();
+    private long lastSequence = ThreadLocalRandom.current().nextLong(1L << 40);
+    private final AtomicLong resyncs = new AtomicLong();
+
+    public CatalogChangeFeed(@Value("${datenight.changes.buffer-size:256}") int bufferSize,
+                             @Value("${datenight.changes.max-subscribers:1000}") int maxSubscribers,
+                             @Value("${datenight.changes.replay-size:1024}") int replaySize,
+                             @Value("${datenight.changes.heartbeat-seconds:15}") long heartbeatSeconds,
+                             @Value("${datenight.changes.suggested-interval-ms:1000}") long suggestedIntervalMillis) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.replaySize = replaySize;
+        this.heartbeatMillis = TimeUnit.SECONDS.toMillis(heartbeatSeconds);
+        this.maxSuggestedPerInterval = Math.max(1, bufferSize / 2);
+        this.suggestedPublisher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("catalog-suggested-publisher").daemon().factory());
+        this.suggestedPublisher.scheduleWithFixedDelay(this::publishPendingSuggested, suggestedIntervalMillis, suggestedIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //Send a change to every subscriber. Costs one queue insert per subscriber and never blocks.
+    public void publish(CatalogChangeType type, Long ideaId, DateNightIdea idea) {
+        lock.lock();
+        try {
+            //A draw noted before a reset or a delete would arrive after it and be out of date
+            if (type == CatalogChangeType.RESET || type == CatalogChangeType.RESYNC) {
+                pendingSuggested.clear();
+            } else if (type == CatalogChangeType.DELETED) {
+                pendingSuggested.remove(ideaId);
+            }
+            append(new CatalogChange(type, ideaId, idea));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Note that an idea was drawn from the shared list. It is published as SUGGESTED at the end of the interval, once
+    //however often it was drawn in between.
+    public void publishSuggested(DateNightIdea idea) {
+        lock.lock();
+        try {
+            if (pendingSuggested.size() < maxSuggestedPerInterval || pendingSuggested.containsKey(idea.getId())) {
+                pendingSuggested.put(idea.getId(), idea);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Start sending changes to the emitter. lastEventId is the Last-Event-ID header of a reconnecting browser, or null.
+    //Returns false, without subscribing, when maxSubscribers are already listening.
+    public boolean subscribe(SseEmitter emitter, String lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter);
+        lock.lock();
+        try {
+            if (subscribers.size() >= maxSubscribers) {
+                return false;
+            }
+            subscriber.position = lastSequence;
+            if (lastEventId != null) {
+                replay(subscriber, lastEventId);
+            }
+            subscribers.add(subscriber);
+        } finally {
+            lock.unlock();
+        }
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        subscriber.thread = Thread.ofVirtual().name("catalog-change-subscriber").start(subscriber);
+        return true;
+    }
+
+    public int getSubscriberCount() {
+        lock.lock();
+        try {
+            return subscribers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //How many times a subscriber was told to reload the catalog because it missed changes
+    public long getResyncs() {
+        return resyncs.get();
+    }
+
+    //Close every connection when the application shuts down; browsers reconnect to another instance
+    @PreDestroy
+    public void close() {
+        suggestedPublisher.shutdownNow();
+        List<Subscriber> closing;
+        lock.lock();
+        try {
+            closing = new ArrayList<>(subscribers);
+        } finally {
+            lock.unlock();
+        }
+        for (Subscriber subscriber : closing) {
+            subscriber.close();
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void publishPendingSuggested() {
+        lock.lock();
+        try {
+            for (DateNightIdea idea : pendingSuggested.values()) {
+                append(new CatalogChange(CatalogChangeType.SUGGESTED, idea.getId(), idea));
+            }
+            pendingSuggested.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Number the change, keep it for replay and queue it for every subscriber. Only called while holding the lock.
+    private void append(CatalogChange change) {
+        SequencedChange sequenced = new SequencedChange(++lastSequence, change);
+        recent.addLast(sequenced);
+        if (recent.size() > replaySize) {
+            recent.removeFirst();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(sequenced);
+        }
+    }
+
+    //Queue the changes after lastEventId, or RESYNC if they are no longer kept. Only called while holding the lock.
+    private void replay(Subscriber subscriber, String lastEventId) {
+        long after;
+        try {
+            after = Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            subscriber.offer(resyncAt(lastSequence));
+            return;
+        }
+        long oldestKept = recent.isEmpty() ? lastSequence + 1 : recent.peekFirst().sequence;
+        if (after > lastSequence || after < oldestKept - 1) {
+            subscriber.offer(resyncAt(lastSequence));
+            return;
+        }
+        subscriber.position = after;
+        for (SequencedChange change : recent) {
+            if (change.sequence > after) {
+                subscriber.offer(change);
+            }
+        }
+    }
+
+    private SequencedChange resyncAt(long sequence) {
+        resyncs.incrementAndGet();
+        return new SequencedChange(sequence, new CatalogChange(CatalogChangeType.RESYNC, null, null));
+    }
+
+    private void remove(Subscriber subscriber) {
+        lock.lock();
+        try {
+            subscribers.remove(subscriber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class SequencedChange {
+        private final long sequence;
+        private final CatalogChange change;
+
+        private SequencedChange(long sequence, CatalogChange change) {
+            this.sequence = sequence;
+            this.change = change;
+        }
+    }
+
+    //One browser connection. Only its own thread writes to the emitter.
+    private final class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SequencedChange> queue = new ArrayBlockingQueue<>(bufferSize);
+        //The sequence number of the last change sent, repeated in every heartbeat
+        private long position;
+        private volatile boolean closed;
+        private volatile Thread thread;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        //Only called while holding the feed's lock, so a RESYNC can't be overtaken by a change published after it
+        private void offer(SequencedChange change) {
+            if (!queue.offer(change)) {
+                queue.clear();
+                queue.offer(resyncAt(change.sequence));
+            }
+        }
+
+        //Send changes as they arrive. When nothing has changed for a heartbeat interval an event with only an id is
+        //sent: browsers don't show it to the page, but it keeps proxies from closing an idle connection, finds
+        //connections that have gone away, and tells a reconnecting browser where it was.
+        @Override
+        public void run() {
+            try {
+                emitter.send(SseEmitter.event().id(Long.toString(position)));
+                while (!closed) {
+                    SequencedChange next = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                    if (closed) {
+                        break;
+                    }
+                    if (next == null) {
+                        emitter.send(SseEmitter.event().id(Long.toString(position)));
+                    } else {
+                        emitter.send(SseEmitter.event().id(Long.toString(next.sequence)).data(next.change, MediaType.APPLICATION_JSON));
+                        position = next.sequence;
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                //The browser has gone away or the emitter has already completed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closed = true;
+                remove(this);
+            }
+        }
+
+        private void close() {
+            closed = true;
+            Thread running = thread;
+            if (running != null) {
+                running.interrupt();
+            }
+        }
+    }
+}
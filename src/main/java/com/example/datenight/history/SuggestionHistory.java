@@ -0,0 +1,327 @@
+package com.example.datenight.history;
+
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DailyDraws;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.TopIdea;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//SuggestionHistory keeps a record of every idea that was drawn: which idea, from which budget category, when, and for
+//which user (null for the shared list). The suggested_epoch of an idea only says whether it is suggested right now and
+//is wiped by every reset, so this is the only place that remembers what was popular.
+//
+//  - record() only adds the draw to a queue, so a draw never waits for the history. A background thread writes the
+//    queue every flush interval, or as soon as flushBatchSize draws are waiting, with a single statement (see
+//    WRITE_SQL). When the database can't be reached the draws are queued again, and the background thread waits longer
+//    after each failed flush, up to MAX_RETRY_DELAY_NANOS, before trying again. Once maxPending draws are waiting new
+//    ones are dropped and counted instead of filling the memory. Draws the database refuses outright (see
+//    isPermanent) are dropped and counted instead of being retried forever.
+//  - suggestion_event is partitioned by month (see DateNight.sql). The partition for a month is created the first time
+//    a draw from that month is written, and partitions older than retentionMonths are dropped once a day, which frees
+//    the space at once instead of deleting rows one by one.
+//  - The same statement that inserts the events adds them to two rollup tables, suggestion_daily_count and
+//    suggestion_idea_count, so topIdeas and drawsPerDay read a few rows of those instead of counting events. The
+//    rollups keep their counts when old partitions are dropped.
+//
+//Draws still queued when the app is killed are lost; the history is for statistics, and the suggested_epoch that
+//decides what can be drawn is written by the DAO as before.
+public class SuggestionHistory {
+    //The events arrive as one array per column. The daily rollup is grouped by day (in UTC) and budget category, the
+    //idea rollup by idea, so no row is updated twice by the same statement, and each group is added to the row that is
+    //already there. An idea keeps the budget category it was last drawn from.
+    private static final String WRITE_SQL = "WITH events AS(" +
+            "INSERT INTO suggestion_event (suggested_at, idea_id, category_id, user_key) " +
+            "SELECT TIMESTAMPTZ 'epoch' + e.millis * INTERVAL '1 millisecond', e.idea_id, e.category_id, e.user_key " +
+            "FROM unnest(?::bigint[], ?::int[], ?::smallint[], ?::varchar[]) AS e(millis, idea_id, category_id, user_key) " +
+            "RETURNING suggested_at, idea_id, category_id), " +
+            "daily AS(INSERT INTO suggestion_daily_count (day, category_id, draws) " +
+            "SELECT (suggested_at AT TIME ZONE 'UTC')::date, category_id, COUNT(*) FROM events GROUP BY 1, 2 " +
+            "ON CONFLICT (day, category_id) DO UPDATE SET draws = suggestion_daily_count.draws + EXCLUDED.draws) " +
+            "INSERT INTO suggestion_idea_count (idea_id, category_id, draws, last_suggested_at) " +
+            "SELECT idea_id, (ARRAY_AGG(category_id ORDER BY suggested_at DESC))[1], COUNT(*), MAX(suggested_at) FROM events GROUP BY idea_id " +
+            "ON CONFLICT (idea_id) DO UPDATE SET category_id = EXCLUDED.category_id, draws = suggestion_idea_count.draws + EXCLUDED.draws, " +
+            "last_suggested_at = GREATEST(suggestion_idea_count.last_suggested_at, EXCLUDED.last_suggested_at)";
+    //Reads the idea rollup in the order of idx_suggestion_idea_count_category_draws. Deleted ideas are left out.
+    private static final String TOP_IDEAS_SQL = "SELECT s.idea_id, d.title, s.draws, s.last_suggested_at FROM suggestion_idea_count s " +
+            "JOIN date_night_idea d ON d.id = s.idea_id WHERE s.category_id = ? ORDER BY s.draws DESC, s.idea_id LIMIT ?";
+    private static final String DRAWS_PER_DAY_SQL = "SELECT day, category_id, draws FROM suggestion_daily_count " +
+            "WHERE day BETWEEN ? AND ? ORDER BY day, category_id";
+    private static final String DRAWS_PER_DAY_IN_CATEGORY_SQL = "SELECT day, category_id, draws FROM suggestion_daily_count " +
+            "WHERE day BETWEEN ? AND ? AND category_id = ? ORDER BY day";
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'suggestion_event'::regclass";
+    //Partitions are named after their month, for example suggestion_event_2026_10
+    private static final Pattern PARTITION_NAME = Pattern.compile("suggestion_event_(\\d{4})_(\\d{2})");
+    //The longest the background thread waits between flushes while they keep failing
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int flushBatchSize;
+    private final int maxPending;
+    private final int retentionMonths;
+    private final long flushIntervalNanos;
+    //Guards pendingEvents
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final List<SuggestionEvent> pendingEvents = new ArrayList<>();
+    //Only one flush runs at a time, so events are written in the order they were drawn
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    //Months whose partition is known to exist; only touched by the thread that holds flushLock
+    private final Set<YearMonth> partitions = new HashSet<>();
+    //Flushes that failed in a row, and when the background thread may try again; only touched holding flushLock
+    private int failedFlushes;
+    private long retryAtNanos;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ScheduledExecutorService writer;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    //retentionMonths is how many months before the current one are kept; 0 keeps every month
+    public SuggestionHistory(JdbcTemplate jdbcTemplate, long flushIntervalMillis, int flushBatchSize, int maxPending, int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushBatchSize = flushBatchSize;
+        this.maxPending = maxPending;
+        this.retentionMonths = retentionMonths;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        //A daemon thread so a pending flush never stops the JVM from shutting down; close() flushes what is left
+        this.writer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("suggestion-history").daemon().factory());
+        this.writer.scheduleWithFixedDelay(this::flushWhenDue, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (retentionMonths > 0) {
+            this.writer.scheduleWithFixedDelay(this::dropExpiredPartitions, 0, 1, TimeUnit.DAYS);
+        }
+    }
+
+    //Remember that the idea was drawn, for the user with this key or from the shared list when userKey is null.
+    //Costs one list insert and never waits for the database.
+    public void record(DateNightIdea idea, String userKey) {
+        if (idea.getId() == null) {
+            return;
+        }
+        int categoryId = BudgetCategory.fromName(idea.getBudgetCategory()).map(BudgetCategory::getId).orElse(0);
+        if (categoryId == 0) {
+            return;
+        }
+        SuggestionEvent event = new SuggestionEvent(System.currentTimeMillis(), idea.getId(), categoryId, userKey);
+        int pending;
+        queueLock.lock();
+        try {
+            if (pendingEvents.size() >= maxPending) {
+                dropped.incrementAndGet();
+                return;
+            }
+            pendingEvents.add(event);
+            pending = pendingEvents.size();
+        } finally {
+            queueLock.unlock();
+        }
+        if (pending >= flushBatchSize && flushRequested.compareAndSet(false, true)) {
+            writer.execute(this::flushWhenDue);
+        }
+    }
+
+    //Write every queued event, and add it to the rollups, with one statement. If that fails the events are queued
+    //again, as far as they fit in maxPending, and retried on a later flush.
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<SuggestionEvent> batch;
+            queueLock.lock();
+            try {
+                flushRequested.set(false);
+                if (pendingEvents.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pendingEvents);
+                pendingEvents.clear();
+            } finally {
+                queueLock.unlock();
+            }
+            long[] millis = new long[batch.size()];
+            long[] ideaIds = new long[batch.size()];
+            int[] categoryIds = new int[batch.size()];
+            String[] userKeys = new String[batch.size()];
+            for (int i = 0; i < millis.length; i++) {
+                SuggestionEvent event = batch.get(i);
+                millis[i] = event.suggestedAtMillis();
+                ideaIds[i] = event.ideaId();
+                categoryIds[i] = event.categoryId();
+                userKeys[i] = event.userKey();
+            }
+            try {
+                createPartitions(millis);
+                jdbcTemplate.update(WRITE_SQL, millis, ideaIds, categoryIds, userKeys);
+                written.addAndGet(batch.size());
+                failedFlushes = 0;
+            } catch (DataAccessException e) {
+                if (isPermanent(e)) {
+                    dropped.addAndGet(batch.size());
+                    log.error("Unable to write {} suggestions to the history, they are dropped", batch.size(), e);
+                    return;
+                }
+                retryLater(batch, e);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //The background thread's flush, which is skipped until retryAtNanos while flushes keep failing. flushRequested is
+    //left set then, so draws don't keep asking for a flush that would be skipped anyway.
+    private void flushWhenDue() {
+        flushLock.lock();
+        try {
+            if (failedFlushes > 0 && System.nanoTime() - retryAtNanos < 0) {
+                return;
+            }
+            flush();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //Queue a batch that couldn't be written again, in front of the draws made since, and wait twice as long as last
+    //time before the next try. Draws made during the flush may have filled the queue, so the oldest of the batch are
+    //dropped when it doesn't fit. Must hold flushLock.
+    private void retryLater(List<SuggestionEvent> batch, DataAccessException e) {
+        failedFlushes++;
+        long delay = Math.min(MAX_RETRY_DELAY_NANOS, flushIntervalNanos << Math.min(failedFlushes - 1, 16));
+        retryAtNanos = System.nanoTime() + delay;
+        int requeued;
+        queueLock.lock();
+        try {
+            requeued = Math.max(0, Math.min(batch.size(), maxPending - pendingEvents.size()));
+            pendingEvents.addAll(0, batch.subList(batch.size() - requeued, batch.size()));
+        } finally {
+            queueLock.unlock();
+        }
+        dropped.addAndGet(batch.size() - requeued);
+        if (failedFlushes == 1) {
+            log.error("Unable to write {} suggestions to the history, they will be retried", batch.size(), e);
+        } else {
+            log.warn("Unable to write {} suggestions to the history after {} tries, retrying in {} ms: {}", batch.size(),
+                    failedFlushes, TimeUnit.NANOSECONDS.toMillis(delay), e.getMessage());
+        }
+    }
+
+    //Errors that trying again can't fix, like a missing table or a value the table refuses. Losing the connection
+    //is a NonTransientDataAccessResourceException, so it is retried.
+    private static boolean isPermanent(DataAccessException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof NonTransientDataAccessResourceException);
+    }
+
+    //The most drawn ideas of a budget category, most drawn first
+    public List<TopIdea> topIdeas(BudgetCategory budgetCategory, int limit) {
+        return jdbcTemplate.query(TOP_IDEAS_SQL, (rs, rowNum) -> new TopIdea(rs.getLong("idea_id"), rs.getString("title"),
+                budgetCategory.getDisplayName(), rs.getLong("draws"), rs.getTimestamp("last_suggested_at").toInstant()),
+                budgetCategory.getId(), limit);
+    }
+
+    //How many ideas were drawn on each day from from to to (both included, days in UTC), per budget category.
+    //budgetCategory is optional. Days and categories without draws are left out.
+    public List<DailyDraws> drawsPerDay(LocalDate from, LocalDate to, BudgetCategory budgetCategory) {
+        Object[] args = budgetCategory == null
+                ? new Object[]{from, to}
+                : new Object[]{from, to, budgetCategory.getId()};
+        return jdbcTemplate.query(budgetCategory == null ? DRAWS_PER_DAY_SQL : DRAWS_PER_DAY_IN_CATEGORY_SQL,
+                (rs, rowNum) -> new DailyDraws(rs.getObject("day", LocalDate.class),
+                        BudgetCategory.fromId(rs.getInt("category_id")).map(BudgetCategory::getDisplayName).orElse(null),
+                        rs.getLong("draws")),
+                args);
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getPending() {
+        queueLock.lock();
+        try {
+            return pendingEvents.size();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    //Stop the background thread and write anything still queued
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    //Make sure every month in the batch has its partition. IF NOT EXISTS makes this safe when another instance
+    //creates the same partition first.
+    private void createPartitions(long[] millis) {
+        for (long suggestedAt : millis) {
+            YearMonth month = YearMonth.from(Instant.ofEpochMilli(suggestedAt).atOffset(ZoneOffset.UTC));
+            if (partitions.contains(month)) {
+                continue;
+            }
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF suggestion_event " +
+                    "FOR VALUES FROM ('" + month.atDay(1) + " 00:00:00+00') TO ('" + month.plusMonths(1).atDay(1) + " 00:00:00+00')");
+            partitions.add(month);
+        }
+    }
+
+    //Drop the partitions of months more than retentionMonths before the current one
+    private void dropExpiredPartitions() {
+        YearMonth oldestKept = YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths);
+        flushLock.lock();
+        try {
+            for (String partition : jdbcTemplate.queryForList(PARTITIONS_SQL, String.class)) {
+                Matcher name = PARTITION_NAME.matcher(partition);
+                if (!name.matches()) {
+                    continue;
+                }
+                YearMonth month = YearMonth.of(Integer.parseInt(name.group(1)), Integer.parseInt(name.group(2)));
+                if (month.isBefore(oldestKept)) {
+                    jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                    partitions.remove(month);
+                    log.info("Dropped the suggestion history of {}", month);
+                }
+            }
+        } catch (DataAccessException e) {
+            log.warn("Unable to drop expired suggestion history partitions", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private static String partitionName(YearMonth month) {
+        return String.format("suggestion_event_%04d_%02d", month.getYear(), month.getMonthValue());
+    }
+
+    //One draw waiting to be written
+    private record SuggestionEvent(long suggestedAtMillis, long ideaId, int categoryId, String userKey) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.datenight.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+//CsvRecordReader reads one CSV record at a time from a Reader, so an upload never has to be held in memory.
+//It follows RFC 4180: fields are separated by commas, a field wrapped in double quotes may contain commas and
+//line breaks, and "" inside a quoted field is a literal quote. Both \n and \r\n line endings are accepted.
+public class CsvRecordReader {
+    private final Reader reader;
+    private int peeked = -2;
+
+    public CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    //Return the next record's fields, or null at the end of the input. Blank lines are skipped.
+    public List<String> readRecord() throws IOException {
+        while (true) {
+            int first = peek();
+            if (first == -1) {
+                return null;
+            }
+            if (first == '\r' || first == '\n') {
+                readLineEnd();
+                continue;
+            }
+            return readFields();
+        }
+    }
+
+    private List<String> readFields() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            int c = read();
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("The CSV file ends inside a quoted field");
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        field.append((char) read());
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == -1 || c == '\r' || c == '\n') {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+        }
+    }
+
+    private void readLineEnd() throws IOException {
+        if (read() == '\r' && peek() == '\n') {
+            read();
+        }
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = reader.read();
+        }
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        peeked = -2;
+        return c;
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.datenight.importer;
+
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.ImportFailure;
+import com.example.datenight.model.ImportResult;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+//IdeaImporter loads a large catalog of ideas from an upload. The upload is read one idea at a time and ideas are
+//collected into chunks of chunkSize; each chunk is validated and then saved with a single createAll call. Only one
+//chunk is ever held in memory, so a file with tens of thousands of ideas uses no more memory than a small one.
+//
+//Rows that fail validation are reported and skipped, and the rest of the file is still imported. If the database
+//rejects a chunk, every row in that chunk is reported as failed. If the file itself is broken part way through
+//(bad JSON syntax or an unclosed CSV quote), the chunks before that point stay imported and the result says which
+//row the file could not be read past.
+@Component
+public class IdeaImporter {
+    //Only this many failures are listed in the result. The failed count still includes all of them.
+    static final int MAX_REPORTED_FAILURES = 100;
+    //These limits match the date_night_idea table in DateNight.sql
+    private static final int MAX_TITLE_LENGTH = 255;
+    private static final int MAX_LOCATION_LENGTH = 100;
+
+    private final DateNightIdeaDaoInterface dateNightIdeaDaoInterface;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    public IdeaImporter(DateNightIdeaDaoInterface dateNightIdeaDaoInterface, ObjectMapper objectMapper,
+                        @Value("${datenight.import.chunk-size:500}") int chunkSize) {
+        this.dateNightIdeaDaoInterface = dateNightIdeaDaoInterface;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    //Import a JSON array of ideas, for example [{"title": "...", "budgetCategory": "Free"}, ...]
+    public ImportResult importJsonArray(InputStream input) throws IOException {
+        Chunk chunk = new Chunk();
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("The request body must be a JSON array of ideas");
+            }
+            try {
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null) {
+                        throw new JsonParseException(parser, "The JSON array is not closed");
+                    }
+                    //Reading the element as a tree first means a bad field only fails this row, and the parser
+                    //is already positioned at the next element
+                    JsonNode element = parser.readValueAsTree();
+                    long row = chunk.nextRow();
+                    try {
+                        chunk.add(row, objectMapper.treeToValue(element, DateNightIdea.class));
+                    } catch (JsonProcessingException e) {
+                        chunk.fail(row, "Invalid idea: " + e.getOriginalMessage());
+                    }
+                }
+            } catch (JsonParseException e) {
+                chunk.stop("The JSON could not be read past this row: " + e.getOriginalMessage());
+            }
+        }
+        return chunk.finish();
+    }
+
+    //Import newline-delimited JSON: one idea object per line. A line that isn't valid JSON only fails that row.
+    public ImportResult importNdjson(InputStream input, Charset charset) throws IOException {
+        Chunk chunk = new Chunk();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, charset))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long row = chunk.nextRow();
+                try {
+                    chunk.add(row, objectMapper.readValue(line, DateNightIdea.class));
+                } catch (JsonProcessingException e) {
+                    chunk.fail(row, "Invalid idea: " + e.getOriginalMessage());
+                }
+            }
+        }
+        return chunk.finish();
+    }
+
+    //Import a CSV file. The first line must be a header naming the columns; title and budgetCategory
+    //(or budget_category) are required, description and location are optional, and other columns are ignored.
+    public ImportResult importCsv(InputStream input, Charset charset) throws IOException {
+        Chunk chunk = new Chunk();
+        try (Reader reader = new BufferedReader(new InputStreamReader(input, charset))) {
+            CsvRecordReader records = new CsvRecordReader(reader);
+            List<String> header = records.readRecord();
+            if (header == null) {
+                throw new IllegalArgumentException("The CSV file is empty");
+            }
+            int titleColumn = columnIndex(header, "title");
+            int descriptionColumn = columnIndex(header, "description");
+            int budgetCategoryColumn = columnIndex(header, "budgetcategory", "budget_category");
+            int locationColumn = columnIndex(header, "location");
+            if (titleColumn < 0 || budgetCategoryColumn < 0) {
+                throw new IllegalArgumentException("The CSV header must include title and budgetCategory columns");
+            }
+            try {
+                List<String> record;
+                while ((record = records.readRecord()) != null) {
+                    long row = chunk.nextRow();
+                    if (record.size() != header.size()) {
+                        chunk.fail(row, "Expected " + header.size() + " columns but found " + record.size());
+                        continue;
+                    }
+                    DateNightIdea idea = new DateNightIdea();
+                    idea.setTitle(record.get(titleColumn));
+                    idea.setDescription(valueAt(record, descriptionColumn));
+                    idea.setBudgetCategory(record.get(budgetCategoryColumn));
+                    idea.setLocation(valueAt(record, locationColumn));
+                    chunk.add(row, idea);
+                }
+            } catch (IOException e) {
+                chunk.stop("The CSV could not be read past this row: " + e.getMessage());
+            }
+        }
+        return chunk.finish();
+    }
+
+    //Return why the idea can't be saved, or null if it is valid
+    private static String validate(DateNightIdea idea) {
+        if (idea == null) {
+            return "Expected an idea object";
+        }
+        if (idea.getTitle() == null || idea.getTitle().isBlank()) {
+            return "Title is required";
+        }
+        if (idea.getTitle().length() > MAX_TITLE_LENGTH) {
+            return "Title must be at most " + MAX_TITLE_LENGTH + " characters";
+        }
+        if (!BudgetCategory.isKnown(idea.getBudgetCategory())) {
+            return "Budget category must be Free, Cheap, Moderate or Expensive";
+        }
+        if (idea.getLocation() != null && idea.getLocation().length() > MAX_LOCATION_LENGTH) {
+            return "Location must be at most " + MAX_LOCATION_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    private static int columnIndex(List<String> header, String... names) {
+        for (int i = 0; i < header.size(); i++) {
+            String column = header.get(i).trim().toLowerCase(Locale.ROOT);
+            for (String name : names) {
+                if (column.equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    //Optional CSV columns that are missing or empty are stored as NULL
+    private static String valueAt(List<String> record, int column) {
+        if (column < 0 || record.get(column).isEmpty()) {
+            return null;
+        }
+        return record.get(column);
+    }
+
+    //Collects valid ideas until there are chunkSize of them, then saves them together, and keeps the running totals
+    private final class Chunk {
+        private final ImportResult result = new ImportResult();
+        private final List<DateNightIdea> ideas = new ArrayList<>();
+        private final List<Long> rows = new ArrayList<>();
+
+        private long nextRow() {
+            result.setReceived(result.getReceived() + 1);
+            return result.getReceived();
+        }
+
+        private void add(long row, DateNightIdea idea) {
+            String problem = validate(idea);
+            if (problem != null) {
+                fail(row, problem);
+                return;
+            }
+            ideas.add(idea);
+            rows.add(row);
+            if (ideas.size() >= chunkSize) {
+                save();
+            }
+        }
+
+        private void fail(long row, String message) {
+            result.setFailed(result.getFailed() + 1);
+            if (result.getFailures().size() < MAX_REPORTED_FAILURES) {
+                result.getFailures().add(new ImportFailure(row, message));
+            } else {
+                result.setFailuresTruncated(true);
+            }
+        }
+
+        //The rest of the file can't be read, so the unreadable row after the last good one is reported as failed
+        private void stop(String message) {
+            fail(nextRow(), message);
+        }
+
+        private void save() {
+            if (ideas.isEmpty()) {
+                return;
+            }
+            try {
+                List<DateNightIdea> created = dateNightIdeaDaoInterface.createAll(ideas);
+                result.setImported(result.getImported() + created.size());
+            } catch (DaoException | DataAccessException e) {
+                String message = "Unable to save this row's chunk: " + e.getMessage();
+                for (long row : rows) {
+                    fail(row, message);
+                }
+            }
+            ideas.clear();
+            rows.clear();
+        }
+
+        private ImportResult finish() {
+            save();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.datenight.importer;
+
+import com.example.datenight.model.BudgetCategory;
+import com.example.datenight.model.DateNightIdea;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//SeedIdeaReader reads the ideas a new embedded store starts with (see EmbeddedDateNightIdeaDao). Two shapes of JSON
+//are understood:
+//  - an array of ideas, the same as an import: [{"title": "...", "budgetCategory": "Free", ...}, ...]. seed-ideas.json
+//    holds the sample ideas of DateNight.sql in this shape.
+//  - ideas collected per person and budget category, as in usersData.json: {"Alice": {"Free": ["Stargazing"]}}.
+//    These only have a title.
+//An idea with the same title and budget category as one read before it is skipped, as is one with an unknown budget
+//category or no title. Sources that don't exist are skipped too.
+public class SeedIdeaReader {
+    private final ObjectMapper objectMapper;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    public SeedIdeaReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public List<DateNightIdea> read(List<Resource> sources) {
+        List<DateNightIdea> ideas = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Resource source : sources) {
+            if (!source.exists()) {
+                continue;
+            }
+            int before = ideas.size();
+            try (InputStream input = source.getInputStream()) {
+                JsonNode root = objectMapper.readTree(input);
+                if (root.isArray()) {
+                    for (JsonNode idea : root) {
+                        add(ideas, seen, text(idea, "title"), text(idea, "description"), text(idea, "budgetCategory"), text(idea, "location"));
+                    }
+                } else if (root.isObject()) {
+                    for (JsonNode categories : root) {
+                        Iterator<Map.Entry<String, JsonNode>> byCategory = categories.fields();
+                        while (byCategory.hasNext()) {
+                            Map.Entry<String, JsonNode> titles = byCategory.next();
+                            for (JsonNode title : titles.getValue()) {
+                                add(ideas, seen, title.asText(null), null, titles.getKey(), null);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Unable to read seed ideas from {}", source, e);
+                continue;
+            }
+            log.info("Read {} seed ideas from {}", ideas.size() - before, source);
+        }
+        return ideas;
+    }
+
+    private static void add(List<DateNightIdea> ideas, Set<String> seen, String title, String description, String budgetCategory, String location) {
+        if (title == null || title.isBlank() || !BudgetCategory.isKnown(budgetCategory) || !seen.add(budgetCategory + "\n" + title.trim())) {
+            return;
+        }
+        DateNightIdea idea = new DateNightIdea();
+        idea.setTitle(title.trim());
+        idea.setDescription(description);
+        idea.setBudgetCategory(budgetCategory);
+        idea.setLocation(location);
+        ideas.add(idea);
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.datenight.model;
+
+import java.util.Map;
+import java.util.Optional;
+
+//The four budget categories an idea can belong to. The ids are the same as the rows of the budget_category table in
+//DateNight.sql, so the DAO can turn a name from the URL into the category_id it queries by without asking the database,
+//and a name that isn't one of these never reaches the database at all.
+public enum BudgetCategory {
+    FREE(1, "Free"),
+    CHEAP(2, "Cheap"),
+    MODERATE(3, "Moderate"),
+    EXPENSIVE(4, "Expensive");
+
+    private static final Map<String, BudgetCategory> BY_NAME = Map.of(
+            FREE.displayName, FREE, CHEAP.displayName, CHEAP, MODERATE.displayName, MODERATE, EXPENSIVE.displayName, EXPENSIVE);
+    //Indexed by id, so index 0 is unused
+    private static final BudgetCategory[] BY_ID = {null, FREE, CHEAP, MODERATE, EXPENSIVE};
+
+    private final int id;
+    private final String displayName;
+
+    BudgetCategory(int id, String displayName) {
+        this.id = id;
+        this.displayName = displayName;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    //The name used in the API and stored in budget_category.name, for example "Free"
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    //Names are matched exactly, the same way the old CHECK constraint on budget_category did
+    public static Optional<BudgetCategory> fromName(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(BY_NAME.get(name));
+    }
+
+    public static Optional<BudgetCategory> fromId(int id) {
+        return id > 0 && id < BY_ID.length ? Optional.of(BY_ID[id]) : Optional.empty();
+    }
+
+    public static boolean isKnown(String name) {
+        return name != null && BY_NAME.containsKey(name);
+    }
+}
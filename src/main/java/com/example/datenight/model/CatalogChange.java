@@ -0,0 +1,42 @@
+package com.example.datenight.model;
+
+//CatalogChange is one change to the shared catalog, sent as the data of an event on the /changes feed.
+//ideaId is set for every change to a single idea, and idea holds its new state except when it was deleted.
+public class CatalogChange {
+    private CatalogChangeType type;
+    private Long ideaId;
+    private DateNightIdea idea;
+
+    public CatalogChange() {
+    }
+
+    public CatalogChange(CatalogChangeType type, Long ideaId, DateNightIdea idea) {
+        this.type = type;
+        this.ideaId = ideaId;
+        this.idea = idea;
+    }
+
+    public CatalogChangeType getType() {
+        return type;
+    }
+
+    public void setType(CatalogChangeType type) {
+        this.type = type;
+    }
+
+    public Long getIdeaId() {
+        return ideaId;
+    }
+
+    public void setIdeaId(Long ideaId) {
+        this.ideaId = ideaId;
+    }
+
+    public DateNightIdea getIdea() {
+        return idea;
+    }
+
+    public void setIdea(DateNightIdea idea) {
+        this.idea = idea;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.datenight.model;
+
+//The kinds of change sent on the /changes feed
+public enum CatalogChangeType {
+    //An idea was added. The change holds the new idea.
+    CREATED,
+
+    //An idea was edited. The change holds the idea as it was saved.
+    UPDATED,
+
+    //An idea was deleted. Only ideaId is set.
+    DELETED,
+
+    //An idea was drawn from the shared list and is now suggested. The change holds the idea. Draws are coalesced, so
+    //an idea drawn several times within datenight.changes.suggested-interval-ms is sent once.
+    SUGGESTED,
+
+    //The shared list was reset, so every idea can be drawn again
+    RESET,
+
+    //Changes were missed (the listener fell too far behind, reconnected too late, or many ideas were imported at once),
+    //so the listener should load the catalog again instead of applying changes
+    RESYNC
+}
@@ -0,0 +1,43 @@
+package com.example.datenight.model;
+
+import java.time.LocalDate;
+
+//DailyDraws is how many ideas of one budget category were drawn on one day (in UTC), returned by /history/daily
+public class DailyDraws {
+    private LocalDate day;
+    private String budgetCategory;
+    private long draws;
+
+    public DailyDraws() {
+    }
+
+    public DailyDraws(LocalDate day, String budgetCategory, long draws) {
+        this.day = day;
+        this.budgetCategory = budgetCategory;
+        this.draws = draws;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public void setDay(LocalDate day) {
+        this.day = day;
+    }
+
+    public String getBudgetCategory() {
+        return budgetCategory;
+    }
+
+    public void setBudgetCategory(String budgetCategory) {
+        this.budgetCategory = budgetCategory;
+    }
+
+    public long getDraws() {
+        return draws;
+    }
+
+    public void setDraws(long draws) {
+        this.draws = draws;
+    }
+}
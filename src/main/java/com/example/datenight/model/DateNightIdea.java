@@ -14,6 +14,8 @@ public class DateNightIdea {
     private String location;
     private LocalDateTime createdAt;
     private boolean isSuggested;
+    //Goes up by one on every edit. Null in an update means the update doesn't check it.
+    private Integer version;
 
     //Generate getters and setters for each variable using encapsulation principles of Object-Oriented
     //Programming to ensure that private data may be accessed in another class.
@@ -82,4 +84,12 @@ public class DateNightIdea {
         isSuggested = suggested;
     }
 
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
 }
@@ -0,0 +1,36 @@
+package com.example.datenight.model;
+
+import java.util.List;
+
+//IdeaPage is one page of date night ideas returned by the /ideas endpoint.
+//nextAfterId is the id to send as afterId to get the next page, or null when this is the last page.
+//Because pages are found by id instead of by page number, the database never has to count past
+//earlier pages, so every page costs the same no matter how deep into the catalog it is.
+public class IdeaPage {
+    private List<DateNightIdea> ideas;
+    private Long nextAfterId;
+
+    public IdeaPage() {
+    }
+
+    public IdeaPage(List<DateNightIdea> ideas, Long nextAfterId) {
+        this.ideas = ideas;
+        this.nextAfterId = nextAfterId;
+    }
+
+    public List<DateNightIdea> getIdeas() {
+        return ideas;
+    }
+
+    public void setIdeas(List<DateNightIdea> ideas) {
+        this.ideas = ideas;
+    }
+
+    public Long getNextAfterId() {
+        return nextAfterId;
+    }
+
+    public void setNextAfterId(Long nextAfterId) {
+        this.nextAfterId = nextAfterId;
+    }
+}
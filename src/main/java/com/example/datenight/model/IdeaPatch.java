@@ -0,0 +1,84 @@
+package com.example.datenight.model;
+
+//IdeaPatch holds the changes sent to PATCH /updateIdea/{id}. Only the fields present in the request are changed;
+//the others keep their current value. A field sent as null is present too, so "location": null clears the location.
+//
+//Jackson only calls the setter of a property that is in the JSON, so each setter also records that its field was sent.
+//version is the version of the idea the client started from. When it is set, the changes are only applied if the
+//idea hasn't been edited since.
+public class IdeaPatch {
+    private String title;
+    private String description;
+    private String budgetCategory;
+    private String location;
+    private Integer version;
+    private boolean titleSet;
+    private boolean descriptionSet;
+    private boolean budgetCategorySet;
+    private boolean locationSet;
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+        this.titleSet = true;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+        this.descriptionSet = true;
+    }
+
+    public String getBudgetCategory() {
+        return budgetCategory;
+    }
+
+    public void setBudgetCategory(String budgetCategory) {
+        this.budgetCategory = budgetCategory;
+        this.budgetCategorySet = true;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+        this.locationSet = true;
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public boolean hasTitle() {
+        return titleSet;
+    }
+
+    public boolean hasDescription() {
+        return descriptionSet;
+    }
+
+    public boolean hasBudgetCategory() {
+        return budgetCategorySet;
+    }
+
+    public boolean hasLocation() {
+        return locationSet;
+    }
+
+    //True when the patch doesn't change any field
+    public boolean changesNothing() {
+        return !titleSet && !descriptionSet && !budgetCategorySet && !locationSet;
+    }
+}
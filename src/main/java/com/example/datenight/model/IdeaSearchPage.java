@@ -0,0 +1,36 @@
+package com.example.datenight.model;
+
+import java.util.List;
+
+//IdeaSearchPage is one page of results from the /search endpoint, best matches first.
+//nextOffset is the offset to send to get the next page, or null when this is the last page.
+//Search results are ordered by rank rather than id, and the rank of every match has to be worked out
+//before the best ones are known, so pages are found by offset instead of by id like IdeaPage.
+public class IdeaSearchPage {
+    private List<DateNightIdea> ideas;
+    private Integer nextOffset;
+
+    public IdeaSearchPage() {
+    }
+
+    public IdeaSearchPage(List<DateNightIdea> ideas, Integer nextOffset) {
+        this.ideas = ideas;
+        this.nextOffset = nextOffset;
+    }
+
+    public List<DateNightIdea> getIdeas() {
+        return ideas;
+    }
+
+    public void setIdeas(List<DateNightIdea> ideas) {
+        this.ideas = ideas;
+    }
+
+    public Integer getNextOffset() {
+        return nextOffset;
+    }
+
+    public void setNextOffset(Integer nextOffset) {
+        this.nextOffset = nextOffset;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.datenight.model;
+
+//ImportFailure describes one row of a bulk import that could not be saved.
+//row is the 1-based position of the idea in the uploaded file (not counting a CSV header line).
+public class ImportFailure {
+    private long row;
+    private String message;
+
+    public ImportFailure() {
+    }
+
+    public ImportFailure(long row, String message) {
+        this.row = row;
+        this.message = message;
+    }
+
+    public long getRow() {
+        return row;
+    }
+
+    public void setRow(long row) {
+        this.row = row;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.datenight.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//ImportResult is the summary returned after a bulk import: how many rows were read, how many were saved,
+//how many failed, and the reason for each failure. Only the first failures are listed so a file full of
+//bad rows can't produce a huge response; failuresTruncated is true when some were left out.
+public class ImportResult {
+    private long received;
+    private long imported;
+    private long failed;
+    private List<ImportFailure> failures = new ArrayList<>();
+    private boolean failuresTruncated;
+
+    public long getReceived() {
+        return received;
+    }
+
+    public void setReceived(long received) {
+        this.received = received;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public List<ImportFailure> getFailures() {
+        return failures;
+    }
+
+    public void setFailures(List<ImportFailure> failures) {
+        this.failures = failures;
+    }
+
+    public boolean isFailuresTruncated() {
+        return failuresTruncated;
+    }
+
+    public void setFailuresTruncated(boolean failuresTruncated) {
+        this.failuresTruncated = failuresTruncated;
+    }
+}
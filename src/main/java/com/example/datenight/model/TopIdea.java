@@ -0,0 +1,64 @@
+package com.example.datenight.model;
+
+import java.time.Instant;
+
+//TopIdea is one idea on the /history/top list: how often it has been drawn since the history was started (shared and
+//per-user draws together) and when it was last drawn.
+public class TopIdea {
+    private long ideaId;
+    private String title;
+    private String budgetCategory;
+    private long draws;
+    private Instant lastSuggestedAt;
+
+    public TopIdea() {
+    }
+
+    public TopIdea(long ideaId, String title, String budgetCategory, long draws, Instant lastSuggestedAt) {
+        this.ideaId = ideaId;
+        this.title = title;
+        this.budgetCategory = budgetCategory;
+        this.draws = draws;
+        this.lastSuggestedAt = lastSuggestedAt;
+    }
+
+    public long getIdeaId() {
+        return ideaId;
+    }
+
+    public void setIdeaId(long ideaId) {
+        this.ideaId = ideaId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getBudgetCategory() {
+        return budgetCategory;
+    }
+
+    public void setBudgetCategory(String budgetCategory) {
+        this.budgetCategory = budgetCategory;
+    }
+
+    public long getDraws() {
+        return draws;
+    }
+
+    public void setDraws(long draws) {
+        this.draws = draws;
+    }
+
+    public Instant getLastSuggestedAt() {
+        return lastSuggestedAt;
+    }
+
+    public void setLastSuggestedAt(Instant lastSuggestedAt) {
+        this.lastSuggestedAt = lastSuggestedAt;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.datenight.recommendation;
+
+import com.example.datenight.model.DateNightIdea;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+//Decides how likely an idea is to be recommended. WeightedDateNightIdeaDao asks for an idea's weight when the idea is
+//loaded, created or updated, and draws ideas in proportion to their weights. Weights must be positive and finite.
+//
+//A weight is only worked out again when the idea changes, so it must not depend on the current time. The recency
+//weigher still works that way because of how exponential decay behaves (see recency below).
+@FunctionalInterface
+public interface IdeaWeigher {
+
+    double weightOf(DateNightIdea idea);
+
+    //Every idea is equally likely, like the other DAOs
+    static IdeaWeigher uniform() {
+        return idea -> 1.0;
+    }
+
+    //Newer ideas are more likely: an idea created one half-life after another is twice as likely to be drawn.
+    //The weight is 2^(age difference / half-life) measured from a fixed reference time, and the ratio between two
+    //ideas' weights stays the same as time passes, so nothing has to be re-weighed as ideas get older.
+    //Ideas without a created_at are weighed as if they were created at the reference time.
+    static IdeaWeigher recency(Duration halfLife) {
+        return recency(halfLife, LocalDateTime.now());
+    }
+
+    static IdeaWeigher recency(Duration halfLife, LocalDateTime reference) {
+        if (halfLife.isZero() || halfLife.isNegative()) {
+            throw new IllegalArgumentException("The recency half-life must be positive");
+        }
+        double halfLifeSeconds = halfLife.toSeconds();
+        long referenceSeconds = reference.toEpochSecond(ZoneOffset.UTC);
+        return idea -> {
+            if (idea.getCreatedAt() == null) {
+                return 1.0;
+            }
+            double halfLives = (idea.getCreatedAt().toEpochSecond(ZoneOffset.UTC) - referenceSeconds) / halfLifeSeconds;
+            //Kept well inside the range of a double, so the weight is never 0 or infinite
+            return Math.pow(2, Math.max(-500, Math.min(500, halfLives)));
+        };
+    }
+}
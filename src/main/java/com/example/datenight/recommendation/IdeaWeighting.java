@@ -0,0 +1,11 @@
+package com.example.datenight.recommendation;
+
+//The IdeaWeighting enum lists the weighers that can be chosen with the datenight.recommendation.weighting property.
+//Popularity and user ratings are not recorded anywhere yet; when they are, they can be added here as new weighers.
+public enum IdeaWeighting {
+    //Every idea is equally likely
+    UNIFORM,
+
+    //Newer ideas are more likely, see IdeaWeigher.recency
+    RECENCY
+}
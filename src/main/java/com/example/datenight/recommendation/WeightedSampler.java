@@ -0,0 +1,223 @@
+package com.example.datenight.recommendation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+//WeightedSampler draws idea ids at random in proportion to their weights, without repeats: a drawn id is not drawn
+//again until it is made available again. It is built on a Fenwick tree (binary indexed tree), where every slot of
+//the tree holds the sum of a power-of-two sized range of weights. That makes each operation O(log n):
+//  - draw: pick a random point between 0 and the total weight and walk down the tree to the slot it falls in
+//  - add, setWeight, remove, makeAvailable: change one weight and fix the O(log n) sums that include it
+//An alias table draws in O(1) but has to be rebuilt from scratch whenever a weight changes, and every draw and
+//every write changes a weight here.
+//
+//Removed ids leave an empty slot behind. Once more than half the slots are empty the tree is rebuilt without them,
+//which is O(n) but happens at most once every n/2 removals.
+//
+//Not thread safe: WeightedDateNightIdeaDao holds a lock for each category's sampler.
+public final class WeightedSampler {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    //The weight of every slot, whether or not it can be drawn right now. 0 for an empty slot.
+    private double[] weights = new double[INITIAL_CAPACITY];
+    //Whether the slot's weight is counted in the tree, so it can be drawn
+    private boolean[] available = new boolean[INITIAL_CAPACITY];
+    //tree[i] is the sum of the available weights of slots i - (i & -i) up to i - 1 (the tree is 1-based)
+    private double[] tree = new double[INITIAL_CAPACITY + 1];
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private int size;
+    private int emptySlots;
+    private int availableCount;
+
+    //Add an id with its weight. Weights must be positive and finite. An id that is already there gets the new weight.
+    public void add(long id, double weight, boolean canBeDrawn) {
+        checkWeight(weight);
+        Integer existing = slotById.get(id);
+        if (existing != null) {
+            setWeight(id, weight);
+            if (canBeDrawn) {
+                makeAvailable(id);
+            }
+            return;
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        int slot = size++;
+        ids[slot] = id;
+        weights[slot] = weight;
+        slotById.put(id, slot);
+        if (canBeDrawn) {
+            available[slot] = true;
+            availableCount++;
+            addToTree(slot, weight);
+        }
+    }
+
+    public void setWeight(long id, double weight) {
+        checkWeight(weight);
+        Integer slot = slotById.get(id);
+        if (slot == null) {
+            return;
+        }
+        if (available[slot]) {
+            addToTree(slot, weight - weights[slot]);
+        }
+        weights[slot] = weight;
+    }
+
+    public boolean remove(long id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        takeOut(slot);
+        weights[slot] = 0;
+        emptySlots++;
+        if (emptySlots > size / 2) {
+            rebuild(ids.length);
+        }
+        return true;
+    }
+
+    //Draw one available id, each with probability weight / total available weight, and stop it from being drawn
+    //again. Returns -1 when nothing is available.
+    public long draw(RandomGenerator random) {
+        if (availableCount == 0) {
+            return -1;
+        }
+        int slot = find(random.nextDouble() * total());
+        if (slot >= size || !available[slot]) {
+            //Rounding in the running sums can, very rarely, point just past the last available slot
+            slot = lastAvailableSlot();
+        }
+        takeOut(slot);
+        return ids[slot];
+    }
+
+    //Let a drawn id be drawn again
+    public void makeAvailable(long id) {
+        Integer slot = slotById.get(id);
+        if (slot != null && !available[slot]) {
+            available[slot] = true;
+            availableCount++;
+            addToTree(slot, weights[slot]);
+        }
+    }
+
+    //Make every id available again, for a reset. Rebuilding also clears any rounding error in the sums.
+    public void makeAllAvailable() {
+        for (int slot = 0; slot < size; slot++) {
+            available[slot] = weights[slot] > 0;
+        }
+        rebuild(ids.length);
+    }
+
+    public boolean contains(long id) {
+        return slotById.containsKey(id);
+    }
+
+    public int size() {
+        return slotById.size();
+    }
+
+    public int availableCount() {
+        return availableCount;
+    }
+
+    private void takeOut(int slot) {
+        if (available[slot]) {
+            available[slot] = false;
+            availableCount--;
+            addToTree(slot, -weights[slot]);
+        }
+    }
+
+    private void addToTree(int slot, double delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private double total() {
+        double sum = 0;
+        for (int i = tree.length - 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    //Find the slot whose range of the running total contains target by walking down from the largest power of two.
+    //Slots that can't be drawn add nothing to the running total, so the walk never stops on one of them.
+    private int find(double target) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] <= target) {
+                position = next;
+                target -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    private int lastAvailableSlot() {
+        for (int slot = size - 1; slot >= 0; slot--) {
+            if (available[slot]) {
+                return slot;
+            }
+        }
+        throw new IllegalStateException("No available slot although " + availableCount + " ids are available");
+    }
+
+    private void grow() {
+        rebuild(Math.max(INITIAL_CAPACITY, slotById.size() * 2));
+    }
+
+    //Pack the remaining ids into the first slots of arrays with the given capacity and rebuild the tree in O(n)
+    private void rebuild(int capacity) {
+        long[] newIds = new long[capacity];
+        double[] newWeights = new double[capacity];
+        boolean[] newAvailable = new boolean[capacity];
+        int newSize = 0;
+        availableCount = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (weights[slot] > 0) {
+                newIds[newSize] = ids[slot];
+                newWeights[newSize] = weights[slot];
+                newAvailable[newSize] = available[slot];
+                if (available[slot]) {
+                    availableCount++;
+                }
+                slotById.put(ids[slot], newSize);
+                newSize++;
+            }
+        }
+        ids = newIds;
+        weights = newWeights;
+        available = newAvailable;
+        size = newSize;
+        emptySlots = 0;
+        tree = new double[capacity + 1];
+        for (int slot = 0; slot < size; slot++) {
+            if (available[slot]) {
+                tree[slot + 1] += weights[slot];
+            }
+        }
+        //Each node passes its sum up to its parent, which builds the whole tree in one pass
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private static void checkWeight(double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weights must be positive and finite, not " + weight);
+        }
+    }
+}
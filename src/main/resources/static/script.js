@@ -21,6 +21,32 @@ const modalHeader = document.getElementById("modal-header");
 
 let currentEditingId = null;
 
+//The idea as it was when the update form was opened. Only the fields that differ from it are sent, together with
+//its version, so the server can refuse the update if someone else changed the idea in the meantime.
+let currentEditingIdea = null;
+
+//The card shown for each idea id, so a pushed change can replace or remove just that card
+const cardsById = new Map();
+
+//True while the results container shows the whole catalog (rather than a random idea or a message).
+//Pushed changes are only applied to the cards then.
+let showingAllIdeas = false;
+
+// ----------------------------
+// User key - every browser keeps its own list of suggested ideas
+// ----------------------------
+//The key is created once and saved in localStorage, so it survives page reloads. It is sent with random
+//and reset requests so one person's draws never use up ideas for anyone else.
+function getUserKey() {
+    let userKey = localStorage.getItem("dateNightUserKey");
+    if (!userKey) {
+        userKey = crypto.randomUUID();
+        localStorage.setItem("dateNightUserKey", userKey);
+    }
+    return userKey;
+}
+const userKey = getUserKey();
+
 // ----------------------------
 // Utility Functions - create helper methods for common tasks
 // ----------------------------
@@ -29,36 +55,78 @@ let currentEditingId = null;
 //so that old ideas don't pile up when you render new ones
 function clearResults() {
     results.innerHTML = "";
+    cardsById.clear();
 }
 
 //the show message function displays a message to the user in the results container
 function showMessage(message) {
     results.innerHTML = `<li class="message">${message}</li>`;
+    cardsById.clear();
+    showingAllIdeas = false;
 }
 
 // ----------------------------
 // Fetch all ideas
 // ----------------------------
-//The fetchAllIdeas function retrieves all date night ideas from the backend API
+//How many ideas are requested per page. Each page is rendered as soon as it arrives, so the first
+//cards appear quickly even when the catalog is very large.
+const pageSize = 100;
+
+//Every call to fetchAllIdeas gets a new number. If the user starts another load (for example by adding an idea)
+//while pages are still arriving, the older load sees that its number is out of date and stops.
+let loadGeneration = 0;
+
+//Fetch a page, and if the server answers 429 because pages were asked for faster than it allows, wait the
+//Retry-After seconds it sent and ask for the same page again. Gives up (returning the 429) if a newer load started.
+async function fetchPage(url, generation) {
+    while (true) {
+        const res = await fetch(url);
+        if (res.status !== 429) return res;
+        const seconds = Number(res.headers.get("Retry-After")) || 1;
+        await new Promise((resolve) => setTimeout(resolve, seconds * 1000));
+        if (generation !== loadGeneration) return res;
+    }
+}
+
+//The fetchAllIdeas function retrieves all date night ideas from the backend API one page at a time
 //and displays them in the results container. It also hides the random idea UI section.
 async function fetchAllIdeas() {
+    const generation = ++loadGeneration;
     try {
         randomUI.style.display = "none";
-        // Fetch all ideas from the backend API. Await pauses execution until the server
-        //responds, so res contains the response object
-        const res = await fetch(`${apiUrl}/allIdeas`);
+        showingAllIdeas = true;
+        let afterId = 0;
+        let firstPage = true;
 
-        //If the response is not ok (status code outside 200-299), throw an error
-        if (!res.ok) throw new Error("Failed to fetch ideas");
+        //nextAfterId is null on the last page, which ends the loop
+        while (afterId !== null) {
+            // Fetch the next page from the backend API. Await pauses execution until the server
+            //responds, so res contains the response object
+            const res = await fetchPage(`${apiUrl}/ideas?afterId=${afterId}&limit=${pageSize}`, generation);
 
-        //Convert the raw HTTP response into JSON format
-        const ideas = await res.json();
+            //A newer load has started, so leave the results to it
+            if (generation !== loadGeneration) return;
 
-        //Calls the clear results function to empty the results container
-        clearResults();
+            //If the response is not ok (status code outside 200-299), throw an error
+            if (!res.ok) throw new Error("Failed to fetch ideas");
+
+            //Convert the raw HTTP response into JSON format
+            const page = await res.json();
+
+            //A newer load has started, so leave the results to it
+            if (generation !== loadGeneration) return;
 
-        //render each idea card by iterating over the ideas array
-        ideas.forEach(renderIdeaCard);
+            //Calls the clear results function to empty the results container once the first page is ready.
+            //A card pushed by the change feed before then is cleared too, but this page was read after it was made.
+            if (firstPage) {
+                clearResults();
+                firstPage = false;
+            }
+
+            //render each idea card by iterating over the ideas on this page
+            page.ideas.forEach(renderIdeaCard);
+            afterId = page.nextAfterId;
+        }
     } catch (err) {
         console.error(err);
         showMessage("Failed to load ideas.");
@@ -90,6 +158,7 @@ function renderIdeaCard(item) {
     //the modal form is populated with the idea's existing data and displayed to the user.
     li.querySelector(".update-btn").addEventListener("click", () => {
         currentEditingId = item.id;
+        currentEditingIdea = item;
 
         //modalHeader is the title of the modal form, which is set to "Update Idea"
         modalHeader.textContent = "Update Idea";
@@ -112,9 +181,8 @@ function renderIdeaCard(item) {
             try {
                 const res = await fetch(`${apiUrl}/deleteIdea/${item.id}`, { method: "DELETE" });
                 if (!res.ok) throw new Error("Failed to delete idea");
-                showMessage("Idea deleted successfully!");
-                // Refresh the list of ideas after deletion
-                fetchAllIdeas();
+                //The deleted idea's card is removed when the change arrives from the server
+                showAllIdeasAfterChange("Idea deleted successfully!");
             } catch (err) {
                 console.error(err);
                 showMessage("Failed to delete idea.");
@@ -122,8 +190,46 @@ function renderIdeaCard(item) {
         }
     });
 
-    //Append the constructed idea card list item to the results container in the DOM
-    results.appendChild(li);
+    //Replace the idea's card if it is already shown (a pushed change may have added it while pages were loading),
+    //otherwise append the constructed idea card list item to the results container in the DOM
+    const existing = cardsById.get(item.id);
+    cardsById.set(item.id, li);
+    if (existing && existing.isConnected) {
+        existing.replaceWith(li);
+    } else {
+        results.appendChild(li);
+    }
+}
+
+//Remove the card of a deleted idea, if it is shown
+function removeIdeaCard(id) {
+    const card = cardsById.get(id);
+    if (card) {
+        card.remove();
+        cardsById.delete(id);
+    }
+}
+
+//After an add, update or delete the list of ideas is brought up to date by the change feed, so the catalog only
+//has to be loaded when the list isn't already on screen. Without a working change feed (for example when the server
+//refused it because it already has as many listeners as it allows) the change would never arrive, so the catalog is
+//loaded then too. message is shown above the list either way.
+async function showAllIdeasAfterChange(message) {
+    if (!showingAllIdeas || changes.readyState !== EventSource.OPEN) {
+        await fetchAllIdeas();
+    }
+    if (showingAllIdeas) {
+        showNotice(message);
+    }
+}
+
+//Show a short message above the list of ideas without replacing it
+function showNotice(message) {
+    const notice = document.createElement("li");
+    notice.className = "message";
+    notice.textContent = message;
+    results.prepend(notice);
+    setTimeout(() => notice.remove(), 3000);
 }
 
 // ----------------------------
@@ -135,13 +241,14 @@ function renderIdeaCard(item) {
 async function fetchRandomIdea() {
     //the below line makes the random idea UI section visible by setting its display style to "block"
     randomUI.style.display = "block";
+    showingAllIdeas = false;
 
     //Get the selected budget category from the budget select dropdown
     const budget = budgetSelect.value;
 
     //Use a try-catch block to handle potential errors during the fetch operation from the backend API
     try {
-        const res = await fetch(`${apiUrl}/random/${budget}`);
+        const res = await fetch(`${apiUrl}/random/${budget}?user=${encodeURIComponent(userKey)}`);
         if (res.status === 204) { //204 is a No Content response
             showMessage("No ideas available for this budget. Please reset the list.");
             return;
@@ -171,7 +278,7 @@ async function fetchRandomIdea() {
 async function resetIdeas() {
     try {
         //Send a POST request to the /reset endpoint of the backend API
-        const res = await fetch(`${apiUrl}/reset`, { method: "POST" });
+        const res = await fetch(`${apiUrl}/reset?user=${encodeURIComponent(userKey)}`, { method: "POST" });
 
         //If the response is not ok (status code outside 200-299), throw an error
         if (!res.ok) throw new Error("Failed to reset ideas");
@@ -210,17 +317,32 @@ modalForm.addEventListener("submit", async (e) => {
     //Use a try-catch block to handle potential errors during the add/update operation
     try {
         if (currentEditingId) {
-            // Update single idea
-            const res = await fetch(`${apiUrl}/updateIdea/${currentEditingId}`, {
-                method: "PUT",
-
-                //Content-Ty[e tells the server what kind of data you're sending and
-                //body is the actual data sent. Stringify converts the data into a JSON format
-                headers: { "Content-Type": "application/json" },
-                body: JSON.stringify(ideaData)
-            });
-            if (!res.ok) throw new Error("Failed to update idea");
-            showMessage("Idea updated successfully!");
+            // Update single idea. Only the changed fields are sent with PATCH, with the version the form was opened at
+            const changes = { version: currentEditingIdea.version };
+            for (const field of ["title", "description", "budgetCategory", "location"]) {
+                if (ideaData[field] !== (currentEditingIdea[field] || "")) {
+                    changes[field] = ideaData[field];
+                }
+            }
+            if (Object.keys(changes).length > 1) {
+                const res = await fetch(`${apiUrl}/updateIdea/${currentEditingId}`, {
+                    method: "PATCH",
+
+                    //Content-Ty[e tells the server what kind of data you're sending and
+                    //body is the actual data sent. Stringify converts the data into a JSON format
+                    headers: { "Content-Type": "application/json" },
+                    body: JSON.stringify(changes)
+                });
+                //409 means someone else saved a change to this idea after the form was opened
+                if (res.status === 409) {
+                    modal.style.display = "none";
+                    currentEditingId = null;
+                    currentEditingIdea = null;
+                    showMessage("Someone else changed this idea while you were editing it. Open it again to see their changes.");
+                    return;
+                }
+                if (!res.ok) throw new Error("Failed to update idea");
+            }
 
             //If the idea doesn't have an ID, then it is a new idea.
         } else {
@@ -231,7 +353,6 @@ modalForm.addEventListener("submit", async (e) => {
                 body: JSON.stringify(ideaData)
             });
             if (!res.ok) throw new Error("Failed to add idea");
-            showMessage("Idea added successfully!");
         }
 
         //Hide the modal from the user interface
@@ -241,10 +362,12 @@ modalForm.addEventListener("submit", async (e) => {
         modalForm.reset();
 
         //Reset the tracking variable to know whether the form is adding a new idea or updating an existing one
+        const wasEditing = currentEditingId !== null;
         currentEditingId = null;
+        currentEditingIdea = null;
 
-        //Refresh the list of ideas being shown
-        fetchAllIdeas();
+        //Show the list of ideas; the added or updated card arrives from the change feed
+        showAllIdeasAfterChange(wasEditing ? "Idea updated successfully!" : "Idea added successfully!");
     } catch (err) {
         console.error(err);
         showMessage("Failed to save idea.");
@@ -261,6 +384,7 @@ modalClose.addEventListener("click", () => {
     modal.style.display = "none";
     modalForm.reset();
     currentEditingId = null;
+    currentEditingIdea = null;
 });
 
 // ----------------------------
@@ -274,6 +398,7 @@ document.getElementById("generate-idea-btn").addEventListener("click", fetchRand
 //Reset the form and display the modal
 document.getElementById("create-button").addEventListener("click", () => {
     currentEditingId = null;
+    currentEditingIdea = null;
     modalHeader.textContent = "Add Idea";
     modalForm.reset();
     modal.style.display = "block";
@@ -286,5 +411,34 @@ document.getElementById("delete-button").addEventListener("click", fetchAllIdeas
 document.getElementById("reset-button").addEventListener("click", resetIdeas);
 document.getElementById("random-btn").addEventListener("click", () => {
     randomUI.style.display = "block";
+    showingAllIdeas = false;
     clearResults();
 });
+
+// ----------------------------
+// Catalog changes - keep the list up to date without loading it again
+// ----------------------------
+//The server pushes every change to the catalog, including ones made in other tabs or by other people, as a
+//Server-Sent Event. While all ideas are shown each change is applied to the cards on screen, so an add, update or
+//delete costs one small message instead of loading the whole catalog again. EventSource reconnects by itself and
+//the server sends whatever was missed in the meantime. If the server refuses the connection, EventSource gives up
+//and showAllIdeasAfterChange loads the catalog instead.
+const changes = new EventSource(`${apiUrl}/changes`);
+changes.onmessage = (event) => {
+    if (!showingAllIdeas) return;
+    const change = JSON.parse(event.data);
+    switch (change.type) {
+        case "CREATED":
+        case "UPDATED":
+            renderIdeaCard(change.idea);
+            break;
+        case "DELETED":
+            removeIdeaCard(change.ideaId);
+            break;
+        case "RESYNC":
+            //Too much changed to send one change at a time, so load the catalog again
+            fetchAllIdeas();
+            break;
+        //SUGGESTED and RESET don't change anything a card shows
+    }
+};
@@ -0,0 +1,110 @@
+package com.example.datenight;
+
+import com.example.datenight.admission.AdmissionControl;
+import com.example.datenight.admission.AdmissionFilter;
+import com.example.datenight.admission.EndpointClass;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AdmissionControlTest {
+    // Slow enough that no bucket gains a token during a test
+    private static final double ONE_PER_HOUR = 1.0 / 3600;
+
+    // Tests that requests are sorted into the right endpoint class, and that preflight requests and anything outside
+    // the API aren't limited
+    @Test
+    void endpointClass_IsChosenByMethodAndPath() {
+        assertEquals(Optional.of(EndpointClass.DRAW), EndpointClass.of("GET", "/api/date-night-ideas/random/Free"));
+        assertEquals(Optional.of(EndpointClass.DRAW), EndpointClass.of("GET", "/api/date-night-ideas/random"));
+        assertEquals(Optional.of(EndpointClass.READ), EndpointClass.of("GET", "/api/date-night-ideas/allIdeas"));
+        assertEquals(Optional.of(EndpointClass.RESET), EndpointClass.of("POST", "/api/date-night-ideas/reset"));
+        assertEquals(Optional.of(EndpointClass.IMPORT), EndpointClass.of("POST", "/api/date-night-ideas/import"));
+        assertEquals(Optional.of(EndpointClass.WRITE), EndpointClass.of("POST", "/api/date-night-ideas/addIdea"));
+        assertEquals(Optional.of(EndpointClass.WRITE), EndpointClass.of("PATCH", "/api/date-night-ideas/updateIdea/3"));
+        assertEquals(Optional.of(EndpointClass.WRITE), EndpointClass.of("DELETE", "/api/date-night-ideas/deleteIdea/3"));
+        assertEquals(Optional.empty(), EndpointClass.of("OPTIONS", "/api/date-night-ideas/reset"));
+        assertEquals(Optional.empty(), EndpointClass.of("GET", "/actuator/prometheus"));
+    }
+
+    // Tests that a client over its limit is refused with 429 and Retry-After without reaching the controller, while
+    // other clients and the same client's draws are still let through
+    @Test
+    void clientOverItsLimit_IsRefused_WithoutSlowingOthers() throws Exception {
+        AdmissionControl admission = new AdmissionControl(Map.of(
+                EndpointClass.RESET, new AdmissionControl.Limit(ONE_PER_HOUR, 2, 0, 1),
+                EndpointClass.DRAW, new AdmissionControl.Limit(ONE_PER_HOUR, 100, 0, 1)), 4, 100);
+        AdmissionFilter filter = new AdmissionFilter(admission);
+        FilterChain chain = mock(FilterChain.class);
+
+        assertEquals(200, send(filter, chain, "POST", "/api/date-night-ideas/reset", "10.0.0.1").getStatus());
+        assertEquals(200, send(filter, chain, "POST", "/api/date-night-ideas/reset", "10.0.0.1").getStatus());
+        MockHttpServletResponse refused = send(filter, chain, "POST", "/api/date-night-ideas/reset", "10.0.0.1");
+        assertEquals(429, refused.getStatus());
+        // The next token is an hour away
+        assertTrue(Long.parseLong(refused.getHeader("Retry-After")) > 3500);
+        verify(chain, times(2)).doFilter(any(), any());
+
+        assertEquals(200, send(filter, chain, "POST", "/api/date-night-ideas/reset", "10.0.0.2").getStatus());
+        assertEquals(200, send(filter, chain, "GET", "/api/date-night-ideas/random/Free", "10.0.0.1").getStatus());
+        assertEquals(3, admission.getRequests(EndpointClass.RESET, AdmissionControl.Outcome.ADMITTED));
+        assertEquals(1, admission.getRequests(EndpointClass.RESET, AdmissionControl.Outcome.CLIENT_LIMIT));
+        assertEquals(2, admission.getClients(EndpointClass.RESET));
+        assertEquals(0, admission.getExpensiveInFlight());
+    }
+
+    // Tests that the limit shared by every client caps a class however many clients there are, and that expensive
+    // requests beyond the places available are refused while draws are never held back by them
+    @Test
+    void sharedLimitAndPlaces_RefuseExpensiveRequests_ButNotDraws() {
+        AdmissionControl admission = new AdmissionControl(Map.of(
+                EndpointClass.IMPORT, new AdmissionControl.Limit(0, 1, ONE_PER_HOUR, 1)), 1, 100);
+
+        assertEquals(0, admission.admit(EndpointClass.IMPORT, "10.0.0.1"));
+        assertTrue(admission.admit(EndpointClass.IMPORT, "10.0.0.2") > 0);
+        assertEquals(1, admission.getRequests(EndpointClass.IMPORT, AdmissionControl.Outcome.TOTAL_LIMIT));
+        assertEquals(0, admission.getTotalTokens(EndpointClass.IMPORT));
+
+        // The import above still holds the only place
+        assertTrue(admission.admit(EndpointClass.WRITE, "10.0.0.3") > 0);
+        assertEquals(1, admission.getRequests(EndpointClass.WRITE, AdmissionControl.Outcome.BUSY));
+        assertEquals(0, admission.admit(EndpointClass.DRAW, "10.0.0.3"));
+        admission.release(EndpointClass.IMPORT);
+        assertEquals(0, admission.admit(EndpointClass.WRITE, "10.0.0.3"));
+        assertEquals(1, admission.getExpensiveInFlight());
+    }
+
+    // Tests that a request refused for lack of places gets its client and shared tokens back, so it can try again as
+    // soon as a place frees up
+    @Test
+    void refusedRequest_GetsItsTokensBack() {
+        AdmissionControl admission = new AdmissionControl(Map.of(
+                EndpointClass.RESET, new AdmissionControl.Limit(ONE_PER_HOUR, 1, ONE_PER_HOUR, 2)), 1, 100);
+
+        assertEquals(0, admission.admit(EndpointClass.RESET, "10.0.0.1"));
+        assertTrue(admission.admit(EndpointClass.RESET, "10.0.0.2") > 0);
+        assertEquals(1, admission.getRequests(EndpointClass.RESET, AdmissionControl.Outcome.BUSY));
+        assertEquals(1, admission.getTotalTokens(EndpointClass.RESET));
+
+        admission.release(EndpointClass.RESET);
+        assertEquals(0, admission.admit(EndpointClass.RESET, "10.0.0.2"));
+        assertEquals(0, admission.getTotalTokens(EndpointClass.RESET));
+    }
+
+    private static MockHttpServletResponse send(AdmissionFilter filter, FilterChain chain, String method, String path,
+                                                String address) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(address);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
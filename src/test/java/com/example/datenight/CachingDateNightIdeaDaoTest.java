@@ -0,0 +1,185 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.CachingDateNightIdeaDao;
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.model.DateNightIdea;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CachingDateNightIdeaDaoTest {
+    private DateNightIdeaDaoInterface daoMock;
+    private CachingDateNightIdeaDao cache;
+    private ObjectWriter ideaListWriter;
+
+    // Before each test, put a cache with room for 2 views in front of a mock DAO holding three ideas
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        daoMock = mock(DateNightIdeaDaoInterface.class);
+        doAnswer(invocation -> {
+            String budgetCategory = invocation.getArgument(0);
+            Consumer<DateNightIdea> consumer = invocation.getArgument(1);
+            for (DateNightIdea idea : List.of(idea(1L, "Free"), idea(2L, "Cheap"), idea(3L, "Free"))) {
+                if (budgetCategory == null || budgetCategory.equals(idea.getBudgetCategory())) {
+                    consumer.accept(idea);
+                }
+            }
+            return null;
+        }).when(daoMock).forEachIdea(any(), any(Consumer.class));
+        cache = new CachingDateNightIdeaDao(daoMock, 2, Duration.ofMinutes(1));
+        ideaListWriter = new ObjectMapper().findAndRegisterModules().writer();
+    }
+
+    // Tests that repeated reads are served from the cache after the first load
+    @Test
+    @SuppressWarnings("unchecked")
+    void getAllIdeas_LoadsOnce_ThenHitsCache() {
+        assertEquals(3, cache.getAllIdeas().size());
+        assertEquals(3, cache.getAllIdeas().size());
+
+        verify(daoMock, times(1)).forEachIdea(isNull(), any(Consumer.class));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    // Tests that the JSON bytes are built once and reused for the next request
+    @Test
+    void getAllIdeasJson_ReusesSerializedBytes() {
+        byte[] first = cache.getAllIdeasJson(ideaListWriter);
+        byte[] second = cache.getAllIdeasJson(ideaListWriter);
+
+        assertSame(first, second);
+    }
+
+    // Tests that creating an idea invalidates the views it changes and the next read reloads them
+    @Test
+    @SuppressWarnings("unchecked")
+    void create_InvalidatesAllIdeasAndCategoryViews() {
+        cache.getAllIdeas();
+        cache.getIdeasPage(0, 10, "Free");
+        when(daoMock.create(any())).thenReturn(idea(4L, "Free"));
+
+        cache.create(idea(null, "Free"));
+        cache.getAllIdeas();
+        cache.getIdeasPage(0, 10, "Free");
+
+        verify(daoMock, times(2)).forEachIdea(isNull(), any(Consumer.class));
+        verify(daoMock, times(2)).forEachIdea(eq("Free"), any(Consumer.class));
+    }
+
+    // Tests that a draw marks the idea as suggested inside the cached view without reloading it,
+    // and that the cached JSON is rebuilt so it shows the change
+    @Test
+    @SuppressWarnings("unchecked")
+    void findRandomAvailableIdea_UpdatesCachedViewInPlace() {
+        byte[] before = cache.getAllIdeasJson(ideaListWriter);
+        DateNightIdea drawn = idea(2L, "Cheap");
+        drawn.setSuggested(true);
+        when(daoMock.findRandomAvailableIdea("Cheap")).thenReturn(Optional.of(drawn));
+
+        cache.findRandomAvailableIdea("Cheap");
+        byte[] after = cache.getAllIdeasJson(ideaListWriter);
+
+        assertNotSame(before, after);
+        assertTrue(cache.getAllIdeas().get(1).isSuggested());
+        verify(daoMock, times(1)).forEachIdea(isNull(), any(Consumer.class));
+    }
+
+    // Tests that the catalog version stays the same between reads of a cached view and across draws, which only
+    // patch the cached views, and changes on a reset
+    @Test
+    void catalogVersion_ChangesOnlyWhenCatalogChanges() {
+        cache.getAllIdeas();
+        String loaded = cache.catalogVersion().orElseThrow();
+        cache.getAllIdeas();
+        assertEquals(loaded, cache.catalogVersion().orElseThrow());
+
+        DateNightIdea drawn = idea(2L, "Cheap");
+        drawn.setSuggested(true);
+        when(daoMock.findRandomAvailableIdea("Cheap")).thenReturn(Optional.of(drawn));
+        cache.findRandomAvailableIdea("Cheap");
+        assertEquals(loaded, cache.catalogVersion().orElseThrow());
+        cache.resetListOfIdeas();
+
+        assertNotEquals(loaded, cache.catalogVersion().orElseThrow());
+    }
+
+    // Tests that requests for a view that is being loaded wait for that load instead of starting their own, and that a
+    // draw made during the load is applied to the view that is stored
+    @Test
+    @SuppressWarnings("unchecked")
+    void viewLoad_IsShared_AndKeepsDrawsMadeDuringIt() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch drawDone = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            Consumer<DateNightIdea> consumer = invocation.getArgument(1);
+            loadStarted.countDown();
+            drawDone.await();
+            List.of(idea(1L, "Free"), idea(2L, "Cheap"), idea(3L, "Free")).forEach(consumer);
+            return null;
+        }).when(daoMock).forEachIdea(isNull(), any(Consumer.class));
+        DateNightIdea drawn = idea(2L, "Cheap");
+        drawn.setSuggested(true);
+        when(daoMock.findRandomAvailableIdea("Cheap")).thenReturn(Optional.of(drawn));
+
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        Future<List<DateNightIdea>> first = readers.submit(() -> cache.getAllIdeas());
+        loadStarted.await();
+        Future<List<DateNightIdea>> second = readers.submit(() -> cache.getAllIdeas());
+        // The second reader counts as a hit once it is waiting for the first one's load
+        while (cache.getHits() == 0) {
+            Thread.sleep(1);
+        }
+        cache.findRandomAvailableIdea("Cheap");
+        drawDone.countDown();
+
+        assertEquals(3, first.get().size());
+        assertEquals(3, second.get().size());
+        readers.shutdown();
+        verify(daoMock, times(1)).forEachIdea(isNull(), any(Consumer.class));
+        assertTrue(cache.getAllIdeas().get(1).isSuggested());
+        assertEquals(1, cache.getCachedViews());
+    }
+
+    // Tests that pages are cut from the cached, id-sorted view using the afterId cursor
+    @Test
+    void getIdeasPage_ReturnsIdeasAfterCursor() {
+        List<DateNightIdea> page = cache.getIdeasPage(1, 1, null);
+
+        assertEquals(1, page.size());
+        assertEquals(2L, page.get(0).getId());
+    }
+
+    // Tests that the least recently used view is evicted once more than 2 views are cached
+    @Test
+    void views_AreEvicted_WhenCacheIsFull() {
+        cache.getIdeasPage(0, 10, null);
+        cache.getIdeasPage(0, 10, "Free");
+        cache.getIdeasPage(0, 10, "Cheap");
+
+        assertEquals(2, cache.getCachedViews());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    private static DateNightIdea idea(Long id, String budgetCategory) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(id);
+        idea.setTitle("Idea " + id);
+        idea.setBudgetCategory(budgetCategory);
+        return idea;
+    }
+}
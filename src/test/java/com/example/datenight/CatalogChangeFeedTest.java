@@ -0,0 +1,129 @@
+package com.example.datenight;
+
+import com.example.datenight.feed.CatalogChangeFeed;
+import com.example.datenight.model.CatalogChange;
+import com.example.datenight.model.CatalogChangeType;
+import com.example.datenight.model.DateNightIdea;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogChangeFeedTest {
+    private CatalogChangeFeed feed;
+
+    @AfterEach
+    void tearDown() {
+        feed.close();
+    }
+
+    // Tests that a subscriber that can't keep up has its queued changes replaced by one RESYNC
+    // instead of the queue growing, and that publishing never waits for it
+    @Test
+    void publish_SendsResync_WhenSubscriberFallsBehind() throws Exception {
+        feed = new CatalogChangeFeed(2, 10, 100, 60, 60_000);
+        RecordingEmitter emitter = new RecordingEmitter(new CountDownLatch(1));
+        assertTrue(feed.subscribe(emitter, null));
+
+        for (long id = 1; id <= 5; id++) {
+            feed.publish(CatalogChangeType.DELETED, id, null);
+        }
+        emitter.release.countDown();
+
+        assertEquals(CatalogChangeType.RESYNC, emitter.nextChange().getType());
+        assertNull(emitter.changes.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, feed.getResyncs());
+    }
+
+    // Tests that a reconnecting subscriber gets the changes after its Last-Event-ID,
+    // and RESYNC when the id isn't one the feed knows
+    @Test
+    void subscribe_ReplaysChangesAfterLastEventId() throws Exception {
+        feed = new CatalogChangeFeed(16, 10, 100, 60, 60_000);
+        RecordingEmitter first = new RecordingEmitter(null);
+        feed.subscribe(first, null);
+        feed.publish(CatalogChangeType.CREATED, 1L, null);
+        feed.publish(CatalogChangeType.DELETED, 1L, null);
+        first.nextChange();
+        String createdId = first.changeIds.take();
+
+        RecordingEmitter reconnected = new RecordingEmitter(null);
+        feed.subscribe(reconnected, createdId);
+        RecordingEmitter unknown = new RecordingEmitter(null);
+        feed.subscribe(unknown, "not-an-id");
+
+        assertEquals(CatalogChangeType.DELETED, reconnected.nextChange().getType());
+        assertEquals(CatalogChangeType.RESYNC, unknown.nextChange().getType());
+    }
+
+    // Tests that an idea drawn several times within an interval is sent as one SUGGESTED, and that a draw of an idea
+    // deleted before the interval ends isn't sent after its DELETED
+    @Test
+    void publishSuggested_CoalescesDrawsOfTheSameIdea() throws Exception {
+        feed = new CatalogChangeFeed(16, 10, 100, 60, 200);
+        RecordingEmitter emitter = new RecordingEmitter(null);
+        feed.subscribe(emitter, null);
+
+        feed.publishSuggested(idea(1L));
+        feed.publishSuggested(idea(1L));
+        feed.publishSuggested(idea(2L));
+        feed.publish(CatalogChangeType.DELETED, 2L, null);
+
+        assertEquals(CatalogChangeType.DELETED, emitter.nextChange().getType());
+        CatalogChange suggested = emitter.nextChange();
+        assertEquals(CatalogChangeType.SUGGESTED, suggested.getType());
+        assertEquals(1L, suggested.getIdeaId());
+        assertNull(emitter.changes.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    private static DateNightIdea idea(long id) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(id);
+        return idea;
+    }
+
+    // Records the changes sent to it. Sending can be held up until release is counted down, like a slow connection.
+    private static final class RecordingEmitter extends SseEmitter {
+        private final CountDownLatch release;
+        private final BlockingQueue<CatalogChange> changes = new LinkedBlockingQueue<>();
+        //The SSE id of each change in changes, in the same order
+        private final BlockingQueue<String> changeIds = new LinkedBlockingQueue<>();
+
+        private RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                if (release != null) {
+                    release.await();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            String id = null;
+            for (DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof CatalogChange change) {
+                    changeIds.add(id);
+                    changes.add(change);
+                } else if (data.getData().toString().startsWith("id:")) {
+                    id = data.getData().toString().substring(3).lines().findFirst().orElseThrow();
+                }
+            }
+        }
+
+        private CatalogChange nextChange() throws InterruptedException {
+            CatalogChange change = changes.poll(5, TimeUnit.SECONDS);
+            assertNotNull(change, "No change was sent");
+            return change;
+        }
+    }
+}
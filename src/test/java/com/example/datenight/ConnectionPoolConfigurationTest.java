@@ -0,0 +1,25 @@
+package com.example.datenight;
+
+import com.example.datenight.config.ConnectionPoolConfiguration;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolConfigurationTest {
+
+    // Tests that with platform threads the pool gets one connection per two cores plus one,
+    // and a shorter connection timeout than Hikari's 30 seconds
+    @Test
+    void poolSizing_UsesCoreCountByDefault() {
+        HikariDataSource dataSource = new HikariDataSource();
+        BeanPostProcessor postProcessor = ConnectionPoolConfiguration.platformThreadPoolSizing(new MockEnvironment());
+
+        postProcessor.postProcessAfterInitialization(dataSource, "dataSource");
+
+        assertEquals(Runtime.getRuntime().availableProcessors() * 2 + 1, dataSource.getMaximumPoolSize());
+        assertEquals(10_000, dataSource.getConnectionTimeout());
+    }
+}
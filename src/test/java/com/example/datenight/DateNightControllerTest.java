@@ -3,12 +3,28 @@ package com.example.datenight;
 import com.example.datenight.controller.DateNightController;
 import com.example.datenight.dao.DateNightIdeaDaoInterface;
 import com.example.datenight.exception.DaoException;
+import com.example.datenight.exception.IdeaVersionConflictException;
+import com.example.datenight.feed.CatalogChangeFeed;
+import com.example.datenight.model.CatalogChangeType;
 import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import com.example.datenight.model.IdeaPage;
+import com.example.datenight.model.IdeaSearchPage;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
 import java.util.List;
 import java.util.Optional;
@@ -19,13 +35,15 @@ import static org.mockito.Mockito.*;
 public class DateNightControllerTest {
     //Variable initialization
     private DateNightIdeaDaoInterface daoMock;
+    private CatalogChangeFeed feedMock;
     private DateNightController controller;
 
     // Before each test, create a mock DAO and inject it into the controller
     @BeforeEach
     void setUp() {
         daoMock = Mockito.mock(DateNightIdeaDaoInterface.class);
-        controller = new DateNightController(daoMock);
+        feedMock = Mockito.mock(CatalogChangeFeed.class);
+        controller = new DateNightController(daoMock, feedMock, new ObjectMapper().findAndRegisterModules());
     }
 
     // Tests that the controller returns the idea provided by the DAO for a given budget category
@@ -37,10 +55,34 @@ public class DateNightControllerTest {
         idea.setTitle("Movie Night");
         when(daoMock.findRandomAvailableIdea("Free")).thenReturn(Optional.of(idea));
 
-        DateNightIdea result = controller.getRandomIdea("Free");
+        DateNightIdea result = controller.getRandomIdea("Free", null);
 
         assertEquals("Movie Night", result.getTitle());
         verify(daoMock, times(1)).findRandomAvailableIdea("Free");
+        verify(feedMock, times(1)).publishSuggested(idea);
+    }
+
+    // Tests that a batch draw without categories asks the DAO for ideas from every budget category
+    @Test
+    void getRandomIdeas_UsesEveryCategory_WhenNoneGiven() {
+        List<String> allCategories = List.of("Free", "Cheap", "Moderate", "Expensive");
+        when(daoMock.findRandomAvailableIdeas(allCategories, 3)).thenReturn(List.of(ideaWithId(1L), ideaWithId(2L), ideaWithId(3L)));
+
+        List<DateNightIdea> result = controller.getRandomIdeas(3, null);
+
+        assertEquals(3, result.size());
+        verify(daoMock, times(1)).findRandomAvailableIdeas(allCategories, 3);
+    }
+
+    // Tests that a batch draw rejects a count that is too large or a category that doesn't exist
+    @Test
+    void getRandomIdeas_ThrowsBadRequest_WhenCountOrCategoryInvalid() {
+        ResponseStatusException tooMany = assertThrows(ResponseStatusException.class, () -> controller.getRandomIdeas(51, null));
+        ResponseStatusException unknown = assertThrows(ResponseStatusException.class, () -> controller.getRandomIdeas(2, List.of("Free", "Lavish")));
+
+        assertEquals(HttpStatus.BAD_REQUEST, tooMany.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, unknown.getStatusCode());
+        verifyNoInteractions(daoMock);
     }
 
     // Tests that the controller throws a NO_CONTENT (204) exception when the DAO returns no idea
@@ -50,7 +92,7 @@ public class DateNightControllerTest {
         when(daoMock.findRandomAvailableIdea("Free")).thenReturn(Optional.empty());
 
         ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
-            controller.getRandomIdea("Free");
+            controller.getRandomIdea("Free", null);
         });
 
         assertEquals(HttpStatus.NO_CONTENT, exception.getStatusCode());
@@ -61,7 +103,7 @@ public class DateNightControllerTest {
     void resetIdeas_ReturnsSuccessMessage_WhenNoException() throws DaoException {
         doNothing().when(daoMock).resetListOfIdeas();
 
-        String result = controller.resetideas();
+        String result = controller.resetideas(null);
 
         assertEquals("All ideas have been reset successfully", result);
         verify(daoMock, times(1)).resetListOfIdeas();
@@ -73,17 +115,64 @@ public class DateNightControllerTest {
         doThrow(new DaoException("DB error")).when(daoMock).resetListOfIdeas();
 
         ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
-            controller.resetideas();
+            controller.resetideas(null);
         });
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
     }
 
+    // Tests that a user key sends the draw to the per-user list instead of the shared list
+    @Test
+    void getRandomIdea_UsesUserList_WhenUserKeyGiven() {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setTitle("Stargazing at Night");
+        when(daoMock.findRandomAvailableIdeaForUser("Alice", "Free")).thenReturn(Optional.of(idea));
+
+        DateNightIdea result = controller.getRandomIdea("Free", "Alice");
+
+        assertEquals("Stargazing at Night", result.getTitle());
+        verify(daoMock, never()).findRandomAvailableIdea(anyString());
+        verify(feedMock, never()).publishSuggested(any());
+    }
+
+    // Tests that a user key only resets that user's list
+    @Test
+    void resetIdeas_ResetsOnlyUserList_WhenUserKeyGiven() {
+        String result = controller.resetideas("Alice");
+
+        assertEquals("All ideas have been reset successfully", result);
+        verify(daoMock, times(1)).resetListOfIdeasForUser("Alice");
+        verify(daoMock, never()).resetListOfIdeas();
+    }
+
+    // Tests that an oversized user key is rejected with BAD_REQUEST before reaching the DAO
+    @Test
+    void getRandomIdea_ThrowsBadRequest_WhenUserKeyTooLong() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
+            controller.getRandomIdea("Free", "x".repeat(65));
+        });
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verifyNoInteractions(daoMock);
+    }
+
+    // Tests that an unknown budget category is rejected with BAD_REQUEST before the DAO is called
+    @Test
+    void getRandomIdea_ThrowsBadRequest_WhenBudgetCategoryUnknown() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
+            controller.getRandomIdea("Lavish", null);
+        });
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verifyNoInteractions(daoMock);
+    }
+
     // Tests that the controller successfully adds a new date night idea and returns it
     @Test
     void addDateNightIdea_ReturnsCreatedIdea_WhenSuccessful() throws DaoException {
         DateNightIdea idea = new DateNightIdea();
         idea.setTitle("Dinner Date");
+        idea.setBudgetCategory("Moderate");
 
         when(daoMock.create(idea)).thenReturn(idea);
 
@@ -93,11 +182,25 @@ public class DateNightControllerTest {
         verify(daoMock, times(1)).create(idea);
     }
 
+    // Tests that a deleted idea is published to the change feed, and that a delete that found nothing is not
+    @Test
+    void dateNightIdea_PublishesDeletedChange_OnlyWhenDeleted() {
+        when(daoMock.delete(1)).thenReturn(true);
+        when(daoMock.delete(2)).thenReturn(false);
+
+        controller.dateNightIdea(1);
+        controller.dateNightIdea(2);
+
+        verify(feedMock, times(1)).publish(CatalogChangeType.DELETED, 1L, null);
+        verify(feedMock, never()).publish(eq(CatalogChangeType.DELETED), eq(2L), any());
+    }
+
     // Tests that the controller throws INTERNAL_SERVER_ERROR when the DAO fails to create a new idea
     @Test
     void addDateNightIdea_ThrowsInternalServerError_WhenDaoException() throws DaoException {
         DateNightIdea idea = new DateNightIdea();
         idea.setTitle("Dinner Date");
+        idea.setBudgetCategory("Moderate");
 
         when(daoMock.create(idea)).thenThrow(new DaoException("DB error"));
 
@@ -106,6 +209,7 @@ public class DateNightControllerTest {
         });
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
+        verifyNoInteractions(feedMock);
     }
 
     // Tests that the controller throws INTERNAL_SERVER_ERROR when updating an idea fails in the DAO
@@ -113,6 +217,7 @@ public class DateNightControllerTest {
     void updateDateNightIdea_ThrowsInternalServerError_WhenDaoException() throws DaoException {
         DateNightIdea idea = new DateNightIdea();
         idea.setTitle("Picnic");
+        idea.setBudgetCategory("Moderate");
 
         doThrow(new DaoException("DB error")).when(daoMock).update(1, idea);
 
@@ -123,6 +228,41 @@ public class DateNightControllerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
     }
 
+    // Tests that an update made from an old version is a CONFLICT and is not published to the change feed
+    @Test
+    void updateDateNightIdea_ThrowsConflict_WhenVersionIsStale() {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setTitle("Picnic");
+        idea.setBudgetCategory("Moderate");
+        idea.setVersion(2);
+        when(daoMock.update(1, idea)).thenThrow(new IdeaVersionConflictException(1, 2, 3));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> controller.updateDateNightIdea(1, idea));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        verifyNoInteractions(feedMock);
+    }
+
+    // Tests that a patch returns and publishes the edited idea, is NOT_FOUND when the idea doesn't exist,
+    // and is a BAD_REQUEST when it changes nothing
+    @Test
+    void patchDateNightIdea_ReturnsEditedIdea_OrNotFound() {
+        IdeaPatch patch = new IdeaPatch();
+        patch.setLocation(null);
+        DateNightIdea edited = new DateNightIdea();
+        edited.setId(1L);
+        edited.setVersion(2);
+        when(daoMock.patch(1, patch)).thenReturn(Optional.of(edited));
+        when(daoMock.patch(2, patch)).thenReturn(Optional.empty());
+
+        assertEquals(2, controller.patchDateNightIdea(1, patch).getVersion());
+        verify(feedMock, times(1)).publish(CatalogChangeType.UPDATED, 1L, edited);
+        ResponseStatusException notFound = assertThrows(ResponseStatusException.class, () -> controller.patchDateNightIdea(2, patch));
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+        ResponseStatusException empty = assertThrows(ResponseStatusException.class, () -> controller.patchDateNightIdea(1, new IdeaPatch()));
+        assertEquals(HttpStatus.BAD_REQUEST, empty.getStatusCode());
+    }
+
     // Tests that the controller throws INTERNAL_SERVER_ERROR when deleting an idea fails in the DAO
     @Test
     void dateNightIdea_ThrowsInternalServerError_WhenDaoException() throws DaoException {
@@ -135,9 +275,9 @@ public class DateNightControllerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
     }
 
-    // Tests that the controller returns the full list of ideas provided by the DAO
+    // Tests that the controller returns the full list of ideas provided by the DAO as a JSON array
     @Test
-    void getAllIdeas_ReturnsListOfIdeas() {
+    void getAllIdeas_ReturnsListOfIdeas() throws Exception {
         DateNightIdea idea1 = new DateNightIdea();
         idea1.setTitle("Movie Night");
 
@@ -145,10 +285,129 @@ public class DateNightControllerTest {
         idea2.setTitle("Dinner");
 
         when(daoMock.getAllIdeas()).thenReturn(List.of(idea1, idea2));
+        when(daoMock.getAllIdeasJson(any())).thenCallRealMethod();
 
-        List<DateNightIdea> result = controller.getAllIdeas();
+        ResponseEntity<byte[]> response = controller.getAllIdeas(getRequest());
+        DateNightIdea[] result = new ObjectMapper().findAndRegisterModules().readValue(response.getBody(), DateNightIdea[].class);
 
-        assertEquals(2, result.size());
+        assertEquals(2, result.length);
+        assertEquals("Movie Night", result[0].getTitle());
         verify(daoMock, times(1)).getAllIdeas();
     }
+
+    // Tests that a request whose If-None-Match matches the catalog version gets 304 without reading the catalog
+    @Test
+    void getAllIdeas_ReturnsNotModified_WhenEtagMatches() {
+        when(daoMock.catalogVersion()).thenReturn(Optional.of("2a"));
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/date-night-ideas/allIdeas");
+        servletRequest.addHeader("If-None-Match", "W/\"2a\"");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        ResponseEntity<byte[]> response = controller.getAllIdeas(new ServletWebRequest(servletRequest, servletResponse));
+
+        assertNull(response);
+        assertEquals(304, servletResponse.getStatus());
+        verify(daoMock, never()).getAllIdeasJson(any());
+    }
+
+    // Tests that a page is read and sent with the current catalog version as its ETag when the client's copy is older
+    @Test
+    void getIdeasPage_SendsEtag_WhenCatalogChanged() {
+        when(daoMock.catalogVersion()).thenReturn(Optional.of("2b"));
+        when(daoMock.getIdeasPage(0, 3, null)).thenReturn(List.of(ideaWithId(1L)));
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/date-night-ideas/ideas");
+        servletRequest.addHeader("If-None-Match", "\"2a\"");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        IdeaPage page = controller.getIdeasPage(0, 2, null, new ServletWebRequest(servletRequest, servletResponse));
+
+        assertEquals(1, page.getIdeas().size());
+        assertEquals("W/\"2b\"", servletResponse.getHeader("ETag"));
+    }
+
+    // Tests that a full page asks the DAO for one extra row and returns the last id on the page as the next cursor
+    @Test
+    void getIdeasPage_ReturnsNextCursor_WhenMoreIdeasExist() {
+        when(daoMock.getIdeasPage(0, 3, "Free")).thenReturn(List.of(ideaWithId(1L), ideaWithId(2L), ideaWithId(3L)));
+
+        IdeaPage page = controller.getIdeasPage(0, 2, "Free", getRequest());
+
+        assertEquals(2, page.getIdeas().size());
+        assertEquals(2L, page.getNextAfterId());
+    }
+
+    // Tests that the last page has no next cursor
+    @Test
+    void getIdeasPage_ReturnsNullCursor_OnLastPage() {
+        when(daoMock.getIdeasPage(2, 3, null)).thenReturn(List.of(ideaWithId(3L)));
+
+        IdeaPage page = controller.getIdeasPage(2, 2, null, getRequest());
+
+        assertEquals(1, page.getIdeas().size());
+        assertNull(page.getNextAfterId());
+    }
+
+    // Tests that page sizes outside 1-500 are rejected with BAD_REQUEST
+    @Test
+    void getIdeasPage_ThrowsBadRequest_WhenLimitOutOfRange() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
+            controller.getIdeasPage(0, 501, null, getRequest());
+        });
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+    }
+
+    // Tests that a search page has the offset of the next page when more matches exist
+    @Test
+    void searchIdeas_ReturnsNextOffset_WhenMoreMatchesExist() {
+        when(daoMock.searchIdeas("park", null, true, 2, 3)).thenReturn(List.of(ideaWithId(1L), ideaWithId(2L), ideaWithId(3L)));
+
+        IdeaSearchPage page = controller.searchIdeas("park", null, true, 2, 2);
+
+        assertEquals(2, page.getIdeas().size());
+        assertEquals(4, page.getNextOffset());
+    }
+
+    // Tests that a blank search is rejected with BAD_REQUEST
+    @Test
+    void searchIdeas_ThrowsBadRequest_WhenQueryBlank() {
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
+            controller.searchIdeas("  ", null, false, 0, 20);
+        });
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+        verifyNoInteractions(daoMock);
+    }
+
+    // Tests that the streaming endpoint writes every idea handed over by the DAO as one JSON array
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamAllIdeas_WritesJsonArray() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<DateNightIdea> consumer = invocation.getArgument(1);
+            consumer.accept(ideaWithId(1L));
+            consumer.accept(ideaWithId(2L));
+            return null;
+        }).when(daoMock).forEachIdea(isNull(), any(Consumer.class));
+
+        ResponseEntity<StreamingResponseBody> response = controller.streamAllIdeas(null);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+
+        String json = output.toString(StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("[{\"id\":1"));
+        assertTrue(json.contains("{\"id\":2"));
+        assertTrue(json.endsWith("]"));
+    }
+
+    private static ServletWebRequest getRequest() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/date-night-ideas"), new MockHttpServletResponse());
+    }
+
+    private static DateNightIdea ideaWithId(long id) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(id);
+        idea.setTitle("Idea " + id);
+        return idea;
+    }
 }
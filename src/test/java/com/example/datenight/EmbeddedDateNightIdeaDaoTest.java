@@ -0,0 +1,132 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.EmbeddedDateNightIdeaDao;
+import com.example.datenight.exception.IdeaVersionConflictException;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EmbeddedDateNightIdeaDaoTest {
+    // Small enough that a handful of changes makes the store write a new snapshot
+    private static final long COMPACT_AFTER_BYTES = 2048;
+
+    @TempDir
+    Path directory;
+
+    // Tests that a new store is filled with the seed ideas, that draws never repeat an idea until the list is reset,
+    // and that what was drawn is still suggested after the store is opened again
+    @Test
+    void findRandomAvailableIdea_NeverRepeatsUntilReset_AndSurvivesReopening() {
+        EmbeddedDateNightIdeaDao dao = open(seed(30));
+        Set<Long> drawn = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            DateNightIdea idea = dao.findRandomAvailableIdea("Free").orElseThrow();
+            assertTrue(idea.isSuggested());
+            assertTrue(drawn.add(idea.getId()), "Idea handed out twice: " + idea.getId());
+        }
+        assertTrue(dao.findRandomAvailableIdea("Free").isEmpty());
+        assertEquals(20L, dao.countAvailableIdeasByCategory().get("Cheap"));
+        assertNull(dao.countAvailableIdeasByCategory().get("Free"));
+        dao.close();
+
+        // Nothing is seeded a second time, and the drawn ideas are still suggested
+        EmbeddedDateNightIdeaDao reopened = open(seed(5));
+        assertEquals(30, reopened.getAllIdeas().size());
+        assertTrue(reopened.findRandomAvailableIdea("Free").isEmpty());
+
+        reopened.resetListOfIdeas();
+        assertTrue(reopened.findRandomAvailableIdea("Free").isPresent());
+        assertEquals(9L, reopened.countAvailableIdeasByCategory().get("Free"));
+        reopened.close();
+    }
+
+    // Tests that edits are versioned like in PostgreSQL, that changes are replayed from the log after a crash (no
+    // close) even after the log has been compacted, and that a frame cut short at the end of the log is ignored
+    @Test
+    void changes_AreReplayedFromTheLog_AndATornTailIsIgnored() throws Exception {
+        EmbeddedDateNightIdeaDao dao = open(seed(0));
+        List<DateNightIdea> created = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            created.add(dao.create(idea("Idea " + i, "Moderate")));
+        }
+        DateNightIdea first = created.get(0);
+        IdeaPatch patch = new IdeaPatch();
+        patch.setTitle("Sunset Picnic");
+        patch.setBudgetCategory("Free");
+        patch.setVersion(1);
+        DateNightIdea patched = dao.patch(first.getId().intValue(), patch).orElseThrow();
+        assertEquals(2, patched.getVersion());
+        assertEquals("Free", patched.getBudgetCategory());
+        assertThrows(IdeaVersionConflictException.class, () -> dao.patch(first.getId().intValue(), patch));
+        assertTrue(dao.delete(created.get(1).getId().intValue()));
+        assertEquals(Optional.empty(), dao.update(9999, idea("Missing", "Free")));
+        // Compaction runs in the background; it is done once the snapshot is there and the log is short again
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Files.exists(directory.resolve("catalog.snapshot")) || Files.size(directory.resolve("catalog.log")) >= COMPACT_AFTER_BYTES) {
+            assertTrue(System.nanoTime() < deadline, "The log should have been compacted");
+            Thread.sleep(10);
+        }
+
+        // Half a frame, as left by a crash in the middle of a write
+        Files.write(directory.resolve("catalog.log"), new byte[]{0, 0, 0, 50, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        EmbeddedDateNightIdeaDao reopened = open(seed(0));
+        assertEquals(39, reopened.getAllIdeas().size());
+        assertEquals("Sunset Picnic", reopened.getIdeasPage(0, 1, "Free").get(0).getTitle());
+        assertEquals(List.of(patched.getId()), reopened.searchIdeas("sun pic", null, true, 0, 10).stream().map(DateNightIdea::getId).toList());
+        DateNightIdea next = reopened.create(idea("After the crash", "Expensive"));
+        assertEquals(created.get(39).getId() + 1, next.getId());
+        reopened.close();
+    }
+
+    // Tests that an idea moved to another budget category stays suggested if it was drawn, and stays available if it
+    // wasn't
+    @Test
+    void movedIdea_KeepsWhetherItWasSuggested() {
+        EmbeddedDateNightIdeaDao dao = open(seed(6));
+        DateNightIdea drawn = dao.findRandomAvailableIdea("Free").orElseThrow();
+        DateNightIdea undrawn = dao.getIdeasPage(0, 10, "Free").stream().filter(idea -> !idea.isSuggested()).findFirst().orElseThrow();
+        IdeaPatch patch = new IdeaPatch();
+        patch.setBudgetCategory("Cheap");
+
+        assertTrue(dao.patch(drawn.getId().intValue(), patch).orElseThrow().isSuggested());
+        assertFalse(dao.patch(undrawn.getId().intValue(), patch).orElseThrow().isSuggested());
+        assertEquals(5L, dao.countAvailableIdeasByCategory().get("Cheap"));
+        dao.close();
+    }
+
+    private EmbeddedDateNightIdeaDao open(List<DateNightIdea> seed) {
+        return new EmbeddedDateNightIdeaDao(directory, COMPACT_AFTER_BYTES, false, () -> seed);
+    }
+
+    // count ideas: the first third "Free", the rest "Cheap"
+    private static List<DateNightIdea> seed(int count) {
+        List<DateNightIdea> ideas = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ideas.add(idea("Seed " + i, i < count / 3 ? "Free" : "Cheap"));
+        }
+        return ideas;
+    }
+
+    private static DateNightIdea idea(String title, String budgetCategory) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setTitle(title);
+        idea.setDescription("Description of " + title);
+        idea.setBudgetCategory(budgetCategory);
+        idea.setLocation("Somewhere");
+        return idea;
+    }
+}
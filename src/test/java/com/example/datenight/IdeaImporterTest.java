@@ -0,0 +1,120 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.importer.IdeaImporter;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.ImportResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class IdeaImporterTest {
+    private DateNightIdeaDaoInterface daoMock;
+    private IdeaImporter importer;
+    private List<List<DateNightIdea>> savedChunks;
+
+    // Before each test, create an importer with chunks of 2 ideas in front of a mock DAO that records every chunk
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        daoMock = mock(DateNightIdeaDaoInterface.class);
+        savedChunks = new ArrayList<>();
+        when(daoMock.createAll(anyList())).thenAnswer(invocation -> {
+            List<DateNightIdea> chunk = new ArrayList<>((List<DateNightIdea>) invocation.getArgument(0));
+            savedChunks.add(chunk);
+            return chunk;
+        });
+        importer = new IdeaImporter(daoMock, new ObjectMapper().findAndRegisterModules(), 2);
+    }
+
+    // Tests that a JSON array is saved in chunks and an idea with a bad budget category is reported by its row
+    @Test
+    void importJsonArray_SavesValidIdeasInChunks() throws Exception {
+        ImportResult result = importer.importJsonArray(body("""
+                [{"title": "Picnic", "budgetCategory": "Free"},
+                 {"title": "Concert", "budgetCategory": "Pricey"},
+                 {"title": "Museum", "budgetCategory": "Cheap"},
+                 {"title": "Spa Day", "budgetCategory": "Expensive"}]
+                """));
+
+        assertEquals(4, result.getReceived());
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertEquals(2, result.getFailures().get(0).getRow());
+        assertEquals(2, savedChunks.size());
+        assertEquals(2, savedChunks.get(0).size());
+    }
+
+    // Tests that a broken line in NDJSON only fails that row
+    @Test
+    void importNdjson_ReportsBadLine_AndImportsTheRest() throws Exception {
+        ImportResult result = importer.importNdjson(body("""
+                {"title": "Picnic", "budgetCategory": "Free"}
+                {"title": "Concert", "budgetCat
+                {"title": "Museum", "budgetCategory": "Cheap"}
+                """), StandardCharsets.UTF_8);
+
+        assertEquals(3, result.getReceived());
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getFailures().get(0).getRow());
+    }
+
+    // Tests that quoted CSV fields can contain commas, quotes and line breaks, and that columns are matched by header
+    @Test
+    void importCsv_ReadsQuotedFields() throws Exception {
+        ImportResult result = importer.importCsv(body("""
+                budget_category,title,location,description\r
+                Free,"Sunset walk, then ice cream",Beach,"Bring a ""warm"" jacket
+                and a blanket"\r
+                Cheap,Board games,,\r
+                """), StandardCharsets.UTF_8);
+
+        assertEquals(2, result.getImported());
+        DateNightIdea first = savedChunks.get(0).get(0);
+        assertEquals("Sunset walk, then ice cream", first.getTitle());
+        assertEquals("Bring a \"warm\" jacket\nand a blanket", first.getDescription());
+        assertNull(savedChunks.get(0).get(1).getLocation());
+    }
+
+    // Tests that when the database rejects a chunk every row in it is reported, and later chunks are still saved
+    @Test
+    @SuppressWarnings("unchecked")
+    void importCsv_ReportsEveryRowInAFailedChunk() throws Exception {
+        when(daoMock.createAll(anyList()))
+                .thenThrow(new DaoException("Unable to connect to the server or database", null))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ImportResult result = importer.importCsv(body("""
+                title,budgetCategory
+                One,Free
+                Two,Free
+                Three,Free
+                """), StandardCharsets.UTF_8);
+
+        assertEquals(1, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(List.of(1L, 2L), result.getFailures().stream().map(failure -> failure.getRow()).toList());
+    }
+
+    // Tests that a CSV without the required columns is rejected before anything is saved
+    @Test
+    void importCsv_RejectsMissingHeaderColumns() {
+        assertThrows(IllegalArgumentException.class,
+                () -> importer.importCsv(body("name,price\nPicnic,Free\n"), StandardCharsets.UTF_8));
+        verify(daoMock, never()).createAll(anyList());
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,21 +1,33 @@
 package com.example.datenight;
 
+import com.example.datenight.dao.DateNightIdeaRowMapper;
 import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.example.datenight.dao.RandomSelectionStrategy;
 import com.example.datenight.exception.DaoException;
+import com.example.datenight.exception.IdeaVersionConflictException;
+import com.example.datenight.model.BudgetCategory;
 import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.model.IdeaPatch;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
-import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.mockito.InOrder;
+import org.mockito.stubbing.Answer;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.jdbc.core.RowMapper;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.Mockito.*;
 
 public class JdbcDateNightIdeaDaoTest {
@@ -31,19 +43,11 @@ public class JdbcDateNightIdeaDaoTest {
     }
 
     // Tests that findRandomAvailableIdea returns a DateNightIdea object when a row exists
-    // Verifies mapping from SqlRowSet to DateNightIdea, using budget category "Free"
-    @Test
-    void findRandomAvailableIdea_ReturnsIdea_WhenFound() throws DaoException {
-        SqlRowSet rs = mock(SqlRowSet.class);
-        when(jdbcTemplateMock.queryForRowSet(anyString(), eq("Free"))).thenReturn(rs);
-        when(rs.next()).thenReturn(true);
-        when(rs.getLong("id")).thenReturn(1L);
-        when(rs.getString("title")).thenReturn("Movie Night");
-        when(rs.getString("description")).thenReturn("Watch a movie at home");
-        when(rs.getString("budget_category")).thenReturn("Free");
-        when(rs.getString("location")).thenReturn("Home");
-        when(rs.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
-        when(rs.getBoolean("is_suggested")).thenReturn(false);
+    // Verifies mapping from the ResultSet to DateNightIdea, using budget category "Free"
+    @Test
+    void findRandomAvailableIdea_ReturnsIdea_WhenFound() throws Exception {
+        ResultSet rs = ideaRow(1L, "Movie Night", "Watch a movie at home", "Free", "Home", false);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), eq(1))).thenAnswer(mapRows(rs));
 
         Optional<DateNightIdea> result = dao.findRandomAvailableIdea("Free");
 
@@ -55,48 +59,121 @@ public class JdbcDateNightIdeaDaoTest {
     // Simulates no available ideas for budget category "Cheap"
     @Test
     void findRandomAvailableIdea_ReturnsEmpty_WhenNoResults() {
-        SqlRowSet rs = mock(SqlRowSet.class);
-        when(jdbcTemplateMock.queryForRowSet(anyString(), eq("Cheap"))).thenReturn(rs);
-        when(rs.next()).thenReturn(false);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), eq(2))).thenAnswer(mapRows());
 
         Optional<DateNightIdea> result = dao.findRandomAvailableIdea("Cheap");
 
         assertTrue(result.isEmpty());
     }
 
+    // Tests that the RANDOM_KEY strategy passes the category id and a random start key to both halves of the query
+    // Verifies the row returned by the index lookup is mapped, using budget category "Free"
+    @Test
+    void findRandomAvailableIdea_RandomKeyStrategy_ReturnsIdea_WhenFound() throws Exception {
+        dao.setRandomSelectionStrategy(RandomSelectionStrategy.RANDOM_KEY);
+        ResultSet rs = ideaRow(2L, "Picnic in the Park", null, "Free", null, true);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), eq(1), anyDouble(), eq(1), anyDouble()))
+                .thenAnswer(mapRows(rs));
+
+        Optional<DateNightIdea> result = dao.findRandomAvailableIdea("Free");
+
+        assertTrue(result.isPresent());
+        assertEquals("Picnic in the Park", result.get().getTitle());
+        verify(jdbcTemplateMock).query(contains("random_key >= ?"), any(RowMapper.class), eq(1), anyDouble(), eq(1), anyDouble());
+    }
+
+    // Tests that the RANDOM_KEY strategy returns an empty Optional when the index has no unsuggested rows
+    @Test
+    void findRandomAvailableIdea_RandomKeyStrategy_ReturnsEmpty_WhenNoResults() {
+        dao.setRandomSelectionStrategy(RandomSelectionStrategy.RANDOM_KEY);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), eq(2), anyDouble(), eq(2), anyDouble()))
+                .thenAnswer(mapRows());
+
+        Optional<DateNightIdea> result = dao.findRandomAvailableIdea("Cheap");
+
+        assertTrue(result.isEmpty());
+    }
+
+    // Tests that a batch draw sends every category id and the count to one statement
+    @Test
+    void findRandomAvailableIdeas_DrawsBatchInOneStatement() throws Exception {
+        ResultSet rs1 = ideaRow(4L, "Movie Night", null, "Free", null, true);
+        ResultSet rs2 = ideaRow(9L, "Farmer's Market", null, "Cheap", null, true);
+        when(jdbcTemplateMock.query(contains("LATERAL"), any(RowMapper.class), eq(2), any(Integer[].class), eq(2))).thenAnswer(mapRows(rs1, rs2));
+
+        List<DateNightIdea> result = dao.findRandomAvailableIdeas(List.of("Free", "Cheap", "Free"), 2);
+
+        assertEquals(2, result.size());
+        verify(jdbcTemplateMock, times(1)).query(anyString(), any(RowMapper.class), eq(2), eq(new Integer[]{1, 2}), eq(2));
+    }
+
+    // Tests that a budget category that doesn't exist is answered without querying the database
+    @Test
+    void findRandomAvailableIdea_ReturnsEmpty_WhenBudgetCategoryUnknown() {
+        Optional<DateNightIdea> result = dao.findRandomAvailableIdea("Lavish");
+
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(jdbcTemplateMock);
+    }
+
+    // Tests that per-user draws pass the ideas the user has already seen to the query,
+    // so the second draw for "Alice" excludes the idea returned by the first one
+    @Test
+    void findRandomAvailableIdeaForUser_ExcludesIdeasAlreadySeen() throws Exception {
+        ResultSet rs = ideaRow(7L, "Movie Night", null, "Free", null, false);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), eq(1), any(long[].class))).thenAnswer(mapRows(rs));
+
+        Optional<DateNightIdea> first = dao.findRandomAvailableIdeaForUser("Alice", "Free");
+        dao.findRandomAvailableIdeaForUser("Alice", "Free");
+
+        assertTrue(first.isPresent());
+        assertTrue(first.get().isSuggested());
+        verify(jdbcTemplateMock).query(anyString(), any(RowMapper.class), eq(1), (Object) eq(new long[0]));
+        verify(jdbcTemplateMock).query(anyString(), any(RowMapper.class), eq(1), (Object) eq(new long[]{7L}));
+        verify(jdbcTemplateMock, never()).update(anyString());
+    }
+
+    // Tests that resetting one user's list only forgets that user's history
+    @Test
+    void resetListOfIdeasForUser_ForgetsOnlyThatUser() throws Exception {
+        ResultSet rs = ideaRow(7L, "Movie Night", null, "Free", null, false);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), anyInt(), any(long[].class))).thenAnswer(mapRows(rs));
+
+        dao.findRandomAvailableIdeaForUser("Alice", "Free");
+        dao.findRandomAvailableIdeaForUser("Johnny", "Free");
+        dao.resetListOfIdeasForUser("Alice");
+        dao.findRandomAvailableIdeaForUser("Alice", "Free");
+        dao.findRandomAvailableIdeaForUser("Johnny", "Free");
+
+        verify(jdbcTemplateMock, times(3)).query(anyString(), any(RowMapper.class), anyInt(), (Object) eq(new long[0]));
+        verify(jdbcTemplateMock, times(1)).query(anyString(), any(RowMapper.class), anyInt(), (Object) eq(new long[]{7L}));
+    }
+
     // Tests that create successfully inserts a new idea and maps the returned row
     // Verifies mapping and fields, using budget category "Moderate"
     @Test
-    void create_ReturnsCreatedIdea_WhenSuccessful() throws DaoException {
-        SqlRowSet rs = mock(SqlRowSet.class);
+    void create_ReturnsCreatedIdea_WhenSuccessful() throws Exception {
         DateNightIdea idea = new DateNightIdea();
         idea.setTitle("Dinner Date");
         idea.setDescription("Dinner at a restaurant");
         idea.setBudgetCategory("Moderate");
         idea.setLocation("Downtown");
+        ResultSet rs = ideaRow(1L, "Dinner Date", "Dinner at a restaurant", "Moderate", "Downtown", false);
 
-        when(jdbcTemplateMock.queryForRowSet(anyString(), any(), any(), any(), any())).thenReturn(rs);
-        when(rs.next()).thenReturn(true);
-        when(rs.getLong("id")).thenReturn(1L);
-        when(rs.getString("title")).thenReturn("Dinner Date");
-        when(rs.getString("description")).thenReturn("Dinner at a restaurant");
-        when(rs.getString("budget_category")).thenReturn("Moderate");
-        when(rs.getString("location")).thenReturn("Downtown");
-        when(rs.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
-        when(rs.getBoolean("is_suggested")).thenReturn(false);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), any(), any(), any(), any())).thenAnswer(mapRows(rs));
 
         DateNightIdea result = dao.create(idea);
 
         assertEquals("Dinner Date", result.getTitle());
+        assertEquals("Downtown", result.getLocation());
+        assertNotNull(result.getCreatedAt());
     }
 
     // Tests that create throws a DaoException if the insert returns no row
     // Simulates a failure in inserting a new idea for budget category "Expensive"
     @Test
     void create_ThrowsDaoException_WhenNoRowReturned() {
-        SqlRowSet rs = mock(SqlRowSet.class);
-        when(jdbcTemplateMock.queryForRowSet(anyString(), any(), any(), any(), any())).thenReturn(rs);
-        when(rs.next()).thenReturn(false);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class), any(), any(), any(), any())).thenAnswer(mapRows());
 
         DateNightIdea idea = new DateNightIdea();
         idea.setTitle("Luxury Dinner");
@@ -106,6 +183,26 @@ public class JdbcDateNightIdeaDaoTest {
         assertTrue(exception.getMessage().contains("Failed to insert"));
     }
 
+    // Tests that createAll sends every idea in one statement, with one array per column
+    @Test
+    void createAll_InsertsAllIdeasInOneStatement() throws Exception {
+        DateNightIdea first = new DateNightIdea();
+        first.setTitle("Stargazing");
+        first.setBudgetCategory("Free");
+        DateNightIdea second = new DateNightIdea();
+        second.setTitle("Bowling");
+        second.setBudgetCategory("Cheap");
+        ResultSet rs1 = ideaRow(1L, "Stargazing", null, "Free", null, false);
+        ResultSet rs2 = ideaRow(2L, "Bowling", null, "Cheap", null, false);
+        when(jdbcTemplateMock.query(contains("unnest"), any(RowMapper.class), any(), any(), any(), any())).thenAnswer(mapRows(rs1, rs2));
+
+        List<DateNightIdea> result = dao.createAll(List.of(first, second));
+
+        assertEquals(2, result.size());
+        verify(jdbcTemplateMock, times(1)).query(anyString(), any(RowMapper.class),
+                eq(new String[]{"Stargazing", "Bowling"}), any(), eq(new Integer[]{1, 2}), any());
+    }
+
     // Tests that delete returns true if a row is deleted
     // Simulates deleting an idea with budget category "Cheap"
     @Test
@@ -126,24 +223,166 @@ public class JdbcDateNightIdeaDaoTest {
         assertFalse(result);
     }
 
+    // Tests that a patch writes only the columns it changes and only matches the version it was made from
+    @Test
+    void patch_WritesOnlyChangedColumns_AtExpectedVersion() throws Exception {
+        ResultSet rs = ideaRow(5L, "Sunset Picnic", "Bring a blanket", "Free", "Park", false);
+        when(jdbcTemplateMock.query(contains("SET title = ?, version = version + 1 WHERE id = ? AND version = ?"), any(RowMapper.class),
+                eq("Sunset Picnic"), eq(5), eq(3))).thenAnswer(mapRows(rs));
+        IdeaPatch patch = new IdeaPatch();
+        patch.setTitle("Sunset Picnic");
+        patch.setVersion(3);
+
+        Optional<DateNightIdea> result = dao.patch(5, patch);
+
+        assertEquals("Bring a blanket", result.orElseThrow().getDescription());
+        verify(jdbcTemplateMock, never()).queryForList(anyString(), eq(Integer.class), any());
+    }
+
+    // Tests that an update that matches no row is a conflict when the idea has moved on to another version,
+    // and empty when the idea doesn't exist
+    @Test
+    void update_ThrowsConflict_WhenVersionIsStale() {
+        when(jdbcTemplateMock.query(contains("AND version = ?"), any(RowMapper.class), any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(mapRows());
+        when(jdbcTemplateMock.queryForList(anyString(), eq(Integer.class), eq(7))).thenReturn(List.of(4));
+        when(jdbcTemplateMock.queryForList(anyString(), eq(Integer.class), eq(8))).thenReturn(List.of());
+        DateNightIdea idea = new DateNightIdea();
+        idea.setTitle("Picnic");
+        idea.setBudgetCategory("Free");
+        idea.setVersion(3);
+
+        IdeaVersionConflictException conflict = assertThrows(IdeaVersionConflictException.class, () -> dao.update(7, idea));
+        assertEquals(4, conflict.getCurrentVersion());
+        assertTrue(dao.update(8, idea).isEmpty());
+    }
+
+    // Tests that each kind of statement gets its own query timeout once the timeouts are applied
+    @Test
+    void applyStatementTimeouts_SetsQueryTimeoutPerStatementKind() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(mock(ResultSet.class));
+        when(statement.executeUpdate()).thenReturn(1);
+        dao.setJdbcTemplate(new JdbcTemplate(dataSource));
+        dao.applyStatementTimeouts();
+
+        dao.findRandomAvailableIdea("Free");
+        dao.delete(1);
+
+        InOrder inOrder = inOrder(statement);
+        inOrder.verify(statement).setQueryTimeout(2);
+        inOrder.verify(statement).setQueryTimeout(5);
+    }
+
+    // Tests that resetting the list only moves the suggestion epochs forward instead of updating every idea
+    @Test
+    void resetListOfIdeas_BumpsEpochInsteadOfRewritingIdeas() {
+        dao.resetListOfIdeas();
+
+        verify(jdbcTemplateMock, times(1)).update("UPDATE budget_category SET epoch = epoch + 1");
+        verify(jdbcTemplateMock, never()).update(contains("date_night_idea"));
+    }
+
+    // Tests that a page is read with a keyset condition on id instead of an OFFSET
+    @Test
+    void getIdeasPage_UsesKeysetCondition() throws Exception {
+        ResultSet rs = ideaRow(11L, "Farmer's Market", null, "Free", null, false);
+        when(jdbcTemplateMock.query(contains("id > ?"), any(RowMapper.class), eq(1), eq(10L), eq(5))).thenAnswer(mapRows(rs));
+
+        List<DateNightIdea> result = dao.getIdeasPage(10L, 5, "Free");
+
+        assertEquals(1, result.size());
+        assertEquals(11L, result.get(0).getId());
+    }
+
+    // Tests that a search becomes a prefix query on the GIN-indexed column, filtered by category and unsuggested ideas
+    @Test
+    void searchIdeas_UsesPrefixQueryAndFilters() throws Exception {
+        ResultSet rs = ideaRow(3L, "Picnic in the Park", null, "Free", "Park", false);
+        when(jdbcTemplateMock.query(and(contains("search_vector @@"), contains("suggested_epoch <> c.epoch")), any(RowMapper.class),
+                eq("picnic:* & park:*"), eq(1), eq("picnic:* & park:*"), eq(20), eq(10))).thenAnswer(mapRows(rs));
+
+        List<DateNightIdea> result = dao.searchIdeas("Picnic, park!", "Free", true, 20, 10);
+
+        assertEquals(1, result.size());
+        assertEquals("Picnic in the Park", result.get(0).getTitle());
+    }
+
+    // Tests that a search with nothing but punctuation returns no ideas without a query
+    @Test
+    void searchIdeas_ReturnsEmpty_WhenNoSearchableWords() {
+        assertTrue(dao.searchIdeas(" & | ! ", null, false, 0, 10).isEmpty());
+        verifyNoInteractions(jdbcTemplateMock);
+    }
+
     // Tests that getAllIdeas returns a list of DateNightIdea objects correctly mapped
     // Verifies mapping for a single idea with budget category "Free"
     @Test
-    void getAllIdeas_ReturnsMappedIdeas() {
-        SqlRowSet rs = mock(SqlRowSet.class);
-        when(jdbcTemplateMock.queryForRowSet(anyString())).thenReturn(rs);
-        when(rs.next()).thenReturn(true, false); // one row
-        when(rs.getLong("id")).thenReturn(1L);
-        when(rs.getString("title")).thenReturn("Movie Night");
-        when(rs.getString("description")).thenReturn("Watch a movie");
-        when(rs.getString("budget_category")).thenReturn("Free");
-        when(rs.getString("location")).thenReturn("Home");
-        when(rs.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
-        when(rs.getBoolean("is_suggested")).thenReturn(false);
+    void getAllIdeas_ReturnsMappedIdeas() throws Exception {
+        ResultSet rs = ideaRow(1L, "Movie Night", "Watch a movie", "Free", "Home", false);
+        when(jdbcTemplateMock.query(anyString(), any(RowMapper.class))).thenAnswer(mapRows(rs));
 
         List<DateNightIdea> result = dao.getAllIdeas();
 
         assertEquals(1, result.size());
         assertEquals("Movie Night", result.get(0).getTitle());
     }
+
+    // Tests that the row mapper looks up column positions only once per query and then reads by index
+    @Test
+    void rowMapper_ResolvesColumnsOnce_ForManyRows() throws Exception {
+        ResultSet rs = ideaRow(3L, "Go Bowling Together", "Bumper lanes optional", "Moderate", "Bowling Alley", true);
+        DateNightIdeaRowMapper rowMapper = new DateNightIdeaRowMapper();
+
+        DateNightIdea first = rowMapper.mapRow(rs, 0);
+        rowMapper.mapRow(rs, 1);
+        rowMapper.mapRow(rs, 2);
+
+        assertEquals(3L, first.getId());
+        assertEquals("Moderate", first.getBudgetCategory());
+        assertEquals(3L, first.getCategoryId());
+        assertEquals("Bowling Alley", first.getLocation());
+        assertTrue(first.isSuggested());
+        verify(rs, times(1)).findColumn("title");
+        verify(rs, never()).getString("title");
+    }
+
+    // Builds a mock ResultSet row. Column positions match "SELECT * FROM date_night_idea_status".
+    private static ResultSet ideaRow(long id, String title, String description, String budgetCategory,
+                                     String location, boolean suggested) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.findColumn("id")).thenReturn(1);
+        when(rs.findColumn("title")).thenReturn(2);
+        when(rs.findColumn("description")).thenReturn(3);
+        when(rs.findColumn("category_id")).thenReturn(4);
+        when(rs.findColumn("location")).thenReturn(5);
+        when(rs.findColumn("created_at")).thenReturn(6);
+        when(rs.findColumn("is_suggested")).thenReturn(7);
+        when(rs.findColumn("version")).thenReturn(8);
+        when(rs.getLong(1)).thenReturn(id);
+        when(rs.getString(2)).thenReturn(title);
+        when(rs.getString(3)).thenReturn(description);
+        when(rs.getInt(4)).thenReturn(BudgetCategory.fromName(budgetCategory).orElseThrow().getId());
+        when(rs.getString(5)).thenReturn(location);
+        when(rs.getTimestamp(6)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+        when(rs.getBoolean(7)).thenReturn(suggested);
+        when(rs.getInt(8)).thenReturn(1);
+        return rs;
+    }
+
+    // Answers a JdbcTemplate.query call the way JdbcTemplate does: by running the DAO's RowMapper over every row
+    private static Answer<List<DateNightIdea>> mapRows(ResultSet... rows) {
+        return invocation -> {
+            RowMapper<DateNightIdea> rowMapper = invocation.getArgument(1);
+            List<DateNightIdea> ideas = new ArrayList<>();
+            for (int i = 0; i < rows.length; i++) {
+                ideas.add(rowMapper.mapRow(rows[i], i));
+            }
+            return ideas;
+        };
+    }
 }
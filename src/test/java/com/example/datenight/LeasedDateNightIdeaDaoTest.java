@@ -0,0 +1,147 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.example.datenight.dao.LeasedDateNightIdeaDao;
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.model.DateNightIdea;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+public class LeasedDateNightIdeaDaoTest {
+    private static final String LEASE_SQL = "WITH candidates";
+
+    private JdbcDateNightIdeaDao jdbcDaoMock;
+    private JdbcTemplate jdbcTemplateMock;
+    private LeasedDateNightIdeaDao dao;
+
+    // Before each test, the first lease statement returns 3 "Free" ideas and the next one nothing.
+    // The flush interval is long so the tests decide when suggestions are written back.
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcDaoMock = mock(JdbcDateNightIdeaDao.class);
+        jdbcTemplateMock = mock(JdbcTemplate.class);
+        when(jdbcTemplateMock.query(startsWith(LEASE_SQL), any(RowMapper.class), any(), any(), any(), any(), any(), any()))
+                .thenReturn(List.of(idea(1L), idea(2L), idea(3L)))
+                .thenReturn(List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+    }
+
+    // Tests that a block is leased once and then drawn from memory without repeating an idea, that the draw after
+    // the block is used up leases again, and that a deleted idea is taken out of the block
+    @Test
+    @SuppressWarnings("unchecked")
+    void findRandomAvailableIdea_DrawsLeasedBlockOnce_AndSkipsDeletedIdeas() {
+        dao = new LeasedDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 3, Duration.ofMinutes(5), 60_000, 10_000, null);
+
+        Set<Long> drawn = new HashSet<>();
+        Optional<DateNightIdea> first = dao.findRandomAvailableIdea("Free");
+        assertTrue(first.isPresent());
+        assertTrue(first.get().isSuggested());
+        drawn.add(first.get().getId());
+        long remaining = List.of(1L, 2L, 3L).stream().filter(id -> !drawn.contains(id)).findFirst().orElseThrow();
+        when(jdbcDaoMock.delete((int) remaining)).thenReturn(true);
+        assertTrue(dao.delete((int) remaining));
+
+        drawn.add(dao.findRandomAvailableIdea("Free").orElseThrow().getId());
+        assertEquals(2, drawn.size());
+        assertFalse(drawn.contains(remaining));
+        // One lease for the block, then one that finds nothing once it is used up
+        verify(jdbcTemplateMock, times(1)).query(startsWith(LEASE_SQL), any(RowMapper.class), any(), any(), any(), any(), any(), any());
+        assertTrue(dao.findRandomAvailableIdea("Free").isEmpty());
+        verify(jdbcTemplateMock, times(3)).query(startsWith(LEASE_SQL), any(RowMapper.class), any(), any(), any(), any(), any(), any());
+        verify(jdbcDaoMock, never()).findRandomAvailableIdea(anyString());
+    }
+
+    // Tests that a lease TTL too short to draw from is refused, and that a block whose lease took so long that it is
+    // about to expire is given back and the draw fails, instead of leasing block after block until the category is
+    // used up
+    @Test
+    @SuppressWarnings("unchecked")
+    void expiringBlock_IsGivenBack_AndShortTtlIsRefused() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LeasedDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 3, Duration.ofSeconds(1), 100, 10_000, null));
+        AtomicLong clock = new AtomicLong();
+        when(jdbcTemplateMock.query(startsWith(LEASE_SQL), any(RowMapper.class), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    clock.addAndGet(Duration.ofSeconds(1).toNanos());
+                    return List.of(idea(1L), idea(2L), idea(3L));
+                });
+        // Drawn from for 900 ms after leasing: 2 s minus the second kept before expiry and one flush interval
+        dao = new LeasedDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 3, Duration.ofSeconds(2), 100, 10_000, null, clock::get);
+
+        assertThrows(DaoException.class, () -> dao.findRandomAvailableIdea("Free"));
+        verify(jdbcTemplateMock, times(1)).query(startsWith(LEASE_SQL), any(RowMapper.class), any(), any(), any(), any(), any(), any());
+        verify(jdbcTemplateMock).update(startsWith("DELETE FROM idea_lease WHERE owner"), anyString(),
+                argThat((long[] ids) -> ids.length == 3));
+    }
+
+    // Tests that drawn ideas that can't be written keep their leases until they are, and are not given back when the
+    // app shuts down, while a reset gives every lease back
+    @Test
+    @SuppressWarnings("unchecked")
+    void unwrittenDraws_KeepTheirLeases_AndResetReleasesLeases() {
+        dao = new LeasedDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 3, Duration.ofMinutes(5), 60_000, 10_000, null);
+        when(jdbcTemplateMock.update(startsWith("UPDATE date_night_idea"), any(long[].class)))
+                .thenThrow(new DataAccessResourceFailureException("Database is down"));
+
+        long drawn = dao.findRandomAvailableIdea("Free").orElseThrow().getId();
+        dao.flushSuggestions();
+        verify(jdbcTemplateMock).update(startsWith("UPDATE idea_lease SET expires_at"), anyLong(), anyString(), eq(new long[]{drawn}));
+        dao.close();
+        verify(jdbcTemplateMock, never()).update(startsWith("DELETE FROM idea_lease WHERE owner"), anyString());
+
+        dao = new LeasedDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 3, Duration.ofMinutes(5), 60_000, 10_000, null);
+        dao.resetListOfIdeas();
+        verify(jdbcDaoMock).resetListOfIdeas();
+        verify(jdbcTemplateMock).update(startsWith("DELETE FROM idea_lease WHERE owner"), anyString());
+    }
+
+    // Tests that per-user draws record what the user has seen in the shared user_suggestion table instead of in this
+    // instance, that a draw another instance won is tried again, and that a per-user reset deletes only that user's rows
+    @Test
+    @SuppressWarnings("unchecked")
+    void perUserDraws_AreKeptInPostgres() {
+        dao = new LeasedDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 3, Duration.ofMinutes(5), 60_000, 10_000, null);
+        when(jdbcTemplateMock.query(startsWith("WITH picked"), any(RowMapper.class), any(), any(), eq("alice"), any(), any(), eq("alice"), eq("alice")))
+                .thenReturn(List.of())
+                .thenReturn(List.of(idea(2L)));
+
+        DateNightIdea drawn = dao.findRandomAvailableIdeaForUser("alice", "Free").orElseThrow();
+        assertEquals(2L, drawn.getId());
+        assertTrue(drawn.isSuggested());
+        verify(jdbcTemplateMock, times(2)).query(startsWith("WITH picked"), any(RowMapper.class), any(), any(), any(), any(), any(), any(), any());
+        verify(jdbcDaoMock, never()).findRandomAvailableIdeaForUser(anyString(), anyString());
+
+        dao.resetListOfIdeasForUser("alice");
+        verify(jdbcTemplateMock).update("DELETE FROM user_suggestion WHERE user_key = ?", "alice");
+        verify(jdbcDaoMock, never()).resetListOfIdeasForUser(anyString());
+    }
+
+    private static DateNightIdea idea(long id) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(id);
+        idea.setTitle("Idea " + id);
+        idea.setBudgetCategory("Free");
+        return idea;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.dao.MeteredDateNightIdeaDao;
+import com.example.datenight.exception.DaoException;
+import com.example.datenight.model.DateNightIdea;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MeteredDateNightIdeaDaoTest {
+    private DateNightIdeaDaoInterface daoMock;
+    private SimpleMeterRegistry registry;
+    private MeteredDateNightIdeaDao dao;
+
+    @BeforeEach
+    void setUp() {
+        daoMock = mock(DateNightIdeaDaoInterface.class);
+        registry = new SimpleMeterRegistry();
+        dao = new MeteredDateNightIdeaDao(daoMock, registry);
+    }
+
+    // Tests that an empty draw is timed and counted under its budget category
+    @Test
+    void findRandomAvailableIdea_CountsEmptyDraws() {
+        when(daoMock.findRandomAvailableIdea("Free")).thenReturn(Optional.empty());
+
+        dao.findRandomAvailableIdea("Free");
+
+        assertEquals(1, registry.get("datenight.draws.empty").tag("budgetCategory", "Free").tag("scope", "shared").counter().count());
+        assertEquals(1, registry.get("datenight.dao.calls").tag("method", "findRandomAvailableIdea").timer().count());
+    }
+
+    // Tests that a category that isn't one of the four known ones is tagged "other"
+    @Test
+    void findRandomAvailableIdeaForUser_TagsUnknownCategoryAsOther() {
+        when(daoMock.findRandomAvailableIdeaForUser("Alice", "Lavish")).thenReturn(Optional.empty());
+
+        dao.findRandomAvailableIdeaForUser("Alice", "Lavish");
+
+        assertEquals(1, registry.get("datenight.draws.empty").tag("budgetCategory", "other").tag("scope", "user").counter().count());
+    }
+
+    // Tests that the number of rows returned by a query is recorded
+    @Test
+    void getIdeasPage_RecordsRowsReturned() {
+        when(daoMock.getIdeasPage(0, 10, null)).thenReturn(List.of(new DateNightIdea(), new DateNightIdea(), new DateNightIdea()));
+
+        dao.getIdeasPage(0, 10, null);
+
+        assertEquals(3, registry.get("datenight.dao.rows").tag("method", "getIdeasPage").summary().totalAmount());
+    }
+
+    // Tests that a failed call is still timed, tagged with the exception, and the exception reaches the caller
+    @Test
+    void resetListOfIdeas_TimesFailures() {
+        doThrow(new DaoException("Unable to connect to the server or database")).when(daoMock).resetListOfIdeas();
+
+        assertThrows(DaoException.class, () -> dao.resetListOfIdeas());
+
+        assertEquals(1, registry.get("datenight.dao.calls").tag("method", "resetListOfIdeas").tag("exception", "DaoException").timer().count());
+    }
+}
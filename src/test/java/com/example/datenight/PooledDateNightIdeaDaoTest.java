@@ -0,0 +1,273 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.example.datenight.dao.PooledDateNightIdeaDao;
+import com.example.datenight.model.DateNightIdea;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+public class PooledDateNightIdeaDaoTest {
+    private JdbcDateNightIdeaDao jdbcDaoMock;
+    private JdbcTemplate jdbcTemplateMock;
+    private PooledDateNightIdeaDao dao;
+
+    // Before each test, load the pool with 200 "Free" ideas and 1 "Cheap" idea from a mock JDBC DAO.
+    // The flush interval is long so the tests decide when suggestions are written back.
+    @BeforeEach
+    void setUp() {
+        jdbcDaoMock = mock(JdbcDateNightIdeaDao.class);
+        jdbcTemplateMock = mock(JdbcTemplate.class);
+        List<DateNightIdea> ideas = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            ideas.add(idea(id, "Free"));
+        }
+        ideas.add(idea(201L, "Cheap"));
+        when(jdbcDaoMock.getAllIdeas()).thenReturn(ideas);
+        dao = new PooledDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 60_000, 10_000, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+    }
+
+    // Tests that ideas moved to another category while other threads draw are never handed out twice, and that every
+    // drawn idea stays marked as suggested. Each round resets the list and moves every "Free" idea, then moves them back.
+    @Test
+    void drawsRacingWithCategoryMoves_NeverReturnDuplicates() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int round = 0; round < 100; round++) {
+            String from = round % 2 == 0 ? "Free" : "Cheap";
+            String to = round % 2 == 0 ? "Cheap" : "Free";
+            when(jdbcDaoMock.update(anyInt(), any())).thenAnswer(invocation -> Optional.of(idea(invocation.<Integer>getArgument(0), to)));
+            dao.resetListOfIdeas();
+            Set<Long> drawn = ConcurrentHashMap.newKeySet();
+            CountDownLatch moved = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    while (moved.getCount() > 0) {
+                        for (String budgetCategory : List.of(from, to)) {
+                            dao.findRandomAvailableIdea(budgetCategory).ifPresent(idea ->
+                                    assertTrue(drawn.add(idea.getId()), "Idea handed out twice: " + idea.getId()));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int id = 1; id <= 200; id++) {
+                dao.update(id, idea(id, to));
+            }
+            moved.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            for (DateNightIdea idea : dao.getAllIdeas()) {
+                assertEquals(drawn.contains(idea.getId()), idea.isSuggested(), "Idea " + idea.getId());
+            }
+        }
+        executor.shutdown();
+    }
+
+    // Tests that many threads drawing at once never receive the same idea twice,
+    // and that the category is empty once every idea has been handed out
+    @Test
+    void findRandomAvailableIdea_NeverReturnsDuplicates_UnderConcurrentDraws() throws Exception {
+        Set<Long> drawn = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(executor.submit(() -> {
+                int count = 0;
+                Optional<DateNightIdea> idea;
+                while ((idea = dao.findRandomAvailableIdea("Free")).isPresent()) {
+                    assertTrue(drawn.add(idea.get().getId()), "Idea handed out twice: " + idea.get().getId());
+                    count++;
+                }
+                return count;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> future : futures) {
+            total += future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(200, total);
+        assertEquals(200, drawn.size());
+        assertTrue(dao.findRandomAvailableIdea("Free").isEmpty());
+        verify(jdbcDaoMock, never()).findRandomAvailableIdea(anyString());
+    }
+
+    // Tests that a batch draw spreads the ideas over the categories and lets one category fill in for another
+    @Test
+    void findRandomAvailableIdeas_SpreadsOverCategories() {
+        List<DateNightIdea> ideas = dao.findRandomAvailableIdeas(List.of("Cheap", "Free"), 4);
+
+        assertEquals(4, ideas.size());
+        assertEquals(1, ideas.stream().filter(idea -> "Cheap".equals(idea.getBudgetCategory())).count());
+        assertEquals(4, ideas.stream().map(DateNightIdea::getId).distinct().count());
+    }
+
+    // Tests that drawn ideas are written back to PostgreSQL in one UPDATE when the pool is flushed
+    @Test
+    void flushSuggestions_WritesDrawnIdeasInOneUpdate() {
+        DateNightIdea idea = dao.findRandomAvailableIdea("Cheap").orElseThrow();
+        assertTrue(idea.isSuggested());
+
+        dao.flushSuggestions();
+
+        verify(jdbcTemplateMock, times(1)).update(contains("ANY"), (Object) eq(new long[]{201L}));
+    }
+
+    // Tests that resetting makes every idea available again and resets the database through the JDBC DAO
+    @Test
+    void resetListOfIdeas_RefillsThePool() {
+        assertTrue(dao.findRandomAvailableIdea("Cheap").isPresent());
+        assertTrue(dao.findRandomAvailableIdea("Cheap").isEmpty());
+
+        dao.resetListOfIdeas();
+
+        assertTrue(dao.findRandomAvailableIdea("Cheap").isPresent());
+        verify(jdbcDaoMock, times(1)).resetListOfIdeas();
+    }
+
+    // Tests that an idea drawn while the database is being reset is never written as suggested after the reset, and
+    // that the rebuilt pool offers it again
+    @Test
+    void resetListOfIdeas_DoesNotWriteDrawsThatRacedWithIt() {
+        List<Long> drawnDuringReset = new ArrayList<>();
+        doAnswer(invocation -> drawnDuringReset.add(dao.findRandomAvailableIdea("Cheap").orElseThrow().getId()))
+                .when(jdbcDaoMock).resetListOfIdeas();
+
+        dao.resetListOfIdeas();
+        dao.flushSuggestions();
+
+        assertEquals(List.of(201L), drawnDuringReset);
+        verify(jdbcTemplateMock, never()).update(contains("ANY"), any(long[].class));
+        assertEquals(201L, dao.findRandomAvailableIdea("Cheap").orElseThrow().getId());
+    }
+
+    // Tests that a newly created idea can be drawn and a deleted idea never is
+    @Test
+    void createAndDelete_UpdateThePool() {
+        DateNightIdea created = idea(300L, "Expensive");
+        when(jdbcDaoMock.create(any())).thenReturn(created);
+        when(jdbcDaoMock.delete(201)).thenReturn(true);
+
+        dao.create(created);
+        dao.delete(201);
+
+        assertEquals(300L, dao.findRandomAvailableIdea("Expensive").orElseThrow().getId());
+        assertTrue(dao.findRandomAvailableIdea("Cheap").isEmpty());
+    }
+
+    // Tests that ideas created in bulk are added to the pool of their own category
+    @Test
+    void createAll_AddsIdeasToTheirPools() {
+        List<DateNightIdea> created = List.of(idea(301L, "Moderate"), idea(302L, "Moderate"), idea(303L, "Cheap"));
+        when(jdbcDaoMock.createAll(any())).thenReturn(created);
+
+        dao.createAll(created);
+
+        Set<Long> drawn = Set.of(dao.findRandomAvailableIdea("Moderate").orElseThrow().getId(),
+                dao.findRandomAvailableIdea("Moderate").orElseThrow().getId());
+        assertEquals(Set.of(301L, 302L), drawn);
+        assertTrue(dao.findRandomAvailableIdea("Moderate").isEmpty());
+        assertEquals(2, dao.getAllIdeas().stream().filter(idea -> "Cheap".equals(idea.getBudgetCategory())).count());
+    }
+
+    // Tests that walking the catalog with keyset pages returns every idea once in id order without going to the
+    // database, and that pages filtered by category or after a delete skip the right ideas
+    @Test
+    void getIdeasPage_WalksTheCatalogInIdOrder() {
+        List<Long> walked = new ArrayList<>();
+        List<DateNightIdea> page = dao.getIdeasPage(0, 64, null);
+        while (!page.isEmpty()) {
+            page.forEach(idea -> walked.add(idea.getId()));
+            page = dao.getIdeasPage(page.get(page.size() - 1).getId(), 64, null);
+        }
+        when(jdbcDaoMock.delete(100)).thenReturn(true);
+        dao.delete(100);
+
+        assertEquals(LongStream.rangeClosed(1, 201).boxed().toList(), walked);
+        assertEquals(List.of(201L), dao.getIdeasPage(0, 10, "Cheap").stream().map(DateNightIdea::getId).toList());
+        assertEquals(List.of(101L), dao.getIdeasPage(99, 1, null).stream().map(DateNightIdea::getId).toList());
+        verify(jdbcDaoMock, never()).getIdeasPage(anyLong(), anyInt(), any());
+    }
+
+    // Tests that ideas drawn but not yet written when the app stopped without closing are marked as suggested from
+    // the journal on the next start, before the pools are loaded, and that the journal is emptied afterwards
+    @Test
+    void journal_MarksUnflushedDrawsOnRestart(@TempDir Path journalDirectory) throws Exception {
+        PooledDateNightIdeaDao crashed = new PooledDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 60_000, 10_000, journalDirectory);
+        long drawn = crashed.findRandomAvailableIdea("Cheap").orElseThrow().getId();
+        clearInvocations(jdbcTemplateMock, jdbcDaoMock);
+
+        PooledDateNightIdeaDao restarted = new PooledDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 60_000, 10_000, journalDirectory);
+        restarted.close();
+
+        InOrder inOrder = inOrder(jdbcTemplateMock, jdbcDaoMock);
+        inOrder.verify(jdbcTemplateMock).update(contains("ANY"), eq((Object) new long[]{drawn}));
+        inOrder.verify(jdbcDaoMock).getAllIdeas();
+        try (Stream<Path> segments = Files.list(journalDirectory)) {
+            assertEquals(0, segments.count());
+        }
+    }
+
+    // Tests that a journal line that isn't an id, or a file in the journal directory that isn't a segment, is skipped
+    // instead of stopping the app from starting
+    @Test
+    void journal_SkipsDamagedLines(@TempDir Path journalDirectory) throws Exception {
+        Files.writeString(journalDirectory.resolve("suggestions-1.log"), "12\nnot an id\n13\n");
+        Files.writeString(journalDirectory.resolve("suggestions-backup.log"), "14\n");
+
+        PooledDateNightIdeaDao restarted = new PooledDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 60_000, 10_000, journalDirectory);
+        restarted.close();
+
+        verify(jdbcTemplateMock).update(contains("ANY"), eq((Object) new long[]{12L, 13L}));
+        assertTrue(Files.exists(journalDirectory.resolve("suggestions-backup.log")));
+    }
+
+    // Tests that suggestions are written as soon as a full batch is waiting instead of at the next flush interval
+    @Test
+    void findRandomAvailableIdea_FlushesWhenBatchIsFull() {
+        PooledDateNightIdeaDao batched = new PooledDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, 60_000, 5, null);
+        for (int i = 0; i < 5; i++) {
+            batched.findRandomAvailableIdea("Free");
+        }
+
+        verify(jdbcTemplateMock, timeout(2000)).update(contains("ANY"), any(long[].class));
+        batched.close();
+    }
+
+    private static DateNightIdea idea(long id, String budgetCategory) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(id);
+        idea.setTitle("Idea " + id);
+        idea.setBudgetCategory(budgetCategory);
+        return idea;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.datenight;
+
+import com.example.datenight.config.StartupWarmUp;
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class StartupWarmUpTest {
+
+    // Tests that the warm-up loads the catalog, runs the DAO's statements in one transaction per pool connection,
+    // marks every transaction rollback-only so no draw is kept, and forgets the warm-up user's history afterwards
+    @Test
+    void run_RunsStatementsOnEveryConnection_AndRollsThemBack() throws Exception {
+        DateNightIdeaDaoInterface daoMock = mock(DateNightIdeaDaoInterface.class);
+        JdbcDateNightIdeaDao jdbcDaoMock = mock(JdbcDateNightIdeaDao.class);
+        PlatformTransactionManager transactionManagerMock = mock(PlatformTransactionManager.class);
+        when(transactionManagerMock.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        when(daoMock.getAllIdeas()).thenReturn(List.of());
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setMaximumPoolSize(3);
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("jdbcDateNightIdeaDao", jdbcDaoMock);
+        beans.addBean("transactionManager", transactionManagerMock);
+        beans.addBean("dataSource", dataSource);
+
+        new StartupWarmUp(daoMock, beans.getBeanProvider(JdbcDateNightIdeaDao.class),
+                beans.getBeanProvider(PlatformTransactionManager.class), beans.getBeanProvider(DataSource.class)).run(null);
+
+        verify(daoMock).getAllIdeas();
+        verify(jdbcDaoMock, times(3)).findRandomAvailableIdea("Free");
+        verify(jdbcDaoMock, times(3)).countAvailableIdeasByCategory();
+        ArgumentCaptor<TransactionStatus> completed = ArgumentCaptor.forClass(TransactionStatus.class);
+        verify(transactionManagerMock, times(3)).commit(completed.capture());
+        assertTrue(completed.getAllValues().stream().allMatch(TransactionStatus::isRollbackOnly));
+        verify(jdbcDaoMock).resetListOfIdeasForUser("startup-warm-up");
+        dataSource.close();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.DateNightIdeaDaoInterface;
+import com.example.datenight.dao.RecordingDateNightIdeaDao;
+import com.example.datenight.history.SuggestionHistory;
+import com.example.datenight.model.DateNightIdea;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+public class SuggestionHistoryTest {
+    // Long enough that the background thread never flushes during a test
+    private static final long FLUSH_INTERVAL_MS = 3_600_000;
+
+    private final JdbcTemplate jdbcTemplateMock = mock(JdbcTemplate.class);
+    private SuggestionHistory history;
+
+    @AfterEach
+    void tearDown() {
+        history.close();
+    }
+
+    // Tests that draws are only queued while they are made, and that a flush writes every queued draw with one
+    // statement after creating the month's partition, which isn't created again by later flushes
+    @Test
+    void draws_AreWrittenInOneStatementOnFlush() {
+        history = new SuggestionHistory(jdbcTemplateMock, FLUSH_INTERVAL_MS, 100, 1000, 0);
+        DateNightIdeaDaoInterface daoMock = mock(DateNightIdeaDaoInterface.class);
+        when(daoMock.findRandomAvailableIdea("Free")).thenReturn(Optional.of(idea(1L, "Free")));
+        when(daoMock.findRandomAvailableIdeaForUser("abc123", "Cheap")).thenReturn(Optional.of(idea(2L, "Cheap")));
+        when(daoMock.findRandomAvailableIdeas(List.of("Moderate"), 2)).thenReturn(List.of(idea(3L, "Moderate"), idea(4L, "Moderate")));
+        when(daoMock.findRandomAvailableIdea("Expensive")).thenReturn(Optional.empty());
+        RecordingDateNightIdeaDao dao = new RecordingDateNightIdeaDao(daoMock, history);
+
+        dao.findRandomAvailableIdea("Free");
+        dao.findRandomAvailableIdeaForUser("abc123", "Cheap");
+        dao.findRandomAvailableIdeas(List.of("Moderate"), 2);
+        dao.findRandomAvailableIdea("Expensive");
+        verifyNoInteractions(jdbcTemplateMock);
+        assertEquals(4, history.getPending());
+
+        history.flush();
+        ArgumentCaptor<Object> ideaIds = ArgumentCaptor.forClass(Object.class);
+        ArgumentCaptor<Object> categoryIds = ArgumentCaptor.forClass(Object.class);
+        ArgumentCaptor<Object> userKeys = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplateMock).execute(startsWith("CREATE TABLE IF NOT EXISTS suggestion_event_"));
+        verify(jdbcTemplateMock).update(startsWith("WITH events AS(INSERT INTO suggestion_event"), any(), ideaIds.capture(),
+                categoryIds.capture(), userKeys.capture());
+        assertArrayEquals(new long[]{1, 2, 3, 4}, (long[]) ideaIds.getValue());
+        assertArrayEquals(new int[]{1, 2, 3, 3}, (int[]) categoryIds.getValue());
+        assertArrayEquals(new String[]{null, "abc123", null, null}, (String[]) userKeys.getValue());
+        assertEquals(4, history.getWritten());
+
+        dao.findRandomAvailableIdea("Free");
+        history.flush();
+        verify(jdbcTemplateMock, times(1)).execute(anyString());
+        verify(jdbcTemplateMock, times(2)).update(anyString(), any(), any(), any(), any());
+    }
+
+    // Tests that draws that couldn't be written are kept for the next flush, and that draws beyond max-pending are
+    // dropped and counted instead of queued
+    @Test
+    void failedFlush_KeepsDraws_AndDropsWhatDoesNotFit() {
+        history = new SuggestionHistory(jdbcTemplateMock, FLUSH_INTERVAL_MS, 100, 3, 0);
+        when(jdbcTemplateMock.update(anyString(), any(), any(), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("Database is down"))
+                .thenReturn(3);
+
+        for (long id = 1; id <= 5; id++) {
+            history.record(idea(id, "Free"), null);
+        }
+        assertEquals(3, history.getPending());
+        assertEquals(2, history.getDropped());
+
+        history.flush();
+        assertEquals(3, history.getPending());
+        assertEquals(0, history.getWritten());
+
+        history.flush();
+        assertEquals(0, history.getPending());
+        assertEquals(3, history.getWritten());
+    }
+
+    // Tests that a batch queued again after a failed flush only fills the room draws made during the flush left, and
+    // that a batch the database refuses outright is dropped instead of retried
+    @Test
+    void failedFlush_RequeuesUpToMaxPending_AndDropsRefusedBatches() {
+        history = new SuggestionHistory(jdbcTemplateMock, FLUSH_INTERVAL_MS, 100, 3, 0);
+        when(jdbcTemplateMock.update(anyString(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    history.record(idea(4L, "Free"), null);
+                    history.record(idea(5L, "Free"), null);
+                    throw new DataAccessResourceFailureException("Database is down");
+                })
+                .thenThrow(new BadSqlGrammarException("history", "WITH events AS(...)", new SQLException("relation does not exist")));
+
+        for (long id = 1; id <= 3; id++) {
+            history.record(idea(id, "Free"), null);
+        }
+        history.flush();
+        assertEquals(3, history.getPending());
+        assertEquals(2, history.getDropped());
+
+        history.flush();
+        assertEquals(0, history.getPending());
+        assertEquals(5, history.getDropped());
+        assertEquals(0, history.getWritten());
+    }
+
+    // Tests that the background thread waits longer after each failed flush instead of trying every flush interval
+    @Test
+    void failingFlushes_AreRetriedLessAndLessOften() throws Exception {
+        history = new SuggestionHistory(jdbcTemplateMock, 20, 100, 1000, 0);
+        when(jdbcTemplateMock.update(anyString(), any(), any(), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("Database is down"));
+
+        history.record(idea(1L, "Free"), null);
+        Thread.sleep(1000);
+
+        // 50 tries without backing off; 20, 40, 80, 160 and 320 ms apart with it
+        verify(jdbcTemplateMock, atMost(7)).update(anyString(), any(), any(), any(), any());
+        verify(jdbcTemplateMock, atLeast(3)).update(anyString(), any(), any(), any(), any());
+        assertEquals(1, history.getPending());
+    }
+
+    private static DateNightIdea idea(long id, String budgetCategory) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(id);
+        idea.setTitle("Idea " + id);
+        idea.setBudgetCategory(budgetCategory);
+        return idea;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.UserSuggestionTracker;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserSuggestionTrackerTest {
+
+    // Tests that a history keeps the ids it has seen in order, whatever their size, and ignores repeats
+    @Test
+    void history_RemembersSeenIds() {
+        UserSuggestionTracker.History history = new UserSuggestionTracker().historyOf("alice");
+        history.lock();
+        try {
+            for (long id : new long[]{3_000_000_000L, 7, 42, 7, 1}) {
+                history.markSeen(id);
+            }
+            assertArrayEquals(new long[]{1, 7, 42, 3_000_000_000L}, history.seenIds());
+            assertTrue(history.hasSeen(42));
+            assertFalse(history.hasSeen(8));
+        } finally {
+            history.unlock();
+        }
+    }
+
+    // Tests that once the tracker is full the least recently used users are forgotten to make room, so any number
+    // of user keys can't use more memory than maxUsers histories
+    @Test
+    void fullTracker_ForgetsLeastRecentlyUsedUsers() throws Exception {
+        UserSuggestionTracker tracker = new UserSuggestionTracker(10, Duration.ofDays(1));
+        for (int user = 0; user < 10; user++) {
+            tracker.historyOf("user-" + user).markSeen(user);
+            Thread.sleep(1);
+        }
+        // user-0 drew again, so it is now the most recently used
+        UserSuggestionTracker.History kept = tracker.historyOf("user-0");
+
+        tracker.historyOf("newcomer");
+
+        assertEquals(10, tracker.trackedUsers());
+        assertSame(kept, tracker.historyOf("user-0"));
+        assertEquals(0, tracker.historyOf("user-1").seenIds().length);
+        for (int user = 0; user < 1_000; user++) {
+            tracker.historyOf("flood-" + user);
+        }
+        assertTrue(tracker.trackedUsers() <= 10, "Tracking " + tracker.trackedUsers() + " users");
+    }
+
+    // Tests that a user who hasn't drawn for the idle timeout is forgotten when room is needed
+    @Test
+    void idleUsers_AreForgotten() throws Exception {
+        UserSuggestionTracker tracker = new UserSuggestionTracker(2, Duration.ofMillis(1));
+        tracker.historyOf("idle").markSeen(5);
+        tracker.historyOf("other");
+        Thread.sleep(5);
+
+        tracker.historyOf("newcomer");
+
+        assertEquals(1, tracker.trackedUsers());
+        assertEquals(0, tracker.historyOf("idle").seenIds().length);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.datenight;
+
+import com.example.datenight.config.VirtualThreadConfiguration;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadConfigurationTest {
+
+    // Tests that the pool is sized from the datenight.virtual-threads settings when Hikari isn't configured directly
+    @Test
+    void poolSizing_UsesVirtualThreadSettings() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("datenight.virtual-threads.pool-size", "7")
+                .withProperty("datenight.virtual-threads.connection-timeout-ms", "1500");
+        HikariDataSource dataSource = new HikariDataSource();
+
+        postProcess(environment, dataSource);
+
+        assertEquals(7, dataSource.getMaximumPoolSize());
+        assertEquals(1500, dataSource.getConnectionTimeout());
+    }
+
+    // Tests that explicit spring.datasource.hikari settings are left alone
+    @Test
+    void poolSizing_KeepsExplicitHikariSettings() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("spring.datasource.hikari.maximum-pool-size", "25")
+                .withProperty("spring.datasource.hikari.connection-timeout", "30000");
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setMaximumPoolSize(25);
+
+        postProcess(environment, dataSource);
+
+        assertEquals(25, dataSource.getMaximumPoolSize());
+        assertEquals(30000, dataSource.getConnectionTimeout());
+    }
+
+    private static void postProcess(MockEnvironment environment, HikariDataSource dataSource) {
+        BeanPostProcessor postProcessor = VirtualThreadConfiguration.virtualThreadPoolSizing(environment);
+        postProcessor.postProcessAfterInitialization(dataSource, "dataSource");
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.datenight;
+
+import com.example.datenight.dao.JdbcDateNightIdeaDao;
+import com.example.datenight.dao.WeightedDateNightIdeaDao;
+import com.example.datenight.model.DateNightIdea;
+import com.example.datenight.recommendation.IdeaWeigher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class WeightedDateNightIdeaDaoTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 1, 12, 0);
+
+    private JdbcDateNightIdeaDao jdbcDaoMock;
+    private JdbcTemplate jdbcTemplateMock;
+    private WeightedDateNightIdeaDao dao;
+
+    // Before each test, load 20 "Free" ideas created one day apart and 1 "Cheap" idea from a mock JDBC DAO.
+    // The flush interval is long so the tests decide when suggestions are written back.
+    @BeforeEach
+    void setUp() {
+        jdbcDaoMock = mock(JdbcDateNightIdeaDao.class);
+        jdbcTemplateMock = mock(JdbcTemplate.class);
+        List<DateNightIdea> ideas = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            ideas.add(idea(id, "Free", NOW.minusDays(20 - id)));
+        }
+        ideas.add(idea(21L, "Cheap", NOW));
+        when(jdbcDaoMock.getAllIdeas()).thenReturn(ideas);
+        dao = new WeightedDateNightIdeaDao(jdbcDaoMock, jdbcTemplateMock, IdeaWeigher.recency(Duration.ofDays(1), NOW), 60_000, 10_000, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+    }
+
+    // Tests that every idea in a category is recommended once before the category is empty,
+    // and that drawn ideas are written back to PostgreSQL in one UPDATE
+    @Test
+    void findRandomAvailableIdea_DrawsEveryIdeaOnce() {
+        Set<Long> drawn = new HashSet<>();
+        Optional<DateNightIdea> idea;
+        while ((idea = dao.findRandomAvailableIdea("Free")).isPresent()) {
+            assertTrue(idea.get().isSuggested());
+            assertTrue(drawn.add(idea.get().getId()));
+        }
+        dao.flushSuggestions();
+
+        assertEquals(20, drawn.size());
+        verify(jdbcTemplateMock, times(1)).update(contains("ANY"), any(long[].class));
+    }
+
+    // Tests that with a one day half-life the newest idea is recommended first far more often than the oldest
+    @Test
+    void findRandomAvailableIdea_PrefersNewerIdeas() {
+        int newestFirst = 0;
+        int oldestFirst = 0;
+        for (int i = 0; i < 200; i++) {
+            long id = dao.findRandomAvailableIdea("Free").orElseThrow().getId();
+            if (id == 20L) {
+                newestFirst++;
+            } else if (id == 1L) {
+                oldestFirst++;
+            }
+            dao.resetListOfIdeas();
+        }
+
+        assertTrue(newestFirst > 50, "The newest idea came first " + newestFirst + " times");
+        assertEquals(0, oldestFirst);
+    }
+
+    // Tests that a created idea can be drawn, a deleted idea never is, and an idea moved to another category
+    // is drawn from its new category
+    @Test
+    void writes_UpdateTheSamplers() {
+        DateNightIdea created = idea(30L, "Expensive", NOW);
+        when(jdbcDaoMock.create(any())).thenReturn(created);
+        when(jdbcDaoMock.delete(anyInt())).thenReturn(true);
+        DateNightIdea moved = idea(21L, "Expensive", NOW);
+        when(jdbcDaoMock.update(eq(21), any())).thenReturn(Optional.of(moved));
+
+        dao.create(created);
+        dao.update(21, moved);
+        dao.delete(30);
+
+        assertEquals(21L, dao.findRandomAvailableIdea("Expensive").orElseThrow().getId());
+        assertTrue(dao.findRandomAvailableIdea("Expensive").isEmpty());
+        assertTrue(dao.findRandomAvailableIdea("Cheap").isEmpty());
+        verify(jdbcDaoMock).update(eq(21), any());
+    }
+
+    // Tests that an idea drawn while the database is being reset is never written as suggested after the reset, and
+    // that an idea drawn while it is being edited isn't offered again once the edit is done
+    @Test
+    void drawsRacingWithWrites_AreNotLostOrRepeated() {
+        doAnswer(invocation -> dao.findRandomAvailableIdea("Cheap").orElseThrow()).when(jdbcDaoMock).resetListOfIdeas();
+        dao.resetListOfIdeas();
+        dao.flushSuggestions();
+        verify(jdbcTemplateMock, never()).update(contains("ANY"), any(long[].class));
+
+        DateNightIdea edited = idea(21L, "Cheap", NOW);
+        when(jdbcDaoMock.update(eq(21), any())).thenAnswer(invocation -> {
+            assertEquals(21L, dao.findRandomAvailableIdea("Cheap").orElseThrow().getId());
+            return Optional.of(edited);
+        });
+        dao.update(21, edited);
+
+        assertTrue(dao.findRandomAvailableIdea("Cheap").isEmpty());
+        dao.flushSuggestions();
+        verify(jdbcTemplateMock).update(contains("ANY"), (Object) eq(new long[]{21L}));
+    }
+
+    private static DateNightIdea idea(long id, String budgetCategory, LocalDateTime createdAt) {
+        DateNightIdea idea = new DateNightIdea();
+        idea.setId(id);
+        idea.setTitle("Idea " + id);
+        idea.setBudgetCategory(budgetCategory);
+        idea.setCreatedAt(createdAt);
+        return idea;
+    }
+}
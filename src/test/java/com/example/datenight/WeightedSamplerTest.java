@@ -0,0 +1,87 @@
+package com.example.datenight;
+
+import com.example.datenight.recommendation.WeightedSampler;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeightedSamplerTest {
+
+    // Tests that every id is drawn exactly once before the sampler is empty, including after it has grown
+    @Test
+    void draw_NeverRepeatsUntilEmpty() {
+        WeightedSampler sampler = new WeightedSampler();
+        for (long id = 1; id <= 1000; id++) {
+            sampler.add(id, id, true);
+        }
+        Random random = new Random(42);
+
+        Set<Long> drawn = new HashSet<>();
+        long id;
+        while ((id = sampler.draw(random)) >= 0) {
+            assertTrue(drawn.add(id), "Idea " + id + " was drawn twice");
+        }
+
+        assertEquals(1000, drawn.size());
+        assertEquals(0, sampler.availableCount());
+    }
+
+    // Tests that ids are drawn in proportion to their weights
+    @Test
+    void draw_FollowsWeights() {
+        WeightedSampler sampler = new WeightedSampler();
+        sampler.add(1L, 1.0, true);
+        sampler.add(2L, 3.0, true);
+        Random random = new Random(7);
+
+        int heavyFirst = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (sampler.draw(random) == 2L) {
+                heavyFirst++;
+            }
+            sampler.makeAllAvailable();
+        }
+
+        assertEquals(0.75, heavyFirst / 10_000.0, 0.02);
+    }
+
+    // Tests that removed ids are never drawn, even after enough removals to compact the tree
+    @Test
+    void remove_StopsIdFromBeingDrawn() {
+        WeightedSampler sampler = new WeightedSampler();
+        for (long id = 1; id <= 100; id++) {
+            sampler.add(id, 1.0, true);
+        }
+        for (long id = 1; id <= 90; id++) {
+            assertTrue(sampler.remove(id));
+        }
+        Random random = new Random(1);
+
+        Set<Long> drawn = new HashSet<>();
+        long id;
+        while ((id = sampler.draw(random)) >= 0) {
+            drawn.add(id);
+        }
+
+        assertEquals(Set.of(91L, 92L, 93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L), drawn);
+    }
+
+    // Tests that a changed weight is used by the next draws and that reset makes drawn ids available again
+    @Test
+    void setWeight_AndMakeAllAvailable() {
+        WeightedSampler sampler = new WeightedSampler();
+        sampler.add(1L, 1.0, true);
+        sampler.add(2L, 1.0, false);
+        sampler.setWeight(1L, 1e-9);
+        sampler.makeAllAvailable();
+        sampler.setWeight(2L, 1e9);
+
+        assertEquals(2L, sampler.draw(new Random(3)));
+        assertEquals(1L, sampler.draw(new Random(3)));
+        assertEquals(-1L, sampler.draw(new Random(3)));
+    }
+}